@@ -309,8 +309,28 @@ public class JBossASClient implements AutoCloseable {
      * @throws Exception if some error prevented the lookup from even happening
      */
     public ModelNode readResource(Address addr, boolean recursive) throws Exception {
+        return readResource(addr, recursive, false);
+    }
+
+    /**
+     * This returns information on the resource at the given address, recursively
+     * returning child nodes with the result if recursive argument is set to <code>true</code>,
+     * and including runtime attributes (and runtime-only children) if includeRuntime is <code>true</code>.
+     * This will not return an exception if the address points to a non-existent resource, rather,
+     * it will just return null. You can use this as a test for resource existence.
+     *
+     * @param addr the address of the resource
+     * @param recursive if true, return all child data within the resource node
+     * @param includeRuntime if true, runtime attributes are returned along with the configuration attributes
+     * @return the found item or null if not found
+     * @throws Exception if some error prevented the lookup from even happening
+     */
+    public ModelNode readResource(Address addr, boolean recursive, boolean includeRuntime) throws Exception {
         final ModelNode request = createRequest(READ_RESOURCE, addr);
         request.get("recursive").set(recursive);
+        if (includeRuntime) {
+            request.get("include-runtime").set(true);
+        }
         final ModelNode results = getModelControllerClient().execute(request, OperationMessageHandler.logging);
         if (isSuccess(results)) {
             final ModelNode resource = getResults(results);
@@ -24,6 +24,7 @@ import org.hawkular.cmdgw.api.ResourcePathRequest;
 import org.hawkular.cmdgw.api.ResourcePathResponse;
 import org.hawkular.dmr.api.DmrApiException;
 import org.hawkular.dmr.api.OperationBuilder;
+import org.hawkular.dmrclient.Address;
 import org.jboss.as.controller.client.ModelControllerClient;
 
 /**
@@ -52,6 +53,9 @@ public abstract class AbstractRemoveModelNodeCommand<REQ extends ResourcePathReq
             OperationBuilder.remove().address().segments(modelNodePath).parentBuilder().execute(controllerClient)
                     .assertSuccess();
         }
+
+        // forget the removed node and everything under it without waiting for the next full discovery scan
+        context.getDiscoveryService().requestDiscoveryForManagedServer(managedServer, Address.parse(modelNodePath));
     }
 
 }
@@ -29,6 +29,7 @@ import org.hawkular.dmr.api.OperationBuilder.CompositeOperationBuilder;
 import org.hawkular.dmr.api.SubsystemDatasourceConstants;
 import org.hawkular.dmr.api.SubsystemDatasourceConstants.DatasourceNodeConstants;
 import org.hawkular.dmr.api.SubsystemDatasourceConstants.XaDatasourceNodeConstants;
+import org.hawkular.dmrclient.Address;
 import org.jboss.as.controller.client.ModelControllerClient;
 import org.jboss.as.controller.descriptions.ModelDescriptionConstants;
 import org.jboss.dmr.ModelNode;
@@ -112,7 +113,7 @@ public class AddDatasourceCommand extends AbstractResourcePathCommand<AddDatasou
         }
 
         batch.execute(controllerClient).assertSuccess();
-        context.getDiscoveryService().discoverAllResourcesForAllManagedServers();
+        context.getDiscoveryService().requestDiscoveryForManagedServer(managedServer, Address.fromModelNode(dsAdr));
 
     }
 
@@ -35,6 +35,7 @@ import org.hawkular.cmdgw.api.DeployApplicationRequest;
 import org.hawkular.cmdgw.api.DeployApplicationResponse;
 import org.hawkular.cmdgw.api.MessageUtils;
 import org.hawkular.cmdgw.api.ResponseStatus;
+import org.hawkular.dmrclient.Address;
 import org.hawkular.dmrclient.DeploymentJBossASClient;
 import org.hawkular.inventory.api.model.CanonicalPath;
 import org.jboss.as.controller.client.ModelControllerClient;
@@ -105,7 +106,8 @@ public class DeployApplicationCommand implements Command<DeployApplicationReques
             client.deployStandalone(destFileName, applicationContent, enabled);
             response.setStatus(ResponseStatus.OK);
             response.setMessage(String.format("Uploaded [%s]. Enabled=[%s].", destFileName, enabled));
-            context.getDiscoveryService().discoverAllResourcesForAllManagedServers();
+            context.getDiscoveryService().requestDiscoveryForManagedServer(managedServer,
+                    Address.root().add("deployment", destFileName));
         } catch (Exception e) {
             response.setStatus(ResponseStatus.ERROR);
             response.setMessage(e.toString());
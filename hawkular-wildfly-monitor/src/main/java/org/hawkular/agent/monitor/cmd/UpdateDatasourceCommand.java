@@ -33,6 +33,7 @@ import org.hawkular.dmr.api.DmrApiException;
 import org.hawkular.dmr.api.OperationBuilder;
 import org.hawkular.dmr.api.OperationBuilder.CompositeOperationBuilder;
 import org.hawkular.dmr.api.SubsystemDatasourceConstants;
+import org.hawkular.dmrclient.Address;
 import org.jboss.as.controller.client.ModelControllerClient;
 import org.jboss.as.controller.descriptions.ModelDescriptionConstants;
 import org.jboss.dmr.ModelNode;
@@ -116,7 +117,7 @@ public class UpdateDatasourceCommand
 
         }
 
-        context.getDiscoveryService().discoverAllResourcesForAllManagedServers();
+        context.getDiscoveryService().requestDiscoveryForManagedServer(managedServer, Address.fromModelNode(adr));
 
     }
 
@@ -17,6 +17,7 @@
 package org.hawkular.agent.monitor.diagnostics;
 
 import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
@@ -30,11 +31,53 @@ public interface Diagnostics {
      */
     MetricRegistry getMetricRegistry();
 
+    /**
+     * @return tracks how many metric collections and avail checks were started in each second
+     */
+    PerSecondHistogram getCollectionsPerSecondHistogram();
+
+    /**
+     * @return tracks how many collections were skipped because their task group was still busy
+     *         with an earlier collection
+     */
+    Meter getSkippedCollectionRate();
+
+    /**
+     * @return the number of task groups that currently run at a stretched interval because they kept
+     *         overrunning their configured interval
+     */
+    Counter getStretchedTaskGroupCount();
+
     /**
      * @return time it takes to execute DMR requests
      */
     Timer getDMRRequestTimer();
 
+    /**
+     * @return time it takes to execute composite DMR requests that read several values in one round trip
+     */
+    Timer getDMRBatchRequestTimer();
+
+    /**
+     * @return tracks the number of pooled DMR connections currently in use
+     */
+    Counter getDMRConnectionPoolActiveConnections();
+
+    /**
+     * @return tracks the number of pooled DMR connections that are open but idle
+     */
+    Counter getDMRConnectionPoolIdleConnections();
+
+    /**
+     * @return tracks how often new DMR connections have to be opened
+     */
+    Meter getDMRConnectionCreationRate();
+
+    /**
+     * @return tracks how often DMR connections are lost or found to be no longer valid
+     */
+    Meter getDMRConnectionFailureRate();
+
     /**
      * @return tracks the number of DMR failures
      */
@@ -50,6 +93,16 @@ public interface Diagnostics {
      */
     Timer getJMXRequestTimer();
 
+    /**
+     * @return tracks how often new JMX clients (and their connection pools) have to be built
+     */
+    Meter getJMXClientCreationRate();
+
+    /**
+     * @return tracks how often an already built JMX client (and its open connections) is reused
+     */
+    Meter getJMXClientReuseRate();
+
     /**
      * @return tracks the number of JMX failures
      */
@@ -65,6 +118,45 @@ public interface Diagnostics {
      */
     Meter getStorageErrorRate();
 
+    /**
+     * @return tracks how many metric and availability storage requests are waiting for a response
+     */
+    Counter getStorageInFlightRequests();
+
+    /**
+     * @return tracks how long it takes for metric and availability storage requests to complete
+     */
+    Timer getStorageRequestTimer();
+
+    /**
+     * @return tracks the number of bytes of JSON request bodies before they were compressed
+     *         (only when request compression is enabled)
+     */
+    Meter getStorageRequestUncompressedBytes();
+
+    /**
+     * @return tracks the number of bytes of JSON request bodies that were actually sent after compression;
+     *         bodies that were too small to get compressed are counted as they are
+     *         (only when request compression is enabled)
+     */
+    Meter getStorageRequestCompressedBytes();
+
+    /**
+     * @return tracks how many payloads were written to the storage write-ahead log because they could not be stored
+     */
+    Meter getStorageWriteAheadLogAppendRate();
+
+    /**
+     * @return tracks how many payloads from the storage write-ahead log were sent to storage again
+     */
+    Meter getStorageWriteAheadLogReplayRate();
+
+    /**
+     * @return tracks how many storage write-ahead log segments were thrown away because the log was
+     *         too large or the segments too old
+     */
+    Meter getStorageWriteAheadLogDiscardRate();
+
     /**
      * @return tracks the size of the buffer that holds metrics waiting to get stored
      */
@@ -80,6 +172,28 @@ public interface Diagnostics {
      */
     Counter getInventoryStorageBufferSize();
 
+    /**
+     * @return tracks how many buffered data points were thrown away to make room for newer ones
+     *         because storage could not keep up
+     */
+    Counter getStorageDroppedOldestCount();
+
+    /**
+     * @return tracks how many newly collected data points were thrown away because the storage buffer was full
+     */
+    Counter getStorageDroppedNewestCount();
+
+    /**
+     * @return tracks how many newly collected data points were thrown away because the storage buffer
+     *         was still full after waiting for room
+     */
+    Counter getStorageDroppedAfterBlockingCount();
+
+    /**
+     * @return tracks how many data points were written to disk because the storage buffer was full
+     */
+    Counter getStorageSpilledCount();
+
     /**
      * @return tracks the number of metrics that have been stored
      */
@@ -99,4 +213,30 @@ public interface Diagnostics {
      * @return time it takes to execute inventory storage requests
      */
     Timer getInventoryStorageRequestTimer();
+
+    /**
+     * @return tracks how many resources each discovery scan found that were not there in the scan before
+     */
+    Histogram getInventorySyncAddedHistogram();
+
+    /**
+     * @return tracks how many resources each discovery scan found to have changed since the scan before
+     */
+    Histogram getInventorySyncChangedHistogram();
+
+    /**
+     * @return tracks how many resources were gone in each discovery scan compared to the scan before
+     */
+    Histogram getInventorySyncRemovedHistogram();
+
+    /**
+     * @param managedServerName the name of a managed server (or the platform)
+     * @return time it takes to run a discovery scan of the given managed server
+     */
+    Timer getDiscoveryTimer(String managedServerName);
+
+    /**
+     * @return tracks how many discovery scans of managed servers did not finish in time
+     */
+    Meter getDiscoveryTimeoutRate();
 }
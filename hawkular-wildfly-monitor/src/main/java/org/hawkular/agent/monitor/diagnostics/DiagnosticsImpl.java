@@ -20,27 +20,55 @@ import org.hawkular.agent.monitor.extension.MonitorServiceConfiguration;
 import org.hawkular.agent.monitor.service.ServerIdentifiers;
 
 import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 
 public class DiagnosticsImpl implements Diagnostics {
     private final MetricRegistry metricsRegistry;
+    private final ServerIdentifiers selfId;
+
+    private final PerSecondHistogram collectionsPerSecond;
+    private final Meter skippedCollectionRate;
+    private final Counter stretchedTaskGroupCount;
 
     private final Timer dmrRequestTimer;
+    private final Timer dmrBatchRequestTimer;
     private final Meter dmrDelayCounter;
+    private final Counter dmrConnectionPoolActive;
+    private final Counter dmrConnectionPoolIdle;
+    private final Meter dmrConnectionCreationRate;
+    private final Meter dmrConnectionFailureRate;
     private final Meter dmrErrorCounter;
     private final Timer jmxRequestTimer;
     private final Meter jmxDelayCounter;
     private final Meter jmxErrorCounter;
+    private final Meter jmxClientCreationRate;
+    private final Meter jmxClientReuseRate;
     private final Meter storageError;
+    private final Counter storageInFlightRequests;
+    private final Timer storageRequestTimer;
+    private final Meter storageRequestUncompressedBytes;
+    private final Meter storageRequestCompressedBytes;
+    private final Meter storageWalAppendRate;
+    private final Meter storageWalReplayRate;
+    private final Meter storageWalDiscardRate;
     private final Counter metricsStorageBuffer;
     private final Meter metricRate;
     private final Counter availStorageBuffer;
     private final Meter availRate;
     private final Counter inventoryStorageBuffer;
+    private final Counter storageDroppedOldest;
+    private final Counter storageDroppedNewest;
+    private final Counter storageDroppedAfterBlocking;
+    private final Counter storageSpilled;
     private final Meter inventoryRate;
     private final Timer inventoryStorageRequestTimer;
+    private final Histogram inventorySyncAdded;
+    private final Histogram inventorySyncChanged;
+    private final Histogram inventorySyncRemoved;
+    private final Meter discoveryTimeoutRate;
 
     public static String name(ServerIdentifiers selfId, String name) {
         return MetricRegistry.name(selfId + ".diagnostics." + name);
@@ -49,22 +77,49 @@ public class DiagnosticsImpl implements Diagnostics {
     public DiagnosticsImpl(MonitorServiceConfiguration.Diagnostics config, MetricRegistry registry,
             ServerIdentifiers selfId) {
         // we don't need config now, but maybe in future - so keep "config" param here for future API consistency
+        collectionsPerSecond = registry.register(name(selfId, "scheduler.collections-per-second"),
+                new PerSecondHistogram(300));
+        skippedCollectionRate = registry.meter(name(selfId, "scheduler.skipped-collection-rate"));
+        stretchedTaskGroupCount = registry.counter(name(selfId, "scheduler.stretched-task-groups"));
         dmrRequestTimer = registry.timer(name(selfId, "dmr.request-timer"));
+        dmrBatchRequestTimer = registry.timer(name(selfId, "dmr.batch-request-timer"));
         dmrDelayCounter = registry.meter(name(selfId, "dmr.delay-rate"));
+        dmrConnectionPoolActive = registry.counter(name(selfId, "dmr.connection-pool.active"));
+        dmrConnectionPoolIdle = registry.counter(name(selfId, "dmr.connection-pool.idle"));
+        dmrConnectionCreationRate = registry.meter(name(selfId, "dmr.connection-pool.creation-rate"));
+        dmrConnectionFailureRate = registry.meter(name(selfId, "dmr.connection-pool.failure-rate"));
         dmrErrorCounter = registry.meter(name(selfId, "dmr.error-rate"));
         jmxRequestTimer = registry.timer(name(selfId, "jmx.request-timer"));
         jmxDelayCounter = registry.meter(name(selfId, "jmx.delay-rate"));
         jmxErrorCounter = registry.meter(name(selfId, "jmx.error-rate"));
+        jmxClientCreationRate = registry.meter(name(selfId, "jmx.client-creation-rate"));
+        jmxClientReuseRate = registry.meter(name(selfId, "jmx.client-reuse-rate"));
         storageError = registry.meter(name(selfId, "storage.error-rate"));
+        storageInFlightRequests = registry.counter(name(selfId, "storage.in-flight-requests"));
+        storageRequestTimer = registry.timer(name(selfId, "storage.request-timer"));
+        storageRequestUncompressedBytes = registry.meter(name(selfId, "storage.request-uncompressed-bytes"));
+        storageRequestCompressedBytes = registry.meter(name(selfId, "storage.request-compressed-bytes"));
+        storageWalAppendRate = registry.meter(name(selfId, "storage.wal.append-rate"));
+        storageWalReplayRate = registry.meter(name(selfId, "storage.wal.replay-rate"));
+        storageWalDiscardRate = registry.meter(name(selfId, "storage.wal.discard-rate"));
         metricsStorageBuffer = registry.counter(name(selfId, "metrics.storage-buffer-size"));
         metricRate = registry.meter(name(selfId, "metric.rate"));
         availStorageBuffer = registry.counter(name(selfId, "avail.storage-buffer-size"));
         availRate = registry.meter(name(selfId, "avail.rate"));
         inventoryStorageBuffer = registry.counter(name(selfId, "inventory.storage-buffer-size"));
+        storageDroppedOldest = registry.counter(name(selfId, "storage.dropped-oldest"));
+        storageDroppedNewest = registry.counter(name(selfId, "storage.dropped-newest"));
+        storageDroppedAfterBlocking = registry.counter(name(selfId, "storage.dropped-after-blocking"));
+        storageSpilled = registry.counter(name(selfId, "storage.spilled"));
         inventoryRate = registry.meter(name(selfId, "inventory.rate"));
         inventoryStorageRequestTimer = registry.timer(name(selfId, "inventory.storage-request-timer"));
+        inventorySyncAdded = registry.histogram(name(selfId, "inventory.sync.added"));
+        inventorySyncChanged = registry.histogram(name(selfId, "inventory.sync.changed"));
+        inventorySyncRemoved = registry.histogram(name(selfId, "inventory.sync.removed"));
+        discoveryTimeoutRate = registry.meter(name(selfId, "discovery.timeout-rate"));
 
         this.metricsRegistry = registry;
+        this.selfId = selfId;
     }
 
     @Override
@@ -72,16 +127,56 @@ public class DiagnosticsImpl implements Diagnostics {
         return metricsRegistry;
     }
 
+    @Override
+    public PerSecondHistogram getCollectionsPerSecondHistogram() {
+        return collectionsPerSecond;
+    }
+
+    @Override
+    public Meter getSkippedCollectionRate() {
+        return skippedCollectionRate;
+    }
+
+    @Override
+    public Counter getStretchedTaskGroupCount() {
+        return stretchedTaskGroupCount;
+    }
+
     @Override
     public Timer getDMRRequestTimer() {
         return dmrRequestTimer;
     }
 
+    @Override
+    public Timer getDMRBatchRequestTimer() {
+        return dmrBatchRequestTimer;
+    }
+
     @Override
     public Meter getDMRDelayedRate() {
         return dmrDelayCounter;
     }
 
+    @Override
+    public Counter getDMRConnectionPoolActiveConnections() {
+        return dmrConnectionPoolActive;
+    }
+
+    @Override
+    public Counter getDMRConnectionPoolIdleConnections() {
+        return dmrConnectionPoolIdle;
+    }
+
+    @Override
+    public Meter getDMRConnectionCreationRate() {
+        return dmrConnectionCreationRate;
+    }
+
+    @Override
+    public Meter getDMRConnectionFailureRate() {
+        return dmrConnectionFailureRate;
+    }
+
     @Override
     public Meter getDMRErrorRate() {
         return dmrErrorCounter;
@@ -102,11 +197,56 @@ public class DiagnosticsImpl implements Diagnostics {
         return jmxErrorCounter;
     }
 
+    @Override
+    public Meter getJMXClientCreationRate() {
+        return jmxClientCreationRate;
+    }
+
+    @Override
+    public Meter getJMXClientReuseRate() {
+        return jmxClientReuseRate;
+    }
+
     @Override
     public Meter getStorageErrorRate() {
         return storageError;
     }
 
+    @Override
+    public Counter getStorageInFlightRequests() {
+        return storageInFlightRequests;
+    }
+
+    @Override
+    public Timer getStorageRequestTimer() {
+        return storageRequestTimer;
+    }
+
+    @Override
+    public Meter getStorageRequestUncompressedBytes() {
+        return storageRequestUncompressedBytes;
+    }
+
+    @Override
+    public Meter getStorageRequestCompressedBytes() {
+        return storageRequestCompressedBytes;
+    }
+
+    @Override
+    public Meter getStorageWriteAheadLogAppendRate() {
+        return storageWalAppendRate;
+    }
+
+    @Override
+    public Meter getStorageWriteAheadLogReplayRate() {
+        return storageWalReplayRate;
+    }
+
+    @Override
+    public Meter getStorageWriteAheadLogDiscardRate() {
+        return storageWalDiscardRate;
+    }
+
     @Override
     public Counter getMetricsStorageBufferSize() {
         return metricsStorageBuffer;
@@ -132,6 +272,26 @@ public class DiagnosticsImpl implements Diagnostics {
         return inventoryStorageBuffer;
     }
 
+    @Override
+    public Counter getStorageDroppedOldestCount() {
+        return storageDroppedOldest;
+    }
+
+    @Override
+    public Counter getStorageDroppedNewestCount() {
+        return storageDroppedNewest;
+    }
+
+    @Override
+    public Counter getStorageDroppedAfterBlockingCount() {
+        return storageDroppedAfterBlocking;
+    }
+
+    @Override
+    public Counter getStorageSpilledCount() {
+        return storageSpilled;
+    }
+
     @Override
     public Meter getInventoryRate() {
         return inventoryRate;
@@ -141,4 +301,30 @@ public class DiagnosticsImpl implements Diagnostics {
     public Timer getInventoryStorageRequestTimer() {
         return inventoryStorageRequestTimer;
     }
-}
\ No newline at end of file
+
+    @Override
+    public Histogram getInventorySyncAddedHistogram() {
+        return inventorySyncAdded;
+    }
+
+    @Override
+    public Histogram getInventorySyncChangedHistogram() {
+        return inventorySyncChanged;
+    }
+
+    @Override
+    public Histogram getInventorySyncRemovedHistogram() {
+        return inventorySyncRemoved;
+    }
+
+    @Override
+    public Timer getDiscoveryTimer(String managedServerName) {
+        // one timer per managed server; the registry hands back the same timer every time it is asked for it
+        return metricsRegistry.timer(name(selfId, "discovery.duration." + managedServerName));
+    }
+
+    @Override
+    public Meter getDiscoveryTimeoutRate() {
+        return discoveryTimeoutRate;
+    }
+}
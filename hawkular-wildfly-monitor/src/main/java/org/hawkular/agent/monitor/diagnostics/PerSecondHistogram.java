@@ -0,0 +1,59 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.agent.monitor.diagnostics;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.SlidingWindowReservoir;
+
+/**
+ * A histogram of how many events happened in each wall-clock second. Every call to {@link #mark()} counts
+ * an event in the current second; once the second is over its count (and a zero for every following second
+ * that had no events) becomes a sample of the histogram. The histogram keeps the samples of the most
+ * recent seconds only, so a flat load shows up as a small max and standard deviation.
+ */
+public class PerSecondHistogram extends Histogram {
+    private final int windowSeconds;
+    private long currentSecond = -1L;
+    private long currentCount = 0L;
+
+    /**
+     * @param windowSeconds the number of most recent seconds whose counts are kept
+     */
+    public PerSecondHistogram(int windowSeconds) {
+        super(new SlidingWindowReservoir(windowSeconds));
+        this.windowSeconds = windowSeconds;
+    }
+
+    /**
+     * Counts one event in the current second.
+     */
+    public synchronized void mark() {
+        long now = System.currentTimeMillis() / 1000L;
+        if (now != currentSecond) {
+            if (currentSecond >= 0L) {
+                update(currentCount);
+                long emptySeconds = Math.min(now - currentSecond - 1L, windowSeconds);
+                for (long i = 0L; i < emptySeconds; i++) {
+                    update(0L);
+                }
+            }
+            currentSecond = now;
+            currentCount = 0L;
+        }
+        currentCount++;
+    }
+}
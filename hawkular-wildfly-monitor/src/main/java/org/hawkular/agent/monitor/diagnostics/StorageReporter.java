@@ -115,6 +115,19 @@ public class StorageReporter extends ScheduledReporter {
 
         }
 
+        if (!histograms.isEmpty()) {
+            Set<MetricDataPoint> samples = new HashSet<>(histograms.size());
+            for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+                // the max is what shows spikes in the load; a flat load keeps it close to the mean
+                Histogram histogram = entry.getValue();
+                samples.add(new MetricDataPoint(
+                        new MetricDMRTask(interval, localDmrEndpoint, ourAddr, entry.getKey(), null, null),
+                        histogram.getSnapshot().getMax(),
+                        MetricType.GAUGE));
+            }
+            storageAdapter.storeMetrics(samples);
+        }
+
         if (!meters.isEmpty()) {
             Set<MetricDataPoint> samples = new HashSet<>(meters.size());
             for (Map.Entry<String, Meter> entry : meters.entrySet()) {
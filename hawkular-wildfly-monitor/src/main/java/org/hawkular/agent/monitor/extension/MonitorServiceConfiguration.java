@@ -31,6 +31,7 @@ import org.hawkular.agent.monitor.inventory.jmx.JMXResourceTypeSet;
 import org.hawkular.agent.monitor.inventory.platform.PlatformAvailTypeSet;
 import org.hawkular.agent.monitor.inventory.platform.PlatformMetricTypeSet;
 import org.hawkular.agent.monitor.inventory.platform.PlatformResourceTypeSet;
+import org.hawkular.agent.monitor.storage.OverflowPolicy;
 
 /**
  * This represents the monitor service extension's XML configuration in a more consumable form.
@@ -48,15 +49,53 @@ public class MonitorServiceConfiguration {
         STORAGE // stores the diagnostics as metrics to the storage adapter
     }
 
+    // defaults of the settings that the subsystem configuration may leave out
+    public static final int DEFAULT_DMR_CONNECTION_POOL_MAX_SIZE = 4;
+    public static final int DEFAULT_DMR_CONNECTION_POOL_IDLE_TIMEOUT_SECS = 300;
+    public static final int DEFAULT_JMX_CLIENT_CONNECTION_TIMEOUT_SECS = 60;
+    public static final int DEFAULT_JMX_CLIENT_SOCKET_TIMEOUT_SECS = 60;
+    public static final int DEFAULT_JMX_CLIENT_MAX_CONNECTIONS = 4;
+    public static final boolean DEFAULT_INVENTORY_SNAPSHOT_ENABLED = true;
+    public static final boolean DEFAULT_DMR_RECURSIVE_DISCOVERY = false;
+    public static final int DEFAULT_NUM_DISCOVERY_THREADS = 4;
+    public static final int DEFAULT_DISCOVERY_TIMEOUT_SECS = 600;
+    public static final boolean DEFAULT_NOTIFICATION_DISCOVERY = false;
+    public static final int DEFAULT_NOTIFICATION_DISCOVERY_DELAY_SECS = 5;
+    public static final int DEFAULT_NOTIFICATION_DISCOVERY_JMX_POLL_MINS = 5;
+    public static final int DEFAULT_JMX_DISCOVERY_BULK_SIZE = 100;
+
     public boolean subsystemEnabled;
     public String apiJndi;
     public int numMetricSchedulerThreads;
     public int numAvailSchedulerThreads;
     public int numDmrSchedulerThreads;
+    public int numMetricDispatcherThreads;
+    public int numAvailDispatcherThreads;
     public int metricDispatcherBufferSize;
     public int metricDispatcherMaxBatchSize;
+    public int metricDispatcherLingerMillis;
     public int availDispatcherBufferSize;
     public int availDispatcherMaxBatchSize;
+    public OverflowPolicy dispatcherOverflowPolicy;
+    public int dispatcherBlockTimeoutMillis;
+    public int dmrCompositeBatchSize;
+    public boolean spreadCollectionOffsets;
+    public int maxTaskGroupSize;
+    public int maxConcurrentTaskGroupsPerEndpoint;
+    public int maxIntervalStretchFactor;
+    public int dmrConnectionPoolMaxSize;
+    public int dmrConnectionPoolIdleTimeoutSecs;
+    public int jmxClientConnectionTimeoutSecs;
+    public int jmxClientSocketTimeoutSecs;
+    public int jmxClientMaxConnections;
+    public boolean inventorySnapshotEnabled;
+    public boolean dmrRecursiveDiscovery;
+    public int numDiscoveryThreads;
+    public int discoveryTimeoutSecs;
+    public boolean notificationDiscovery;
+    public int notificationDiscoveryDelaySecs;
+    public int notificationDiscoveryJmxPollMins;
+    public int jmxDiscoveryBulkSize;
     public StorageAdapter storageAdapter = new StorageAdapter();
     public Diagnostics diagnostics = new Diagnostics();
     public Platform platform = new Platform();
@@ -69,6 +108,21 @@ public class MonitorServiceConfiguration {
     public Map<Name, ManagedServer> managedServersMap = new HashMap<>();
 
     public static class StorageAdapter {
+        public static final int DEFAULT_MAX_IN_FLIGHT_REQUESTS = 16;
+        public static final int DEFAULT_WRITE_AHEAD_LOG_MAX_SIZE_MB = 256;
+        public static final int DEFAULT_WRITE_AHEAD_LOG_MAX_AGE_HOURS = 24;
+        public static final int DEFAULT_WRITE_AHEAD_LOG_REPLAY_REQUESTS_PER_SECOND = 5;
+        public static final int DEFAULT_REQUEST_COMPRESSION_THRESHOLD_BYTES = 1024;
+        public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 16;
+        public static final int DEFAULT_CONNECTION_POOL_MAX_IDLE_CONNECTIONS = 16;
+        public static final int DEFAULT_CONNECTION_POOL_KEEP_ALIVE_SECS = 300;
+        public static final int DEFAULT_CONNECT_TIMEOUT_SECS = 10;
+        public static final int DEFAULT_READ_TIMEOUT_SECS = 60;
+        public static final int DEFAULT_WRITE_TIMEOUT_SECS = 60;
+        public static final int DEFAULT_INVENTORY_BULK_MAX_ENTITIES = 2000;
+        public static final int DEFAULT_INVENTORY_BULK_MAX_BYTES = 1048576;
+        public static final int DEFAULT_INVENTORY_BULK_PARALLEL_REQUESTS = 4;
+
         public StorageReportTo type;
         public String username;
         public String password;
@@ -83,6 +137,23 @@ public class MonitorServiceConfiguration {
         public String keystorePath;
         public String keystorePassword;
         public String securityRealm;
+        public int maxInFlightRequests;
+        public boolean writeAheadLogEnabled;
+        public int writeAheadLogMaxSizeMb;
+        public int writeAheadLogMaxAgeHours;
+        public int writeAheadLogReplayRequestsPerSecond;
+        public boolean requestCompressionEnabled;
+        public int requestCompressionThresholdBytes;
+        public int maxRequestsPerHost;
+        public int connectionPoolMaxIdleConnections;
+        public int connectionPoolKeepAliveSecs;
+        public int connectTimeoutSecs;
+        public int readTimeoutSecs;
+        public int writeTimeoutSecs;
+        public boolean http2Enabled;
+        public int inventoryBulkMaxEntities;
+        public int inventoryBulkMaxBytes;
+        public int inventoryBulkParallelRequests;
     }
 
     public static class Diagnostics {
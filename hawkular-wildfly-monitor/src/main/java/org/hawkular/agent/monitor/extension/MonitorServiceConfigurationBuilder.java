@@ -55,6 +55,7 @@ import org.hawkular.agent.monitor.inventory.platform.PlatformResourceType;
 import org.hawkular.agent.monitor.inventory.platform.PlatformResourceTypeSet;
 import org.hawkular.agent.monitor.log.AgentLoggers;
 import org.hawkular.agent.monitor.log.MsgLogger;
+import org.hawkular.agent.monitor.storage.OverflowPolicy;
 import org.hawkular.metrics.client.common.MetricType;
 import org.jboss.as.controller.OperationContext;
 import org.jboss.as.controller.OperationFailedException;
@@ -591,6 +592,40 @@ public class MonitorServiceConfigurationBuilder {
                 StorageAttributes.FEEDCOMM_CONTEXT);
         theConfig.storageAdapter.username = getString(storageAdapterConfig, context, StorageAttributes.USERNAME);
         theConfig.storageAdapter.password = getString(storageAdapterConfig, context, StorageAttributes.PASSWORD);
+        theConfig.storageAdapter.maxInFlightRequests = getInt(storageAdapterConfig, context,
+                StorageAttributes.MAX_IN_FLIGHT_REQUESTS);
+        theConfig.storageAdapter.writeAheadLogEnabled = getBoolean(storageAdapterConfig, context,
+                StorageAttributes.WRITE_AHEAD_LOG_ENABLED);
+        theConfig.storageAdapter.writeAheadLogMaxSizeMb = getInt(storageAdapterConfig, context,
+                StorageAttributes.WRITE_AHEAD_LOG_MAX_SIZE_MB);
+        theConfig.storageAdapter.writeAheadLogMaxAgeHours = getInt(storageAdapterConfig, context,
+                StorageAttributes.WRITE_AHEAD_LOG_MAX_AGE_HOURS);
+        theConfig.storageAdapter.writeAheadLogReplayRequestsPerSecond = getInt(storageAdapterConfig, context,
+                StorageAttributes.WRITE_AHEAD_LOG_REPLAY_REQUESTS_PER_SECOND);
+        theConfig.storageAdapter.requestCompressionEnabled = getBoolean(storageAdapterConfig, context,
+                StorageAttributes.REQUEST_COMPRESSION_ENABLED);
+        theConfig.storageAdapter.requestCompressionThresholdBytes = getInt(storageAdapterConfig, context,
+                StorageAttributes.REQUEST_COMPRESSION_THRESHOLD_BYTES);
+        theConfig.storageAdapter.maxRequestsPerHost = getInt(storageAdapterConfig, context,
+                StorageAttributes.MAX_REQUESTS_PER_HOST);
+        theConfig.storageAdapter.connectionPoolMaxIdleConnections = getInt(storageAdapterConfig, context,
+                StorageAttributes.CONNECTION_POOL_MAX_IDLE_CONNECTIONS);
+        theConfig.storageAdapter.connectionPoolKeepAliveSecs = getInt(storageAdapterConfig, context,
+                StorageAttributes.CONNECTION_POOL_KEEP_ALIVE_SECS);
+        theConfig.storageAdapter.connectTimeoutSecs = getInt(storageAdapterConfig, context,
+                StorageAttributes.CONNECT_TIMEOUT_SECS);
+        theConfig.storageAdapter.readTimeoutSecs = getInt(storageAdapterConfig, context,
+                StorageAttributes.READ_TIMEOUT_SECS);
+        theConfig.storageAdapter.writeTimeoutSecs = getInt(storageAdapterConfig, context,
+                StorageAttributes.WRITE_TIMEOUT_SECS);
+        theConfig.storageAdapter.http2Enabled = getBoolean(storageAdapterConfig, context,
+                StorageAttributes.HTTP2_ENABLED);
+        theConfig.storageAdapter.inventoryBulkMaxEntities = getInt(storageAdapterConfig, context,
+                StorageAttributes.INVENTORY_BULK_MAX_ENTITIES);
+        theConfig.storageAdapter.inventoryBulkMaxBytes = getInt(storageAdapterConfig, context,
+                StorageAttributes.INVENTORY_BULK_MAX_BYTES);
+        theConfig.storageAdapter.inventoryBulkParallelRequests = getInt(storageAdapterConfig, context,
+                StorageAttributes.INVENTORY_BULK_PARALLEL_REQUESTS);
         String typeStr = getString(storageAdapterConfig, context, StorageAttributes.TYPE);
         theConfig.storageAdapter.type = MonitorServiceConfiguration.StorageReportTo.valueOf(typeStr.toUpperCase());
 
@@ -617,14 +652,60 @@ public class MonitorServiceConfigurationBuilder {
                 SubsystemAttributes.NUM_AVAIL_SCHEDULER_THREADS);
         theConfig.numDmrSchedulerThreads = getInt(config, context,
                 SubsystemAttributes.NUM_DMR_SCHEDULER_THREADS);
+        theConfig.numMetricDispatcherThreads = getInt(config, context,
+                SubsystemAttributes.NUM_METRIC_DISPATCHER_THREADS);
+        theConfig.numAvailDispatcherThreads = getInt(config, context,
+                SubsystemAttributes.NUM_AVAIL_DISPATCHER_THREADS);
         theConfig.metricDispatcherBufferSize = getInt(config, context,
                 SubsystemAttributes.METRIC_DISPATCHER_BUFFER_SIZE);
         theConfig.metricDispatcherMaxBatchSize = getInt(config, context,
                 SubsystemAttributes.METRIC_DISPATCHER_MAX_BATCH_SIZE);
+        theConfig.metricDispatcherLingerMillis = getInt(config, context,
+                SubsystemAttributes.METRIC_DISPATCHER_LINGER_MILLIS);
         theConfig.availDispatcherBufferSize = getInt(config, context,
                 SubsystemAttributes.AVAIL_DISPATCHER_BUFFER_SIZE);
         theConfig.availDispatcherMaxBatchSize = getInt(config, context,
                 SubsystemAttributes.AVAIL_DISPATCHER_MAX_BATCH_SIZE);
+        String overflowPolicyStr = getString(config, context, SubsystemAttributes.DISPATCHER_OVERFLOW_POLICY);
+        theConfig.dispatcherOverflowPolicy = OverflowPolicy.valueOf(overflowPolicyStr.toUpperCase());
+        theConfig.dispatcherBlockTimeoutMillis = getInt(config, context,
+                SubsystemAttributes.DISPATCHER_BLOCK_TIMEOUT_MILLIS);
+        theConfig.dmrCompositeBatchSize = getInt(config, context,
+                SubsystemAttributes.DMR_COMPOSITE_BATCH_SIZE);
+        theConfig.spreadCollectionOffsets = getBoolean(config, context,
+                SubsystemAttributes.SPREAD_COLLECTION_OFFSETS);
+        theConfig.maxTaskGroupSize = getInt(config, context,
+                SubsystemAttributes.MAX_TASK_GROUP_SIZE);
+        theConfig.maxConcurrentTaskGroupsPerEndpoint = getInt(config, context,
+                SubsystemAttributes.MAX_CONCURRENT_TASK_GROUPS_PER_ENDPOINT);
+        theConfig.maxIntervalStretchFactor = getInt(config, context,
+                SubsystemAttributes.MAX_INTERVAL_STRETCH_FACTOR);
+        theConfig.dmrConnectionPoolMaxSize = getInt(config, context,
+                SubsystemAttributes.DMR_CONNECTION_POOL_MAX_SIZE);
+        theConfig.dmrConnectionPoolIdleTimeoutSecs = getInt(config, context,
+                SubsystemAttributes.DMR_CONNECTION_POOL_IDLE_TIMEOUT_SECS);
+        theConfig.jmxClientConnectionTimeoutSecs = getInt(config, context,
+                SubsystemAttributes.JMX_CLIENT_CONNECTION_TIMEOUT_SECS);
+        theConfig.jmxClientSocketTimeoutSecs = getInt(config, context,
+                SubsystemAttributes.JMX_CLIENT_SOCKET_TIMEOUT_SECS);
+        theConfig.jmxClientMaxConnections = getInt(config, context,
+                SubsystemAttributes.JMX_CLIENT_MAX_CONNECTIONS);
+        theConfig.inventorySnapshotEnabled = getBoolean(config, context,
+                SubsystemAttributes.INVENTORY_SNAPSHOT_ENABLED);
+        theConfig.dmrRecursiveDiscovery = getBoolean(config, context,
+                SubsystemAttributes.DMR_RECURSIVE_DISCOVERY);
+        theConfig.numDiscoveryThreads = getInt(config, context,
+                SubsystemAttributes.NUM_DISCOVERY_THREADS);
+        theConfig.discoveryTimeoutSecs = getInt(config, context,
+                SubsystemAttributes.DISCOVERY_TIMEOUT_SECS);
+        theConfig.notificationDiscovery = getBoolean(config, context,
+                SubsystemAttributes.NOTIFICATION_DISCOVERY);
+        theConfig.notificationDiscoveryDelaySecs = getInt(config, context,
+                SubsystemAttributes.NOTIFICATION_DISCOVERY_DELAY_SECS);
+        theConfig.notificationDiscoveryJmxPollMins = getInt(config, context,
+                SubsystemAttributes.NOTIFICATION_DISCOVERY_JMX_POLL_MINS);
+        theConfig.jmxDiscoveryBulkSize = getInt(config, context,
+                SubsystemAttributes.JMX_DISCOVERY_BULK_SIZE);
     }
 
     private boolean determineResourceTypeSetDmr(ModelNode config, OperationContext context)
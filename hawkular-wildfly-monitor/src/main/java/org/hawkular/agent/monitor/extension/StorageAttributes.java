@@ -16,6 +16,7 @@
  */
 package org.hawkular.agent.monitor.extension;
 
+import org.hawkular.agent.monitor.extension.MonitorServiceConfiguration.StorageAdapter;
 import org.jboss.as.controller.AttributeDefinition;
 import org.jboss.as.controller.SimpleAttributeDefinition;
 import org.jboss.as.controller.SimpleAttributeDefinitionBuilder;
@@ -133,6 +134,159 @@ public interface StorageAttributes {
             .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
             .build();
 
+    SimpleAttributeDefinition MAX_IN_FLIGHT_REQUESTS = new SimpleAttributeDefinitionBuilder(
+            "maxInFlightRequests",
+            ModelType.INT)
+            .setAllowNull(true)
+            .setAllowExpression(true)
+            .setDefaultValue(new ModelNode(StorageAdapter.DEFAULT_MAX_IN_FLIGHT_REQUESTS))
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition WRITE_AHEAD_LOG_ENABLED = new SimpleAttributeDefinitionBuilder(
+            "writeAheadLogEnabled",
+            ModelType.BOOLEAN)
+            .setAllowNull(true)
+            .setAllowExpression(true)
+            .setDefaultValue(new ModelNode(false))
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition WRITE_AHEAD_LOG_MAX_SIZE_MB = new SimpleAttributeDefinitionBuilder(
+            "writeAheadLogMaxSizeMb",
+            ModelType.INT)
+            .setAllowNull(true)
+            .setAllowExpression(true)
+            .setDefaultValue(new ModelNode(StorageAdapter.DEFAULT_WRITE_AHEAD_LOG_MAX_SIZE_MB))
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition WRITE_AHEAD_LOG_MAX_AGE_HOURS = new SimpleAttributeDefinitionBuilder(
+            "writeAheadLogMaxAgeHours",
+            ModelType.INT)
+            .setAllowNull(true)
+            .setAllowExpression(true)
+            .setDefaultValue(new ModelNode(StorageAdapter.DEFAULT_WRITE_AHEAD_LOG_MAX_AGE_HOURS))
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition WRITE_AHEAD_LOG_REPLAY_REQUESTS_PER_SECOND = new SimpleAttributeDefinitionBuilder(
+            "writeAheadLogReplayRequestsPerSecond",
+            ModelType.INT)
+            .setAllowNull(true)
+            .setAllowExpression(true)
+            .setDefaultValue(new ModelNode(StorageAdapter.DEFAULT_WRITE_AHEAD_LOG_REPLAY_REQUESTS_PER_SECOND))
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition REQUEST_COMPRESSION_ENABLED = new SimpleAttributeDefinitionBuilder(
+            "requestCompressionEnabled",
+            ModelType.BOOLEAN)
+            .setAllowNull(true)
+            .setAllowExpression(true)
+            .setDefaultValue(new ModelNode(false))
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition REQUEST_COMPRESSION_THRESHOLD_BYTES = new SimpleAttributeDefinitionBuilder(
+            "requestCompressionThresholdBytes",
+            ModelType.INT)
+            .setAllowNull(true)
+            .setAllowExpression(true)
+            .setDefaultValue(new ModelNode(StorageAdapter.DEFAULT_REQUEST_COMPRESSION_THRESHOLD_BYTES))
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition MAX_REQUESTS_PER_HOST = new SimpleAttributeDefinitionBuilder(
+            "maxRequestsPerHost",
+            ModelType.INT)
+            .setAllowNull(true)
+            .setAllowExpression(true)
+            .setDefaultValue(new ModelNode(StorageAdapter.DEFAULT_MAX_REQUESTS_PER_HOST))
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition CONNECTION_POOL_MAX_IDLE_CONNECTIONS = new SimpleAttributeDefinitionBuilder(
+            "connectionPoolMaxIdleConnections",
+            ModelType.INT)
+            .setAllowNull(true)
+            .setAllowExpression(true)
+            .setDefaultValue(new ModelNode(StorageAdapter.DEFAULT_CONNECTION_POOL_MAX_IDLE_CONNECTIONS))
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition CONNECTION_POOL_KEEP_ALIVE_SECS = new SimpleAttributeDefinitionBuilder(
+            "connectionPoolKeepAliveSecs",
+            ModelType.INT)
+            .setAllowNull(true)
+            .setAllowExpression(true)
+            .setDefaultValue(new ModelNode(StorageAdapter.DEFAULT_CONNECTION_POOL_KEEP_ALIVE_SECS))
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition CONNECT_TIMEOUT_SECS = new SimpleAttributeDefinitionBuilder(
+            "connectTimeoutSecs",
+            ModelType.INT)
+            .setAllowNull(true)
+            .setAllowExpression(true)
+            .setDefaultValue(new ModelNode(StorageAdapter.DEFAULT_CONNECT_TIMEOUT_SECS))
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition READ_TIMEOUT_SECS = new SimpleAttributeDefinitionBuilder(
+            "readTimeoutSecs",
+            ModelType.INT)
+            .setAllowNull(true)
+            .setAllowExpression(true)
+            .setDefaultValue(new ModelNode(StorageAdapter.DEFAULT_READ_TIMEOUT_SECS))
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition WRITE_TIMEOUT_SECS = new SimpleAttributeDefinitionBuilder(
+            "writeTimeoutSecs",
+            ModelType.INT)
+            .setAllowNull(true)
+            .setAllowExpression(true)
+            .setDefaultValue(new ModelNode(StorageAdapter.DEFAULT_WRITE_TIMEOUT_SECS))
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition HTTP2_ENABLED = new SimpleAttributeDefinitionBuilder(
+            "http2Enabled",
+            ModelType.BOOLEAN)
+            .setAllowNull(true)
+            .setAllowExpression(true)
+            .setDefaultValue(new ModelNode(false))
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition INVENTORY_BULK_MAX_ENTITIES = new SimpleAttributeDefinitionBuilder(
+            "inventoryBulkMaxEntities",
+            ModelType.INT)
+            .setAllowNull(true)
+            .setAllowExpression(true)
+            .setDefaultValue(new ModelNode(StorageAdapter.DEFAULT_INVENTORY_BULK_MAX_ENTITIES))
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition INVENTORY_BULK_MAX_BYTES = new SimpleAttributeDefinitionBuilder(
+            "inventoryBulkMaxBytes",
+            ModelType.INT)
+            .setAllowNull(true)
+            .setAllowExpression(true)
+            .setDefaultValue(new ModelNode(StorageAdapter.DEFAULT_INVENTORY_BULK_MAX_BYTES))
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition INVENTORY_BULK_PARALLEL_REQUESTS = new SimpleAttributeDefinitionBuilder(
+            "inventoryBulkParallelRequests",
+            ModelType.INT)
+            .setAllowNull(true)
+            .setAllowExpression(true)
+            .setDefaultValue(new ModelNode(StorageAdapter.DEFAULT_INVENTORY_BULK_PARALLEL_REQUESTS))
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
     AttributeDefinition[] ATTRIBUTES = {
             TYPE,
             USERNAME,
@@ -146,6 +300,23 @@ public interface StorageAttributes {
             SERVER_OUTBOUND_SOCKET_BINDING_REF,
             INVENTORY_CONTEXT,
             METRICS_CONTEXT,
-            FEEDCOMM_CONTEXT
+            FEEDCOMM_CONTEXT,
+            MAX_IN_FLIGHT_REQUESTS,
+            WRITE_AHEAD_LOG_ENABLED,
+            WRITE_AHEAD_LOG_MAX_SIZE_MB,
+            WRITE_AHEAD_LOG_MAX_AGE_HOURS,
+            WRITE_AHEAD_LOG_REPLAY_REQUESTS_PER_SECOND,
+            REQUEST_COMPRESSION_ENABLED,
+            REQUEST_COMPRESSION_THRESHOLD_BYTES,
+            MAX_REQUESTS_PER_HOST,
+            CONNECTION_POOL_MAX_IDLE_CONNECTIONS,
+            CONNECTION_POOL_KEEP_ALIVE_SECS,
+            CONNECT_TIMEOUT_SECS,
+            READ_TIMEOUT_SECS,
+            WRITE_TIMEOUT_SECS,
+            HTTP2_ENABLED,
+            INVENTORY_BULK_MAX_ENTITIES,
+            INVENTORY_BULK_MAX_BYTES,
+            INVENTORY_BULK_PARALLEL_REQUESTS
     };
 }
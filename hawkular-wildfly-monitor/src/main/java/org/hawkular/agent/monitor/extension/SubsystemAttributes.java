@@ -17,9 +17,11 @@
 package org.hawkular.agent.monitor.extension;
 
 import org.hawkular.agent.monitor.scheduler.config.SchedulerConfiguration;
+import org.hawkular.agent.monitor.storage.OverflowPolicy;
 import org.jboss.as.controller.AttributeDefinition;
 import org.jboss.as.controller.SimpleAttributeDefinition;
 import org.jboss.as.controller.SimpleAttributeDefinitionBuilder;
+import org.jboss.as.controller.operations.validation.EnumValidator;
 import org.jboss.as.controller.registry.AttributeAccess;
 import org.jboss.dmr.ModelNode;
 import org.jboss.dmr.ModelType;
@@ -66,6 +68,22 @@ public interface SubsystemAttributes {
             .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
             .build();
 
+    SimpleAttributeDefinition NUM_METRIC_DISPATCHER_THREADS = new SimpleAttributeDefinitionBuilder(
+            "numMetricDispatcherThreads", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(SchedulerConfiguration.DEFAULT_NUM_METRIC_DISPATCHER_THREADS))
+            .setAllowExpression(true)
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition NUM_AVAIL_DISPATCHER_THREADS = new SimpleAttributeDefinitionBuilder(
+            "numAvailDispatcherThreads", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(SchedulerConfiguration.DEFAULT_NUM_AVAIL_DISPATCHER_THREADS))
+            .setAllowExpression(true)
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
     SimpleAttributeDefinition METRIC_DISPATCHER_BUFFER_SIZE = new SimpleAttributeDefinitionBuilder(
             "metricDispatcherBufferSize", ModelType.INT)
             .setAllowNull(true)
@@ -82,6 +100,14 @@ public interface SubsystemAttributes {
             .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
             .build();
 
+    SimpleAttributeDefinition METRIC_DISPATCHER_LINGER_MILLIS = new SimpleAttributeDefinitionBuilder(
+            "metricDispatcherLingerMillis", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(SchedulerConfiguration.DEFAULT_METRIC_DISPATCHER_LINGER_MILLIS))
+            .setAllowExpression(true)
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
     SimpleAttributeDefinition AVAIL_DISPATCHER_BUFFER_SIZE = new SimpleAttributeDefinitionBuilder(
             "availDispatcherBufferSize", ModelType.INT)
             .setAllowNull(true)
@@ -98,15 +124,199 @@ public interface SubsystemAttributes {
             .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
             .build();
 
+    SimpleAttributeDefinition DISPATCHER_OVERFLOW_POLICY = new SimpleAttributeDefinitionBuilder(
+            "dispatcherOverflowPolicy", ModelType.STRING)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(SchedulerConfiguration.DEFAULT_DISPATCHER_OVERFLOW_POLICY.name()))
+            .setAllowExpression(true)
+            .setValidator(EnumValidator.create(OverflowPolicy.class, true, true))
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition DISPATCHER_BLOCK_TIMEOUT_MILLIS = new SimpleAttributeDefinitionBuilder(
+            "dispatcherBlockTimeoutMillis", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(SchedulerConfiguration.DEFAULT_DISPATCHER_BLOCK_TIMEOUT_MILLIS))
+            .setAllowExpression(true)
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition DMR_COMPOSITE_BATCH_SIZE = new SimpleAttributeDefinitionBuilder(
+            "dmrCompositeBatchSize", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(SchedulerConfiguration.DEFAULT_DMR_COMPOSITE_BATCH_SIZE))
+            .setAllowExpression(true)
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition SPREAD_COLLECTION_OFFSETS = new SimpleAttributeDefinitionBuilder(
+            "spreadCollectionOffsets", ModelType.BOOLEAN)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(SchedulerConfiguration.DEFAULT_SPREAD_COLLECTION_OFFSETS))
+            .setAllowExpression(true)
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition MAX_TASK_GROUP_SIZE = new SimpleAttributeDefinitionBuilder(
+            "maxTaskGroupSize", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(SchedulerConfiguration.DEFAULT_MAX_TASK_GROUP_SIZE))
+            .setAllowExpression(true)
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition MAX_CONCURRENT_TASK_GROUPS_PER_ENDPOINT = new SimpleAttributeDefinitionBuilder(
+            "maxConcurrentTaskGroupsPerEndpoint", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(SchedulerConfiguration.DEFAULT_MAX_CONCURRENT_TASK_GROUPS_PER_ENDPOINT))
+            .setAllowExpression(true)
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition MAX_INTERVAL_STRETCH_FACTOR = new SimpleAttributeDefinitionBuilder(
+            "maxIntervalStretchFactor", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(SchedulerConfiguration.DEFAULT_MAX_INTERVAL_STRETCH_FACTOR))
+            .setAllowExpression(true)
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition DMR_CONNECTION_POOL_MAX_SIZE = new SimpleAttributeDefinitionBuilder(
+            "dmrConnectionPoolMaxSize", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(MonitorServiceConfiguration.DEFAULT_DMR_CONNECTION_POOL_MAX_SIZE))
+            .setAllowExpression(true)
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition DMR_CONNECTION_POOL_IDLE_TIMEOUT_SECS = new SimpleAttributeDefinitionBuilder(
+            "dmrConnectionPoolIdleTimeoutSecs", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(MonitorServiceConfiguration.DEFAULT_DMR_CONNECTION_POOL_IDLE_TIMEOUT_SECS))
+            .setAllowExpression(true)
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition JMX_CLIENT_CONNECTION_TIMEOUT_SECS = new SimpleAttributeDefinitionBuilder(
+            "jmxClientConnectionTimeoutSecs", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(MonitorServiceConfiguration.DEFAULT_JMX_CLIENT_CONNECTION_TIMEOUT_SECS))
+            .setAllowExpression(true)
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition JMX_CLIENT_SOCKET_TIMEOUT_SECS = new SimpleAttributeDefinitionBuilder(
+            "jmxClientSocketTimeoutSecs", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(MonitorServiceConfiguration.DEFAULT_JMX_CLIENT_SOCKET_TIMEOUT_SECS))
+            .setAllowExpression(true)
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition JMX_CLIENT_MAX_CONNECTIONS = new SimpleAttributeDefinitionBuilder(
+            "jmxClientMaxConnections", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(MonitorServiceConfiguration.DEFAULT_JMX_CLIENT_MAX_CONNECTIONS))
+            .setAllowExpression(true)
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition INVENTORY_SNAPSHOT_ENABLED = new SimpleAttributeDefinitionBuilder(
+            "inventorySnapshotEnabled", ModelType.BOOLEAN)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(MonitorServiceConfiguration.DEFAULT_INVENTORY_SNAPSHOT_ENABLED))
+            .setAllowExpression(true)
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition DMR_RECURSIVE_DISCOVERY = new SimpleAttributeDefinitionBuilder(
+            "dmrRecursiveDiscovery", ModelType.BOOLEAN)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(MonitorServiceConfiguration.DEFAULT_DMR_RECURSIVE_DISCOVERY))
+            .setAllowExpression(true)
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition NUM_DISCOVERY_THREADS = new SimpleAttributeDefinitionBuilder(
+            "numDiscoveryThreads", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(MonitorServiceConfiguration.DEFAULT_NUM_DISCOVERY_THREADS))
+            .setAllowExpression(true)
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition DISCOVERY_TIMEOUT_SECS = new SimpleAttributeDefinitionBuilder(
+            "discoveryTimeoutSecs", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(MonitorServiceConfiguration.DEFAULT_DISCOVERY_TIMEOUT_SECS))
+            .setAllowExpression(true)
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition NOTIFICATION_DISCOVERY = new SimpleAttributeDefinitionBuilder(
+            "notificationDiscovery", ModelType.BOOLEAN)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(MonitorServiceConfiguration.DEFAULT_NOTIFICATION_DISCOVERY))
+            .setAllowExpression(true)
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition NOTIFICATION_DISCOVERY_DELAY_SECS = new SimpleAttributeDefinitionBuilder(
+            "notificationDiscoveryDelaySecs", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(MonitorServiceConfiguration.DEFAULT_NOTIFICATION_DISCOVERY_DELAY_SECS))
+            .setAllowExpression(true)
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition NOTIFICATION_DISCOVERY_JMX_POLL_MINS = new SimpleAttributeDefinitionBuilder(
+            "notificationDiscoveryJmxPollMins", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(MonitorServiceConfiguration.DEFAULT_NOTIFICATION_DISCOVERY_JMX_POLL_MINS))
+            .setAllowExpression(true)
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
+    SimpleAttributeDefinition JMX_DISCOVERY_BULK_SIZE = new SimpleAttributeDefinitionBuilder(
+            "jmxDiscoveryBulkSize", ModelType.INT)
+            .setAllowNull(true)
+            .setDefaultValue(new ModelNode(MonitorServiceConfiguration.DEFAULT_JMX_DISCOVERY_BULK_SIZE))
+            .setAllowExpression(true)
+            .addFlag(AttributeAccess.Flag.RESTART_RESOURCE_SERVICES)
+            .build();
+
     AttributeDefinition[] ATTRIBUTES = {
             ENABLED,
             API_JNDI,
             NUM_METRIC_SCHEDULER_THREADS,
             NUM_AVAIL_SCHEDULER_THREADS,
             NUM_DMR_SCHEDULER_THREADS,
+            NUM_METRIC_DISPATCHER_THREADS,
+            NUM_AVAIL_DISPATCHER_THREADS,
             METRIC_DISPATCHER_BUFFER_SIZE,
             METRIC_DISPATCHER_MAX_BATCH_SIZE,
+            METRIC_DISPATCHER_LINGER_MILLIS,
             AVAIL_DISPATCHER_BUFFER_SIZE,
-            AVAIL_DISPATCHER_MAX_BATCH_SIZE
+            AVAIL_DISPATCHER_MAX_BATCH_SIZE,
+            DISPATCHER_OVERFLOW_POLICY,
+            DISPATCHER_BLOCK_TIMEOUT_MILLIS,
+            DMR_COMPOSITE_BATCH_SIZE,
+            SPREAD_COLLECTION_OFFSETS,
+            MAX_TASK_GROUP_SIZE,
+            MAX_CONCURRENT_TASK_GROUPS_PER_ENDPOINT,
+            MAX_INTERVAL_STRETCH_FACTOR,
+            DMR_CONNECTION_POOL_MAX_SIZE,
+            DMR_CONNECTION_POOL_IDLE_TIMEOUT_SECS,
+            JMX_CLIENT_CONNECTION_TIMEOUT_SECS,
+            JMX_CLIENT_SOCKET_TIMEOUT_SECS,
+            JMX_CLIENT_MAX_CONNECTIONS,
+            INVENTORY_SNAPSHOT_ENABLED,
+            DMR_RECURSIVE_DISCOVERY,
+            NUM_DISCOVERY_THREADS,
+            DISCOVERY_TIMEOUT_SECS,
+            NOTIFICATION_DISCOVERY,
+            NOTIFICATION_DISCOVERY_DELAY_SECS,
+            NOTIFICATION_DISCOVERY_JMX_POLL_MINS,
+            JMX_DISCOVERY_BULK_SIZE
     };
 }
\ No newline at end of file
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.agent.monitor.inventory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The difference between two generations of the same inventory, e.g. the resources found by a discovery
+ * scan compared to the resources found by the scan before it. Resources are matched up by ID and
+ * compared by their {@link #getContentHash(Resource) content hash}.
+ *
+ * @param <T> the kind of resource (DMR, JMX, etc)
+ */
+public class InventoryDiff<T extends Resource<?, ?, ?, ?, ?>> {
+
+    private final List<T> added = new ArrayList<>();
+    private final List<T> changed = new ArrayList<>();
+    private final List<T> removed = new ArrayList<>();
+
+    private InventoryDiff() {
+    }
+
+    /**
+     * Compares the resources of the two given resource managers.
+     *
+     * @param oldResources the resources as they were; may be null if there were no resources before
+     * @param newResources the resources as they are now
+     * @return the difference between the two
+     */
+    public static <T extends Resource<?, ?, ?, ?, ?>> InventoryDiff<T> between(ResourceManager<T> oldResources,
+            ResourceManager<T> newResources) {
+        InventoryDiff<T> diff = new InventoryDiff<>();
+
+        for (T newResource : newResources.getAllResources()) {
+            T oldResource = (oldResources != null) ? oldResources.getResource(newResource.getID()) : null;
+            if (oldResource == null) {
+                diff.added.add(newResource);
+            } else if (!getContentHash(oldResource).equals(getContentHash(newResource))) {
+                diff.changed.add(newResource);
+            }
+        }
+
+        if (oldResources != null) {
+            for (T oldResource : oldResources.getAllResources()) {
+                if (newResources.getResource(oldResource.getID()) == null) {
+                    // removing a resource also removes its children, so only the topmost removed resources matter
+                    Resource<?, ?, ?, ?, ?> parent = oldResource.getParent();
+                    if (parent == null || newResources.getResource(parent.getID()) != null) {
+                        diff.removed.add(oldResource);
+                    }
+                }
+            }
+        }
+
+        return diff;
+    }
+
+    /**
+     * @return the resources that are new
+     */
+    public List<T> getAdded() {
+        return Collections.unmodifiableList(added);
+    }
+
+    /**
+     * @return the new versions of those resources whose content has changed
+     */
+    public List<T> getChanged() {
+        return Collections.unmodifiableList(changed);
+    }
+
+    /**
+     * @return the old versions of the resources that no longer exist; descendants of removed resources
+     *         are not included since they go away along with their ancestors
+     */
+    public List<T> getRemoved() {
+        return Collections.unmodifiableList(removed);
+    }
+
+    /**
+     * Returns a hash of everything about the given resource that is stored in inventory other than its ID:
+     * its name, type, parent, properties and resource configuration. Metrics and avails are not part of it
+     * since they are determined by the resource type.
+     *
+     * @param resource the resource whose hash is to be returned
+     * @return the hash as a hex string
+     */
+    public static String getContentHash(Resource<?, ?, ?, ?, ?> resource) {
+        StringBuilder content = new StringBuilder();
+        content.append("name=").append(resource.getName().getNameString()).append('\n');
+        content.append("type=").append(resource.getResourceType().getID().getIDString()).append('\n');
+        Resource<?, ?, ?, ?, ?> parent = resource.getParent();
+        content.append("parent=").append((parent != null) ? parent.getID().getIDString() : "").append('\n');
+
+        for (Map.Entry<String, Object> property : new TreeMap<>(resource.getProperties()).entrySet()) {
+            content.append("property.").append(property.getKey()).append('=').append(property.getValue())
+                    .append('\n');
+        }
+
+        Map<String, String> config = new TreeMap<>();
+        for (ResourceConfigurationPropertyInstance<?> configProperty : resource
+                .getResourceConfigurationProperties()) {
+            config.put(configProperty.getID().getIDString(), configProperty.getValue());
+        }
+        for (Map.Entry<String, String> configProperty : config.entrySet()) {
+            content.append("config.").append(configProperty.getKey()).append('=').append(configProperty.getValue())
+                    .append('\n');
+        }
+
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(content.toString().getBytes(
+                    StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+}
@@ -18,10 +18,13 @@ package org.hawkular.agent.monitor.inventory.dmr;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -33,6 +36,7 @@ import org.hawkular.agent.monitor.inventory.InventoryIdUtil;
 import org.hawkular.agent.monitor.inventory.ManagedServer;
 import org.hawkular.agent.monitor.inventory.Name;
 import org.hawkular.agent.monitor.inventory.ResourceManager;
+import org.hawkular.agent.monitor.inventory.ResourceTypeManager;
 import org.hawkular.agent.monitor.log.AgentLoggers;
 import org.hawkular.agent.monitor.log.MsgLogger;
 import org.hawkular.agent.monitor.scheduler.ModelControllerClientFactory;
@@ -58,6 +62,7 @@ public class DMRDiscovery {
 
     private final DMRInventoryManager inventoryManager;
     private final ModelControllerClientFactory clientFactory;
+    private final boolean recursive;
 
     /**
      * Creates the discovery object for the given inventory manager.
@@ -68,11 +73,27 @@ public class DMRDiscovery {
      *
      * @param im the inventory manager that holds information about the server to be queried and
      *           the known types to be discovered
-     * @param clientFactory will create clients used to communicate with the endpoint
      */
     public DMRDiscovery(DMRInventoryManager im) {
+        this(im, false);
+    }
+
+    /**
+     * Creates the discovery object for the given inventory manager.
+     *
+     * If recursive is true, the whole subtree of each root resource type is read with a single recursive
+     * read-resource request (runtime attributes included) and the resources of all child types along with
+     * their resource configuration are then found in that data rather than being queried one by one.
+     * This makes for far fewer round trips at the cost of larger responses.
+     *
+     * @param im the inventory manager that holds information about the server to be queried and
+     *           the known types to be discovered
+     * @param recursive if true, read each root type's subtree at once rather than one resource at a time
+     */
+    public DMRDiscovery(DMRInventoryManager im, boolean recursive) {
         this.inventoryManager = im;
         this.clientFactory = im.getModelControllerClientFactory();
+        this.recursive = recursive;
     }
 
     /**
@@ -98,7 +119,7 @@ public class DMRDiscovery {
 
             long start = System.currentTimeMillis();
             for (DMRResourceType rootType : rootTypes) {
-                discoverChildrenOfResourceType(null, rootType, mcc);
+                discoverResourcesOfType(null, rootType, Collections.singleton(Address.root()), mcc);
             }
             long duration = System.currentTimeMillis() - start;
 
@@ -113,53 +134,112 @@ public class DMRDiscovery {
         }
     }
 
-    private void discoverChildrenOfResourceType(DMRResource parent, DMRResourceType type, ModelControllerClient mcc) {
+    /**
+     * Rediscovers only the resources at or below the given addresses and carries all other resources of the given
+     * previous inventory over into this object's inventory manager as they are. When it is known where the
+     * managed server changed (say, an application was deployed or a datasource was removed) this only queries
+     * the server for the resource types that can live there rather than for the whole resource tree.
+     *
+     * The resources above the given addresses are not looked for, so they must be in the previous inventory.
+     *
+     * @param addresses the addresses of the resources to rediscover, along with everything below them
+     * @param previousResources the resources found by an earlier discovery of the same managed server
+     * @param listener if not null, will be a listener that gets notified when resources are discovered;
+     *                 it is not notified of the resources that are carried over
+     *
+     * @throws Exception if discovery failed
+     */
+    public void discoverResourcesUnder(Collection<Address> addresses, ResourceManager<DMRResource> previousResources,
+            final VertexSetListener<DMRResource> listener) throws Exception {
+        ResourceManager<DMRResource> resourceManager = this.inventoryManager.getResourceManager();
+
+        // carry over everything outside of the addresses - parents must be added before their children
+        List<DMRResource> keptResources = new ArrayList<>();
+        Deque<DMRResource> toVisit = new ArrayDeque<>(previousResources.getRootResources());
+        while (!toVisit.isEmpty()) {
+            DMRResource resource = toVisit.poll();
+            if (!isAtOrUnder(resource.getAddress(), addresses)) {
+                resourceManager.addResource(resource);
+                keptResources.add(resource);
+                toVisit.addAll(previousResources.getChildren(resource));
+            }
+        }
+
+        if (listener != null) {
+            resourceManager.getResourcesGraph().addVertexSetListener(listener);
+        }
+
+        try (ModelControllerClient mcc = clientFactory.createClient()) {
+            ResourceTypeManager<DMRResourceType, DMRResourceTypeSet> rtm;
+            rtm = this.inventoryManager.getMetadataManager().getResourceTypeManager();
+
+            long start = System.currentTimeMillis();
+            for (DMRResourceType rootType : rtm.getRootResourceTypes()) {
+                discoverResourcesOfType(null, rootType, addresses, mcc);
+            }
+            for (DMRResource parent : keptResources) {
+                for (DMRResourceType childType : rtm.getChildren(parent.getResourceType())) {
+                    discoverResourcesOfType(parent, childType, addresses, mcc);
+                }
+            }
+            long duration = System.currentTimeMillis() - start;
+
+            logTreeGraph("Rediscovered resources under " + addresses, resourceManager, duration);
+        } catch (Exception e) {
+            throw new Exception("Failed to execute discovery under " + addresses + " for endpoint ["
+                    + this.inventoryManager.getEndpoint() + "]", e);
+        } finally {
+            if (listener != null) {
+                resourceManager.getResourcesGraph().removeVertexSetListener(listener);
+            }
+        }
+    }
+
+    /**
+     * Discovers the resources of the given type that are children of the given parent and at or below one of
+     * the given scopes, along with all of their descendants.
+     */
+    private void discoverResourcesOfType(DMRResource parent, DMRResourceType type, Collection<Address> scopes,
+            ModelControllerClient mcc) {
+        Address parentAddr = (parent == null) ? Address.root() : parent.getAddress().clone();
+        Address addr = parentAddr.add(Address.parse(type.getPath()));
+        if (!mayMatchUnder(addr, scopes)) {
+            return; // none of the resources this query could find are within the scopes
+        }
+
+        if (recursive) {
+            discoverSubtreeOfResourceType(parent, type, addr, scopes, mcc);
+        } else {
+            discoverChildrenOfResourceType(parent, type, addr, scopes, mcc);
+        }
+    }
+
+    private void discoverChildrenOfResourceType(DMRResource parent, DMRResourceType type, Address addr,
+            Collection<Address> scopes, ModelControllerClient mcc) {
         try {
             Map<Address, ModelNode> resources;
 
             CoreJBossASClient client = new CoreJBossASClient(mcc); // don't close this - the caller will
-            Address parentAddr = (parent == null) ? Address.root() : parent.getAddress().clone();
-            Address addr = parentAddr.add(Address.parse(type.getPath()));
 
             log.debugf("Discovering children of [%s] of type [%s] using address query [%s]", parent, type, addr);
 
-            // can return a single resource (type of OBJECT) or a list of them (type of LIST whose items are OBJECTS)
-            ModelNode results = client.readResource(addr);
-            if (results == null) {
-                resources = Collections.emptyMap();
-            } else if (results.getType() == ModelType.OBJECT) {
-                resources = new HashMap<>(1);
-                resources.put(addr, results);
-            } else if (results.getType() == ModelType.LIST) {
-                resources = new HashMap<>();
-                List<ModelNode> list = results.asList();
-                for (ModelNode item : list) {
-                    resources.put(Address.fromModelNodeWrapper(item, "address"), JBossASClient.getResults(item));
-                }
-            } else {
-                throw new IllegalStateException("Invalid type - please report this bug: " + results.getType()
-                        + " [[" + results.toString() + "]]");
-            }
+            resources = toResourceMap(addr, client.readResource(addr));
 
             ResourceManager<DMRResource> resourceManager = this.inventoryManager.getResourceManager();
 
             for (Map.Entry<Address, ModelNode> entry : resources.entrySet()) {
-                Address address = entry.getKey(); // this is the unique DMR address for this resource
-                Name resourceName = generateResourceName(type, address);
-                ID id = InventoryIdUtil.generateResourceId(
-                        this.inventoryManager.getFeedId(),
-                        this.inventoryManager.getManagedServer(),
-                        address.toAddressPathString());
-                DMRResource resource = new DMRResource(id, resourceName, this.inventoryManager.getEndpoint(), type,
-                        parent, address, entry.getValue());
-                log.debugf("Discovered [%s]", resource);
+                if (!isAtOrUnder(entry.getKey(), scopes)) {
+                    continue;
+                }
+
+                DMRResource resource = createResource(parent, type, entry.getKey(), entry.getValue());
 
                 // get the configuration of the resource
                 discoverResourceConfiguration(resource, mcc);
                 postProcessResourceConfiguration(resource);
 
                 // populate the metrics/avails based on the resource's type
-                addMetricAndAvailInstances(resource);
+                addMetricAndAvailInstances(resource, resource.getModelNode());
 
                 // add it to our tree graph
                 resourceManager.addResource(resource);
@@ -168,7 +248,7 @@ public class DMRDiscovery {
                 Set<DMRResourceType> childTypes;
                 childTypes = this.inventoryManager.getMetadataManager().getResourceTypeManager().getChildren(type);
                 for (DMRResourceType childType : childTypes) {
-                    discoverChildrenOfResourceType(resource, childType, mcc);
+                    discoverResourcesOfType(resource, childType, scopes, mcc);
                 }
             }
         } catch (Exception e) {
@@ -176,6 +256,229 @@ public class DMRDiscovery {
         }
     }
 
+    private void discoverSubtreeOfResourceType(DMRResource parent, DMRResourceType type, Address addr,
+            Collection<Address> scopes, ModelControllerClient mcc) {
+        try {
+            CoreJBossASClient client = new CoreJBossASClient(mcc); // don't close this - the caller will
+
+            log.debugf("Discovering the subtrees of [%s] of type [%s] using address query [%s]", parent, type, addr);
+
+            Map<Address, ModelNode> resources = toResourceMap(addr, client.readResource(addr, true, true));
+            for (Map.Entry<Address, ModelNode> entry : resources.entrySet()) {
+                if (isAtOrUnder(entry.getKey(), scopes)) {
+                    addResourceSubtree(parent, type, entry.getKey(), entry.getValue());
+                }
+            }
+        } catch (Exception e) {
+            log.errorf(e, "Failed to discover resources in [%s]", this.inventoryManager.getEndpoint());
+        }
+    }
+
+    /**
+     * Adds the resource with the given recursively read model to inventory, then finds the resources of all
+     * child types in that model and adds them the same way. The resource itself only keeps its own attributes;
+     * the rest of the model is only needed until its children have been found.
+     */
+    private void addResourceSubtree(DMRResource parent, DMRResourceType type, Address address, ModelNode model) {
+        DMRResource resource = createResource(parent, type, address, withoutChildModels(model));
+
+        discoverResourceConfigurationInModel(resource, model);
+        postProcessResourceConfiguration(resource);
+        addMetricAndAvailInstances(resource, model);
+
+        this.inventoryManager.getResourceManager().addResource(resource);
+
+        Set<DMRResourceType> childTypes;
+        childTypes = this.inventoryManager.getMetadataManager().getResourceTypeManager().getChildren(type);
+        for (DMRResourceType childType : childTypes) {
+            Map<Address, ModelNode> children = findInModel(address, model, Address.parse(childType.getPath()));
+            for (Map.Entry<Address, ModelNode> child : children.entrySet()) {
+                addResourceSubtree(resource, childType, child.getKey(), child.getValue());
+            }
+        }
+    }
+
+    private DMRResource createResource(DMRResource parent, DMRResourceType type, Address address, ModelNode model) {
+        // the address is the unique DMR address for this resource
+        Name resourceName = generateResourceName(type, address);
+        ID id = InventoryIdUtil.generateResourceId(
+                this.inventoryManager.getFeedId(),
+                this.inventoryManager.getManagedServer(),
+                address.toAddressPathString());
+        DMRResource resource = new DMRResource(id, resourceName, this.inventoryManager.getEndpoint(), type,
+                parent, address, model);
+        log.debugf("Discovered [%s]", resource);
+        return resource;
+    }
+
+    private Map<Address, ModelNode> toResourceMap(Address addr, ModelNode results) {
+        // can return a single resource (type of OBJECT) or a list of them (type of LIST whose items are OBJECTS)
+        Map<Address, ModelNode> resources;
+        if (results == null) {
+            resources = Collections.emptyMap();
+        } else if (results.getType() == ModelType.OBJECT) {
+            resources = new HashMap<>(1);
+            resources.put(addr, results);
+        } else if (results.getType() == ModelType.LIST) {
+            resources = new HashMap<>();
+            List<ModelNode> list = results.asList();
+            for (ModelNode item : list) {
+                resources.put(Address.fromModelNodeWrapper(item, "address"), JBossASClient.getResults(item));
+            }
+        } else {
+            throw new IllegalStateException("Invalid type - please report this bug: " + results.getType()
+                    + " [[" + results.toString() + "]]");
+        }
+        return resources;
+    }
+
+    /**
+     * @return true if the given address is one of the scopes or the address of something below one of them
+     */
+    static boolean isAtOrUnder(Address address, Collection<Address> scopes) {
+        String[] addressParts = address.toAddressParts();
+        for (Address scope : scopes) {
+            String[] scopeParts = scope.toAddressParts();
+            if (addressParts.length >= scopeParts.length && matches(addressParts, scopeParts, false)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the given query address (which can have wildcards) can match addresses at or below one
+     *         of the scopes
+     */
+    static boolean mayMatchUnder(Address query, Collection<Address> scopes) {
+        String[] queryParts = query.toAddressParts();
+        for (Address scope : scopes) {
+            String[] scopeParts = scope.toAddressParts();
+            // a shorter query can only match ancestors of the scope
+            if (queryParts.length >= scopeParts.length && matches(queryParts, scopeParts, true)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the first parts of the given address parts are the scope parts; if wildcards are allowed,
+     *         a name of "*" in the address matches any name of the scope
+     */
+    private static boolean matches(String[] addressParts, String[] scopeParts, boolean allowWildcards) {
+        for (int i = 0; i < scopeParts.length; i++) {
+            boolean wildcard = allowWildcards && (i % 2 == 1) && "*".equals(addressParts[i]);
+            if (!wildcard && !scopeParts[i].equals(addressParts[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the children at the given relative path (which can have wildcards) in a recursively read model.
+     *
+     * @param address the address of the resource whose model is given
+     * @param model the recursively read model of the resource
+     * @param relativePath the path of the children relative to the resource
+     * @return the full addresses and models of the children that were found; empty if there are none
+     */
+    static Map<Address, ModelNode> findInModel(Address address, ModelNode model, Address relativePath) {
+        Map<Address, ModelNode> found = new LinkedHashMap<>();
+        found.put(address, model);
+
+        String[] parts = relativePath.toAddressParts();
+        for (int i = 0; i < parts.length; i += 2) {
+            String childType = parts[i];
+            String childName = parts[i + 1];
+            Map<Address, ModelNode> next = new LinkedHashMap<>();
+            for (Map.Entry<Address, ModelNode> entry : found.entrySet()) {
+                // never call get() for a key that is not there - that would add it to the model
+                if (!entry.getValue().has(childType)) {
+                    continue;
+                }
+                ModelNode children = entry.getValue().get(childType);
+                if (children.getType() != ModelType.OBJECT) {
+                    continue;
+                }
+                for (String name : children.keys()) {
+                    if ("*".equals(childName) || childName.equals(name)) {
+                        next.put(entry.getKey().clone().add(childType, name), children.get(name));
+                    }
+                }
+            }
+            found = next;
+        }
+
+        return found;
+    }
+
+    /**
+     * Copies the attributes of a recursively read model but not the models of its children. Like the model of a
+     * non-recursive read, each child type only keeps the names of its children (with undefined values).
+     *
+     * A recursive read does not tell child types from attributes, so any object whose values are all objects is
+     * taken to be a child type.
+     *
+     * @param model the recursively read model of a resource
+     * @return the model of only the resource itself
+     */
+    static ModelNode withoutChildModels(ModelNode model) {
+        if (model.getType() != ModelType.OBJECT) {
+            return model;
+        }
+        ModelNode copy = new ModelNode();
+        for (String key : model.keys()) {
+            ModelNode value = model.get(key);
+            if (isChildModels(value)) {
+                ModelNode names = copy.get(key);
+                for (String name : value.keys()) {
+                    names.get(name);
+                }
+            } else {
+                copy.get(key).set(value);
+            }
+        }
+        return copy;
+    }
+
+    private static boolean isChildModels(ModelNode value) {
+        if (value.getType() != ModelType.OBJECT || value.keys().isEmpty()) {
+            return false;
+        }
+        for (String name : value.keys()) {
+            if (value.get(name).getType() != ModelType.OBJECT) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void discoverResourceConfigurationInModel(DMRResource resource, ModelNode subtree) {
+        DMRResourceType rt = resource.getResourceType();
+        Collection<DMRResourceConfigurationPropertyType> configPropTypes = rt.getResourceConfigurationPropertyTypes();
+        for (DMRResourceConfigurationPropertyType configPropType : configPropTypes) {
+            ModelNode model = subtree;
+            String configPath = configPropType.getPath();
+            String[] attribute = configPropType.getAttribute().split("#");
+            if (configPath != null && !configPath.equals("/")) {
+                Map<Address, ModelNode> found = findInModel(resource.getAddress(), model, Address.parse(configPath));
+                model = (found.size() == 1) ? found.values().iterator().next() : null;
+            }
+
+            ModelNode value = (model != null && model.has(attribute[0])) ? model.get(attribute[0]) : null;
+            if (attribute.length > 1 && value != null && value.isDefined()) {
+                value = value.has(attribute[1]) ? value.get(attribute[1]) : null;
+            }
+
+            DMRResourceConfigurationPropertyInstance cpi = new DMRResourceConfigurationPropertyInstance(
+                    ID.NULL_ID, configPropType.getName(), configPropType);
+            cpi.setValue((value != null && value.isDefined()) ? value.asString() : null);
+            resource.addResourceConfigurationProperty(cpi);
+        }
+    }
+
     private void discoverResourceConfiguration(DMRResource resource, ModelControllerClient mcc) {
         DMRResourceType rt = resource.getResourceType();
         Collection<DMRResourceConfigurationPropertyType> configPropTypes = rt.getResourceConfigurationPropertyTypes();
@@ -302,12 +605,12 @@ public class DMRDiscovery {
         return new Name(nameStr);
     }
 
-    private void addMetricAndAvailInstances(DMRResource resource) {
+    private void addMetricAndAvailInstances(DMRResource resource, ModelNode model) {
 
         for (DMRMetricType metricType : resource.getResourceType().getMetricTypes()) {
             Interval interval = new Interval(metricType.getInterval(), metricType.getTimeUnits());
             Address relativeAddress = Address.parse(metricType.getPath());
-            Address fullAddress = getFullAddressOfChild(resource, relativeAddress);
+            Address fullAddress = getFullAddressOfChild(resource, model, relativeAddress);
             if (fullAddress != null) {
                 DMRPropertyReference prop = new DMRPropertyReference(fullAddress, metricType.getAttribute(), interval);
                 ID id = InventoryIdUtil.generateMetricInstanceId(resource, metricType);
@@ -320,7 +623,7 @@ public class DMRDiscovery {
         for (DMRAvailType availType : resource.getResourceType().getAvailTypes()) {
             Interval interval = new Interval(availType.getInterval(), availType.getTimeUnits());
             Address relativeAddress = Address.parse(availType.getPath());
-            Address fullAddress = getFullAddressOfChild(resource, relativeAddress);
+            Address fullAddress = getFullAddressOfChild(resource, model, relativeAddress);
             if (fullAddress != null) {
                 AvailDMRPropertyReference prop = new AvailDMRPropertyReference(fullAddress, availType.getAttribute(),
                         interval, availType.getUpRegex());
@@ -332,7 +635,8 @@ public class DMRDiscovery {
         }
     }
 
-    private Address getFullAddressOfChild(DMRResource parentResource, Address childRelativePath) {
+    private Address getFullAddressOfChild(DMRResource parentResource, ModelNode parentModel,
+            Address childRelativePath) {
         // Some metrics/avails are collected from child resources. But sometimes resources
         // don't have those child resources (e.g. ear deployments don't have an undertow subsystem).
         // This means those metrics/avails cannot be collected (i.e. they are optional).
@@ -344,6 +648,11 @@ public class DMRDiscovery {
         Address fullAddress = null;
         if (childRelativePath.isRoot()) {
             fullAddress = parentResource.getAddress(); // there really is no child; it is the resource itself
+        } else if (recursive) {
+            // we have the parent's whole subtree, so we can tell whether children at any depth exist
+            if (!findInModel(parentResource.getAddress(), parentModel, childRelativePath).isEmpty()) {
+                fullAddress = parentResource.getAddress().clone().add(childRelativePath);
+            }
         } else {
             boolean childResourceExists = false;
             String[] addressParts = childRelativePath.toAddressParts();
@@ -355,7 +664,7 @@ public class DMRDiscovery {
                 log.tracef("Cannot test long child path [%s] under resource [%s] "
                         + "for existence so it will be assumed to exist", childRelativePath, parentResource);
             } else {
-                ModelNode haystackNode = parentResource.getModelNode().get(addressParts[0]);
+                ModelNode haystackNode = parentModel.get(addressParts[0]);
                 if (haystackNode.getType() != ModelType.UNDEFINED) {
                     final List<ModelNode> haystackList = haystackNode.asList();
                     for (ModelNode needleNode : haystackList) {
@@ -16,6 +16,8 @@
  */
 package org.hawkular.agent.monitor.inventory.dmr;
 
+import java.util.Collection;
+
 import org.hawkular.agent.monitor.inventory.InventoryManager;
 import org.hawkular.agent.monitor.inventory.ManagedServer;
 import org.hawkular.agent.monitor.inventory.MetadataManager;
@@ -24,6 +26,7 @@ import org.hawkular.agent.monitor.log.AgentLoggers;
 import org.hawkular.agent.monitor.log.MsgLogger;
 import org.hawkular.agent.monitor.scheduler.ModelControllerClientFactory;
 import org.hawkular.agent.monitor.scheduler.config.DMREndpoint;
+import org.hawkular.dmrclient.Address;
 import org.jgrapht.event.VertexSetListener;
 
 public class DMRInventoryManager extends InventoryManager
@@ -39,6 +42,7 @@ public class DMRInventoryManager extends InventoryManager
         DMREndpoint> {
     private static final MsgLogger log = AgentLoggers.getLogger(DMRInventoryManager.class);
     private final ModelControllerClientFactory dmrClientFactory;
+    private final boolean recursiveDiscovery;
 
     public DMRInventoryManager(String feedId,
             MetadataManager<DMRResourceType, DMRResourceTypeSet, DMRMetricType, DMRMetricTypeSet,
@@ -47,20 +51,54 @@ public class DMRInventoryManager extends InventoryManager
             ManagedServer managedServer,
             DMREndpoint dmrEndpoint,
             ModelControllerClientFactory dmrClientFactory) {
+        this(feedId, metadataManager, resourceManager, managedServer, dmrEndpoint, dmrClientFactory, false);
+    }
+
+    /**
+     * @param recursiveDiscovery if true, resources are discovered by reading the subtree of each root resource
+     *                           type at once (see {@link DMRDiscovery#DMRDiscovery(DMRInventoryManager, boolean)})
+     */
+    public DMRInventoryManager(String feedId,
+            MetadataManager<DMRResourceType, DMRResourceTypeSet, DMRMetricType, DMRMetricTypeSet,
+            DMRAvailType, DMRAvailTypeSet, DMROperation, DMRResourceConfigurationPropertyType> metadataManager,
+            ResourceManager<DMRResource> resourceManager,
+            ManagedServer managedServer,
+            DMREndpoint dmrEndpoint,
+            ModelControllerClientFactory dmrClientFactory,
+            boolean recursiveDiscovery) {
         super(feedId, metadataManager, resourceManager, managedServer, dmrEndpoint);
         this.dmrClientFactory = dmrClientFactory;
+        this.recursiveDiscovery = recursiveDiscovery;
     }
 
     @Override
     public void discoverResources(VertexSetListener<DMRResource> listener) {
         try {
-            DMRDiscovery discovery = new DMRDiscovery(this);
+            DMRDiscovery discovery = new DMRDiscovery(this, recursiveDiscovery);
             discovery.discoverAllResources(listener);
         } catch (Exception e) {
             log.errorDiscoveryFailed(e, getEndpoint());
         }
     }
 
+    /**
+     * Rediscovers the resources at or below the given addresses; everything else is carried over from the
+     * previous inventory of the same managed server (see {@link DMRDiscovery#discoverResourcesUnder}).
+     *
+     * @param addresses the addresses of the resources to rediscover
+     * @param previousResources the resources found by an earlier discovery of the managed server
+     * @param listener if not null, gets notified when resources are discovered
+     */
+    public void discoverResourcesUnder(Collection<Address> addresses, ResourceManager<DMRResource> previousResources,
+            VertexSetListener<DMRResource> listener) {
+        try {
+            DMRDiscovery discovery = new DMRDiscovery(this, recursiveDiscovery);
+            discovery.discoverResourcesUnder(addresses, previousResources, listener);
+        } catch (Exception e) {
+            log.errorDiscoveryFailed(e, getEndpoint());
+        }
+    }
+
     /**
      * @return factory that can be used to build clients that can talk to the server
      */
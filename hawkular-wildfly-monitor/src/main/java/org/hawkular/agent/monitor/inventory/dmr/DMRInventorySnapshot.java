@@ -0,0 +1,476 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.agent.monitor.inventory.dmr;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hawkular.agent.monitor.inventory.ID;
+import org.hawkular.agent.monitor.inventory.InventoryDiff;
+import org.hawkular.agent.monitor.inventory.InventoryIdUtil;
+import org.hawkular.agent.monitor.inventory.Name;
+import org.hawkular.agent.monitor.inventory.NamedObject;
+import org.hawkular.agent.monitor.inventory.ResourceManager;
+import org.hawkular.agent.monitor.log.AgentLoggers;
+import org.hawkular.agent.monitor.log.MsgLogger;
+import org.hawkular.agent.monitor.scheduler.config.AvailDMRPropertyReference;
+import org.hawkular.agent.monitor.scheduler.config.DMRPropertyReference;
+import org.hawkular.agent.monitor.scheduler.config.Interval;
+import org.hawkular.dmrclient.Address;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * A compact binary copy of the resources that were discovered in DMR managed servers. It holds everything
+ * needed to schedule the metric collections and avail checks of the resources - their IDs, types, addresses,
+ * properties, resource configuration, the addresses of their metrics and avails - along with their content hashes and
+ * persisted flags. This lets an agent that is restarted start collecting right away with the inventory of its
+ * previous run rather than waiting for a full discovery scan to finish first.
+ */
+public class DMRInventorySnapshot {
+    private static final MsgLogger log = AgentLoggers.getLogger(DMRInventorySnapshot.class);
+
+    private static final int MAGIC = 0x48414953;
+    private static final int VERSION = 1;
+
+    private static class MeasurementRecord {
+        private String typeId;
+        private String[] address;
+    }
+
+    private static class ResourceRecord {
+        private String id;
+        private String name;
+        private String typeId;
+        private String parentId;
+        private boolean persisted;
+        private String contentHash;
+        private String[] address;
+        private final Map<String, String> properties = new LinkedHashMap<>();
+        private final Map<String, String> configuration = new LinkedHashMap<>();
+        private final List<MeasurementRecord> metrics = new ArrayList<>();
+        private final List<MeasurementRecord> avails = new ArrayList<>();
+    }
+
+    private final String feedId;
+
+    // keyed by managed server name; parents are always listed before their children
+    private final Map<String, List<ResourceRecord>> resources;
+
+    private DMRInventorySnapshot(String feedId, Map<String, List<ResourceRecord>> resources) {
+        this.feedId = feedId;
+        this.resources = resources;
+    }
+
+    /**
+     * Writes the resources of the given inventories to the given file, replacing the file if it already exists.
+     * The file is replaced atomically so a crash while writing never leaves a corrupt snapshot behind.
+     *
+     * @param file the snapshot file
+     * @param feedId the feed that owns the inventories
+     * @param inventories the inventories whose resources are to be written
+     * @throws IOException if the snapshot could not be written
+     */
+    public static void write(File file, String feedId, Collection<DMRInventoryManager> inventories)
+            throws IOException {
+        File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, feedId);
+            out.writeInt(inventories.size());
+            for (DMRInventoryManager im : inventories) {
+                List<DMRResource> parentsFirst = getResourcesParentsFirst(im.getResourceManager());
+                writeString(out, im.getManagedServer().getName().getNameString());
+                out.writeInt(parentsFirst.size());
+                for (DMRResource resource : parentsFirst) {
+                    writeResource(out, resource);
+                }
+            }
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the snapshot that was {@link #write(File, String, Collection) written} to the given file.
+     *
+     * @param file the snapshot file
+     * @return the snapshot
+     * @throws IOException if the file could not be read or is not a snapshot this version of the agent can read
+     */
+    public static DMRInventorySnapshot read(File file) throws IOException {
+        try (SnapshotInput in = new SnapshotInput(file)) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an inventory snapshot: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported inventory snapshot version [" + version + "]: " + file);
+            }
+
+            String feedId = readString(in);
+            int servers = in.readLength();
+            Map<String, List<ResourceRecord>> resources = new HashMap<>(servers);
+            for (int i = 0; i < servers; i++) {
+                String managedServerName = readString(in);
+                int count = in.readLength();
+                List<ResourceRecord> records = new ArrayList<>(count);
+                for (int j = 0; j < count; j++) {
+                    records.add(readResource(in));
+                }
+                resources.put(managedServerName, records);
+            }
+            return new DMRInventorySnapshot(feedId, resources);
+        }
+    }
+
+    /**
+     * @return the feed that owns the resources in this snapshot; resources of another feed must not be restored
+     */
+    public String getFeedId() {
+        return feedId;
+    }
+
+    /**
+     * @return the names of the managed servers whose resources are in this snapshot
+     */
+    public Set<String> getManagedServerNames() {
+        return Collections.unmodifiableSet(resources.keySet());
+    }
+
+    /**
+     * Adds the resources this snapshot has for the inventory manager's managed server to the inventory manager.
+     * Resources are rebuilt against the inventory manager's current metadata; a resource is skipped (along with
+     * all of its descendants) if its type is no longer known or if its content no longer matches its content hash.
+     *
+     * @param im the inventory manager whose resource manager is to be populated
+     * @param persistedOnly if true, only those resources that were persisted in backend storage are restored
+     * @return the number of resources that were restored
+     */
+    public int restore(DMRInventoryManager im, boolean persistedOnly) {
+        List<ResourceRecord> records = resources.get(im.getManagedServer().getName().getNameString());
+        if (records == null) {
+            return 0;
+        }
+
+        Map<String, DMRResourceType> types = byId(im.getMetadataManager().getResourceTypeManager()
+                .getAllResourceTypes());
+        ResourceManager<DMRResource> resourceManager = im.getResourceManager();
+        int restored = 0;
+
+        for (ResourceRecord record : records) {
+            if (persistedOnly && !record.persisted) {
+                continue;
+            }
+
+            DMRResource parent = null;
+            if (record.parentId != null) {
+                parent = resourceManager.getResource(new ID(record.parentId));
+                if (parent == null) {
+                    continue; // the parent was not restored, so neither are its children
+                }
+            }
+
+            DMRResourceType type = types.get(record.typeId);
+            if (type == null) {
+                log.debugf("Not restoring resource [%s] - its type [%s] is no longer known", record.id, record.typeId);
+                continue;
+            }
+
+            DMRResource resource = new DMRResource(new ID(record.id), new Name(record.name), im.getEndpoint(), type,
+                    parent, new Address(record.address), new ModelNode());
+
+            for (Map.Entry<String, String> property : record.properties.entrySet()) {
+                resource.addProperty(property.getKey(), property.getValue());
+            }
+
+            for (DMRResourceConfigurationPropertyType configType : type.getResourceConfigurationPropertyTypes()) {
+                String configName = configType.getName().getNameString();
+                if (record.configuration.containsKey(configName)) {
+                    DMRResourceConfigurationPropertyInstance cpi = new DMRResourceConfigurationPropertyInstance(
+                            ID.NULL_ID, configType.getName(), configType);
+                    cpi.setValue(record.configuration.get(configName));
+                    resource.addResourceConfigurationProperty(cpi);
+                }
+            }
+
+            if (!record.contentHash.equals(InventoryDiff.getContentHash(resource))) {
+                log.debugf("Not restoring resource [%s] - its content does not match its content hash", record.id);
+                continue;
+            }
+
+            Map<String, DMRMetricType> metricTypes = byId(type.getMetricTypes());
+            for (MeasurementRecord metric : record.metrics) {
+                DMRMetricType metricType = metricTypes.get(metric.typeId);
+                if (metricType != null) {
+                    Interval interval = new Interval(metricType.getInterval(), metricType.getTimeUnits());
+                    DMRPropertyReference prop = new DMRPropertyReference(new Address(metric.address),
+                            metricType.getAttribute(), interval);
+                    ID id = InventoryIdUtil.generateMetricInstanceId(resource, metricType);
+                    resource.getMetrics().add(new DMRMetricInstance(id, metricType.getName(), resource, metricType,
+                            prop));
+                }
+            }
+
+            Map<String, DMRAvailType> availTypes = byId(type.getAvailTypes());
+            for (MeasurementRecord avail : record.avails) {
+                DMRAvailType availType = availTypes.get(avail.typeId);
+                if (availType != null) {
+                    Interval interval = new Interval(availType.getInterval(), availType.getTimeUnits());
+                    AvailDMRPropertyReference prop = new AvailDMRPropertyReference(new Address(avail.address),
+                            availType.getAttribute(), interval, availType.getUpRegex());
+                    ID id = InventoryIdUtil.generateAvailInstanceId(resource, availType);
+                    resource.getAvails().add(new DMRAvailInstance(id, availType.getName(), resource, availType,
+                            prop));
+                }
+            }
+
+            if (record.persisted) {
+                resource.setPersisted(true);
+                type.setPersisted(true);
+            }
+
+            resourceManager.addResource(resource);
+            restored++;
+        }
+
+        return restored;
+    }
+
+    private static List<DMRResource> getResourcesParentsFirst(ResourceManager<DMRResource> resourceManager) {
+        List<DMRResource> parentsFirst = new ArrayList<>(resourceManager.getAllResources().size());
+        Deque<DMRResource> queue = new ArrayDeque<>(resourceManager.getRootResources());
+        while (!queue.isEmpty()) {
+            DMRResource resource = queue.poll();
+            parentsFirst.add(resource);
+            queue.addAll(resourceManager.getChildren(resource));
+        }
+        return parentsFirst;
+    }
+
+    private static void writeResource(DataOutputStream out, DMRResource resource) throws IOException {
+        DMRResource parent = resource.getParent();
+        writeString(out, resource.getID().getIDString());
+        writeString(out, resource.getName().getNameString());
+        writeString(out, resource.getResourceType().getID().getIDString());
+        writeString(out, (parent != null) ? parent.getID().getIDString() : null);
+        out.writeBoolean(resource.isPersisted());
+        writeString(out, InventoryDiff.getContentHash(resource));
+        writeAddress(out, resource.getAddress());
+
+        // property values are only kept as strings, which is all the content hash takes into account
+        out.writeInt(resource.getProperties().size());
+        for (Map.Entry<String, Object> property : resource.getProperties().entrySet()) {
+            writeString(out, property.getKey());
+            writeString(out, String.valueOf(property.getValue()));
+        }
+
+        Collection<DMRResourceConfigurationPropertyInstance> configuration = resource
+                .getResourceConfigurationProperties();
+        out.writeInt(configuration.size());
+        for (DMRResourceConfigurationPropertyInstance cpi : configuration) {
+            writeString(out, cpi.getName().getNameString());
+            writeString(out, cpi.getValue());
+        }
+
+        out.writeInt(resource.getMetrics().size());
+        for (DMRMetricInstance metric : resource.getMetrics()) {
+            writeString(out, metric.getMeasurementType().getID().getIDString());
+            writeAddress(out, metric.getProperty().getAddress());
+        }
+
+        out.writeInt(resource.getAvails().size());
+        for (DMRAvailInstance avail : resource.getAvails()) {
+            writeString(out, avail.getMeasurementType().getID().getIDString());
+            writeAddress(out, avail.getProperty().getAddress());
+        }
+    }
+
+    private static ResourceRecord readResource(SnapshotInput in) throws IOException {
+        ResourceRecord record = new ResourceRecord();
+        record.id = readString(in);
+        record.name = readString(in);
+        record.typeId = readString(in);
+        record.parentId = readString(in);
+        record.persisted = in.readBoolean();
+        record.contentHash = readString(in);
+        record.address = readAddress(in);
+
+        int propertyCount = in.readLength();
+        for (int i = 0; i < propertyCount; i++) {
+            record.properties.put(readString(in), readString(in));
+        }
+
+        int configCount = in.readLength();
+        for (int i = 0; i < configCount; i++) {
+            record.configuration.put(readString(in), readString(in));
+        }
+
+        int metricCount = in.readLength();
+        for (int i = 0; i < metricCount; i++) {
+            record.metrics.add(readMeasurement(in));
+        }
+
+        int availCount = in.readLength();
+        for (int i = 0; i < availCount; i++) {
+            record.avails.add(readMeasurement(in));
+        }
+
+        return record;
+    }
+
+    private static MeasurementRecord readMeasurement(SnapshotInput in) throws IOException {
+        MeasurementRecord record = new MeasurementRecord();
+        record.typeId = readString(in);
+        record.address = readAddress(in);
+        return record;
+    }
+
+    private static void writeAddress(DataOutputStream out, Address address) throws IOException {
+        String[] parts = address.toAddressParts();
+        out.writeInt(parts.length);
+        for (String part : parts) {
+            writeString(out, part);
+        }
+    }
+
+    private static String[] readAddress(SnapshotInput in) throws IOException {
+        String[] parts = new String[in.readLength()];
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = readString(in);
+        }
+        return parts;
+    }
+
+    // unlike writeUTF, this supports null and strings of any length
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(SnapshotInput in) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > in.remaining()) {
+            throw new IOException("Corrupt inventory snapshot: a string of [" + length + "] bytes with only ["
+                    + in.remaining() + "] bytes left");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static <T extends NamedObject> Map<String, T> byId(Collection<T> objects) {
+        Map<String, T> byId = new HashMap<>(objects.size());
+        for (T object : objects) {
+            byId.put(object.getID().getIDString(), object);
+        }
+        return byId;
+    }
+
+    /**
+     * Reads a snapshot file and knows how many of its bytes are left, so lengths and counts of a corrupt
+     * snapshot are rejected instead of being used to allocate memory.
+     */
+    private static final class SnapshotInput extends DataInputStream {
+        private final long fileBytes;
+
+        public SnapshotInput(File file) throws IOException {
+            super(new CountingInputStream(new BufferedInputStream(new FileInputStream(file))));
+            this.fileBytes = file.length();
+        }
+
+        public long remaining() {
+            return fileBytes - ((CountingInputStream) in).count;
+        }
+
+        /**
+         * @return a length or number of entries; every entry takes at least one byte, so there cannot be more
+         *         of them than there are bytes left
+         * @throws IOException if the value is negative or larger than the rest of the file
+         */
+        public int readLength() throws IOException {
+            int length = readInt();
+            if (length < 0 || length > remaining()) {
+                throw new IOException("Corrupt inventory snapshot: a length of [" + length + "] with only ["
+                        + remaining() + "] bytes left");
+            }
+            return length;
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count = 0L;
+
+        public CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -16,7 +16,9 @@
  */
 package org.hawkular.agent.monitor.inventory.jmx;
 
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -37,8 +39,12 @@ import org.jgrapht.event.VertexSetListener;
 import org.jgrapht.graph.DefaultEdge;
 import org.jgrapht.traverse.DepthFirstIterator;
 import org.jolokia.client.J4pClient;
+import org.jolokia.client.exception.J4pBulkRemoteException;
+import org.jolokia.client.exception.J4pException;
 import org.jolokia.client.request.J4pReadRequest;
 import org.jolokia.client.request.J4pReadResponse;
+import org.jolokia.client.request.J4pRequest;
+import org.jolokia.client.request.J4pResponse;
 import org.jolokia.client.request.J4pSearchRequest;
 import org.jolokia.client.request.J4pSearchResponse;
 
@@ -50,6 +56,7 @@ public class JMXDiscovery {
 
     private final JMXInventoryManager inventoryManager;
     private final JmxClientFactory clientFactory;
+    private final int bulkRequestSize;
 
     /**
      * Creates the discovery object for the given inventory manager.
@@ -60,11 +67,13 @@ public class JMXDiscovery {
      *
      * @param im the inventory manager that holds information about the server to be queried and
      *           the known types to be discovered
-     * @param clientFactory will create clients used to communicate with the endpoint
+     * @param bulkRequestSize the maximum number of searches or reads sent to the endpoint in one bulk request;
+     *                        if 0 or less, all searches or reads of a level are sent in one bulk request
      */
-    public JMXDiscovery(JMXInventoryManager im) {
+    public JMXDiscovery(JMXInventoryManager im, int bulkRequestSize) {
         this.inventoryManager = im;
         this.clientFactory = im.getJmxClientFactory();
+        this.bulkRequestSize = bulkRequestSize;
     }
 
     /**
@@ -91,8 +100,12 @@ public class JMXDiscovery {
             rootTypes = this.inventoryManager.getMetadataManager().getResourceTypeManager().getRootResourceTypes();
 
             long start = System.currentTimeMillis();
+            List<ParentAndType> searches = new ArrayList<>();
             for (JMXResourceType rootType : rootTypes) {
-                discoverChildrenOfResourceType(null, rootType, client);
+                searches.add(new ParentAndType(null, rootType));
+            }
+            while (!searches.isEmpty()) {
+                searches = discoverLevel(searches, client);
             }
             long duration = System.currentTimeMillis() - start;
 
@@ -107,75 +120,194 @@ public class JMXDiscovery {
         }
     }
 
-    private void discoverChildrenOfResourceType(JMXResource parent, JMXResourceType type, J4pClient client) {
-        try {
-            String objectNameQuery = type.getObjectName();
-            log.debugf("Discovering children of [%s] of type [%s] using query [%s]", parent, type, objectNameQuery);
+    /**
+     * A parent resource (null for the root resource types) whose children of the given type are to be discovered.
+     */
+    private static class ParentAndType {
+        private final JMXResource parent;
+        private final JMXResourceType type;
 
-            J4pSearchRequest searchReq = new J4pSearchRequest(objectNameQuery);
-            J4pSearchResponse searchResponse = client.execute(searchReq);
+        public ParentAndType(JMXResource parent, JMXResourceType type) {
+            this.parent = parent;
+            this.type = type;
+        }
+    }
 
-            ResourceManager<JMXResource> resourceManager = this.inventoryManager.getResourceManager();
+    /**
+     * Discovers one level of the resource tree: the children of the given types of the given parents.
+     * The MBeans of all of them are searched for with one bulk request and the configuration of all the MBeans
+     * found is read with another bulk request.
+     *
+     * @param searches the parents along with the types of their children to be discovered
+     * @param client talks to the endpoint
+     * @return the resources found along with their child types, which is what the next level is made of
+     * @throws Exception if the endpoint could not be queried at all
+     */
+    private List<ParentAndType> discoverLevel(List<ParentAndType> searches, J4pClient client) throws Exception {
+        // the object name queries of child types do not depend on the parent so many searches are the same
+        Map<String, Integer> queryIndexes = new LinkedHashMap<>();
+        List<J4pSearchRequest> searchRequests = new ArrayList<>();
+        for (ParentAndType search : searches) {
+            String objectNameQuery = search.type.getObjectName();
+            if (!queryIndexes.containsKey(objectNameQuery)) {
+                log.debugf("Discovering resources of type [%s] using query [%s]", search.type, objectNameQuery);
+                try {
+                    searchRequests.add(new J4pSearchRequest(objectNameQuery));
+                    queryIndexes.put(objectNameQuery, searchRequests.size() - 1);
+                } catch (MalformedObjectNameException e) {
+                    log.errorf(e, "Bad object name [%s] for resource type [%s]", objectNameQuery, search.type);
+                    queryIndexes.put(objectNameQuery, -1);
+                }
+            }
+        }
+
+        List<Object> searchResults = executeBulk(client, searchRequests);
+
+        List<JMXResource> resources = new ArrayList<>();
+        for (ParentAndType search : searches) {
+            int index = queryIndexes.get(search.type.getObjectName());
+            if (index < 0) {
+                continue; // its query is no good
+            }
+            Object result = searchResults.get(index);
+            if (!(result instanceof J4pSearchResponse)) {
+                log.errorf((result instanceof Exception) ? (Exception) result : null,
+                        "Failed to discover resources of type [%s] in [%s]", search.type,
+                        this.inventoryManager.getEndpoint());
+                continue;
+            }
 
-            for (ObjectName objectName : searchResponse.getObjectNames()) {
-                Name resourceName = generateResourceName(type, objectName);
+            for (ObjectName objectName : ((J4pSearchResponse) result).getObjectNames()) {
+                Name resourceName = generateResourceName(search.type, objectName);
                 ID id = InventoryIdUtil.generateResourceId(
                         this.inventoryManager.getFeedId(),
                         this.inventoryManager.getManagedServer(),
                         objectName.getCanonicalName());
-                JMXResource resource = new JMXResource(id, resourceName, this.inventoryManager.getEndpoint(), type,
-                        parent, objectName);
+                JMXResource resource = new JMXResource(id, resourceName, this.inventoryManager.getEndpoint(),
+                        search.type, search.parent, objectName);
                 log.debugf("Discovered [%s]", resource);
+                resources.add(resource);
+            }
+        }
 
-                // get the configuration of the resource
-                discoverResourceConfiguration(resource, client);
-
-                // populate the metrics/avails based on the resource's type
-                addMetricAndAvailInstances(resource);
+        // get the configuration of the resources
+        discoverResourceConfiguration(resources, client);
 
-                // add it to our tree graph
-                resourceManager.addResource(resource);
+        ResourceManager<JMXResource> resourceManager = this.inventoryManager.getResourceManager();
+        List<ParentAndType> nextSearches = new ArrayList<>();
+        for (JMXResource resource : resources) {
+            // populate the metrics/avails based on the resource's type
+            addMetricAndAvailInstances(resource);
+
+            // add it to our tree graph
+            resourceManager.addResource(resource);
+
+            // its children of child types will be discovered on the next level
+            Set<JMXResourceType> childTypes;
+            childTypes = this.inventoryManager.getMetadataManager().getResourceTypeManager()
+                    .getChildren(resource.getResourceType());
+            for (JMXResourceType childType : childTypes) {
+                nextSearches.add(new ParentAndType(resource, childType));
+            }
+        }
+        return nextSearches;
+    }
 
-                // recursively discover children of child types
-                Set<JMXResourceType> childTypes;
-                childTypes = this.inventoryManager.getMetadataManager().getResourceTypeManager().getChildren(type);
-                for (JMXResourceType childType : childTypes) {
-                    discoverChildrenOfResourceType(resource, childType, client);
+    private void discoverResourceConfiguration(List<JMXResource> resources, J4pClient client) throws Exception {
+        List<JMXResource> requestResources = new ArrayList<>();
+        List<JMXResourceConfigurationPropertyType> requestPropTypes = new ArrayList<>();
+        List<J4pReadRequest> requests = new ArrayList<>();
+        for (JMXResource resource : resources) {
+            JMXResourceType rt = resource.getResourceType();
+            for (JMXResourceConfigurationPropertyType configPropType : rt.getResourceConfigurationPropertyTypes()) {
+                try {
+                    ObjectName configObjectName;
+                    if (configPropType.getObjectName() == null || configPropType.getObjectName().isEmpty()) {
+                        configObjectName = resource.getObjectName();
+                    } else {
+                        configObjectName = new ObjectName(configPropType.getObjectName());
+                    }
+
+                    String[] attribute = configPropType.getAttribute().split("#");
+                    J4pReadRequest request = new J4pReadRequest(configObjectName, attribute[0]);
+                    if (attribute.length > 1) {
+                        request.setPath(attribute[1]); // this is the sub-reference
+                    }
+                    requests.add(request);
+                    requestResources.add(resource);
+                    requestPropTypes.add(configPropType);
+                } catch (Exception e) {
+                    log.warnf(e, "Failed to discover config [%s] for resource [%s]", configPropType, resource);
                 }
             }
-        } catch (Exception e) {
-            log.errorf(e, "Failed to discover resources in [%s]", this.inventoryManager.getEndpoint());
+        }
+
+        List<Object> results = executeBulk(client, requests);
+
+        for (int i = 0; i < results.size(); i++) {
+            Object result = results.get(i);
+            JMXResource resource = requestResources.get(i);
+            JMXResourceConfigurationPropertyType configPropType = requestPropTypes.get(i);
+            if (!(result instanceof J4pReadResponse)) {
+                log.warnf((result instanceof Exception) ? (Exception) result : null,
+                        "Failed to discover config [%s] for resource [%s]", configPropType, resource);
+                continue;
+            }
+
+            Object value = ((J4pReadResponse) result).getValue();
+            String valueString = String.valueOf(value);
+            JMXResourceConfigurationPropertyInstance cpi = new JMXResourceConfigurationPropertyInstance(
+                    ID.NULL_ID, configPropType.getName(), configPropType);
+            cpi.setValue(valueString);
+            resource.addResourceConfigurationProperty(cpi);
         }
     }
 
-    private void discoverResourceConfiguration(JMXResource resource, J4pClient client) {
-        JMXResourceType rt = resource.getResourceType();
-        Collection<JMXResourceConfigurationPropertyType> configPropTypes = rt.getResourceConfigurationPropertyTypes();
-        for (JMXResourceConfigurationPropertyType configPropType : configPropTypes) {
-            try {
-                ObjectName configObjectName;
-                if (configPropType.getObjectName() == null || configPropType.getObjectName().isEmpty()) {
-                    configObjectName = resource.getObjectName();
-                } else {
-                    configObjectName = new ObjectName(configPropType.getObjectName());
-                }
+    /**
+     * Executes the given requests with bulk requests of at most the configured size. If only some of the
+     * requests fail, the results of the others are still returned; if a whole bulk request fails, each of its
+     * requests gets that failure as its result and the remaining bulk requests are still executed.
+     *
+     * @param client talks to the endpoint
+     * @param requests the requests to execute
+     * @return the result of each request, in the order of the requests: either its response or the
+     *         exception that tells why it failed
+     * @throws J4pException if all of the bulk requests failed as a whole
+     */
+    private <R extends J4pRequest> List<Object> executeBulk(J4pClient client, List<R> requests)
+            throws J4pException {
+        List<Object> results = new ArrayList<>(requests.size());
+        if (requests.isEmpty()) {
+            return results;
+        }
 
-                String[] attribute = configPropType.getAttribute().split("#");
-                J4pReadRequest request = new J4pReadRequest(configObjectName, attribute[0]);
-                if (attribute.length > 1) {
-                    request.setPath(attribute[1]); // this is the sub-reference
+        int chunkSize = (bulkRequestSize > 0) ? bulkRequestSize : requests.size();
+        J4pException lastError = null;
+        boolean anyExecuted = false;
+        for (int start = 0; start < requests.size(); start += chunkSize) {
+            List<R> chunk = requests.subList(start, Math.min(start + chunkSize, requests.size()));
+            try {
+                List<J4pResponse<R>> responses = client.execute(chunk);
+                results.addAll(responses);
+                anyExecuted = true;
+            } catch (J4pBulkRemoteException bulkError) {
+                // some, but not all, failed - the results tell which
+                results.addAll(bulkError.getResults());
+                anyExecuted = true;
+            } catch (J4pException e) {
+                log.debugf("Bulk request of [%d] requests to [%s] failed: %s", chunk.size(),
+                        this.inventoryManager.getEndpoint(), e);
+                lastError = e;
+                for (int i = 0; i < chunk.size(); i++) {
+                    results.add(e);
                 }
-                J4pReadResponse response = client.execute(request);
-                Object value = response.getValue();
-                String valueString = String.valueOf(value);
-                JMXResourceConfigurationPropertyInstance cpi = new JMXResourceConfigurationPropertyInstance(
-                        ID.NULL_ID, configPropType.getName(), configPropType);
-                cpi.setValue(valueString);
-                resource.addResourceConfigurationProperty(cpi);
-            } catch (Exception e) {
-                log.warnf(e, "Failed to discover config [%s] for resource [%s]", configPropType, resource);
             }
         }
+
+        if (!anyExecuted) {
+            throw lastError;
+        }
+        return results;
     }
 
     private void logTreeGraph(String logMsg, ResourceManager<JMXResource> resourceManager, long duration) {
@@ -39,22 +39,29 @@ public class JMXInventoryManager extends InventoryManager
         JMXEndpoint> {
     private static final MsgLogger log = AgentLoggers.getLogger(JMXInventoryManager.class);
     private final JmxClientFactory jmxClientFactory;
+    private final int discoveryBulkRequestSize;
 
+    /**
+     * @param discoveryBulkRequestSize the maximum number of searches or reads that discovery sends to the
+     *                                 managed server in one bulk request
+     */
     public JMXInventoryManager(String feedId,
             MetadataManager<JMXResourceType, JMXResourceTypeSet, JMXMetricType, JMXMetricTypeSet,
             JMXAvailType, JMXAvailTypeSet, JMXOperation, JMXResourceConfigurationPropertyType> metadataManager,
             ResourceManager<JMXResource> resourceManager,
             ManagedServer managedServer,
             JMXEndpoint dmrEndpoint,
-            JmxClientFactory jmxClientFactory) {
+            JmxClientFactory jmxClientFactory,
+            int discoveryBulkRequestSize) {
         super(feedId, metadataManager, resourceManager, managedServer, dmrEndpoint);
         this.jmxClientFactory = jmxClientFactory;
+        this.discoveryBulkRequestSize = discoveryBulkRequestSize;
     }
 
     @Override
     public void discoverResources(VertexSetListener<JMXResource> listener) {
         try {
-            JMXDiscovery discovery = new JMXDiscovery(this);
+            JMXDiscovery discovery = new JMXDiscovery(this, discoveryBulkRequestSize);
             discovery.discoverAllResources(listener);
         } catch (Exception e) {
             log.errorDiscoveryFailed(e, getEndpoint());
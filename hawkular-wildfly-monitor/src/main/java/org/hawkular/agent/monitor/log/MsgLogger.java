@@ -221,4 +221,35 @@ public interface MsgLogger extends BasicLogger {
     @Message(id = 10046, value = "Got response code [%d] when storing entity of type [%s] under path [%s] to inventory")
     void errorFailedToStorePathToInventory(int code, String entityType, String path);
 
+    @LogMessage(level = Logger.Level.WARN)
+    @Message(id = 10047, value = "Lost management connection to [%s]. Will not reconnect for [%d] ms")
+    void warnLostConnectionToDMREndpoint(String endpoint, long reconnectDelayMs);
+
+    @LogMessage(level = Logger.Level.WARN)
+    @Message(id = 10048, value = "Storage of %s cannot keep up - the dispatcher buffer is full and the [%s] overflow "
+            + "policy is in effect")
+    void warnDispatcherBufferFull(String dataType, String overflowPolicy);
+
+    @LogMessage(level = Logger.Level.ERROR)
+    @Message(id = 10049, value = "Failed to use overflow file [%s] - spilled data points may be lost")
+    void errorDataPointSpillFileFailed(String file, @Cause Throwable t);
+
+    @LogMessage(level = Logger.Level.ERROR)
+    @Message(id = 10050, value = "Failed to use the storage write-ahead log in [%s]")
+    void errorWriteAheadLogFailed(String directory, @Cause Throwable t);
+
+    @LogMessage(level = Logger.Level.INFO)
+    @Message(id = 10051, value = "Restored [%d] resources of [%d] managed servers from the inventory snapshot. "
+            + "Their metrics will be collected while a full discovery scan runs in the background")
+    void infoRestoredInventorySnapshot(int resources, int managedServers);
+
+    @LogMessage(level = Logger.Level.WARN)
+    @Message(id = 10052, value = "Failed to use the inventory snapshot [%s]")
+    void warnInventorySnapshotFailed(String file, @Cause Throwable t);
+
+    @LogMessage(level = Logger.Level.WARN)
+    @Message(id = 10053, value = "Discovery scan of [%s] did not finish within [%d] seconds and was abandoned. "
+            + "The resources found by its previous scan are kept")
+    void warnDiscoveryTimedOut(String managedServerName, int timeoutSecs);
+
 }
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.agent.monitor.scheduler;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hawkular.agent.monitor.diagnostics.Diagnostics;
+import org.hawkular.agent.monitor.log.AgentLoggers;
+import org.hawkular.agent.monitor.log.MsgLogger;
+import org.hawkular.agent.monitor.scheduler.config.JMXEndpoint;
+import org.jolokia.client.J4pClient;
+
+/**
+ * Holds one Jolokia client per remote JMX endpoint. Each client keeps its own pool of keep-alive HTTP
+ * connections, so metric collections, avail checks and discovery all reuse the same connections
+ * rather than paying for a new TCP (and possibly TLS) handshake on every request.
+ */
+public class JmxClientCache implements Closeable {
+    private static final MsgLogger log = AgentLoggers.getLogger(JmxClientCache.class);
+
+    private final Map<JMXEndpoint, CachedJmxClientFactory> factories = new HashMap<>();
+    private final int connectionTimeoutSecs;
+    private final int socketTimeoutSecs;
+    private final int maxConnections;
+    private final Diagnostics diagnostics;
+
+    private class CachedJmxClientFactory implements JmxClientFactory {
+        private final JMXEndpoint endpoint;
+        private J4pClient client;
+
+        public CachedJmxClientFactory(JMXEndpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public synchronized J4pClient createClient() {
+            if (client == null) {
+                client = endpoint.getJmxClient(connectionTimeoutSecs * 1000, socketTimeoutSecs * 1000,
+                        maxConnections);
+                diagnostics.getJMXClientCreationRate().mark(1);
+            } else {
+                diagnostics.getJMXClientReuseRate().mark(1);
+            }
+            return client;
+        }
+
+        public synchronized void close() {
+            if (client != null) {
+                try {
+                    if (client.getHttpClient() instanceof Closeable) {
+                        ((Closeable) client.getHttpClient()).close();
+                    }
+                } catch (Exception e) {
+                    log.debugf("Failed to close JMX client for [%s]: %s", endpoint, e);
+                }
+                client = null;
+            }
+        }
+    }
+
+    /**
+     * @param connectionTimeoutSecs how long to wait for a connection to a JMX endpoint to be established
+     * @param socketTimeoutSecs how long to wait for data from a JMX endpoint; 0 means wait forever
+     * @param maxConnections the maximum number of connections each client keeps open to its endpoint
+     * @param diagnostics tracks our internal metrics
+     */
+    public JmxClientCache(int connectionTimeoutSecs, int socketTimeoutSecs, int maxConnections,
+            Diagnostics diagnostics) {
+        this.connectionTimeoutSecs = connectionTimeoutSecs;
+        this.socketTimeoutSecs = socketTimeoutSecs;
+        this.maxConnections = maxConnections;
+        this.diagnostics = diagnostics;
+    }
+
+    /**
+     * Returns the factory that hands out the one client that is cached for the given endpoint.
+     *
+     * @param endpoint the remote endpoint
+     * @return the factory whose clients talk to the given endpoint
+     */
+    public synchronized JmxClientFactory getFactory(JMXEndpoint endpoint) {
+        CachedJmxClientFactory factory = factories.get(endpoint);
+        if (factory == null) {
+            factory = new CachedJmxClientFactory(endpoint);
+            factories.put(endpoint, factory);
+        }
+        return factory;
+    }
+
+    /**
+     * Closes the connections of all the cached clients.
+     */
+    @Override
+    public void close() {
+        List<CachedJmxClientFactory> all;
+        synchronized (this) {
+            all = new ArrayList<>(factories.values());
+            factories.clear();
+        }
+        for (CachedJmxClientFactory factory : all) {
+            factory.close();
+        }
+    }
+}
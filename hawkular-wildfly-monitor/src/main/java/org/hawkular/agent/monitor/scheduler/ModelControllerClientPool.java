@@ -0,0 +1,338 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.agent.monitor.scheduler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.agent.monitor.diagnostics.Diagnostics;
+import org.hawkular.agent.monitor.log.AgentLoggers;
+import org.hawkular.agent.monitor.log.MsgLogger;
+import org.hawkular.agent.monitor.scheduler.config.DMREndpoint;
+import org.hawkular.dmrclient.Address;
+import org.hawkular.dmrclient.JBossASClient;
+import org.jboss.as.controller.client.ModelControllerClient;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * Keeps a bounded number of long-lived management connections open to a single remote DMR endpoint.
+ *
+ * Clients obtained from {@link #createClient()} are used just like any other client - closing them
+ * simply hands the underlying connection back to the pool so the next caller does not have to go through
+ * another connect and SASL handshake. Connections that hit an I/O error are thrown away along with all
+ * other idle connections to the endpoint, and no new connection is attempted until an exponentially
+ * growing backoff delay expires. Connections that sat idle for a while are validated before they are
+ * handed out again, and connections that sat idle longer than the idle timeout are closed.
+ */
+public class ModelControllerClientPool implements ModelControllerClientFactory, Closeable {
+    private static final MsgLogger log = AgentLoggers.getLogger(ModelControllerClientPool.class);
+
+    private static final long VALIDATE_AFTER_IDLE_MILLIS = 30000L;
+    private static final long BORROW_TIMEOUT_MILLIS = 30000L;
+    private static final long MIN_RECONNECT_DELAY_MILLIS = 1000L;
+    private static final long MAX_RECONNECT_DELAY_MILLIS = 60000L;
+
+    private static final ModelNode VALIDATION_REQUEST = JBossASClient.createReadAttributeRequest("launch-type",
+            Address.root());
+
+    private static class PooledConnection {
+        private final ModelControllerClient client;
+        private long lastUsed = System.currentTimeMillis();
+        private volatile boolean broken;
+
+        public PooledConnection(ModelControllerClient client) {
+            this.client = client;
+        }
+    }
+
+    private final DMREndpoint endpoint;
+    private final ModelControllerClientFactory connectionFactory;
+    private final Diagnostics diagnostics;
+    private final long idleTimeoutMillis;
+    private final Semaphore permits;
+
+    // all of these are guarded by "this"
+    private final Deque<PooledConnection> idleConnections = new ArrayDeque<>();
+    private int consecutiveFailures = 0;
+    private long reconnectNotBefore = 0L;
+    private boolean closed = false;
+
+    /**
+     * Creates the pool for the given endpoint.
+     *
+     * @param endpoint the remote endpoint whose connections are pooled
+     * @param maxSize the maximum number of connections (idle or in use) that are open to the endpoint at once
+     * @param idleTimeoutSecs connections that have not been used for this long will be closed
+     * @param diagnostics tracks our internal metrics
+     */
+    public ModelControllerClientPool(DMREndpoint endpoint, int maxSize, int idleTimeoutSecs,
+            Diagnostics diagnostics) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1: " + maxSize);
+        }
+        this.endpoint = endpoint;
+        this.connectionFactory = new ModelControllerClientFactoryImpl(endpoint);
+        this.diagnostics = diagnostics;
+        this.idleTimeoutMillis = TimeUnit.MILLISECONDS.convert(idleTimeoutSecs, TimeUnit.SECONDS);
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    public DMREndpoint getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Borrows a connection from the pool, opening a new one if there is no idle connection available.
+     * The caller must close the returned client when it is done with it so the connection is returned
+     * to the pool.
+     *
+     * @return the client that uses a pooled connection
+     */
+    @Override
+    public ModelControllerClient createClient() {
+        try {
+            if (!permits.tryAcquire(BORROW_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                throw new RuntimeException("Timed out waiting for a management connection to " + endpoint);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for a management connection to " + endpoint, ie);
+        }
+
+        try {
+            PooledConnection connection = takeIdleConnection();
+            if (connection == null) {
+                connection = openConnection();
+            }
+            diagnostics.getDMRConnectionPoolActiveConnections().inc();
+            return wrap(connection);
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Closes those idle connections that have not been used within the idle timeout.
+     */
+    public void evictIdleConnections() {
+        List<PooledConnection> expired = new ArrayList<>();
+        synchronized (this) {
+            long oldestAllowed = System.currentTimeMillis() - idleTimeoutMillis;
+            // the least recently used connections are at the tail
+            while (!idleConnections.isEmpty() && idleConnections.peekLast().lastUsed < oldestAllowed) {
+                expired.add(idleConnections.pollLast());
+            }
+        }
+        for (PooledConnection connection : expired) {
+            diagnostics.getDMRConnectionPoolIdleConnections().dec();
+            destroy(connection);
+        }
+    }
+
+    /**
+     * Closes all idle connections. Connections in use are closed as soon as they are returned.
+     */
+    @Override
+    public void close() {
+        List<PooledConnection> idle;
+        synchronized (this) {
+            closed = true;
+            idle = new ArrayList<>(idleConnections);
+            idleConnections.clear();
+        }
+        for (PooledConnection connection : idle) {
+            diagnostics.getDMRConnectionPoolIdleConnections().dec();
+            destroy(connection);
+        }
+    }
+
+    private PooledConnection takeIdleConnection() {
+        while (true) {
+            PooledConnection connection;
+            synchronized (this) {
+                connection = idleConnections.pollFirst();
+            }
+            if (connection == null) {
+                return null;
+            }
+            diagnostics.getDMRConnectionPoolIdleConnections().dec();
+
+            if (System.currentTimeMillis() - connection.lastUsed < VALIDATE_AFTER_IDLE_MILLIS
+                    || isValid(connection)) {
+                return connection;
+            }
+
+            // the remote server probably went away while this connection was idle
+            destroy(connection);
+            recordFailure();
+        }
+    }
+
+    private PooledConnection openConnection() {
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Connection pool to " + endpoint + " is closed");
+            }
+            long waitMillis = reconnectNotBefore - System.currentTimeMillis();
+            if (waitMillis > 0) {
+                throw new RuntimeException("Not reconnecting to " + endpoint + " for another [" + waitMillis
+                        + "] ms after a connection failure");
+            }
+        }
+
+        PooledConnection connection = new PooledConnection(connectionFactory.createClient());
+        diagnostics.getDMRConnectionCreationRate().mark(1);
+        return connection;
+    }
+
+    private void release(PooledConnection connection) {
+        try {
+            diagnostics.getDMRConnectionPoolActiveConnections().dec();
+
+            if (connection.broken) {
+                destroy(connection);
+                recordFailure();
+                return;
+            }
+
+            boolean keep;
+            synchronized (this) {
+                keep = !closed;
+                if (keep) {
+                    connection.lastUsed = System.currentTimeMillis();
+                    idleConnections.addFirst(connection);
+                }
+            }
+
+            if (keep) {
+                diagnostics.getDMRConnectionPoolIdleConnections().inc();
+            } else {
+                destroy(connection);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private boolean isValid(PooledConnection connection) {
+        try {
+            return JBossASClient.isSuccess(connection.client.execute(VALIDATION_REQUEST));
+        } catch (Exception e) {
+            log.debugf("Idle management connection to [%s] is no longer valid: %s", endpoint, e);
+            return false;
+        }
+    }
+
+    private synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        reconnectNotBefore = 0L;
+    }
+
+    private void recordFailure() {
+        diagnostics.getDMRConnectionFailureRate().mark(1);
+
+        // the other idle connections most likely went down with this one, so don't hand them out again
+        List<PooledConnection> idle;
+        long delay;
+        int failures;
+        synchronized (this) {
+            failures = ++consecutiveFailures;
+            delay = Math.min(MIN_RECONNECT_DELAY_MILLIS << Math.min(failures - 1, 16), MAX_RECONNECT_DELAY_MILLIS);
+            reconnectNotBefore = System.currentTimeMillis() + delay;
+            idle = new ArrayList<>(idleConnections);
+            idleConnections.clear();
+        }
+        for (PooledConnection connection : idle) {
+            diagnostics.getDMRConnectionPoolIdleConnections().dec();
+            destroy(connection);
+        }
+
+        if (failures == 1) {
+            log.warnLostConnectionToDMREndpoint(endpoint.toString(), delay);
+        } else {
+            log.debugf("Management connection to [%s] failed again (%d times); not reconnecting for [%d] ms",
+                    endpoint, failures, delay);
+        }
+    }
+
+    private void destroy(PooledConnection connection) {
+        try {
+            connection.client.close();
+        } catch (Exception e) {
+            log.tracef("Failed to close management connection to [%s]: %s", endpoint, e);
+        }
+    }
+
+    private ModelControllerClient wrap(final PooledConnection connection) {
+        InvocationHandler handler = new InvocationHandler() {
+            private boolean released = false;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getDeclaringClass() == Object.class) {
+                    return method.invoke(connection.client, args);
+                }
+
+                if ("close".equals(method.getName()) && method.getParameterTypes().length == 0) {
+                    synchronized (this) {
+                        if (!released) {
+                            released = true;
+                            release(connection);
+                        }
+                    }
+                    return null;
+                }
+
+                synchronized (this) {
+                    if (released) {
+                        throw new IllegalStateException("Client has already been closed");
+                    }
+                }
+
+                try {
+                    Object results = method.invoke(connection.client, args);
+                    recordSuccess();
+                    return results;
+                } catch (InvocationTargetException e) {
+                    if (e.getCause() instanceof IOException) {
+                        connection.broken = true;
+                    }
+                    throw e.getCause();
+                }
+            }
+        };
+
+        return (ModelControllerClient) Proxy.newProxyInstance(ModelControllerClient.class.getClassLoader(),
+                new Class<?>[] { ModelControllerClient.class }, handler);
+    }
+
+    @Override
+    public String toString() {
+        return "ModelControllerClientPool[" + endpoint + "]";
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.agent.monitor.scheduler;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.agent.monitor.diagnostics.Diagnostics;
+import org.hawkular.agent.monitor.scheduler.config.DMREndpoint;
+import org.hawkular.agent.monitor.service.ThreadFactoryGenerator;
+
+/**
+ * Holds one {@link ModelControllerClientPool} per remote DMR endpoint so metric collections, avail checks,
+ * discovery and commands all share the same connections to a managed server.
+ */
+public class ModelControllerClientPools implements Closeable {
+    private static final long EVICTION_PERIOD_SECS = 30L;
+
+    private final Map<DMREndpoint, ModelControllerClientPool> pools = new HashMap<>();
+    private final int maxSize;
+    private final int idleTimeoutSecs;
+    private final Diagnostics diagnostics;
+    private final ScheduledExecutorService evictor;
+
+    public ModelControllerClientPools(int maxSize, int idleTimeoutSecs, Diagnostics diagnostics) {
+        this.maxSize = maxSize;
+        this.idleTimeoutSecs = idleTimeoutSecs;
+        this.diagnostics = diagnostics;
+
+        ThreadFactory threadFactory = ThreadFactoryGenerator.generateFactory(true,
+                "Hawkular-Monitor-DMR-Connection-Evictor");
+        this.evictor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        this.evictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                for (ModelControllerClientPool pool : getPools()) {
+                    pool.evictIdleConnections();
+                }
+            }
+        }, EVICTION_PERIOD_SECS, EVICTION_PERIOD_SECS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Returns the pool of connections to the given endpoint, creating the pool if this is the first
+     * time the endpoint has been asked for.
+     *
+     * @param endpoint the remote endpoint
+     * @return the pool that provides clients to the endpoint
+     */
+    public synchronized ModelControllerClientPool getPool(DMREndpoint endpoint) {
+        ModelControllerClientPool pool = pools.get(endpoint);
+        if (pool == null) {
+            pool = new ModelControllerClientPool(endpoint, maxSize, idleTimeoutSecs, diagnostics);
+            pools.put(endpoint, pool);
+        }
+        return pool;
+    }
+
+    /**
+     * Closes all the pools and their idle connections.
+     */
+    @Override
+    public void close() {
+        evictor.shutdownNow();
+        for (ModelControllerClientPool pool : getPools()) {
+            pool.close();
+        }
+        synchronized (this) {
+            pools.clear();
+        }
+    }
+
+    private synchronized List<ModelControllerClientPool> getPools() {
+        return new ArrayList<>(pools.values());
+    }
+}
@@ -17,11 +17,14 @@
 package org.hawkular.agent.monitor.scheduler;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
 import org.hawkular.agent.monitor.diagnostics.Diagnostics;
+import org.hawkular.agent.monitor.inventory.MeasurementInstance;
 import org.hawkular.agent.monitor.inventory.dmr.DMRAvailInstance;
 import org.hawkular.agent.monitor.inventory.dmr.DMRMetricInstance;
 import org.hawkular.agent.monitor.inventory.jmx.JMXAvailInstance;
@@ -41,6 +44,7 @@ import org.hawkular.agent.monitor.scheduler.config.LocalDMREndpoint;
 import org.hawkular.agent.monitor.scheduler.config.PlatformEndpoint;
 import org.hawkular.agent.monitor.scheduler.config.PlatformPropertyReference;
 import org.hawkular.agent.monitor.scheduler.config.SchedulerConfiguration;
+import org.hawkular.agent.monitor.scheduler.polling.EndpointPermits;
 import org.hawkular.agent.monitor.scheduler.polling.IntervalBasedScheduler;
 import org.hawkular.agent.monitor.scheduler.polling.Scheduler;
 import org.hawkular.agent.monitor.scheduler.polling.Task;
@@ -71,12 +75,18 @@ public class SchedulerService {
     private final SchedulerConfiguration schedulerConfig;
     private final ServerIdentifiers selfId;
     private final ModelControllerClientFactory localDMRClientFactory;
+    private final ModelControllerClientPools dmrClientPools;
+    private final JmxClientCache jmxClientCache;
     private final Diagnostics diagnostics;
     private final Scheduler metricScheduler;
     private final Scheduler availScheduler;
     private final MetricBufferedStorageDispatcher metricCompletionHandler;
     private final AvailBufferedStorageDispatcher availCompletionHandler;
 
+    // the tasks that are currently scheduled, keyed by the metric or avail instance they collect
+    private final Map<MeasurementInstance<?, ?, ?>, Task> scheduledMetricTasks = new HashMap<>();
+    private final Map<MeasurementInstance<?, ?, ?>, Task> scheduledAvailTasks = new HashMap<>();
+
     private boolean started = false;
 
     public SchedulerService(
@@ -84,13 +94,21 @@ public class SchedulerService {
             ServerIdentifiers selfId,
             Diagnostics diagnostics,
             StorageAdapter storageAdapter,
-            ModelControllerClientFactory localDMRClientFactory) {
+            ModelControllerClientFactory localDMRClientFactory,
+            ModelControllerClientPools dmrClientPools,
+            JmxClientCache jmxClientCache) {
 
         this.schedulerConfig = configuration;
 
         // for those tasks that require a DMR client to our own WildFly server, this factory can provide those clients
         this.localDMRClientFactory = localDMRClientFactory;
 
+        // for those tasks that require a DMR client to a remote server, these pools provide long-lived connections
+        this.dmrClientPools = dmrClientPools;
+
+        // for those tasks that require a JMX client, this cache provides clients that keep their connections open
+        this.jmxClientCache = jmxClientCache;
+
         // this helps identify where we are running
         this.selfId = selfId;
 
@@ -100,13 +118,15 @@ public class SchedulerService {
         // create the schedulers - we use two: one for metric collections and one for avail checks
         this.metricCompletionHandler = new MetricBufferedStorageDispatcher(configuration, storageAdapter,
                 diagnostics);
+        // both schedulers share the permits so the limit per endpoint holds across metric and avail collections
+        EndpointPermits endpointPermits = new EndpointPermits(configuration.getMaxConcurrentTaskGroupsPerEndpoint());
         this.metricScheduler = new IntervalBasedScheduler(this, "Hawkular-Monitor-Scheduler-Metrics",
-                configuration.getMetricSchedulerThreads());
+                configuration.getMetricSchedulerThreads(), configuration, endpointPermits);
 
         this.availCompletionHandler = new AvailBufferedStorageDispatcher(configuration, storageAdapter,
                 diagnostics);
         this.availScheduler = new IntervalBasedScheduler(this, "Hawkular-Monitor-Scheduler-Avail",
-                configuration.getAvailSchedulerThreads());
+                configuration.getAvailSchedulerThreads(), configuration, endpointPermits);
     }
 
     public ServerIdentifiers getSelfIdentifiers() {
@@ -117,42 +137,76 @@ public class SchedulerService {
         return this.diagnostics;
     }
 
-    public void start() {
+    public synchronized void start() {
         if (started) {
             return; // already started
         }
 
         log.infoStartingScheduler();
 
-        // turn metric DMR refs into Tasks and schedule them now
-        List<Task> metricTasks = createMetricDMRTasks(schedulerConfig.getDMRMetricsToBeCollected());
+        // turn the metric and avail refs into Tasks and schedule them now
+        scheduledMetricTasks.putAll(createMetricTasks(schedulerConfig));
+        scheduledAvailTasks.putAll(createAvailTasks(schedulerConfig));
 
-        // turn metric JMX refs into Tasks and schedule them now
-        metricTasks.addAll(createMetricJMXTasks(schedulerConfig.getJMXMetricsToBeCollected()));
+        // start the collections
+        this.metricCompletionHandler.start();
+        this.metricScheduler.schedule(new ArrayList<>(scheduledMetricTasks.values()));
 
-        // turn platform metrics into Tasks and schedule them now
-        metricTasks.addAll(createMetricPlatformTasks(schedulerConfig.getPlatformMetricsToBeCollected()));
+        this.availCompletionHandler.start();
+        this.availScheduler.schedule(new ArrayList<>(scheduledAvailTasks.values()));
 
-        // turn avail DMR refs into Tasks and schedule them now
-        List<Task> availTasks = createAvailDMRTasks(schedulerConfig.getDMRAvailsToBeChecked());
+        started = true;
+    }
 
-        // turn platform avails into Tasks and schedule them now
-        availTasks.addAll(createAvailPlatformTasks(schedulerConfig.getPlatformAvailsToBeChecked()));
+    /**
+     * Changes what is collected while the scheduler keeps running, typically after a managed server has been
+     * rediscovered. Collections of the metrics and avails that are only in the old collections are stopped,
+     * collections of those that are only in the new collections are started, and all other collections carry on
+     * undisturbed. The storage dispatchers are left alone so no collected data that is still buffered is lost.
+     *
+     * Only the metrics and avails to be collected by the given configurations are looked at.
+     *
+     * @param oldCollections what used to be collected, e.g. from the previous inventory of a managed server
+     * @param newCollections what is to be collected from now on, e.g. from the new inventory of that server
+     */
+    public synchronized void reschedule(SchedulerConfiguration oldCollections, SchedulerConfiguration newCollections) {
+        if (!started) {
+            return; // not running; whatever is started next will be built from scratch
+        }
 
-        // turn avail JMX refs into Tasks and schedule them now
-        availTasks.addAll(createAvailJMXTasks(schedulerConfig.getJMXAvailsToBeChecked()));
+        reschedule(metricScheduler, scheduledMetricTasks, createMetricTasks(oldCollections),
+                createMetricTasks(newCollections));
+        reschedule(availScheduler, scheduledAvailTasks, createAvailTasks(oldCollections),
+                createAvailTasks(newCollections));
+    }
 
-        // start the collections
-        this.metricCompletionHandler.start();
-        this.metricScheduler.schedule(metricTasks);
+    private void reschedule(Scheduler scheduler, Map<MeasurementInstance<?, ?, ?>, Task> scheduledTasks,
+            Map<MeasurementInstance<?, ?, ?>, Task> oldTasks, Map<MeasurementInstance<?, ?, ?>, Task> newTasks) {
+        List<Task> tasksToRemove = new ArrayList<>();
+        for (MeasurementInstance<?, ?, ?> instance : oldTasks.keySet()) {
+            if (!newTasks.containsKey(instance)) {
+                Task scheduledTask = scheduledTasks.remove(instance);
+                if (scheduledTask != null) {
+                    tasksToRemove.add(scheduledTask);
+                }
+            }
+        }
 
-        this.availCompletionHandler.start();
-        this.availScheduler.schedule(availTasks);
+        // instances that are already being collected keep their tasks; their IDs, and thus their keys, are the same
+        List<Task> tasksToAdd = new ArrayList<>();
+        for (Map.Entry<MeasurementInstance<?, ?, ?>, Task> entry : newTasks.entrySet()) {
+            if (!scheduledTasks.containsKey(entry.getKey())) {
+                scheduledTasks.put(entry.getKey(), entry.getValue());
+                tasksToAdd.add(entry.getValue());
+            }
+        }
 
-        started = true;
+        if (!tasksToAdd.isEmpty() || !tasksToRemove.isEmpty()) {
+            scheduler.reschedule(tasksToAdd, tasksToRemove);
+        }
     }
 
-    public void stop() {
+    public synchronized void stop() {
         if (!started) {
             return; // already stopped
         }
@@ -167,6 +221,9 @@ public class SchedulerService {
         this.metricScheduler.shutdown();
         this.availScheduler.shutdown();
 
+        scheduledMetricTasks.clear();
+        scheduledAvailTasks.clear();
+
         started = false;
     }
 
@@ -182,15 +239,16 @@ public class SchedulerService {
                     if (endpoint instanceof LocalDMREndpoint) {
                         factory = this.localDMRClientFactory;
                     } else {
-                        factory = new ModelControllerClientFactoryImpl(endpoint);
+                        factory = this.dmrClientPools.getPool(endpoint);
                     }
-                    return new MetricDMRTaskGroupRunnable(group, metricCompletionHandler, getDiagnostics(), factory);
+                    return new MetricDMRTaskGroupRunnable(group, metricCompletionHandler, getDiagnostics(), factory,
+                            schedulerConfig.getDmrCompositeBatchSize());
                 } else if (PlatformTask.class.isInstance(firstTask)) {
                     return new MetricPlatformTaskGroupRunnable(group, metricCompletionHandler, diagnostics);
                 } else if (JMXTask.class.isInstance(firstTask)) {
                     JMXEndpoint endpoint = ((JMXTask) firstTask).getEndpoint();
                     return new MetricJMXTaskGroupRunnable(group, metricCompletionHandler, diagnostics,
-                            new JmxClientFactoryImpl(endpoint));
+                            this.jmxClientCache.getFactory(endpoint));
                 } else {
                     throw new UnsupportedOperationException("Unsupported metric group: " + group);
                 }
@@ -206,15 +264,16 @@ public class SchedulerService {
                     if (endpoint instanceof LocalDMREndpoint) {
                         factory = this.localDMRClientFactory;
                     } else {
-                        factory = new ModelControllerClientFactoryImpl(endpoint);
+                        factory = this.dmrClientPools.getPool(endpoint);
                     }
-                    return new AvailDMRTaskGroupRunnable(group, availCompletionHandler, getDiagnostics(), factory);
+                    return new AvailDMRTaskGroupRunnable(group, availCompletionHandler, getDiagnostics(), factory,
+                            schedulerConfig.getDmrCompositeBatchSize());
                 } else if (PlatformTask.class.isInstance(firstTask)) {
                     new UnsupportedOperationException("Avail checks for platform resources are not supported");
                 } else if (JMXTask.class.isInstance(firstTask)) {
                     JMXEndpoint endpoint = ((JMXTask) firstTask).getEndpoint();
                     return new AvailJMXTaskGroupRunnable(group, availCompletionHandler, diagnostics,
-                            new JmxClientFactoryImpl(endpoint));
+                            this.jmxClientCache.getFactory(endpoint));
                 } else {
                     throw new UnsupportedOperationException("Unsupported avail group: " + group);
                 }
@@ -226,8 +285,25 @@ public class SchedulerService {
         }
     }
 
-    private List<Task> createMetricDMRTasks(Map<DMREndpoint, List<DMRMetricInstance>> map) {
-        List<Task> tasks = new ArrayList<>();
+    private Map<MeasurementInstance<?, ?, ?>, Task> createMetricTasks(SchedulerConfiguration collections) {
+        Map<MeasurementInstance<?, ?, ?>, Task> tasks = new LinkedHashMap<>();
+        tasks.putAll(createMetricDMRTasks(collections.getDMRMetricsToBeCollected()));
+        tasks.putAll(createMetricJMXTasks(collections.getJMXMetricsToBeCollected()));
+        tasks.putAll(createMetricPlatformTasks(collections.getPlatformMetricsToBeCollected()));
+        return tasks;
+    }
+
+    private Map<MeasurementInstance<?, ?, ?>, Task> createAvailTasks(SchedulerConfiguration collections) {
+        Map<MeasurementInstance<?, ?, ?>, Task> tasks = new LinkedHashMap<>();
+        tasks.putAll(createAvailDMRTasks(collections.getDMRAvailsToBeChecked()));
+        tasks.putAll(createAvailPlatformTasks(collections.getPlatformAvailsToBeChecked()));
+        tasks.putAll(createAvailJMXTasks(collections.getJMXAvailsToBeChecked()));
+        return tasks;
+    }
+
+    private Map<MeasurementInstance<?, ?, ?>, Task> createMetricDMRTasks(
+            Map<DMREndpoint, List<DMRMetricInstance>> map) {
+        Map<MeasurementInstance<?, ?, ?>, Task> tasks = new LinkedHashMap<>();
 
         for (Map.Entry<DMREndpoint, List<DMRMetricInstance>> entry : map.entrySet()) {
             DMREndpoint dmrEndpoint = entry.getKey();
@@ -245,16 +321,17 @@ public class SchedulerService {
                     }
                 }
 
-                tasks.add(new MetricDMRTask(propRef.getInterval(), dmrEndpoint, propRef.getAddress(), attribute,
-                        subref, instance));
+                tasks.put(instance, new MetricDMRTask(propRef.getInterval(), dmrEndpoint, propRef.getAddress(),
+                        attribute, subref, instance));
             }
         }
 
         return tasks;
     }
 
-    private List<Task> createAvailDMRTasks(Map<DMREndpoint, List<DMRAvailInstance>> map) {
-        List<Task> tasks = new ArrayList<>();
+    private Map<MeasurementInstance<?, ?, ?>, Task> createAvailDMRTasks(
+            Map<DMREndpoint, List<DMRAvailInstance>> map) {
+        Map<MeasurementInstance<?, ?, ?>, Task> tasks = new LinkedHashMap<>();
 
         for (Map.Entry<DMREndpoint, List<DMRAvailInstance>> entry : map.entrySet()) {
             DMREndpoint dmrEndpoint = entry.getKey();
@@ -272,16 +349,17 @@ public class SchedulerService {
                     }
                 }
 
-                tasks.add(new AvailDMRTask(propRef.getInterval(), dmrEndpoint, propRef.getAddress(), attribute,
-                        subref, instance, propRef.getUpRegex()));
+                tasks.put(instance, new AvailDMRTask(propRef.getInterval(), dmrEndpoint, propRef.getAddress(),
+                        attribute, subref, instance, propRef.getUpRegex()));
             }
         }
 
         return tasks;
     }
 
-    private List<Task> createMetricJMXTasks(Map<JMXEndpoint, List<JMXMetricInstance>> map) {
-        List<Task> tasks = new ArrayList<>();
+    private Map<MeasurementInstance<?, ?, ?>, Task> createMetricJMXTasks(
+            Map<JMXEndpoint, List<JMXMetricInstance>> map) {
+        Map<MeasurementInstance<?, ?, ?>, Task> tasks = new LinkedHashMap<>();
 
         for (Map.Entry<JMXEndpoint, List<JMXMetricInstance>> entry : map.entrySet()) {
             JMXEndpoint jmxEndpoint = entry.getKey();
@@ -299,16 +377,17 @@ public class SchedulerService {
                     }
                 }
 
-                tasks.add(new MetricJMXTask(propRef.getInterval(), jmxEndpoint, propRef.getObjectName(), attribute,
-                        subref, instance));
+                tasks.put(instance, new MetricJMXTask(propRef.getInterval(), jmxEndpoint, propRef.getObjectName(),
+                        attribute, subref, instance));
             }
         }
 
         return tasks;
     }
 
-    private List<Task> createAvailJMXTasks(Map<JMXEndpoint, List<JMXAvailInstance>> map) {
-        List<Task> tasks = new ArrayList<>();
+    private Map<MeasurementInstance<?, ?, ?>, Task> createAvailJMXTasks(
+            Map<JMXEndpoint, List<JMXAvailInstance>> map) {
+        Map<MeasurementInstance<?, ?, ?>, Task> tasks = new LinkedHashMap<>();
 
         for (Map.Entry<JMXEndpoint, List<JMXAvailInstance>> entry : map.entrySet()) {
             JMXEndpoint jmxEndpoint = entry.getKey();
@@ -326,37 +405,39 @@ public class SchedulerService {
                     }
                 }
 
-                tasks.add(new AvailJMXTask(propRef.getInterval(), jmxEndpoint, propRef.getObjectName(), attribute,
-                        subref, instance, propRef.getUpRegex()));
+                tasks.put(instance, new AvailJMXTask(propRef.getInterval(), jmxEndpoint, propRef.getObjectName(),
+                        attribute, subref, instance, propRef.getUpRegex()));
             }
         }
 
         return tasks;
     }
 
-    private List<Task> createMetricPlatformTasks(Map<PlatformEndpoint, List<PlatformMetricInstance>> map) {
-        List<Task> tasks = new ArrayList<>();
+    private Map<MeasurementInstance<?, ?, ?>, Task> createMetricPlatformTasks(
+            Map<PlatformEndpoint, List<PlatformMetricInstance>> map) {
+        Map<MeasurementInstance<?, ?, ?>, Task> tasks = new LinkedHashMap<>();
 
         for (Entry<PlatformEndpoint, List<PlatformMetricInstance>> entry : map.entrySet()) {
             PlatformEndpoint endpoint = entry.getKey();
             for (PlatformMetricInstance instance : entry.getValue()) {
                 PlatformPropertyReference propRef = instance.getProperty();
-                tasks.add(new MetricPlatformTask(propRef.getInterval(), endpoint, instance));
+                tasks.put(instance, new MetricPlatformTask(propRef.getInterval(), endpoint, instance));
             }
         }
 
         return tasks;
     }
 
-    private List<Task> createAvailPlatformTasks(Map<PlatformEndpoint, List<PlatformAvailInstance>> map) {
-        List<Task> tasks = new ArrayList<>();
+    private Map<MeasurementInstance<?, ?, ?>, Task> createAvailPlatformTasks(
+            Map<PlatformEndpoint, List<PlatformAvailInstance>> map) {
+        Map<MeasurementInstance<?, ?, ?>, Task> tasks = new LinkedHashMap<>();
 
         for (Entry<PlatformEndpoint, List<PlatformAvailInstance>> entry : map.entrySet()) {
             PlatformEndpoint endpoint = entry.getKey();
             for (PlatformAvailInstance instance : entry.getValue()) {
                 AvailPlatformPropertyReference propRef = instance.getProperty();
                 throw new UnsupportedOperationException("Platform avail checking not yet supported");
-                //tasks.add(new AvailPlatformTask(propRef.getInterval(), endpoint, instance));
+                //tasks.put(instance, new AvailPlatformTask(propRef.getInterval(), endpoint, instance));
             }
         }
 
@@ -40,6 +40,7 @@ public class DMREndpoint extends MonitoredEndpoint {
     private final boolean useSSL;
     private final SSLContext sslContext;
     private ServerIdentifiers serverId;
+    private volatile ModelControllerClientFactory clientFactory;
 
     public DMREndpoint(String name, String host, int port, String username, String password, boolean useSSL,
             SSLContext sslContext) {
@@ -113,8 +114,20 @@ public class DMREndpoint extends MonitoredEndpoint {
         return this.serverId;
     }
 
+    /**
+     * Sets where the clients come from that are used to identify the endpoint, typically the pool of
+     * connections to the endpoint that collections, discovery and commands share. If it is not set,
+     * a new connection is opened to identify the endpoint.
+     *
+     * @param clientFactory creates clients to this endpoint
+     */
+    public void setModelControllerClientFactory(ModelControllerClientFactory clientFactory) {
+        this.clientFactory = clientFactory;
+    }
+
     protected ModelControllerClientFactory getModelControllerClientFactory() {
-        return new ModelControllerClientFactoryImpl(this);
+        ModelControllerClientFactory factory = this.clientFactory;
+        return (factory != null) ? factory : new ModelControllerClientFactoryImpl(this);
     }
 
     @Override
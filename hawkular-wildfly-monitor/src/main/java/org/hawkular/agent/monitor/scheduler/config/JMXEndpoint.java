@@ -76,7 +76,16 @@ public class JMXEndpoint extends MonitoredEndpoint {
         return this.serverId;
     }
 
-    public J4pClient getJmxClient() {
+    /**
+     * Builds a new client to this endpoint. The client keeps a pool of keep-alive connections to the endpoint,
+     * so the same client should be reused for as long as possible rather than built for every request.
+     *
+     * @param connectionTimeoutMillis how long to wait for a connection to be established
+     * @param socketTimeoutMillis how long to wait for data once connected; 0 means wait forever
+     * @param maxConnections the maximum number of connections the client will keep open to the endpoint
+     * @return the new client
+     */
+    public J4pClient getJmxClient(int connectionTimeoutMillis, int socketTimeoutMillis, int maxConnections) {
         BasicAuthenticator authenticator;
 
         if (sslContext != null && getURL().getProtocol().equalsIgnoreCase("https")) {
@@ -90,7 +99,11 @@ public class JMXEndpoint extends MonitoredEndpoint {
                 .user(getUsername())
                 .password(getPassword())
                 .authenticator(authenticator.preemptive())
-                .connectionTimeout(60000)
+                .pooledConnections()
+                .maxTotalConnections(maxConnections)
+                .defaultMaxConnectionsPerRoute(maxConnections)
+                .connectionTimeout(connectionTimeoutMillis)
+                .socketTimeout(socketTimeoutMillis)
                 .build();
         return client;
     }
@@ -16,6 +16,7 @@
  */
 package org.hawkular.agent.monitor.scheduler.config;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -29,26 +30,55 @@ import org.hawkular.agent.monitor.inventory.jmx.JMXAvailInstance;
 import org.hawkular.agent.monitor.inventory.jmx.JMXMetricInstance;
 import org.hawkular.agent.monitor.inventory.platform.PlatformAvailInstance;
 import org.hawkular.agent.monitor.inventory.platform.PlatformMetricInstance;
+import org.hawkular.agent.monitor.storage.OverflowPolicy;
 
 public class SchedulerConfiguration {
 
     public static final int DEFAULT_NUM_METRIC_SCHEDULER_THREADS = 2;
     public static final int DEFAULT_NUM_AVAIL_SCHEDULER_THREADS = 2;
+    public static final int DEFAULT_NUM_METRIC_DISPATCHER_THREADS = 1;
+    public static final int DEFAULT_NUM_AVAIL_DISPATCHER_THREADS = 1;
 
     public static final int DEFAULT_METRIC_DISPATCHER_BUFFER_SIZE = 1000;
     public static final int DEFAULT_METRIC_DISPATCHER_MAX_BATCH_SIZE = 100;
+    public static final int DEFAULT_METRIC_DISPATCHER_LINGER_MILLIS = 0;
     public static final int DEFAULT_AVAIL_DISPATCHER_BUFFER_SIZE = 500;
     public static final int DEFAULT_AVAIL_DISPATCHER_MAX_BATCH_SIZE = 50;
 
+    public static final OverflowPolicy DEFAULT_DISPATCHER_OVERFLOW_POLICY = OverflowPolicy.DROP_NEWEST;
+    public static final int DEFAULT_DISPATCHER_BLOCK_TIMEOUT_MILLIS = 1000;
+
+    public static final int DEFAULT_DMR_COMPOSITE_BATCH_SIZE = 100;
+
+    public static final boolean DEFAULT_SPREAD_COLLECTION_OFFSETS = false;
+
+    public static final int DEFAULT_MAX_TASK_GROUP_SIZE = 0;
+    public static final int DEFAULT_MAX_CONCURRENT_TASK_GROUPS_PER_ENDPOINT = 0;
+    public static final int DEFAULT_MAX_INTERVAL_STRETCH_FACTOR = 1;
+
     private int metricSchedulerThreads = DEFAULT_NUM_METRIC_SCHEDULER_THREADS;
     private int availSchedulerThreads = DEFAULT_NUM_AVAIL_SCHEDULER_THREADS;
+    private int metricDispatcherThreads = DEFAULT_NUM_METRIC_DISPATCHER_THREADS;
+    private int availDispatcherThreads = DEFAULT_NUM_AVAIL_DISPATCHER_THREADS;
 
     private int metricDispatcherBufferSize = DEFAULT_METRIC_DISPATCHER_BUFFER_SIZE;
     private int metricDispatcherMaxBatchSize = DEFAULT_METRIC_DISPATCHER_MAX_BATCH_SIZE;
+    private int metricDispatcherLingerMillis = DEFAULT_METRIC_DISPATCHER_LINGER_MILLIS;
 
     private int availDispatcherBufferSize = DEFAULT_AVAIL_DISPATCHER_BUFFER_SIZE;
     private int availDispatcherMaxBatchSize = DEFAULT_AVAIL_DISPATCHER_MAX_BATCH_SIZE;
 
+    private OverflowPolicy dispatcherOverflowPolicy = DEFAULT_DISPATCHER_OVERFLOW_POLICY;
+    private int dispatcherBlockTimeoutMillis = DEFAULT_DISPATCHER_BLOCK_TIMEOUT_MILLIS;
+
+    private int dmrCompositeBatchSize = DEFAULT_DMR_COMPOSITE_BATCH_SIZE;
+
+    private boolean spreadCollectionOffsets = DEFAULT_SPREAD_COLLECTION_OFFSETS;
+
+    private int maxTaskGroupSize = DEFAULT_MAX_TASK_GROUP_SIZE;
+    private int maxConcurrentTaskGroupsPerEndpoint = DEFAULT_MAX_CONCURRENT_TASK_GROUPS_PER_ENDPOINT;
+    private int maxIntervalStretchFactor = DEFAULT_MAX_INTERVAL_STRETCH_FACTOR;
+
     private final Map<DMREndpoint, List<DMRMetricInstance>> dmrMetricsToBeCollected = new HashMap<>();
     private final Map<DMREndpoint, List<DMRAvailInstance>> dmrAvailsToBeChecked = new HashMap<>();
 
@@ -60,6 +90,7 @@ public class SchedulerConfiguration {
 
     private MonitorServiceConfiguration.StorageAdapter storageAdapterConfig;
     private MonitorServiceConfiguration.Diagnostics diagnosticsConfig;
+    private File dataDirectory;
 
     public Map<DMREndpoint, List<DMRMetricInstance>> getDMRMetricsToBeCollected() {
         return Collections.unmodifiableMap(dmrMetricsToBeCollected);
@@ -161,6 +192,22 @@ public class SchedulerConfiguration {
         this.availSchedulerThreads = schedulerThreads;
     }
 
+    public int getMetricDispatcherThreads() {
+        return metricDispatcherThreads;
+    }
+
+    public void setMetricDispatcherThreads(int metricDispatcherThreads) {
+        this.metricDispatcherThreads = metricDispatcherThreads;
+    }
+
+    public int getAvailDispatcherThreads() {
+        return availDispatcherThreads;
+    }
+
+    public void setAvailDispatcherThreads(int availDispatcherThreads) {
+        this.availDispatcherThreads = availDispatcherThreads;
+    }
+
     public int getMetricDispatcherBufferSize() {
         return metricDispatcherBufferSize;
     }
@@ -177,6 +224,14 @@ public class SchedulerConfiguration {
         this.metricDispatcherMaxBatchSize = metricDispatcherMaxBatchSize;
     }
 
+    public int getMetricDispatcherLingerMillis() {
+        return metricDispatcherLingerMillis;
+    }
+
+    public void setMetricDispatcherLingerMillis(int metricDispatcherLingerMillis) {
+        this.metricDispatcherLingerMillis = metricDispatcherLingerMillis;
+    }
+
     public int getAvailDispatcherBufferSize() {
         return availDispatcherBufferSize;
     }
@@ -193,6 +248,62 @@ public class SchedulerConfiguration {
         this.availDispatcherMaxBatchSize = availDispatcherMaxBatchSize;
     }
 
+    public int getDmrCompositeBatchSize() {
+        return dmrCompositeBatchSize;
+    }
+
+    public void setDmrCompositeBatchSize(int dmrCompositeBatchSize) {
+        this.dmrCompositeBatchSize = dmrCompositeBatchSize;
+    }
+
+    public boolean isSpreadCollectionOffsets() {
+        return spreadCollectionOffsets;
+    }
+
+    public void setSpreadCollectionOffsets(boolean spreadCollectionOffsets) {
+        this.spreadCollectionOffsets = spreadCollectionOffsets;
+    }
+
+    public int getMaxTaskGroupSize() {
+        return maxTaskGroupSize;
+    }
+
+    public void setMaxTaskGroupSize(int maxTaskGroupSize) {
+        this.maxTaskGroupSize = maxTaskGroupSize;
+    }
+
+    public int getMaxConcurrentTaskGroupsPerEndpoint() {
+        return maxConcurrentTaskGroupsPerEndpoint;
+    }
+
+    public void setMaxConcurrentTaskGroupsPerEndpoint(int maxConcurrentTaskGroupsPerEndpoint) {
+        this.maxConcurrentTaskGroupsPerEndpoint = maxConcurrentTaskGroupsPerEndpoint;
+    }
+
+    public OverflowPolicy getDispatcherOverflowPolicy() {
+        return dispatcherOverflowPolicy;
+    }
+
+    public void setDispatcherOverflowPolicy(OverflowPolicy dispatcherOverflowPolicy) {
+        this.dispatcherOverflowPolicy = dispatcherOverflowPolicy;
+    }
+
+    public int getDispatcherBlockTimeoutMillis() {
+        return dispatcherBlockTimeoutMillis;
+    }
+
+    public void setDispatcherBlockTimeoutMillis(int dispatcherBlockTimeoutMillis) {
+        this.dispatcherBlockTimeoutMillis = dispatcherBlockTimeoutMillis;
+    }
+
+    public int getMaxIntervalStretchFactor() {
+        return maxIntervalStretchFactor;
+    }
+
+    public void setMaxIntervalStretchFactor(int maxIntervalStretchFactor) {
+        this.maxIntervalStretchFactor = maxIntervalStretchFactor;
+    }
+
     public MonitorServiceConfiguration.StorageAdapter getStorageAdapterConfig() {
         return this.storageAdapterConfig;
     }
@@ -208,5 +319,15 @@ public class SchedulerConfiguration {
     public void setDiagnosticsConfig(MonitorServiceConfiguration.Diagnostics config) {
         this.diagnosticsConfig = config;
     }
-}
 
+    /**
+     * @return the directory where the scheduler may write files that need to survive restarts
+     */
+    public File getDataDirectory() {
+        return dataDirectory;
+    }
+
+    public void setDataDirectory(File dataDirectory) {
+        this.dataDirectory = dataDirectory;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.agent.monitor.scheduler.polling;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import org.hawkular.agent.monitor.scheduler.config.MonitoredEndpoint;
+
+/**
+ * Limits how many task groups of the same endpoint can be executed at the same time. One instance is shared
+ * by all schedulers so the limit holds no matter whether the groups collect metrics or check availability.
+ */
+public class EndpointPermits {
+
+    private final int maxConcurrentGroupsPerEndpoint;
+    private final Map<MonitoredEndpoint, Semaphore> permits = new HashMap<>();
+
+    /**
+     * @param maxConcurrentGroupsPerEndpoint how many groups of the same endpoint can run at the same time;
+     *                                       zero or less means there is no limit
+     */
+    public EndpointPermits(int maxConcurrentGroupsPerEndpoint) {
+        this.maxConcurrentGroupsPerEndpoint = maxConcurrentGroupsPerEndpoint;
+    }
+
+    public boolean isLimited() {
+        return maxConcurrentGroupsPerEndpoint > 0;
+    }
+
+    /**
+     * @param endpoint the endpoint whose groups are to be limited
+     * @return the permits all groups of the given endpoint have to share
+     */
+    public synchronized Semaphore getPermits(MonitoredEndpoint endpoint) {
+        Semaphore semaphore = permits.get(endpoint);
+        if (semaphore == null) {
+            semaphore = new Semaphore(maxConcurrentGroupsPerEndpoint);
+            permits.put(endpoint, semaphore);
+        }
+        return semaphore;
+    }
+}
@@ -18,48 +18,199 @@ package org.hawkular.agent.monitor.scheduler.polling;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
+import org.hawkular.agent.monitor.diagnostics.DiagnosticsImpl;
 import org.hawkular.agent.monitor.scheduler.SchedulerService;
+import org.hawkular.agent.monitor.scheduler.config.SchedulerConfiguration;
 import org.hawkular.agent.monitor.service.ThreadFactoryGenerator;
 import org.jboss.logging.Logger;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
 public class IntervalBasedScheduler implements Scheduler {
 
     private static final Logger LOGGER = Logger.getLogger(IntervalBasedScheduler.class);
 
+    private static final int OVERRUNS_BEFORE_STRETCH = 3;
+
     private final SchedulerService schedulerService;
     private final ScheduledExecutorService executorService;
-    private final List<ScheduledFuture<?>> jobs;
+    private final Map<String, TaskBucket> buckets;
+    private final boolean spreadOffsets;
+    private final int maxGroupSize;
+    private final EndpointPermits endpointPermits;
+    private final int maxIntervalStretchFactor;
 
     private boolean started = false;
+    private int nextBucketIndex = 0;
 
     public IntervalBasedScheduler(SchedulerService schedulerService, String name, int schedulerThreads) {
+        this(schedulerService, name, schedulerThreads, new SchedulerConfiguration());
+    }
+
+    /**
+     * @param schedulerService provides the runnables for the scheduled task groups
+     * @param name the name of the scheduler threads
+     * @param schedulerThreads the number of threads that execute the task groups
+     * @param config determines whether the first execution of each group is delayed by its
+     *               {@link TaskGroup#getSpreadOffsetMillis() spread offset}, how big the groups can get,
+     *               how many groups of the same endpoint can be executed at the same time and how far
+     *               the interval of a group that keeps overrunning can be stretched
+     */
+    public IntervalBasedScheduler(SchedulerService schedulerService, String name, int schedulerThreads,
+            SchedulerConfiguration config) {
+        this(schedulerService, name, schedulerThreads, config,
+                new EndpointPermits(config.getMaxConcurrentTaskGroupsPerEndpoint()));
+    }
+
+    /**
+     * @param schedulerService provides the runnables for the scheduled task groups
+     * @param name the name of the scheduler threads
+     * @param schedulerThreads the number of threads that execute the task groups
+     * @param config determines whether the first execution of each group is delayed by its
+     *               {@link TaskGroup#getSpreadOffsetMillis() spread offset}, how big the groups can get
+     *               and how far the interval of a group that keeps overrunning can be stretched
+     * @param endpointPermits limits how many groups of the same endpoint can be executed at the same time;
+     *                        pass the same instance to all schedulers that talk to the same endpoints
+     */
+    public IntervalBasedScheduler(SchedulerService schedulerService, String name, int schedulerThreads,
+            SchedulerConfiguration config, EndpointPermits endpointPermits) {
         this.schedulerService = schedulerService;
+        this.spreadOffsets = config.isSpreadCollectionOffsets();
+        this.maxGroupSize = config.getMaxTaskGroupSize();
+        this.endpointPermits = endpointPermits;
+        this.maxIntervalStretchFactor = Math.max(1, config.getMaxIntervalStretchFactor());
 
         ThreadFactory threadFactory = ThreadFactoryGenerator.generateFactory(true, name);
         this.executorService = Executors.newScheduledThreadPool(schedulerThreads, threadFactory);
 
-        this.jobs = new LinkedList<>();
+        this.buckets = new LinkedHashMap<>();
 
     }
 
+    /**
+     * All the tasks of the same kind, type and interval, along with the jobs that execute the groups those
+     * tasks are split into. Tasks of different buckets never end up in the same group, so adding tasks to or
+     * removing tasks from one bucket never affects the groups of any other bucket.
+     */
+    private static class TaskBucket {
+        private final int index; // identifies the bucket in diagnostics without naming its endpoint
+        private final Set<Task> tasks = new LinkedHashSet<>();
+        private final List<GroupJob> jobs = new ArrayList<>();
+
+        public TaskBucket(int index) {
+            this.index = index;
+        }
+    }
+
     @Override
-    public void schedule(List<Task> tasks) {
+    public synchronized void schedule(List<Task> tasks) {
         if (this.started) {
             return; // already running
         }
 
-        // optimize task groups
-        List<TaskGroup> groups = new IntervalGrouping().separateIntoGroups(tasks);
+        for (Task task : tasks) {
+            getBucket(task).tasks.add(task);
+        }
+
+        int groupCount = 0;
+        for (TaskBucket bucket : buckets.values()) {
+            groupCount += regroup(bucket);
+        }
+
+        LOGGER.debugf("Scheduling [%d] tasks in [%d] task groups", tasks.size(), groupCount);
+
+        this.started = true;
+    }
+
+    @Override
+    public synchronized void reschedule(List<Task> tasksToAdd, List<Task> tasksToRemove) {
+        if (!this.started) {
+            return; // not running
+        }
+
+        Set<TaskBucket> affectedBuckets = new LinkedHashSet<>();
+        for (Task task : tasksToRemove) {
+            TaskBucket bucket = buckets.get(getBucketKey(task));
+            if (bucket != null && bucket.tasks.remove(task)) {
+                affectedBuckets.add(bucket);
+            }
+        }
+        for (Task task : tasksToAdd) {
+            TaskBucket bucket = getBucket(task);
+            if (bucket.tasks.add(task)) {
+                affectedBuckets.add(bucket);
+            }
+        }
+
+        int groupCount = 0;
+        for (TaskBucket bucket : affectedBuckets) {
+            groupCount += regroup(bucket);
+        }
+
+        // forget the buckets whose tasks are all gone
+        Iterator<TaskBucket> iter = buckets.values().iterator();
+        while (iter.hasNext()) {
+            if (iter.next().tasks.isEmpty()) {
+                iter.remove();
+            }
+        }
+
+        LOGGER.debugf("Added [%d] and removed [%d] tasks; rescheduled [%d] task groups of [%d] affected buckets",
+                tasksToAdd.size(), tasksToRemove.size(), groupCount, affectedBuckets.size());
+    }
+
+    private String getBucketKey(Task task) {
+        return task.getKind().getId() + "|" + task.getType() + "|" + task.getInterval().millis();
+    }
+
+    private TaskBucket getBucket(Task task) {
+        String key = getBucketKey(task);
+        TaskBucket bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new TaskBucket(nextBucketIndex++);
+            buckets.put(key, bucket);
+        }
+        return bucket;
+    }
 
-        LOGGER.debugf("Scheduling [%d] tasks in [%d] task groups", tasks.size(), groups.size());
+    /**
+     * Replaces the jobs of the given bucket with jobs for groups built from the bucket's current tasks.
+     * A job whose group still has exactly the same tasks is kept as it is. A new group that takes the place
+     * of an old group of the same partition continues on the grid of the old group, so the tasks that were
+     * already being executed keep their rhythm, and it shares the old job's run lock, so it never runs while
+     * an execution of the old job is still in progress.
+     *
+     * @return the number of groups the bucket's tasks are now split into
+     */
+    private int regroup(TaskBucket bucket) {
+        Map<Integer, GroupJob> oldJobs = new HashMap<>();
+        for (GroupJob job : bucket.jobs) {
+            oldJobs.put(job.group.getPartition(), job);
+        }
+        bucket.jobs.clear();
+
+        // optimize task groups
+        List<TaskGroup> groups = new IntervalGrouping(maxGroupSize).separateIntoGroups(
+                new ArrayList<>(bucket.tasks));
 
         if (LOGGER.isTraceEnabled()) {
             StringBuilder str = new StringBuilder("SCHEDULED TASKS\n");
@@ -80,30 +231,282 @@ public class IntervalBasedScheduler implements Scheduler {
 
         // schedule
         for (TaskGroup group : groups) {
+            GroupJob oldJob = oldJobs.remove(group.getPartition());
+            if (oldJob != null && hasSameTasks(oldJob.group, group)) {
+                bucket.jobs.add(oldJob);
+                continue;
+            }
+            if (oldJob != null) {
+                oldJob.cancel();
+            }
             if (!group.isEmpty()) {
-                jobs.add(executorService.scheduleWithFixedDelay(
-                        schedulerService.getTaskGroupRunnable(group),
-                        group.getOffsetMillis(),
-                        group.getInterval().millis(),
-                        MILLISECONDS));
+                final Runnable runnable = limitConcurrency(group, schedulerService.getTaskGroupRunnable(group));
+                if (oldJob != null) {
+                    GroupJob job = new GroupJob(bucket, group, runnable, oldJob.runLock);
+                    bucket.jobs.add(job);
+                    job.resume(oldJob.gridStartMillis);
+                } else {
+                    GroupJob job = new GroupJob(bucket, group, runnable, new ReentrantLock());
+                    bucket.jobs.add(job);
+                    job.start((spreadOffsets) ? group.getSpreadOffsetMillis() : group.getOffsetMillis());
+                }
             } else {
                 LOGGER.debugf("Group [%s] is empty. Nothing to schedule", group);
             }
         }
 
-        this.started = true;
+        // partitions that no longer exist
+        for (GroupJob oldJob : oldJobs.values()) {
+            oldJob.cancel();
+        }
+
+        return groups.size();
+    }
+
+    private static boolean hasSameTasks(TaskGroup oldGroup, TaskGroup newGroup) {
+        if (oldGroup.size() != newGroup.size()) {
+            return false;
+        }
+        Set<Task> oldTasks = new HashSet<>(oldGroup.size());
+        for (Task task : oldGroup) {
+            oldTasks.add(task);
+        }
+        for (Task task : newGroup) {
+            if (!oldTasks.contains(task)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * If there is a limit on how many groups of the same endpoint can be executed at the same time,
+     * this wraps the given runnable so it only runs if the endpoint has a permit to spare. If it has not,
+     * the collection is skipped rather than blocking a scheduler thread until a permit is released;
+     * the group simply tries again at the next point of its grid.
+     */
+    private Runnable limitConcurrency(final TaskGroup group, final Runnable runnable) {
+        if (!endpointPermits.isLimited()) {
+            return runnable;
+        }
+
+        // all tasks of a group talk to the same endpoint
+        final Semaphore endpointSemaphore = endpointPermits.getPermits(group.getTask(0).getEndpoint());
+        return new Runnable() {
+            @Override
+            public void run() {
+                if (!endpointSemaphore.tryAcquire()) {
+                    schedulerService.getDiagnostics().getSkippedCollectionRate().mark();
+                    LOGGER.tracef("Group [%s] skipped a collection because its endpoint is busy", group);
+                    return;
+                }
+                try {
+                    runnable.run();
+                } finally {
+                    endpointSemaphore.release();
+                }
+            }
+        };
+    }
+
+    /**
+     * Executes a group at fixed points in time that are aligned to a grid that starts with the group's first
+     * execution and has the group's interval as its step. If an execution takes so long that it misses
+     * one or more points of the grid, those collections are skipped rather than run late, so
+     * collection times never drift away from the grid.
+     *
+     * If a group overruns its interval {@link #OVERRUNS_BEFORE_STRETCH} times in a row, its effective
+     * interval is doubled (up to the max stretch factor). Because the effective interval is always a
+     * multiple of the configured one, the group stays on the same grid. Once the group runs fast enough
+     * again, its effective interval is halved again step by step.
+     */
+    private class GroupJob implements Runnable {
+        private final TaskGroup group;
+        private final Runnable runnable;
+        private final ReentrantLock runLock;
+        private final long intervalMillis;
+        private final String effectiveIntervalGaugeName;
+        private volatile int stretchFactor = 1;
+        private boolean countedAsStretched = false;
+        private int overruns = 0;
+        private int underruns = 0;
+        private long gridStartMillis;
+        private long scheduledMillis;
+        private volatile ScheduledFuture<?> future;
+        private volatile boolean cancelled = false;
+
+        /**
+         * @param runLock held while the group executes; a job that replaces another job of the same
+         *                partition gets the lock of the replaced job
+         */
+        public GroupJob(TaskBucket bucket, TaskGroup group, Runnable runnable, ReentrantLock runLock) {
+            this.group = group;
+            this.runnable = runnable;
+            this.runLock = runLock;
+            this.intervalMillis = group.getInterval().millis();
+            // the group's kind ID would tell the endpoint's host and user, so the bucket's index is used instead
+            this.effectiveIntervalGaugeName = DiagnosticsImpl.name(schedulerService.getSelfIdentifiers(),
+                    String.format("scheduler.effective-interval-secs.%s.%d.%d.%d",
+                            group.getType().name().toLowerCase(), bucket.index, group.getPartition(),
+                            TimeUnit.SECONDS.convert(intervalMillis, MILLISECONDS)));
+        }
+
+        public void start(long offsetMillis) {
+            long nowMillis = System.currentTimeMillis();
+            startOnGrid(nowMillis + offsetMillis, nowMillis + offsetMillis, nowMillis);
+        }
+
+        /**
+         * Starts executing the group on the grid of the group it replaces, at the next point of that grid
+         * that is still in the future.
+         *
+         * @param gridStartMillis the start of the grid of the replaced group
+         */
+        public void resume(long gridStartMillis) {
+            long nowMillis = System.currentTimeMillis();
+            long firstMillis = gridStartMillis;
+            if (firstMillis < nowMillis) {
+                firstMillis = gridStartMillis
+                        + (((nowMillis - gridStartMillis) / intervalMillis) + 1) * intervalMillis;
+            }
+            startOnGrid(gridStartMillis, firstMillis, nowMillis);
+        }
+
+        private void startOnGrid(long gridStartMillis, long firstMillis, long nowMillis) {
+            MetricRegistry registry = schedulerService.getDiagnostics().getMetricRegistry();
+            registry.remove(effectiveIntervalGaugeName);
+            registry.register(effectiveIntervalGaugeName, new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return TimeUnit.SECONDS.convert(intervalMillis * stretchFactor, MILLISECONDS);
+                }
+            });
+
+            this.gridStartMillis = gridStartMillis;
+            this.scheduledMillis = firstMillis;
+            this.future = executorService.schedule(this, firstMillis - nowMillis, MILLISECONDS);
+        }
+
+        public void cancel() {
+            this.cancelled = true;
+            ScheduledFuture<?> f = this.future;
+            if (f != null) {
+                f.cancel(false);
+            }
+            schedulerService.getDiagnostics().getMetricRegistry().remove(effectiveIntervalGaugeName);
+            countStretched();
+        }
+
+        /**
+         * Keeps the diagnostics' count of stretched groups in line with whether this group is stretched.
+         * A cancelled group no longer counts.
+         */
+        private synchronized void countStretched() {
+            boolean stretched = !cancelled && stretchFactor > 1;
+            if (stretched != countedAsStretched) {
+                if (stretched) {
+                    schedulerService.getDiagnostics().getStretchedTaskGroupCount().inc();
+                } else {
+                    schedulerService.getDiagnostics().getStretchedTaskGroupCount().dec();
+                }
+                countedAsStretched = stretched;
+            }
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+
+            final long startMillis = System.currentTimeMillis();
+            // the job this one replaced may still be executing; rather than overlap with it, skip this point
+            final boolean locked = runLock.tryLock();
+            if (locked) {
+                try {
+                    schedulerService.getDiagnostics().getCollectionsPerSecondHistogram().mark();
+                    runnable.run();
+                } catch (Throwable t) {
+                    LOGGER.debugf(t, "Execution of group [%s] failed", group);
+                } finally {
+                    runLock.unlock();
+                }
+            } else {
+                schedulerService.getDiagnostics().getSkippedCollectionRate().mark();
+                LOGGER.tracef("Group [%s] skipped a collection because the group it replaced is still running",
+                        group);
+            }
+            final long nowMillis = System.currentTimeMillis();
+
+            if (locked) {
+                adjustStretchFactor(nowMillis - startMillis);
+            }
+
+            // the next point on the grid of the effective interval that is still in the future
+            final long effectiveIntervalMillis = intervalMillis * stretchFactor;
+            long nextMillis = gridStartMillis
+                    + (((nowMillis - gridStartMillis) / effectiveIntervalMillis) + 1) * effectiveIntervalMillis;
+            long skipped = ((nextMillis - scheduledMillis) / effectiveIntervalMillis) - 1;
+            if (skipped > 0) {
+                schedulerService.getDiagnostics().getSkippedCollectionRate().mark(skipped);
+                LOGGER.tracef("Group [%s] skipped [%d] collections because it took [%d] ms", group, skipped,
+                        nowMillis - startMillis);
+            }
+            scheduledMillis = nextMillis;
+
+            if (!cancelled) {
+                try {
+                    future = executorService.schedule(this, nextMillis - nowMillis, MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    // we are being shut down
+                }
+            }
+        }
+
+        private void adjustStretchFactor(long durationMillis) {
+            if (maxIntervalStretchFactor <= 1) {
+                return;
+            }
+
+            if (durationMillis > intervalMillis * stretchFactor) {
+                underruns = 0;
+                if (++overruns >= OVERRUNS_BEFORE_STRETCH && stretchFactor < maxIntervalStretchFactor) {
+                    stretchFactor = Math.min(stretchFactor * 2, maxIntervalStretchFactor);
+                    overruns = 0;
+                    countStretched();
+                    LOGGER.debugf("Group [%s] keeps overrunning its interval; stretching it by a factor of [%d]",
+                            group, stretchFactor);
+                }
+            } else if (stretchFactor > 1 && durationMillis < (intervalMillis * (stretchFactor / 2)) / 2) {
+                // it would comfortably fit into the next shorter interval
+                overruns = 0;
+                if (++underruns >= OVERRUNS_BEFORE_STRETCH) {
+                    stretchFactor = stretchFactor / 2;
+                    underruns = 0;
+                    countStretched();
+                    LOGGER.debugf("Group [%s] is fast enough again; stretching its interval by a factor of [%d]",
+                            group, stretchFactor);
+                }
+            } else {
+                overruns = 0;
+                underruns = 0;
+            }
+        }
     }
 
     @Override
-    public void shutdown() {
+    public synchronized void shutdown() {
         if (!this.started) {
             return; // already shutdown
         }
 
         try {
-            for (ScheduledFuture<?> job : jobs) {
-                job.cancel(false);
+            for (TaskBucket bucket : buckets.values()) {
+                for (GroupJob job : bucket.jobs) {
+                    job.cancel();
+                }
             }
+            buckets.clear();
             executorService.shutdown();
             executorService.awaitTermination(5, TimeUnit.SECONDS);
 
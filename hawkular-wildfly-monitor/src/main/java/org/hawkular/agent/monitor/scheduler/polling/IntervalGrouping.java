@@ -29,9 +29,26 @@ import org.hawkular.agent.monitor.scheduler.polling.Task.Type;
 /**
  * Creates task groups based on task intervals. Groups are ensured
  * to only have the same types and same kinds.
+ *
+ * If a maximum group size is given, tasks that would otherwise all end up in one group are split
+ * into several groups (partitions) of at most that size so they can be executed in parallel.
+ * Each task is only ever put in one group, so the data of any one task is still collected in order.
  */
 public class IntervalGrouping {
 
+    private final int maxGroupSize;
+
+    public IntervalGrouping() {
+        this(0);
+    }
+
+    /**
+     * @param maxGroupSize the maximum number of tasks in a group; if 0 or less, groups are not limited in size
+     */
+    public IntervalGrouping(int maxGroupSize) {
+        this.maxGroupSize = maxGroupSize;
+    }
+
     public List<TaskGroup> separateIntoGroups(final List<Task> allTasks) {
 
         if (allTasks == null || allTasks.isEmpty()) {
@@ -92,17 +109,22 @@ public class IntervalGrouping {
             }
         });
 
-        // build task groups - one group per interval
+        // build task groups - one group per interval (or more if the group would get too big)
         List<TaskGroup> groups = new ArrayList<>();
         Interval interval = tasks.get(0).getInterval();
-        TaskGroup taskGroup = new TaskGroup(interval);
+        int partition = 0;
+        TaskGroup taskGroup = new TaskGroup(interval, partition);
         groups.add(taskGroup);
 
         for (Task task : tasks) {
             if (!task.getInterval().equals(interval)) {
                 // new group
                 interval = task.getInterval();
-                groups.add(new TaskGroup(task.getInterval()));
+                partition = 0;
+                groups.add(new TaskGroup(task.getInterval(), partition));
+            } else if (maxGroupSize > 0 && groups.get(groups.size() - 1).size() >= maxGroupSize) {
+                // same interval but the group is full - start another partition
+                groups.add(new TaskGroup(task.getInterval(), ++partition));
             }
 
             groups.get(groups.size() - 1).addTask(task);
@@ -30,6 +30,15 @@ public interface Scheduler {
      */
     void schedule(List<Task> tasks);
 
+    /**
+     * Adds tasks to and removes tasks from the schedule while the scheduler keeps running. Only the groups
+     * the added or removed tasks belong to are rebuilt; all other tasks keep being executed as before.
+     *
+     * @param tasksToAdd tasks to start executing
+     * @param tasksToRemove tasks, as previously given to the scheduler, to stop executing
+     */
+    void reschedule(List<Task> tasksToAdd, List<Task> tasksToRemove);
+
     /**
      * Shuts down the scheduler. No more tasks will be executed after this returns.
      */
@@ -17,6 +17,7 @@
 package org.hawkular.agent.monitor.scheduler.polling;
 
 import org.hawkular.agent.monitor.scheduler.config.Interval;
+import org.hawkular.agent.monitor.scheduler.config.MonitoredEndpoint;
 
 /**
  * A task that can define an interval for periodic execution.
@@ -62,4 +63,9 @@ public interface Task {
      */
     KeyGenerator getKeyGenerator();
 
+    /**
+     * @return the endpoint the task collects its data from
+     */
+    MonitoredEndpoint getEndpoint();
+
 }
@@ -40,14 +40,20 @@ public class TaskGroup implements Iterable<Task> {
     private final String id; // to uniquely reference this group
     private final Interval interval; // impacts thread scheduling
     private final long offsetMillis;
+    private final int partition; // distinguishes groups that split up tasks of the same kind and interval
     private final LinkedList<Task> tasks;
     private Type type;
     private Kind kind;
 
     public TaskGroup(final Interval interval) {
+        this(interval, 0);
+    }
+
+    public TaskGroup(final Interval interval, final int partition) {
         this.offsetMillis = 0; // don't wait to collect the first time
         this.id = UUID.randomUUID().toString();
         this.interval = interval;
+        this.partition = partition;
         this.tasks = new LinkedList<>();
     }
 
@@ -102,6 +108,37 @@ public class TaskGroup implements Iterable<Task> {
         return offsetMillis;
     }
 
+    public int getPartition() {
+        return partition;
+    }
+
+    /**
+     * Returns an offset somewhere within the group's interval that is derived only from the group's
+     * kind (which includes the endpoint), type, interval and partition. Scheduling groups with this offset
+     * spreads their collections across the interval instead of running them all at the same instant,
+     * and the same group always gets the same offset, even across restarts.
+     *
+     * @return offset in [0, interval) or {@link #getOffsetMillis()} if the group is empty
+     */
+    public long getSpreadOffsetMillis() {
+        long intervalMillis = interval.millis();
+        if (kind == null || intervalMillis <= 0) {
+            return offsetMillis;
+        }
+
+        String key = kind.getId() + "|" + type + "|" + intervalMillis + "|" + partition;
+
+        // String.hashCode on similar keys clusters badly, so mix its bits before using it
+        long hash = key.hashCode();
+        hash ^= (hash >>> 33);
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= (hash >>> 33);
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= (hash >>> 33);
+
+        return (hash & Long.MAX_VALUE) % intervalMillis;
+    }
+
     public Task getTask(int i) {
         return tasks.get(i);
     }
@@ -112,6 +149,7 @@ public class TaskGroup implements Iterable<Task> {
         str.append("id=[").append(id).append("]");
         str.append(", type=[").append(type).append("]");
         str.append(", interval=[").append(interval).append("]");
+        str.append(", partition=[").append(partition).append("]");
         str.append(", size=[").append(size()).append("]");
         return str.toString();
     }
@@ -40,105 +40,189 @@ public class AvailDMRTaskGroupRunnable implements Runnable {
     private final AvailCompletionHandler completionHandler;
     private final Diagnostics diagnostics;
     private final ModelControllerClientFactory mccFactory;
+    private final AvailDMRTask[] tasks;
     private final ModelNode[] operations;
+    private final ModelNode[] batchOperations;
+    private final int maxBatchSize;
 
     public AvailDMRTaskGroupRunnable(TaskGroup group, AvailCompletionHandler completionHandler,
             Diagnostics diagnostics, ModelControllerClientFactory mccFactory) {
+        this(group, completionHandler, diagnostics, mccFactory, 0);
+    }
+
+    /**
+     * Creates the runnable that checks the availabilities of all the tasks in the given group.
+     *
+     * @param group the avail tasks to be executed
+     * @param completionHandler where the avail data points are sent
+     * @param diagnostics tracks our internal metrics
+     * @param mccFactory creates clients to the DMR endpoint of the group's tasks
+     * @param maxBatchSize if greater than 1, the avails are checked with composite operations of at most this
+     *                     many steps each; otherwise, one request per avail check is sent
+     */
+    public AvailDMRTaskGroupRunnable(TaskGroup group, AvailCompletionHandler completionHandler,
+            Diagnostics diagnostics, ModelControllerClientFactory mccFactory, int maxBatchSize) {
         this.group = group;
         this.completionHandler = completionHandler;
         this.diagnostics = diagnostics;
         this.mccFactory = mccFactory;
+        this.maxBatchSize = maxBatchSize;
 
-        // for the lifetime of this runnable, the operation is immutable and can be re-used
-        this.operations = new ReadAttributeOrResourceOperationBuilder().createOperations(group);
+        this.tasks = new AvailDMRTask[group.size()];
+        int i = 0;
+        for (Task task : group) {
+            this.tasks[i++] = (AvailDMRTask) task;
+        }
+
+        // for the lifetime of this runnable, the operations are immutable and can be re-used
+        ReadAttributeOrResourceOperationBuilder operationBuilder = new ReadAttributeOrResourceOperationBuilder();
+        this.operations = operationBuilder.createOperations(group);
+        this.batchOperations = (maxBatchSize > 1) ? operationBuilder.createBatchOperations(group, maxBatchSize)
+                : null;
     }
 
     @Override
     public void run() {
-        int operationIndex = -1;
+        int taskIndex = 0; // the task we are working on - this is important in the catch block
 
         try (JBossASClient client = new JBossASClient(mccFactory.createClient())) {
+            if (this.batchOperations != null) {
+                for (int i = 0; i < this.batchOperations.length; i++) {
+                    final ModelNode[] stepResponses = executeBatch(client, i);
+                    for (ModelNode stepResponse : stepResponses) {
+                        if (stepResponse == null) {
+                            // the composite failed and this step didn't succeed - check it on its own
+                            stepResponse = executeSingle(client, taskIndex);
+                        }
+                        processResponse(this.tasks[taskIndex], stepResponse);
+                        taskIndex++;
+                    }
+                }
+            } else {
+                for (; taskIndex < this.tasks.length; taskIndex++) {
+                    processResponse(this.tasks[taskIndex], executeSingle(client, taskIndex));
+                }
+            }
+        } catch (Throwable e) {
+            this.diagnostics.getDMRErrorRate().mark(1);
+            completionHandler.onFailed(e);
+            // we are going to artifically mark the availabilities UNKNOWN since we really don't know
+            // only mark the ones we didn't get to yet and the one we are currently worked on
+            for (int i = taskIndex; i < this.tasks.length; i++) {
+                completionHandler.onCompleted(new AvailDataPoint(this.tasks[i], Avail.UNKNOWN));
+            }
+        }
+    }
 
-            for (ModelNode operation : this.operations) {
-                operationIndex++; // move to the one we are working on - this is important in the catch block
+    /**
+     * Sends the composite operation with the given index and returns the response of each of its steps.
+     * If the composite as a whole failed (e.g. because one of the resources no longer exists), only
+     * the successful steps are returned - the others are left null so the caller checks them separately
+     * and a single bad address does not take down the avail of the whole batch.
+     */
+    private ModelNode[] executeBatch(JBossASClient client, int batchIndex) throws Exception {
+        final int firstTaskIndex = batchIndex * this.maxBatchSize;
+        final int steps = Math.min(this.maxBatchSize, this.tasks.length - firstTaskIndex);
 
-                // execute request
-                final Timer.Context requestContext = diagnostics.getDMRRequestTimer().time();
-                final ModelNode response = client.execute(operation);
-                final long durationNanos = requestContext.stop();
-                final long durationMs = TimeUnit.MILLISECONDS.convert(durationNanos, TimeUnit.NANOSECONDS);
+        // execute request
+        final Timer.Context requestContext = diagnostics.getDMRBatchRequestTimer().time();
+        final ModelNode response = client.execute(this.batchOperations[batchIndex]);
+        final long durationNanos = requestContext.stop();
+        final long durationMs = TimeUnit.MILLISECONDS.convert(durationNanos, TimeUnit.NANOSECONDS);
 
-                final AvailDMRTask task = (AvailDMRTask) group.getTask(operationIndex);
+        if (durationMs > group.getInterval().millis()) {
+            diagnostics.getDMRDelayedRate().mark(1);
+        }
 
-                if (JBossASClient.isSuccess(response)) {
+        // all steps shared one round trip, so each step is charged an equal share of it
+        final long stepDurationNanos = durationNanos / steps;
+        final boolean batchSuccess = JBossASClient.isSuccess(response);
+        final ModelNode results = JBossASClient.getResults(response);
+        final ModelNode[] stepResponses = new ModelNode[steps];
 
-                    if (durationMs > group.getInterval().millis()) {
-                        diagnostics.getDMRDelayedRate().mark(1);
-                    }
+        for (int step = 0; step < steps; step++) {
+            final String stepName = "step-" + (step + 1);
+            final ModelNode stepResponse = results.has(stepName) ? results.get(stepName) : null;
 
-                    // deconstruct model node
-                    Avail avail;
-                    if (task.getAttribute() == null) {
-                        // step operation didn't read any attribute, it just read the resource to see if it exists
-                        avail = Avail.UP;
-                    } else {
-                        // operation read attribute; need to see what avail that attrib value corresponds to
-                        final ModelNode result = JBossASClient.getResults(response);
-                        if (result.getType() != ModelType.UNDEFINED) {
-                            if (result.getType() == ModelType.LIST) {
-                                // a avail request that asked to aggregate avail across potentially multiple resources
-                                LOG.tracef("Task [%s] resulted in aggregated avail: %s", task, result);
-                                Avail aggregate = null;
-                                List<ModelNode> listNodes = result.asList();
-                                for (ModelNode listNode : listNodes) {
-                                    if (JBossASClient.isSuccess(listNode)) {
-                                        avail = getAvailFromResponse(listNode, task);
-                                        // If we don't know the avail yet, set it to the first avail result we get.
-                                        // Otherwise, if the aggregate is down, it stays down (we don't have the
-                                        // concept of MIXED). The aggregate stays as it was unless the new avail
-                                        // is down in which case aggregate goes down.
-                                        if (aggregate == null) {
-                                            aggregate = avail;
-                                        } else {
-                                            aggregate = (avail == Avail.DOWN) ? Avail.DOWN : aggregate;
-                                        }
-                                    } else {
-                                        // a resource failed to report avail but keep going and aggregate the others
-                                        this.diagnostics.getDMRErrorRate().mark(1);
-                                        LOG.debugf("Failed to fully aggregate avail for task [%s]: %s ", task,
-                                                listNode);
-                                    }
+            if (stepResponse != null && (batchSuccess || JBossASClient.isSuccess(stepResponse))) {
+                diagnostics.getDMRRequestTimer().update(stepDurationNanos, TimeUnit.NANOSECONDS);
+                stepResponses[step] = stepResponse;
+            } else {
+                LOG.tracef("Composite step [%s] did not succeed, checking it separately: %s", stepName, response);
+            }
+        }
+
+        return stepResponses;
+    }
+
+    private ModelNode executeSingle(JBossASClient client, int taskIndex) throws Exception {
+        // execute request
+        final Timer.Context requestContext = diagnostics.getDMRRequestTimer().time();
+        final ModelNode response = client.execute(this.operations[taskIndex]);
+        final long durationNanos = requestContext.stop();
+        final long durationMs = TimeUnit.MILLISECONDS.convert(durationNanos, TimeUnit.NANOSECONDS);
+
+        if (JBossASClient.isSuccess(response) && durationMs > group.getInterval().millis()) {
+            diagnostics.getDMRDelayedRate().mark(1);
+        }
+
+        return response;
+    }
+
+    private void processResponse(AvailDMRTask task, ModelNode response) {
+        if (JBossASClient.isSuccess(response)) {
+
+            // deconstruct model node
+            Avail avail;
+            if (task.getAttribute() == null) {
+                // operation didn't read any attribute, it just read the resource to see if it exists
+                avail = Avail.UP;
+                completionHandler.onCompleted(new AvailDataPoint(task, avail));
+            } else {
+                // operation read attribute; need to see what avail that attrib value corresponds to
+                final ModelNode result = JBossASClient.getResults(response);
+                if (result.getType() != ModelType.UNDEFINED) {
+                    if (result.getType() == ModelType.LIST) {
+                        // a avail request that asked to aggregate avail across potentially multiple resources
+                        LOG.tracef("Task [%s] resulted in aggregated avail: %s", task, result);
+                        Avail aggregate = null;
+                        List<ModelNode> listNodes = result.asList();
+                        for (ModelNode listNode : listNodes) {
+                            if (JBossASClient.isSuccess(listNode)) {
+                                avail = getAvailFromResponse(listNode, task);
+                                // If we don't know the avail yet, set it to the first avail result we get.
+                                // Otherwise, if the aggregate is down, it stays down (we don't have the
+                                // concept of MIXED). The aggregate stays as it was unless the new avail
+                                // is down in which case aggregate goes down.
+                                if (aggregate == null) {
+                                    aggregate = avail;
+                                } else {
+                                    aggregate = (avail == Avail.DOWN) ? Avail.DOWN : aggregate;
                                 }
-                                completionHandler.onCompleted(new AvailDataPoint(task, aggregate));
                             } else {
-                                avail = getAvailFromResponse(response, task);
-                                completionHandler.onCompleted(new AvailDataPoint(task, avail));
+                                // a resource failed to report avail but keep going and aggregate the others
+                                this.diagnostics.getDMRErrorRate().mark(1);
+                                LOG.debugf("Failed to fully aggregate avail for task [%s]: %s ", task, listNode);
                             }
                         }
-                    }
-
-
-                } else {
-                    if (task.getAttribute() == null) {
-                        // operation didn't read any attribute, it just read the resource to see if it exists
-                        completionHandler.onCompleted(new AvailDataPoint(task, Avail.DOWN));
+                        completionHandler.onCompleted(new AvailDataPoint(task, aggregate));
                     } else {
-                        this.diagnostics.getDMRErrorRate().mark(1);
-                        String err = JBossASClient.getFailureDescription(response);
-                        completionHandler.onFailed(new RuntimeException(err));
-
-                        // we are going to artifically mark the availabilities UNKNOWN since we really don't know
-                        completionHandler.onCompleted(new AvailDataPoint(task, Avail.UNKNOWN));
+                        avail = getAvailFromResponse(response, task);
+                        completionHandler.onCompleted(new AvailDataPoint(task, avail));
                     }
                 }
             }
-        } catch (Throwable e) {
-            this.diagnostics.getDMRErrorRate().mark(1);
-            completionHandler.onFailed(e);
-            // we are going to artifically mark the availabilities UNKNOWN since we really don't know
-            // only mark the ones we didn't get to yet and the one we are currently worked on
-            for (int i = operationIndex; i < this.group.size(); i++) {
-                Task task = this.group.getTask(i);
+
+        } else {
+            if (task.getAttribute() == null) {
+                // operation didn't read any attribute, it just read the resource to see if it exists
+                completionHandler.onCompleted(new AvailDataPoint(task, Avail.DOWN));
+            } else {
+                this.diagnostics.getDMRErrorRate().mark(1);
+                String err = JBossASClient.getFailureDescription(response);
+                completionHandler.onFailed(new RuntimeException(err));
+
+                // we are going to artifically mark the availabilities UNKNOWN since we really don't know
                 completionHandler.onCompleted(new AvailDataPoint(task, Avail.UNKNOWN));
             }
         }
@@ -16,14 +16,19 @@
  */
 package org.hawkular.agent.monitor.scheduler.polling.dmr;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import org.hawkular.agent.monitor.diagnostics.Diagnostics;
 import org.hawkular.agent.monitor.scheduler.ModelControllerClientFactory;
 import org.hawkular.agent.monitor.scheduler.polling.MetricCompletionHandler;
+import org.hawkular.agent.monitor.scheduler.polling.Task;
 import org.hawkular.agent.monitor.scheduler.polling.TaskGroup;
 import org.hawkular.agent.monitor.storage.MetricDataPoint;
+import org.hawkular.dmrclient.Address;
 import org.hawkular.dmrclient.JBossASClient;
 import org.hawkular.metrics.client.common.MetricType;
 import org.jboss.dmr.ModelNode;
@@ -39,83 +44,256 @@ public class MetricDMRTaskGroupRunnable implements Runnable {
     private final MetricCompletionHandler completionHandler;
     private final Diagnostics diagnostics;
     private final ModelControllerClientFactory mccFactory;
+    private final MetricDMRTask[] tasks;
+    private final int[][] operationTasks; // the indexes of the tasks each operation reads the metrics of
     private final ModelNode[] operations;
+    private final ModelNode[] batchOperations;
+    private final int maxBatchSize;
 
     public MetricDMRTaskGroupRunnable(TaskGroup group, MetricCompletionHandler completionHandler,
             Diagnostics diagnostics, ModelControllerClientFactory mccFactory) {
+        this(group, completionHandler, diagnostics, mccFactory, 0);
+    }
+
+    /**
+     * Creates the runnable that collects all the metrics for the given group.
+     *
+     * @param group the metric tasks to be executed
+     * @param completionHandler where the collected data points are sent
+     * @param diagnostics tracks our internal metrics
+     * @param mccFactory creates clients to the DMR endpoint of the group's tasks
+     * @param maxBatchSize if greater than 1, the metrics are read with composite operations of at most this
+     *                     many steps each; otherwise, one request per resource is sent
+     */
+    public MetricDMRTaskGroupRunnable(TaskGroup group, MetricCompletionHandler completionHandler,
+            Diagnostics diagnostics, ModelControllerClientFactory mccFactory, int maxBatchSize) {
         this.group = group;
         this.completionHandler = completionHandler;
         this.diagnostics = diagnostics;
         this.mccFactory = mccFactory;
+        this.maxBatchSize = maxBatchSize;
 
-        // for the lifetime of this runnable, the operation is immutable and can be re-used
-        this.operations = new ReadAttributeOperationBuilder().createOperations(group);
+        this.tasks = new MetricDMRTask[group.size()];
+        int i = 0;
+        for (Task task : group) {
+            this.tasks[i++] = (MetricDMRTask) task;
+        }
+
+        // the metrics of the same resource are all read with one read-resource operation
+        Map<Address, List<Integer>> tasksByAddress = new LinkedHashMap<>();
+        for (i = 0; i < this.tasks.length; i++) {
+            List<Integer> taskIndexes = tasksByAddress.get(this.tasks[i].getAddress());
+            if (taskIndexes == null) {
+                taskIndexes = new ArrayList<>();
+                tasksByAddress.put(this.tasks[i].getAddress(), taskIndexes);
+            }
+            taskIndexes.add(i);
+        }
+
+        // for the lifetime of this runnable, the operations are immutable and can be re-used
+        ReadAttributeOperationBuilder operationBuilder = new ReadAttributeOperationBuilder();
+        this.operationTasks = new int[tasksByAddress.size()][];
+        this.operations = new ModelNode[tasksByAddress.size()];
+        int op = 0;
+        for (Map.Entry<Address, List<Integer>> entry : tasksByAddress.entrySet()) {
+            List<Integer> taskIndexes = entry.getValue();
+            this.operationTasks[op] = new int[taskIndexes.size()];
+            for (int t = 0; t < taskIndexes.size(); t++) {
+                this.operationTasks[op][t] = taskIndexes.get(t);
+            }
+            if (taskIndexes.size() == 1) {
+                MetricDMRTask task = this.tasks[taskIndexes.get(0)];
+                this.operations[op] = JBossASClient.createReadAttributeRequest(task.getAttribute(), entry.getKey());
+            } else {
+                this.operations[op] = operationBuilder.createReadAttributesOperation(entry.getKey());
+            }
+            op++;
+        }
+        this.batchOperations = (maxBatchSize > 1)
+                ? ReadAttributeOperationBuilder.createBatchOperations(this.operations, maxBatchSize) : null;
     }
 
     @Override
     public void run() {
         try (final JBossASClient client = new JBossASClient(mccFactory.createClient())) {
+            if (this.batchOperations != null) {
+                for (int i = 0; i < this.batchOperations.length; i++) {
+                    executeBatch(client, i);
+                }
+            } else {
+                for (int i = 0; i < this.operations.length; i++) {
+                    executeSingle(client, i);
+                }
+            }
+        } catch (Throwable e) {
+            this.diagnostics.getDMRErrorRate().mark(1);
+            completionHandler.onFailed(e);
+        }
+    }
 
-            int i = 0;
-            for (ModelNode operation : this.operations) {
+    /**
+     * Sends the composite operation with the given index and hands each of its step results
+     * to the tasks that step was built for.
+     */
+    private void executeBatch(JBossASClient client, int batchIndex) throws Exception {
+        final int firstOperationIndex = batchIndex * this.maxBatchSize;
+        final int steps = Math.min(this.maxBatchSize, this.operations.length - firstOperationIndex);
 
-                // execute request
-                final Timer.Context requestContext = diagnostics.getDMRRequestTimer().time();
-                final ModelNode response = client.execute(operation);
-                final long durationNanos = requestContext.stop();
-                final long durationMs = TimeUnit.MILLISECONDS.convert(durationNanos, TimeUnit.NANOSECONDS);
+        // execute request
+        final Timer.Context requestContext = diagnostics.getDMRBatchRequestTimer().time();
+        final ModelNode response = client.execute(this.batchOperations[batchIndex]);
+        final long durationNanos = requestContext.stop();
+        final long durationMs = TimeUnit.MILLISECONDS.convert(durationNanos, TimeUnit.NANOSECONDS);
 
-                if (JBossASClient.isSuccess(response)) {
+        if (durationMs > group.getInterval().millis()) {
+            diagnostics.getDMRDelayedRate().mark(1);
+        }
+
+        // all steps shared one round trip, so each step is charged an equal share of it
+        final long stepDurationNanos = durationNanos / steps;
+        final boolean batchSuccess = JBossASClient.isSuccess(response);
+        final ModelNode stepResponses = JBossASClient.getResults(response);
+
+        for (int step = 0; step < steps; step++) {
+            final int operationIndex = firstOperationIndex + step;
+            final String stepName = "step-" + (step + 1);
+            final ModelNode stepResponse = stepResponses.has(stepName) ? stepResponses.get(stepName) : null;
+
+            if (stepResponse != null && (batchSuccess || JBossASClient.isSuccess(stepResponse)
+                    || stepResponse.hasDefined(JBossASClient.FAILURE_DESCRIPTION))) {
+                diagnostics.getDMRRequestTimer().update(stepDurationNanos, TimeUnit.NANOSECONDS);
+                processOperationResponse(operationIndex, stepResponse);
+            } else {
+                // another step failed the composite before this one had a chance to run - run it on its own
+                LOG.tracef("Composite step [%s] was not executed, reading it separately: %s", stepName, response);
+                executeSingle(client, operationIndex);
+            }
+        }
+    }
 
-                    if (durationMs > group.getInterval().millis()) {
-                        diagnostics.getDMRDelayedRate().mark(1);
+    private void executeSingle(JBossASClient client, int operationIndex) throws Exception {
+        // execute request
+        final Timer.Context requestContext = diagnostics.getDMRRequestTimer().time();
+        final ModelNode response = client.execute(this.operations[operationIndex]);
+        final long durationNanos = requestContext.stop();
+        final long durationMs = TimeUnit.MILLISECONDS.convert(durationNanos, TimeUnit.NANOSECONDS);
+
+        if (JBossASClient.isSuccess(response) && durationMs > group.getInterval().millis()) {
+            diagnostics.getDMRDelayedRate().mark(1);
+        }
+
+        processOperationResponse(operationIndex, response);
+    }
+
+    /**
+     * Hands the response of the operation with the given index to the tasks it was built for. If the operation
+     * read a whole resource, each task gets the value of its own attribute from it.
+     */
+    void processOperationResponse(int operationIndex, ModelNode response) {
+        final int[] taskIndexes = this.operationTasks[operationIndex];
+        if (taskIndexes.length == 1) {
+            processResponse(this.tasks[taskIndexes[0]], response);
+        } else {
+            for (int taskIndex : taskIndexes) {
+                final MetricDMRTask task = this.tasks[taskIndex];
+                processResponse(task, toReadAttributeResponse(response, task.getAttribute()));
+            }
+        }
+    }
+
+    /**
+     * Turns the response of a read-resource operation into the response a read-attribute operation of the given
+     * attribute would have gotten, so it can be processed the same way. Like a read-attribute operation, it fails
+     * if the resource has no such attribute.
+     */
+    private static ModelNode toReadAttributeResponse(ModelNode response, String attribute) {
+        if (!JBossASClient.isSuccess(response)) {
+            return response;
+        }
+
+        final ModelNode result = JBossASClient.getResults(response);
+        final ModelNode attributeResponse = new ModelNode();
+        attributeResponse.get(JBossASClient.OUTCOME).set(JBossASClient.OUTCOME_SUCCESS);
+        if (result.getType() == ModelType.LIST) {
+            // the resource address had wildcards - there is a result for each resource it matched
+            final ModelNode attributeResults = attributeResponse.get(JBossASClient.RESULT).setEmptyList();
+            for (ModelNode listNode : result.asList()) {
+                if (JBossASClient.isSuccess(listNode)) {
+                    final ModelNode listNodeResult = JBossASClient.getResults(listNode);
+                    final ModelNode attributeListNode;
+                    if (listNodeResult.has(attribute)) {
+                        attributeListNode = new ModelNode();
+                        attributeListNode.get(JBossASClient.OUTCOME).set(JBossASClient.OUTCOME_SUCCESS);
+                        attributeListNode.get(JBossASClient.RESULT).set(listNodeResult.get(attribute));
+                    } else {
+                        attributeListNode = createAttributeNotFoundResponse(attribute);
+                    }
+                    if (listNode.has(JBossASClient.ADDRESS)) {
+                        attributeListNode.get(JBossASClient.ADDRESS).set(listNode.get(JBossASClient.ADDRESS));
                     }
+                    attributeResults.add(attributeListNode);
+                } else {
+                    attributeResults.add(listNode);
+                }
+            }
+        } else if (result.has(attribute)) {
+            attributeResponse.get(JBossASClient.RESULT).set(result.get(attribute));
+        } else {
+            return createAttributeNotFoundResponse(attribute);
+        }
+        return attributeResponse;
+    }
+
+    private static ModelNode createAttributeNotFoundResponse(String attribute) {
+        final ModelNode response = new ModelNode();
+        response.get(JBossASClient.OUTCOME).set("failed");
+        response.get(JBossASClient.FAILURE_DESCRIPTION).set("Attribute [" + attribute + "] not found");
+        return response;
+    }
 
-                    final MetricDMRTask task = (MetricDMRTask) group.getTask(i++);
-                    final MetricType metricType = task.getMetricInstance().getMetricType().getMetricType();
-
-                    // deconstruct model node
-                    final ModelNode result = JBossASClient.getResults(response);
-                    if (result.getType() != ModelType.UNDEFINED) {
-                        if (result.getType() == ModelType.LIST) {
-                            // a metric request that asked to aggregate a metric across potentially multiple resources
-                            LOG.tracef("Task [%s] resulted in aggregated metric: %s", task, result);
-                            double aggregate = 0.0;
-                            List<ModelNode> listNodes = result.asList();
-                            for (ModelNode listNode : listNodes) {
-                                if (JBossASClient.isSuccess(listNode)) {
-                                    final ModelNode listNodeResult = JBossASClient.getResults(listNode);
-                                    final ModelNode listNodeValueNode =
-                                            (task.getSubref() == null) ? listNodeResult : listNodeResult.get(task
-                                                    .getSubref());
-                                    if (listNode.getType() != ModelType.UNDEFINED) {
-                                        aggregate += listNodeValueNode.asDouble();
-                                    }
-                                } else {
-                                    // a resources failed to report metric but keep going and aggregate the others
-                                    this.diagnostics.getDMRErrorRate().mark(1);
-                                    LOG.debugf("Failed to fully aggregate metric for task [%s]: %s ", task, listNode);
-                                }
+    private void processResponse(MetricDMRTask task, ModelNode response) {
+        if (JBossASClient.isSuccess(response)) {
+
+            final MetricType metricType = task.getMetricInstance().getMetricType().getMetricType();
+
+            // deconstruct model node
+            final ModelNode result = JBossASClient.getResults(response);
+            if (result.getType() != ModelType.UNDEFINED) {
+                if (result.getType() == ModelType.LIST) {
+                    // a metric request that asked to aggregate a metric across potentially multiple resources
+                    LOG.tracef("Task [%s] resulted in aggregated metric: %s", task, result);
+                    double aggregate = 0.0;
+                    List<ModelNode> listNodes = result.asList();
+                    for (ModelNode listNode : listNodes) {
+                        if (JBossASClient.isSuccess(listNode)) {
+                            final ModelNode listNodeResult = JBossASClient.getResults(listNode);
+                            final ModelNode listNodeValueNode =
+                                    (task.getSubref() == null) ? listNodeResult : listNodeResult.get(task
+                                            .getSubref());
+                            if (listNodeValueNode.isDefined()) {
+                                aggregate += listNodeValueNode.asDouble();
                             }
-                            completionHandler.onCompleted(new MetricDataPoint(task, aggregate, metricType));
                         } else {
-                            // a metric was requested from a single resource
-                            final ModelNode valueNode =
-                                    (task.getSubref() == null) ? result : result.get(task.getSubref());
-                            final Double value = valueNode.asDouble();
-                            completionHandler.onCompleted(new MetricDataPoint(task, value, metricType));
+                            // a resources failed to report metric but keep going and aggregate the others
+                            this.diagnostics.getDMRErrorRate().mark(1);
+                            LOG.debugf("Failed to fully aggregate metric for task [%s]: %s ", task, listNode);
                         }
                     }
-
+                    completionHandler.onCompleted(new MetricDataPoint(task, aggregate, metricType));
                 } else {
-                    this.diagnostics.getDMRErrorRate().mark(1);
-                    completionHandler.onFailed(new RuntimeException(JBossASClient.getFailureDescription(response)));
+                    // a metric was requested from a single resource
+                    final ModelNode valueNode =
+                            (task.getSubref() == null) ? result : result.get(task.getSubref());
+                    if (valueNode.isDefined()) {
+                        final Double value = valueNode.asDouble();
+                        completionHandler.onCompleted(new MetricDataPoint(task, value, metricType));
+                    }
                 }
             }
 
-        } catch (Throwable e) {
+        } else {
             this.diagnostics.getDMRErrorRate().mark(1);
-            completionHandler.onFailed(e);
+            completionHandler.onFailed(new RuntimeException(JBossASClient.getFailureDescription(response)));
         }
     }
-}
\ No newline at end of file
+}
@@ -16,8 +16,11 @@
  */
 package org.hawkular.agent.monitor.scheduler.polling.dmr;
 
+import java.util.Arrays;
+
 import org.hawkular.agent.monitor.scheduler.polling.Task;
 import org.hawkular.agent.monitor.scheduler.polling.TaskGroup;
+import org.hawkular.dmrclient.Address;
 import org.hawkular.dmrclient.JBossASClient;
 import org.jboss.dmr.ModelNode;
 
@@ -30,6 +33,30 @@ public class ReadAttributeOperationBuilder {
         return JBossASClient.createBatchRequest(createOperations(group));
     }
 
+    // Returns batch operations that obtain all the data with each batch having at most maxStepsPerBatch steps.
+    // The steps of batch N are the group items starting at index (N * maxStepsPerBatch).
+    public ModelNode[] createBatchOperations(final TaskGroup group, final int maxStepsPerBatch) {
+        return createBatchOperations(createOperations(group), maxStepsPerBatch);
+    }
+
+    // Returns batch operations that execute the given operations with each batch having at most maxStepsPerBatch
+    // steps. The steps of batch N are the operations starting at index (N * maxStepsPerBatch).
+    // Shared by all the DMR operation builders.
+    public static ModelNode[] createBatchOperations(final ModelNode[] readOps, final int maxStepsPerBatch) {
+        if (maxStepsPerBatch < 1) {
+            throw new IllegalArgumentException("Batches must have at least one step: " + maxStepsPerBatch);
+        }
+
+        ModelNode[] batchOps = new ModelNode[(readOps.length + maxStepsPerBatch - 1) / maxStepsPerBatch];
+        for (int i = 0; i < batchOps.length; i++) {
+            int from = i * maxStepsPerBatch;
+            int to = Math.min(from + maxStepsPerBatch, readOps.length);
+            batchOps[i] = JBossASClient.createBatchRequest(Arrays.copyOfRange(readOps, from, to));
+        }
+
+        return batchOps;
+    }
+
     // Returns one request operation per group item
     public ModelNode[] createOperations(final TaskGroup group) {
         if (group.isEmpty()) {
@@ -45,4 +72,13 @@ public class ReadAttributeOperationBuilder {
 
         return readOps;
     }
+
+    // Returns one request operation that reads all the attributes, runtime attributes included, of the resource
+    // at the given address. Used when several group items read attributes of the same resource.
+    public ModelNode createReadAttributesOperation(final Address address) {
+        ModelNode readOp = JBossASClient.createRequest(JBossASClient.READ_RESOURCE, address);
+        readOp.get("include-runtime").set(true);
+        readOp.get("attributes-only").set(true);
+        return readOp;
+    }
 }
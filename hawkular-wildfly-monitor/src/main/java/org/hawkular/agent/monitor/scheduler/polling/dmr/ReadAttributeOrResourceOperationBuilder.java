@@ -32,6 +32,12 @@ public class ReadAttributeOrResourceOperationBuilder {
         return JBossASClient.createBatchRequest(createOperations(group));
     }
 
+    // Returns batch operations that obtain all the data with each batch having at most maxStepsPerBatch steps.
+    // The steps of batch N are the group items starting at index (N * maxStepsPerBatch).
+    public ModelNode[] createBatchOperations(final TaskGroup group, final int maxStepsPerBatch) {
+        return ReadAttributeOperationBuilder.createBatchOperations(createOperations(group), maxStepsPerBatch);
+    }
+
     // Returns one request operation per group item
     public ModelNode[] createOperations(final TaskGroup group) {
         if (group.isEmpty()) {
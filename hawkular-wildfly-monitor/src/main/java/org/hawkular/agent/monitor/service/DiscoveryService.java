@@ -21,6 +21,7 @@ import java.util.Map;
 import org.hawkular.agent.monitor.inventory.ManagedServer;
 import org.hawkular.agent.monitor.inventory.dmr.DMRInventoryManager;
 import org.hawkular.agent.monitor.inventory.jmx.JMXInventoryManager;
+import org.hawkular.dmrclient.Address;
 
 /**
  * A simple interface that provides methods used to discover resources.
@@ -33,6 +34,30 @@ public interface DiscoveryService {
      */
     void discoverAllResourcesForAllManagedServers();
 
+    /**
+     * This will rediscover only the resources of the given DMR managed server that are at or below
+     * the given addresses, keeping the rest of its inventory as it is. Use this rather than a full scan
+     * when it is known what part of a managed server changed, for example after a deployment.
+     * If no addresses are given, all the resources of the managed server (which can then
+     * be a JMX managed server, too) are rediscovered, but no other managed server is scanned.
+     * The changes found are synchronized with inventory and the collections are rescheduled
+     * as they are for a full scan.
+     *
+     * @param managedServer the managed server that changed
+     * @param addresses the addresses of the resources that were added, changed or removed
+     */
+    void discoverResourcesForManagedServer(ManagedServer managedServer, Address... addresses);
+
+    /**
+     * Does what {@link #discoverResourcesForManagedServer(ManagedServer, Address...)} does, but in the background.
+     * This returns right away, so the caller, for example a command that has just changed the managed server,
+     * does not have to wait until a discovery scan that is already running is done.
+     *
+     * @param managedServer the managed server that changed
+     * @param addresses the addresses of the resources that were added, changed or removed
+     */
+    void requestDiscoveryForManagedServer(ManagedServer managedServer, Address... addresses);
+
     /**
      * @return the discovered inventories of all DMR managed servers
      */
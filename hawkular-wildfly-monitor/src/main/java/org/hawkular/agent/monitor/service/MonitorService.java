@@ -25,14 +25,28 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -53,15 +67,18 @@ import org.hawkular.agent.monitor.extension.MonitorServiceConfiguration;
 import org.hawkular.agent.monitor.extension.MonitorServiceConfiguration.Platform;
 import org.hawkular.agent.monitor.extension.MonitorServiceConfiguration.StorageReportTo;
 import org.hawkular.agent.monitor.inventory.AvailTypeManager;
+import org.hawkular.agent.monitor.inventory.InventoryDiff;
 import org.hawkular.agent.monitor.inventory.ManagedServer;
 import org.hawkular.agent.monitor.inventory.MetricTypeManager;
 import org.hawkular.agent.monitor.inventory.Name;
+import org.hawkular.agent.monitor.inventory.Resource;
 import org.hawkular.agent.monitor.inventory.ResourceManager;
 import org.hawkular.agent.monitor.inventory.ResourceTypeManager;
 import org.hawkular.agent.monitor.inventory.dmr.DMRAvailInstance;
 import org.hawkular.agent.monitor.inventory.dmr.DMRAvailType;
 import org.hawkular.agent.monitor.inventory.dmr.DMRAvailTypeSet;
 import org.hawkular.agent.monitor.inventory.dmr.DMRInventoryManager;
+import org.hawkular.agent.monitor.inventory.dmr.DMRInventorySnapshot;
 import org.hawkular.agent.monitor.inventory.dmr.DMRMetadataManager;
 import org.hawkular.agent.monitor.inventory.dmr.DMRMetricInstance;
 import org.hawkular.agent.monitor.inventory.dmr.DMRMetricType;
@@ -99,9 +116,9 @@ import org.hawkular.agent.monitor.inventory.platform.PlatformResourceTypeSet;
 import org.hawkular.agent.monitor.log.AgentLoggers;
 import org.hawkular.agent.monitor.log.MsgLogger;
 import org.hawkular.agent.monitor.scheduler.JmxClientFactory;
-import org.hawkular.agent.monitor.scheduler.JmxClientFactoryImpl;
+import org.hawkular.agent.monitor.scheduler.JmxClientCache;
 import org.hawkular.agent.monitor.scheduler.ModelControllerClientFactory;
-import org.hawkular.agent.monitor.scheduler.ModelControllerClientFactoryImpl;
+import org.hawkular.agent.monitor.scheduler.ModelControllerClientPools;
 import org.hawkular.agent.monitor.scheduler.SchedulerService;
 import org.hawkular.agent.monitor.scheduler.config.DMREndpoint;
 import org.hawkular.agent.monitor.scheduler.config.JMXEndpoint;
@@ -115,6 +132,8 @@ import org.hawkular.agent.monitor.storage.InventoryStorageProxy;
 import org.hawkular.agent.monitor.storage.MetricStorageProxy;
 import org.hawkular.agent.monitor.storage.MetricsOnlyStorageAdapter;
 import org.hawkular.agent.monitor.storage.StorageAdapter;
+import org.hawkular.agent.monitor.storage.StorageWriteAheadLog;
+import org.hawkular.dmrclient.Address;
 import org.hawkular.inventory.api.model.Feed;
 import org.jboss.as.controller.ControlledProcessState;
 import org.jboss.as.controller.ControlledProcessStateService;
@@ -141,12 +160,14 @@ import org.jgrapht.traverse.BreadthFirstIterator;
 
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.ScheduledReporter;
+import com.codahale.metrics.Timer;
 import com.squareup.okhttp.OkHttpClient;
 import com.squareup.okhttp.Request;
 import com.squareup.okhttp.Response;
 
 public class MonitorService implements Service<MonitorService>, DiscoveryService {
     private static final MsgLogger log = AgentLoggers.getLogger(MonitorService.class);
+
     private final InjectedValue<ModelController> modelControllerValue = new InjectedValue<>();
     private final InjectedValue<ServerEnvironment> serverEnvironmentValue = new InjectedValue<>();
     private final InjectedValue<ControlledProcessStateService> processStateValue = new InjectedValue<>();
@@ -156,7 +177,7 @@ public class MonitorService implements Service<MonitorService>, DiscoveryService
     // key=securityRealm
     private final Map<String, InjectedValue<SSLContext>> trustOnlySSLContextValues = new HashMap<>();
 
-    private boolean started = false;
+    private volatile boolean started = false;
 
     private PropertyChangeListener serverStateListener;
     private ExecutorService managementClientExecutor;
@@ -175,12 +196,35 @@ public class MonitorService implements Service<MonitorService>, DiscoveryService
     // used to send monitored data for storage
     private StorageAdapter storageAdapter;
     private HttpClientBuilder httpClientBuilder;
+    private StorageWriteAheadLog storageWriteAheadLog;
 
     // used to send/receive data to the server over the feed communications channel
     private FeedCommProcessor feedComm;
 
     // scheduled metric and avail collections
-    private SchedulerService schedulerService;
+    private volatile SchedulerService schedulerService;
+
+    // runs the discovery scan that reconciles the inventory restored from our snapshot at startup
+    private ExecutorService backgroundDiscoveryExecutor;
+    private Future<?> backgroundDiscovery;
+
+    // runs the discovery scans of the individual managed servers, several of them at the same time
+    private ExecutorService discoveryExecutor;
+
+    // runs the rediscoveries that commands ask for, so the commands do not have to wait for them
+    private volatile ExecutorService requestedDiscoveryExecutor;
+
+    // rediscovers what changes in the managed servers as soon as we hear about it
+    private volatile NotificationDiscovery notificationDiscovery;
+
+    // long-lived connections to remote DMR managed servers, shared by collections, discovery and commands
+    private ModelControllerClientPools dmrClientPools;
+
+    // cached clients to remote JMX managed servers used by collections
+    private JmxClientCache jmxClientCache;
+
+    // cached clients to remote JMX managed servers used by discovery; they give up on requests that hang
+    private JmxClientCache discoveryJmxClientCache;
 
     // proxies that are exposed via JNDI so external apps can emit their own inventory, metrics, and avail checks
     private final MetricStorageProxy metricStorageProxy = new MetricStorageProxy();
@@ -188,8 +232,8 @@ public class MonitorService implements Service<MonitorService>, DiscoveryService
     private final InventoryStorageProxy inventoryStorageProxy = new InventoryStorageProxy();
 
     // our internal inventories for each monitored server
-    private final Map<ManagedServer, DMRInventoryManager> dmrServerInventories = new HashMap<>();
-    private final Map<ManagedServer, JMXInventoryManager> jmxServerInventories = new HashMap<>();
+    private final Map<ManagedServer, DMRInventoryManager> dmrServerInventories = new ConcurrentHashMap<>();
+    private final Map<ManagedServer, JMXInventoryManager> jmxServerInventories = new ConcurrentHashMap<>();
 
     // inventory manager for the platform resources
     private final AtomicReference<PlatformInventoryManager> platformInventory = new AtomicReference<>();
@@ -339,6 +383,7 @@ public class MonitorService implements Service<MonitorService>, DiscoveryService
         // build the diagnostics object that will be used to track our own performance
         final MetricRegistry metricRegistry = new MetricRegistry();
         this.diagnostics = new DiagnosticsImpl(configuration.diagnostics, metricRegistry, selfId);
+        this.httpClientBuilder.setDiagnostics(this.diagnostics);
 
         // determine where our Hawkular server is
         // If the user gave us a URL explicitly, that overrides everything and we use it.
@@ -414,10 +459,69 @@ public class MonitorService implements Service<MonitorService>, DiscoveryService
             return;
         }
 
-        // build our inventory managers and find all the resources we need to monitor
-        discoverAllResourcesForAllManagedServers();
+        // prepare the pools that will hold our connections to remote DMR managed servers
+        this.dmrClientPools = new ModelControllerClientPools(this.configuration.dmrConnectionPoolMaxSize,
+                this.configuration.dmrConnectionPoolIdleTimeoutSecs, this.diagnostics);
+        this.jmxClientCache = new JmxClientCache(this.configuration.jmxClientConnectionTimeoutSecs,
+                this.configuration.jmxClientSocketTimeoutSecs, this.configuration.jmxClientMaxConnections,
+                this.diagnostics);
+
+        // a scan that times out is cancelled, but that cannot interrupt a thread that waits for an HTTP response,
+        // so discovery requests must not wait longer than the whole scan is allowed to take
+        int discoverySocketTimeoutSecs = this.configuration.discoveryTimeoutSecs;
+        if (this.configuration.jmxClientSocketTimeoutSecs > 0) {
+            discoverySocketTimeoutSecs = Math.min(discoverySocketTimeoutSecs,
+                    this.configuration.jmxClientSocketTimeoutSecs);
+        }
+        this.discoveryJmxClientCache = new JmxClientCache(this.configuration.jmxClientConnectionTimeoutSecs,
+                discoverySocketTimeoutSecs, this.configuration.jmxClientMaxConnections, this.diagnostics);
+
+        ThreadFactory discoveryThreadFactory = ThreadFactoryGenerator.generateFactory(true,
+                "Hawkular-Monitor-Discovery");
+        this.discoveryExecutor = Executors.newFixedThreadPool(Math.max(1, this.configuration.numDiscoveryThreads),
+                discoveryThreadFactory);
+        ThreadFactory requestedDiscoveryThreadFactory = ThreadFactoryGenerator.generateFactory(true,
+                "Hawkular-Monitor-Requested-Discovery");
+        this.requestedDiscoveryExecutor = Executors.newSingleThreadExecutor(requestedDiscoveryThreadFactory);
 
         started = true;
+
+        // build our inventory managers and find all the resources we need to monitor. If we have the inventory
+        // from the last time we ran, start collecting with it right away and rediscover in the background.
+        if (restoreInventorySnapshot()) {
+            try {
+                startScheduler();
+            } catch (Exception e) {
+                log.errorCannotInitializeScheduler(e);
+            }
+
+            ThreadFactory threadFactory = ThreadFactoryGenerator.generateFactory(true,
+                    "Hawkular-Monitor-Background-Discovery");
+            this.backgroundDiscoveryExecutor = Executors.newSingleThreadExecutor(threadFactory);
+            this.backgroundDiscovery = this.backgroundDiscoveryExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    discoverAllResourcesForAllManagedServers();
+                }
+            });
+        } else {
+            discoverAllResourcesForAllManagedServers();
+        }
+
+        // from now on rediscover what changes as soon as we are told about it
+        if (this.configuration.notificationDiscovery) {
+            ManagedServer localManagedServer = null;
+            for (ManagedServer managedServer : this.configuration.managedServersMap.values()) {
+                if (managedServer instanceof LocalDMRManagedServer && managedServer.isEnabled()) {
+                    localManagedServer = managedServer;
+                }
+            }
+            this.notificationDiscovery = new NotificationDiscovery(this,
+                    this.configuration.notificationDiscoveryDelaySecs,
+                    this.configuration.notificationDiscoveryJmxPollMins);
+            this.notificationDiscovery.start(this.modelControllerValue.getValue().getNotificationRegistry(),
+                    localManagedServer);
+        }
     }
 
     /**
@@ -429,6 +533,30 @@ public class MonitorService implements Service<MonitorService>, DiscoveryService
         }
 
         log.infoStopping();
+        started = false;
+
+        // stop rediscovering changes
+        if (notificationDiscovery != null) {
+            notificationDiscovery.stop();
+            notificationDiscovery = null;
+        }
+
+        // a discovery scan that is still running at this point has not found anything worth keeping
+        boolean discoveryInterrupted = false;
+        if (backgroundDiscoveryExecutor != null) {
+            discoveryInterrupted = !backgroundDiscovery.isDone();
+            backgroundDiscoveryExecutor.shutdownNow();
+            backgroundDiscoveryExecutor = null;
+            backgroundDiscovery = null;
+        }
+        if (requestedDiscoveryExecutor != null) {
+            requestedDiscoveryExecutor.shutdownNow();
+            requestedDiscoveryExecutor = null;
+        }
+        if (discoveryExecutor != null) {
+            discoveryExecutor.shutdownNow();
+            discoveryExecutor = null;
+        }
 
         // shutdown scheduler
         stopScheduler();
@@ -439,11 +567,28 @@ public class MonitorService implements Service<MonitorService>, DiscoveryService
             feedComm = null;
         }
 
-        // remove our inventories
+        // remember our inventories for the next time we start, with the latest persisted flags, then remove them
+        if (!discoveryInterrupted) {
+            saveInventorySnapshot();
+        }
         dmrServerInventories.clear();
         jmxServerInventories.clear();
         platformInventory.set(null);
 
+        // close our connections to the remote DMR managed servers
+        if (dmrClientPools != null) {
+            dmrClientPools.close();
+            dmrClientPools = null;
+        }
+        if (jmxClientCache != null) {
+            jmxClientCache.close();
+            jmxClientCache = null;
+        }
+        if (discoveryJmxClientCache != null) {
+            discoveryJmxClientCache.close();
+            discoveryJmxClientCache = null;
+        }
+
         // stop diagnostic reporting and spit out a final diagnostics report
         if (diagnosticsReporter != null) {
             diagnosticsReporter.stop();
@@ -460,8 +605,6 @@ public class MonitorService implements Service<MonitorService>, DiscoveryService
             processStateValue.getValue().removePropertyChangeListener(serverStateListener);
             serverStateListener = null;
         }
-
-        started = false;
     }
 
     /**
@@ -573,6 +716,15 @@ public class MonitorService implements Service<MonitorService>, DiscoveryService
 
         this.storageAdapter.initialize(configuration.storageAdapter, diagnostics, selfId, httpClientBuilder);
 
+        // keep what cannot be stored while the backend is down so it can be stored once the backend is back
+        if (configuration.storageAdapter.writeAheadLogEnabled) {
+            this.storageWriteAheadLog = new StorageWriteAheadLog(new File(getDataDirectory(), "storage-wal"),
+                    configuration.storageAdapter.writeAheadLogMaxSizeMb * 1024L * 1024L,
+                    TimeUnit.HOURS.toMillis(configuration.storageAdapter.writeAheadLogMaxAgeHours),
+                    diagnostics);
+            this.storageAdapter.setWriteAheadLog(this.storageWriteAheadLog);
+        }
+
         // provide our storage adapter to the proxies - allows external apps to use them to store its own data
         metricStorageProxy.setStorageAdapter(storageAdapter);
         availStorageProxy.setStorageAdapter(storageAdapter);
@@ -616,12 +768,17 @@ public class MonitorService implements Service<MonitorService>, DiscoveryService
         if (storageAdapter != null) {
             storageAdapter.shutdown();
         }
+
+        if (storageWriteAheadLog != null) {
+            storageWriteAheadLog.close();
+            storageWriteAheadLog = null;
+        }
     }
 
     /**
-     * Builds the scheduler's configuraton and starts the scheduler.
-     * Do NOT call this until you know all resources have been discovered
-     * and the inventories have been built.
+     * Builds the scheduler's configuraton from the inventories we have right now and starts the scheduler.
+     * Whatever is discovered afterwards is added to the running scheduler by
+     * {@link #rescheduleCollections(SchedulerConfiguration, SchedulerConfiguration)}.
      *
      * @throws Exception
      */
@@ -635,10 +792,21 @@ public class MonitorService implements Service<MonitorService>, DiscoveryService
         schedulerConfig.setStorageAdapterConfig(this.configuration.storageAdapter);
         schedulerConfig.setMetricSchedulerThreads(this.configuration.numMetricSchedulerThreads);
         schedulerConfig.setAvailSchedulerThreads(this.configuration.numAvailSchedulerThreads);
+        schedulerConfig.setMetricDispatcherThreads(this.configuration.numMetricDispatcherThreads);
+        schedulerConfig.setAvailDispatcherThreads(this.configuration.numAvailDispatcherThreads);
         schedulerConfig.setMetricDispatcherBufferSize(this.configuration.metricDispatcherBufferSize);
         schedulerConfig.setMetricDispatcherMaxBatchSize(this.configuration.metricDispatcherMaxBatchSize);
+        schedulerConfig.setMetricDispatcherLingerMillis(this.configuration.metricDispatcherLingerMillis);
         schedulerConfig.setAvailDispatcherBufferSize(this.configuration.availDispatcherBufferSize);
         schedulerConfig.setAvailDispatcherMaxBatchSize(this.configuration.availDispatcherMaxBatchSize);
+        schedulerConfig.setDispatcherOverflowPolicy(this.configuration.dispatcherOverflowPolicy);
+        schedulerConfig.setDispatcherBlockTimeoutMillis(this.configuration.dispatcherBlockTimeoutMillis);
+        schedulerConfig.setDataDirectory(getDataDirectory());
+        schedulerConfig.setDmrCompositeBatchSize(this.configuration.dmrCompositeBatchSize);
+        schedulerConfig.setSpreadCollectionOffsets(this.configuration.spreadCollectionOffsets);
+        schedulerConfig.setMaxTaskGroupSize(this.configuration.maxTaskGroupSize);
+        schedulerConfig.setMaxConcurrentTaskGroupsPerEndpoint(this.configuration.maxConcurrentTaskGroupsPerEndpoint);
+        schedulerConfig.setMaxIntervalStretchFactor(this.configuration.maxIntervalStretchFactor);
 
         // for all the resources we have in inventory, schedule their metric and avail collections
         for (DMRInventoryManager im : this.dmrServerInventories.values()) {
@@ -655,7 +823,9 @@ public class MonitorService implements Service<MonitorService>, DiscoveryService
                 this.selfId,
                 this.diagnostics,
                 this.storageAdapter,
-                createLocalClientFactory());
+                createLocalClientFactory(),
+                this.dmrClientPools,
+                this.jmxClientCache);
         this.schedulerService.start();
     }
 
@@ -670,12 +840,18 @@ public class MonitorService implements Service<MonitorService>, DiscoveryService
     }
 
     /**
-     * Convienence method that stops the scheduler if its already running, and then starts it up.
-     * @throws Exception if cannot start the scheduler
+     * Tells the running scheduler to stop collecting what is only in the old collections and to start collecting
+     * what is only in the new collections. All other collections carry on undisturbed. If the scheduler is not
+     * running, this does nothing.
+     *
+     * @param oldCollections what used to be collected
+     * @param newCollections what is to be collected from now on
      */
-    private void restartScheduler() throws Exception {
-        stopScheduler();
-        startScheduler();
+    private void rescheduleCollections(SchedulerConfiguration oldCollections, SchedulerConfiguration newCollections) {
+        SchedulerService scheduler = this.schedulerService;
+        if (scheduler != null) {
+            scheduler.reschedule(oldCollections, newCollections);
+        }
     }
 
     /**
@@ -759,117 +935,343 @@ public class MonitorService implements Service<MonitorService>, DiscoveryService
         return Collections.unmodifiableMap(this.jmxServerInventories);
     }
 
-    private void discoverPlatformData() {
-        Platform config = this.configuration.platform;
+    @Override
+    public synchronized void discoverAllResourcesForAllManagedServers() {
+        ExecutorService executor = this.discoveryExecutor;
+        if (executor == null) {
+            return; // we have been stopped
+        }
 
-        if (config.allEnabled == false) {
-            return;
+        // there may be some old managed servers that we don't manage anymore - stop collecting and remove them now
+        Collection<ManagedServer> managedServers = this.configuration.managedServersMap.values();
+        SchedulerConfiguration removedCollections = new SchedulerConfiguration();
+        for (Map.Entry<ManagedServer, DMRInventoryManager> entry : this.dmrServerInventories.entrySet()) {
+            if (!managedServers.contains(entry.getKey())) {
+                scheduleDMRMetricAvailCollections(removedCollections, entry.getValue());
+            }
+        }
+        for (Map.Entry<ManagedServer, JMXInventoryManager> entry : this.jmxServerInventories.entrySet()) {
+            if (!managedServers.contains(entry.getKey())) {
+                scheduleJMXMetricAvailCollections(removedCollections, entry.getValue());
+            }
         }
+        rescheduleCollections(removedCollections, new SchedulerConfiguration());
+        this.dmrServerInventories.keySet().retainAll(managedServers);
+        this.jmxServerInventories.keySet().retainAll(managedServers);
 
-        // build the metadata manager
-        ResourceTypeManager<PlatformResourceType, PlatformResourceTypeSet> rtm;
-        rtm = new ResourceTypeManager<>(config.resourceTypeSetMap);
+        // make sure collections are running so those of each managed server start as soon as its scan is done
+        try {
+            startScheduler();
+        } catch (Exception e) {
+            log.errorCannotInitializeScheduler(e);
+        }
 
-        // tell metric/avail managers what metric and avail types we need to use for the resource types
-        MetricTypeManager<PlatformMetricType, PlatformMetricTypeSet> mtm = new MetricTypeManager<>();
-        AvailTypeManager<PlatformAvailType, PlatformAvailTypeSet> atm = new AvailTypeManager<>();
+        // first discover platform data if we are configured to do so
+        List<ManagedServerDiscovery> discoveries = new ArrayList<>();
+        if (this.configuration.platform.allEnabled) {
+            discoveries.add(new PlatformDiscovery());
+        }
 
-        mtm.addMetricTypes(config.metricTypeSetMap, null);
-        atm.addAvailTypes(config.availTypeSetMap, null);
+        // go through each configured managed server and discovery all resources in them
+        for (ManagedServer managedServer : this.configuration.managedServersMap.values()) {
+            if (!managedServer.isEnabled()) {
+                log.infoManagedServerDisabled(managedServer.getName().toString());
+            } else {
+                discoveries.add(createManagedServerDiscovery(managedServer));
+            }
+        }
 
-        PlatformMetadataManager mm = new PlatformMetadataManager(rtm, mtm, atm);
-        mm.populateMetricAndAvailTypesForAllResourceTypes();
+        int resourcesDiscovered = runDiscoveries(executor, discoveries);
 
-        // Create our empty resource manager - this will be filled in during discovery with our resources
-        ResourceManager<PlatformResource> rm = new ResourceManager<>();
+        log.debugf("Full discovery scan of managed servers found [%d] resources", resourcesDiscovered);
 
-        // build the inventory manager
-        PlatformInventoryManager im = new PlatformInventoryManager(feedId, mm, rm, new PlatformManagedServer(
-                null, Constants.PLATFORM), new PlatformEndpoint(this.feedId));
-        PlatformInventoryManager imOriginal = this.platformInventory.getAndSet(im);
+        if (!isMonitorServiceStarted()) {
+            return; // we were stopped while discovering in the background; what we found is not worth keeping
+        }
 
-        // discover our platform resources now
-        im.discoverResources(getPlatformListenerForChangedInventory(imOriginal));
+        saveInventorySnapshot();
+    }
 
-        log.debugf("Full discovery scan of platform found [%d] resources",
-                im.getResourceManager().getAllResources().size());
+    @Override
+    public void requestDiscoveryForManagedServer(final ManagedServer managedServer, final Address... addresses) {
+        ExecutorService executor = this.requestedDiscoveryExecutor;
+        if (executor == null) {
+            return; // we have been stopped
+        }
+
+        // what we are told about the changes the command made need not be rediscovered again
+        NotificationDiscovery notifications = this.notificationDiscovery;
+        if (notifications != null && addresses.length > 0) {
+            notifications.discoveryRequested(managedServer, addresses);
+        }
+
+        try {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        discoverResourcesForManagedServer(managedServer, addresses);
+                    } catch (Exception e) {
+                        log.errorf(e, "Failed to rediscover %s in managed server [%s]", Arrays.asList(addresses),
+                                managedServer.getName());
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // we are being stopped
+        }
     }
 
     @Override
-    public void discoverAllResourcesForAllManagedServers() {
+    public synchronized void discoverResourcesForManagedServer(ManagedServer managedServer, Address... addresses) {
+        ExecutorService executor = this.discoveryExecutor;
+        if (executor == null) {
+            return; // we have been stopped
+        }
+
+        if (!managedServer.isEnabled() || !this.configuration.managedServersMap.containsValue(managedServer)) {
+            return; // it is not something we monitor
+        }
+
+        ManagedServerDiscovery discovery;
+        if (addresses.length == 0) {
+            discovery = createManagedServerDiscovery(managedServer);
+        } else {
+            DMRInventoryManager imOriginal = this.dmrServerInventories.get(managedServer);
+            if (imOriginal == null) {
+                // there is nothing to carry over; the next full discovery scan will find all of its resources
+                log.debugf("Managed server [%s] has not been discovered yet - not rediscovering %s",
+                        managedServer.getName(), Arrays.asList(addresses));
+                return;
+            }
+            discovery = new DMRManagedServerDiscovery(managedServer, imOriginal.getEndpoint(),
+                    Arrays.asList(addresses));
+        }
+
+        int resourcesDiscovered = runDiscoveries(executor, Collections.singletonList(discovery));
+
+        log.debugf("Discovery of %s in managed server [%s] left [%d] resources", Arrays.asList(addresses),
+                managedServer.getName(), resourcesDiscovered);
+
+        if (!isMonitorServiceStarted()) {
+            return;
+        }
+
+        saveInventorySnapshot();
+    }
+
+    /**
+     * Prepares a scan that discovers all the resources of the given managed server.
+     *
+     * @param managedServer the managed server to scan
+     * @return the scan, ready to be run
+     */
+    private ManagedServerDiscovery createManagedServerDiscovery(ManagedServer managedServer) {
+        if (managedServer instanceof RemoteDMRManagedServer || managedServer instanceof LocalDMRManagedServer) {
+            DMREndpoint dmrEndpoint = createDMREndpoint(managedServer);
+            return new DMRManagedServerDiscovery(managedServer, dmrEndpoint);
+        } else if (managedServer instanceof RemoteJMXManagedServer) {
+            RemoteJMXManagedServer jmxServer = (RemoteJMXManagedServer) managedServer;
+            SSLContext sslContext = null;
+            if (jmxServer.getUrl().getProtocol().equalsIgnoreCase("https")) {
+                sslContext = this.trustOnlySSLContextValues.get(jmxServer.getSecurityRealm())
+                        .getOptionalValue();
+            }
+            JMXEndpoint jmxEndpoint = new JMXEndpoint(jmxServer.getName().toString(),
+                    jmxServer.getUrl(),
+                    jmxServer.getUsername(),
+                    jmxServer.getPassword(),
+                    sslContext);
+            return new JMXManagedServerDiscovery(managedServer, jmxEndpoint);
+        } else {
+            throw new IllegalArgumentException("An invalid managed server type was found. ["
+                    + managedServer + "] Please report this bug.");
+        }
+    }
+
+    /**
+     * Runs the given discovery scans, as many at the same time as we have discovery threads, and applies the
+     * results of each scan, including the changes to what is collected, as soon as it is done. A scan that runs
+     * longer than the discovery timeout is cancelled and the inventory found by the previous scan of its managed
+     * server is kept.
+     *
+     * @param executor runs the scans
+     * @param discoveries the scans to run
+     * @return the number of resources found by the scans that finished in time
+     */
+    private int runDiscoveries(ExecutorService executor, List<ManagedServerDiscovery> discoveries) {
+        CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+        Map<Future<Void>, ManagedServerDiscovery> pending = new LinkedHashMap<>();
+        long timeoutMillis = TimeUnit.SECONDS.toMillis(this.configuration.discoveryTimeoutSecs);
         int resourcesDiscovered = 0;
 
-        // first discover platform data if we are configured to do so
-        discoverPlatformData();
+        try {
+            for (ManagedServerDiscovery discovery : discoveries) {
+                pending.put(completionService.submit(discovery), discovery);
+            }
 
-        // there may be some old managed servers that we don't manage anymore - remove them now
-        this.dmrServerInventories.keySet().retainAll(this.configuration.managedServersMap.values());
-        this.jmxServerInventories.keySet().retainAll(this.configuration.managedServersMap.values());
+            while (!pending.isEmpty()) {
+                // wait until the next scan is done, but no longer than it takes the oldest running scan to time out
+                long now = System.currentTimeMillis();
+                long deadline = now + timeoutMillis;
+                for (ManagedServerDiscovery discovery : pending.values()) {
+                    if (discovery.getStartMillis() > 0L) {
+                        deadline = Math.min(deadline, discovery.getStartMillis() + timeoutMillis);
+                    }
+                }
 
-        // go through each configured managed server and discovery all resources in them
-        for (ManagedServer managedServer : this.configuration.managedServersMap.values()) {
-            if (!managedServer.isEnabled()) {
-                log.infoManagedServerDisabled(managedServer.getName().toString());
-            } else {
-                if (managedServer instanceof RemoteDMRManagedServer) {
-                    RemoteDMRManagedServer dmrServer = (RemoteDMRManagedServer) managedServer;
-                    SSLContext sslContext = null;
-                    if (dmrServer.getUseSSL()) {
-                        sslContext = this.trustOnlySSLContextValues.get(dmrServer.getSecurityRealm())
-                                .getOptionalValue();
+                Future<Void> done = completionService.poll(Math.max(deadline - now, 0L), TimeUnit.MILLISECONDS);
+                if (done != null) {
+                    ManagedServerDiscovery discovery = pending.remove(done);
+                    if (discovery == null) {
+                        continue; // a scan we have already given up on
                     }
-                    DMREndpoint dmrEndpoint = new DMREndpoint(dmrServer.getName().toString(),
-                            dmrServer.getHost(),
-                            dmrServer.getPort(),
-                            dmrServer.getUsername(),
-                            dmrServer.getPassword(),
-                            dmrServer.getUseSSL(),
-                            sslContext);
-                    discoverResourcesForDMRManagedServer(managedServer, dmrEndpoint);
-                    resourcesDiscovered += this.dmrServerInventories.get(managedServer).getResourceManager()
-                            .getAllResources().size();
-                } else if (managedServer instanceof LocalDMRManagedServer) {
-                    DMREndpoint dmrEndpoint = new LocalDMREndpoint(managedServer.getName().toString(),
-                            createLocalClientFactory());
-                    discoverResourcesForDMRManagedServer(managedServer, dmrEndpoint);
-                    resourcesDiscovered += this.dmrServerInventories.get(managedServer).getResourceManager()
-                            .getAllResources().size();
-                } else if (managedServer instanceof RemoteJMXManagedServer) {
-                    RemoteJMXManagedServer jmxServer = (RemoteJMXManagedServer) managedServer;
-                    SSLContext sslContext = null;
-                    if (jmxServer.getUrl().getProtocol().equalsIgnoreCase("https")) {
-                        sslContext = this.trustOnlySSLContextValues.get(jmxServer.getSecurityRealm())
-                                .getOptionalValue();
+                    try {
+                        done.get();
+                        resourcesDiscovered += discovery.apply();
+                    } catch (ExecutionException e) {
+                        log.errorf(e.getCause(), "Failed to discover resources of [%s]", discovery.getName());
+                    }
+                    continue;
+                }
+
+                // give up on the scans that ran out of time; those that just finished will be applied next time
+                now = System.currentTimeMillis();
+                Iterator<Map.Entry<Future<Void>, ManagedServerDiscovery>> iter = pending.entrySet().iterator();
+                while (iter.hasNext()) {
+                    Map.Entry<Future<Void>, ManagedServerDiscovery> entry = iter.next();
+                    long startMillis = entry.getValue().getStartMillis();
+                    if (startMillis > 0L && now - startMillis >= timeoutMillis && entry.getKey().cancel(true)) {
+                        iter.remove();
+                        this.diagnostics.getDiscoveryTimeoutRate().mark();
+                        log.warnDiscoveryTimedOut(entry.getValue().getName(), this.configuration.discoveryTimeoutSecs);
                     }
-                    JMXEndpoint jmxEndpoint = new JMXEndpoint(jmxServer.getName().toString(),
-                            jmxServer.getUrl(),
-                            jmxServer.getUsername(),
-                            jmxServer.getPassword(),
-                            sslContext);
-                    discoverResourcesForJMXManagedServer(managedServer, jmxEndpoint);
-                    resourcesDiscovered += this.jmxServerInventories.get(managedServer).getResourceManager()
-                            .getAllResources().size();
-                } else {
-                    throw new IllegalArgumentException("An invalid managed server type was found. ["
-                            + managedServer + "] Please report this bug.");
                 }
             }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (RejectedExecutionException ree) {
+            log.debugf("Discovery scan was aborted because we are stopping");
+        } finally {
+            for (Future<Void> future : pending.keySet()) {
+                future.cancel(true);
+            }
         }
 
-        log.debugf("Full discovery scan of managed servers found [%d] resources", resourcesDiscovered);
+        return resourcesDiscovered;
+    }
 
-        // restart the scheduler - this will begin metric collections for our new inventory
+    /**
+     * Creates the endpoint used to talk to the given DMR managed server.
+     *
+     * @param managedServer a local or remote DMR managed server
+     * @return the endpoint of the managed server
+     */
+    private DMREndpoint createDMREndpoint(ManagedServer managedServer) {
+        if (managedServer instanceof LocalDMRManagedServer) {
+            return new LocalDMREndpoint(managedServer.getName().toString(), createLocalClientFactory());
+        }
+
+        RemoteDMRManagedServer dmrServer = (RemoteDMRManagedServer) managedServer;
+        SSLContext sslContext = null;
+        if (dmrServer.getUseSSL()) {
+            sslContext = this.trustOnlySSLContextValues.get(dmrServer.getSecurityRealm()).getOptionalValue();
+        }
+        DMREndpoint endpoint = new DMREndpoint(dmrServer.getName().toString(),
+                dmrServer.getHost(),
+                dmrServer.getPort(),
+                dmrServer.getUsername(),
+                dmrServer.getPassword(),
+                dmrServer.getUseSSL(),
+                sslContext);
+
+        // identify the endpoint with a pooled connection rather than one of its own
+        ModelControllerClientPools pools = this.dmrClientPools;
+        if (pools != null) {
+            endpoint.setModelControllerClientFactory(pools.getPool(endpoint));
+        }
+        return endpoint;
+    }
+
+    /**
+     * @return the file where the inventories of our DMR managed servers are saved between restarts
+     */
+    private File getInventorySnapshotFile() {
+        return new File(getDataDirectory(), "inventory-snapshot.bin");
+    }
+
+    /**
+     * Saves the inventories of all DMR managed servers so they can be {@link #restoreInventorySnapshot() restored}
+     * the next time we start.
+     */
+    private void saveInventorySnapshot() {
+        if (!this.configuration.inventorySnapshotEnabled) {
+            return;
+        }
+
+        File snapshotFile = getInventorySnapshotFile();
         try {
-            restartScheduler();
+            DMRInventorySnapshot.write(snapshotFile, this.feedId, this.dmrServerInventories.values());
         } catch (Exception e) {
-            log.errorCannotInitializeScheduler(e);
+            log.warnInventorySnapshotFailed(snapshotFile.getAbsolutePath(), e);
         }
+    }
 
-        return;
+    /**
+     * Builds the inventories of the enabled DMR managed servers from the snapshot that was saved the last time
+     * we ran, if there is one. When storing to Hawkular, only those resources that were persisted in inventory
+     * are restored; the discovery scan that follows stores the rest.
+     *
+     * @return true if resources were restored and can be scheduled for collection before discovery is done
+     */
+    private boolean restoreInventorySnapshot() {
+        File snapshotFile = getInventorySnapshotFile();
+        if (!this.configuration.inventorySnapshotEnabled || !snapshotFile.exists()) {
+            return false;
+        }
+
+        DMRInventorySnapshot snapshot;
+        try {
+            snapshot = DMRInventorySnapshot.read(snapshotFile);
+        } catch (IOException e) {
+            log.warnInventorySnapshotFailed(snapshotFile.getAbsolutePath(), e);
+            return false;
+        }
+
+        if (!Objects.equals(this.feedId, snapshot.getFeedId())) {
+            log.debugf("Ignoring inventory snapshot of feed [%s]; our feed is [%s]", snapshot.getFeedId(), feedId);
+            return false;
+        }
+
+        boolean persistedOnly = (this.configuration.storageAdapter.type == StorageReportTo.HAWKULAR);
+        int resourcesRestored = 0;
+        for (ManagedServer managedServer : this.configuration.managedServersMap.values()) {
+            if (!managedServer.isEnabled()
+                    || !snapshot.getManagedServerNames().contains(managedServer.getName().getNameString())
+                    || !(managedServer instanceof RemoteDMRManagedServer
+                            || managedServer instanceof LocalDMRManagedServer)) {
+                continue;
+            }
+
+            DMRInventoryManager im = buildDMRInventoryManager(managedServer, createDMREndpoint(managedServer),
+                    managedServer.getResourceTypeSets(), this.feedId, this.configuration);
+            int restored = snapshot.restore(im, persistedOnly);
+            if (restored > 0) {
+                this.dmrServerInventories.put(managedServer, im);
+                resourcesRestored += restored;
+            }
+        }
+
+        if (resourcesRestored == 0) {
+            return false;
+        }
+
+        log.infoRestoredInventorySnapshot(resourcesRestored, this.dmrServerInventories.size());
+        return true;
     }
 
     private VertexSetListener<PlatformResource> getPlatformListenerForChangedInventory(
-            final PlatformInventoryManager imOriginal) {
+            final PlatformInventoryManager imOriginal, final List<Resource<?, ?, ?, ?, ?>> newResources) {
 
         VertexSetListener<PlatformResource> platformListener = null;
 
@@ -888,20 +1290,17 @@ public class MonitorService implements Service<MonitorService>, DiscoveryService
 
                     if (imOriginal != null) {
                         PlatformResource oldResource = imOriginal.getResourceManager().getResource(resource.getID());
-                        if (oldResource != null) {
-                            // we discovered a resource we had before. For now do nothing other than
-                            // set its persisted flag since we assume it has already been or will be persisted
+                        if (oldResource != null && oldResource.isPersisted()) {
+                            // we discovered a resource we had before and it is in inventory already; the diff
+                            // with the previous scan tells whether it changed. One whose store failed is stored again
                             resource.setPersisted(true);
                             resourceType.setPersisted(true);
                             return;
                         }
                     }
 
-                    try {
-                        MonitorService.this.inventoryStorageProxy.storeResource(resource);
-                    } catch (Throwable t) {
-                        log.errorf(t, "Failed to store platform resource [%s]", resource);
-                    }
+                    // only stored once the scan is applied - the results of a scan that is abandoned are dropped
+                    newResources.add(resource);
                 }
             };
         }
@@ -909,7 +1308,8 @@ public class MonitorService implements Service<MonitorService>, DiscoveryService
         return platformListener;
     }
 
-    private VertexSetListener<DMRResource> getDMRListenerForChangedInventory(final DMRInventoryManager imOriginal) {
+    private VertexSetListener<DMRResource> getDMRListenerForChangedInventory(final DMRInventoryManager imOriginal,
+            final List<Resource<?, ?, ?, ?, ?>> newResources) {
         VertexSetListener<DMRResource> dmrListener = null;
 
         // if we are participating in a full hawkular environment,
@@ -927,20 +1327,17 @@ public class MonitorService implements Service<MonitorService>, DiscoveryService
 
                     if (imOriginal != null) {
                         DMRResource oldResource = imOriginal.getResourceManager().getResource(resource.getID());
-                        if (oldResource != null) {
-                            // we discovered a resource we had before. For now do nothing other than
-                            // set its persisted flag since we assume it has already been or will be persisted
+                        if (oldResource != null && oldResource.isPersisted()) {
+                            // we discovered a resource we had before and it is in inventory already; the diff
+                            // with the previous scan tells whether it changed. One whose store failed is stored again
                             resource.setPersisted(true);
                             resourceType.setPersisted(true);
                             return;
                         }
                     }
 
-                    try {
-                        MonitorService.this.inventoryStorageProxy.storeResource(resource);
-                    } catch (Throwable t) {
-                        log.errorf(t, "Failed to store DMR resource [%s]", resource);
-                    }
+                    // only stored once the scan is applied - the results of a scan that is abandoned are dropped
+                    newResources.add(resource);
                 }
             };
         }
@@ -948,7 +1345,8 @@ public class MonitorService implements Service<MonitorService>, DiscoveryService
         return dmrListener;
     }
 
-    private VertexSetListener<JMXResource> getJMXListenerForChangedInventory(final JMXInventoryManager imOriginal) {
+    private VertexSetListener<JMXResource> getJMXListenerForChangedInventory(final JMXInventoryManager imOriginal,
+            final List<Resource<?, ?, ?, ?, ?>> newResources) {
         VertexSetListener<JMXResource> jmxListener = null;
 
         // if we are participating in a full hawkular environment,
@@ -966,41 +1364,285 @@ public class MonitorService implements Service<MonitorService>, DiscoveryService
 
                     if (imOriginal != null) {
                         JMXResource oldResource = imOriginal.getResourceManager().getResource(resource.getID());
-                        if (oldResource != null) {
-                            // we discovered a resource we had before. For now do nothing other than
-                            // set its persisted flag since we assume it has already been or will be persisted
+                        if (oldResource != null && oldResource.isPersisted()) {
+                            // we discovered a resource we had before and it is in inventory already; the diff
+                            // with the previous scan tells whether it changed. One whose store failed is stored again
                             resource.setPersisted(true);
                             resourceType.setPersisted(true);
                             return;
                         }
                     }
 
+                    // only stored once the scan is applied - the results of a scan that is abandoned are dropped
+                    newResources.add(resource);
+                }
+            };
+        }
+
+        return jmxListener;
+    }
+
+    /**
+     * Compares the resources found by a discovery scan with those found by the scan before it. New resources
+     * have already been stored when the scan was applied; this sends the changes to resources that were
+     * already known and removes the resources that are gone.
+     *
+     * @param oldResources the resources found by the previous scan, null if there was none
+     * @param newResources the resources found by the scan that just finished
+     */
+    private <T extends Resource<?, ?, ?, ?, ?>> void syncChangedInventory(ResourceManager<T> oldResources,
+            ResourceManager<T> newResources) {
+        InventoryDiff<T> diff = InventoryDiff.between(oldResources, newResources);
+
+        if (this.configuration.storageAdapter.type == StorageReportTo.HAWKULAR) {
+            for (T resource : diff.getChanged()) {
+                try {
+                    this.storageAdapter.updateResource(resource);
+                } catch (Throwable t) {
+                    log.errorf(t, "Failed to update resource [%s]", resource);
+                }
+            }
+            for (T resource : diff.getRemoved()) {
+                try {
+                    this.storageAdapter.removeResource(resource);
+                } catch (Throwable t) {
+                    log.errorf(t, "Failed to remove resource [%s]", resource);
+                }
+            }
+        }
+
+        this.diagnostics.getInventorySyncAddedHistogram().update(diff.getAdded().size());
+        this.diagnostics.getInventorySyncChangedHistogram().update(diff.getChanged().size());
+        this.diagnostics.getInventorySyncRemovedHistogram().update(diff.getRemoved().size());
+
+        log.debugf("Inventory changes since the last discovery scan: added=[%d], changed=[%d], removed=[%d]",
+                diff.getAdded().size(), diff.getChanged().size(), diff.getRemoved().size());
+    }
+
+    /**
+     * The discovery scan of a single managed server. The scan itself runs in one of the discovery threads and
+     * builds a new inventory without touching the current one; the thread that waits for all the scans then
+     * {@link #apply() applies} that new inventory, so our inventory maps are only ever changed by that thread.
+     */
+    private abstract class ManagedServerDiscovery implements Callable<Void> {
+        private final String name;
+        private volatile long startMillis = 0L;
+
+        // the resources found by the scan that have to be stored in inventory, parents before their children
+        protected final List<Resource<?, ?, ?, ?, ?>> newResources = Collections
+                .synchronizedList(new ArrayList<Resource<?, ?, ?, ?, ?>>());
+
+        public ManagedServerDiscovery(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return the name of the managed server being scanned
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return when the scan started running, or 0 if it is still waiting for a discovery thread
+         */
+        public long getStartMillis() {
+            return startMillis;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            startMillis = System.currentTimeMillis();
+            Timer.Context timerContext = diagnostics.getDiscoveryTimer(name).time();
+            try {
+                discover();
+            } finally {
+                timerContext.stop();
+            }
+            return null;
+        }
+
+        /**
+         * Finds all the resources of the managed server.
+         */
+        protected abstract void discover();
+
+        /**
+         * Replaces the current inventory of the managed server with the one that was just discovered and
+         * sends the changes to inventory.
+         *
+         * @return the number of resources that were discovered
+         */
+        protected abstract int apply();
+
+        /**
+         * Stores the new resources the scan found in inventory. Only called once the scan is applied, so
+         * nothing is stored for a scan that is abandoned.
+         */
+        protected void storeNewResources() {
+            synchronized (newResources) {
+                for (Resource<?, ?, ?, ?, ?> resource : newResources) {
                     try {
-                        MonitorService.this.inventoryStorageProxy.storeResource(resource);
+                        inventoryStorageProxy.storeResource(resource);
                     } catch (Throwable t) {
-                        log.errorf(t, "Failed to store JMX resource [%s]", resource);
+                        log.errorf(t, "Failed to store resource [%s]", resource);
                     }
                 }
-            };
+                newResources.clear();
+            }
+        }
+    }
+
+    private class PlatformDiscovery extends ManagedServerDiscovery {
+        private final PlatformInventoryManager im;
+        private final PlatformInventoryManager imOriginal;
+
+        public PlatformDiscovery() {
+            super(Constants.PLATFORM.toString());
+            this.im = buildPlatformInventoryManager();
+            this.imOriginal = platformInventory.get();
         }
 
-        return jmxListener;
+        @Override
+        protected void discover() {
+            im.discoverResources(getPlatformListenerForChangedInventory(imOriginal, newResources));
+        }
+
+        @Override
+        protected int apply() {
+            platformInventory.set(im);
+            storeNewResources();
+            syncChangedInventory((imOriginal != null) ? imOriginal.getResourceManager() : null,
+                    im.getResourceManager());
+
+            SchedulerConfiguration oldCollections = new SchedulerConfiguration();
+            schedulePlatformMetricAvailCollections(oldCollections, imOriginal);
+            SchedulerConfiguration newCollections = new SchedulerConfiguration();
+            schedulePlatformMetricAvailCollections(newCollections, im);
+            rescheduleCollections(oldCollections, newCollections);
+
+            return im.getResourceManager().getAllResources().size();
+        }
+    }
+
+    private class DMRManagedServerDiscovery extends ManagedServerDiscovery {
+        private final ManagedServer managedServer;
+        private final DMRInventoryManager im;
+        private final DMRInventoryManager imOriginal;
+        private final Collection<Address> scopes;
+
+        public DMRManagedServerDiscovery(ManagedServer managedServer, DMREndpoint dmrEndpoint) {
+            this(managedServer, dmrEndpoint, null);
+        }
+
+        /**
+         * @param scopes if not null, only the resources at or below these addresses are rediscovered and the
+         *               rest are carried over from the managed server's current inventory, which must exist
+         */
+        public DMRManagedServerDiscovery(ManagedServer managedServer, DMREndpoint dmrEndpoint,
+                Collection<Address> scopes) {
+            super(managedServer.getName().toString());
+            this.managedServer = managedServer;
+            this.im = buildDMRInventoryManager(managedServer, dmrEndpoint, managedServer.getResourceTypeSets(),
+                    feedId, configuration);
+            this.imOriginal = dmrServerInventories.get(managedServer);
+            this.scopes = scopes;
+        }
+
+        @Override
+        protected void discover() {
+            if (scopes == null) {
+                im.discoverResources(getDMRListenerForChangedInventory(imOriginal, newResources));
+            } else {
+                im.discoverResourcesUnder(scopes, imOriginal.getResourceManager(),
+                        getDMRListenerForChangedInventory(imOriginal, newResources));
+            }
+        }
+
+        @Override
+        protected int apply() {
+            dmrServerInventories.put(managedServer, im);
+            storeNewResources();
+            syncChangedInventory((imOriginal != null) ? imOriginal.getResourceManager() : null,
+                    im.getResourceManager());
+
+            SchedulerConfiguration oldCollections = new SchedulerConfiguration();
+            if (imOriginal != null) {
+                scheduleDMRMetricAvailCollections(oldCollections, imOriginal);
+            }
+            SchedulerConfiguration newCollections = new SchedulerConfiguration();
+            scheduleDMRMetricAvailCollections(newCollections, im);
+            rescheduleCollections(oldCollections, newCollections);
+
+            return im.getResourceManager().getAllResources().size();
+        }
     }
 
-    private void discoverResourcesForDMRManagedServer(ManagedServer managedServer, DMREndpoint dmrEndpoint) {
-        Collection<Name> resourceTypeSets = managedServer.getResourceTypeSets();
-        DMRInventoryManager im = buildDMRInventoryManager(managedServer, dmrEndpoint, resourceTypeSets, this.feedId,
-                this.configuration);
-        DMRInventoryManager imOriginal = this.dmrServerInventories.put(managedServer, im);
-        im.discoverResources(getDMRListenerForChangedInventory(imOriginal));
+    private class JMXManagedServerDiscovery extends ManagedServerDiscovery {
+        private final ManagedServer managedServer;
+        private final JMXInventoryManager im;
+        private final JMXInventoryManager imOriginal;
+
+        public JMXManagedServerDiscovery(ManagedServer managedServer, JMXEndpoint jmxEndpoint) {
+            super(managedServer.getName().toString());
+            this.managedServer = managedServer;
+            this.im = buildJMXInventoryManager(managedServer, jmxEndpoint, managedServer.getResourceTypeSets(),
+                    feedId, configuration);
+            this.imOriginal = jmxServerInventories.get(managedServer);
+        }
+
+        @Override
+        protected void discover() {
+            im.discoverResources(getJMXListenerForChangedInventory(imOriginal, newResources));
+        }
+
+        @Override
+        protected int apply() {
+            jmxServerInventories.put(managedServer, im);
+            storeNewResources();
+            syncChangedInventory((imOriginal != null) ? imOriginal.getResourceManager() : null,
+                    im.getResourceManager());
+
+            SchedulerConfiguration oldCollections = new SchedulerConfiguration();
+            if (imOriginal != null) {
+                scheduleJMXMetricAvailCollections(oldCollections, imOriginal);
+            }
+            SchedulerConfiguration newCollections = new SchedulerConfiguration();
+            scheduleJMXMetricAvailCollections(newCollections, im);
+            rescheduleCollections(oldCollections, newCollections);
+
+            return im.getResourceManager().getAllResources().size();
+        }
     }
 
-    private void discoverResourcesForJMXManagedServer(ManagedServer managedServer, JMXEndpoint jmxEndpoint) {
-        Collection<Name> resourceTypeSets = managedServer.getResourceTypeSets();
-        JMXInventoryManager im = buildJMXInventoryManager(managedServer, jmxEndpoint, resourceTypeSets, this.feedId,
-                this.configuration);
-        JMXInventoryManager imOriginal = this.jmxServerInventories.put(managedServer, im);
-        im.discoverResources(getJMXListenerForChangedInventory(imOriginal));
+    /**
+     * Builds the platform inventory manager with all metadata but with an empty set of resources.
+     *
+     * @return the platform inventory manager that was created
+     */
+    private PlatformInventoryManager buildPlatformInventoryManager() {
+        Platform config = this.configuration.platform;
+
+        // build the metadata manager
+        ResourceTypeManager<PlatformResourceType, PlatformResourceTypeSet> rtm;
+        rtm = new ResourceTypeManager<>(config.resourceTypeSetMap);
+
+        // tell metric/avail managers what metric and avail types we need to use for the resource types
+        MetricTypeManager<PlatformMetricType, PlatformMetricTypeSet> mtm = new MetricTypeManager<>();
+        AvailTypeManager<PlatformAvailType, PlatformAvailTypeSet> atm = new AvailTypeManager<>();
+
+        mtm.addMetricTypes(config.metricTypeSetMap, null);
+        atm.addAvailTypes(config.availTypeSetMap, null);
+
+        PlatformMetadataManager mm = new PlatformMetadataManager(rtm, mtm, atm);
+        mm.populateMetricAndAvailTypesForAllResourceTypes();
+
+        // Create our empty resource manager - this will be filled in during discovery with our resources
+        ResourceManager<PlatformResource> rm = new ResourceManager<>();
+
+        // build the inventory manager
+        return new PlatformInventoryManager(feedId, mm, rm, new PlatformManagedServer(null, Constants.PLATFORM),
+                new PlatformEndpoint(this.feedId));
     }
 
     /**
@@ -1027,11 +1669,12 @@ public class MonitorService implements Service<MonitorService>, DiscoveryService
         if (dmrEndpoint instanceof LocalDMREndpoint) {
             factory = createLocalClientFactory();
         } else {
-            factory = new ModelControllerClientFactoryImpl(dmrEndpoint);
+            factory = this.dmrClientPools.getPool(dmrEndpoint);
         }
 
         DMRInventoryManager im;
-        im = new DMRInventoryManager(feedId, metadataMgr, resourceManager, managedServer, dmrEndpoint, factory);
+        im = new DMRInventoryManager(feedId, metadataMgr, resourceManager, managedServer, dmrEndpoint, factory,
+                monitorServiceConfig.dmrRecursiveDiscovery);
         return im;
     }
 
@@ -1055,10 +1698,11 @@ public class MonitorService implements Service<MonitorService>, DiscoveryService
         ResourceManager<JMXResource> resourceManager = new ResourceManager<>();
 
         // determine the client to use to connect to the managed server
-        JmxClientFactory factory = new JmxClientFactoryImpl(jmxEndpoint);
+        JmxClientFactory factory = this.discoveryJmxClientCache.getFactory(jmxEndpoint);
 
         JMXInventoryManager im;
-        im = new JMXInventoryManager(feedId, metadataMgr, resourceManager, managedServer, jmxEndpoint, factory);
+        im = new JMXInventoryManager(feedId, metadataMgr, resourceManager, managedServer, jmxEndpoint, factory,
+                monitorServiceConfig.jmxDiscoveryBulkSize);
         return im;
     }
 
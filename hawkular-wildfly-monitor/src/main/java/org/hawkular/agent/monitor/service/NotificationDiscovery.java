@@ -0,0 +1,341 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.agent.monitor.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+import org.hawkular.agent.monitor.inventory.ManagedServer;
+import org.hawkular.agent.monitor.inventory.jmx.JMXInventoryManager;
+import org.hawkular.agent.monitor.inventory.jmx.JMXResourceType;
+import org.hawkular.agent.monitor.log.AgentLoggers;
+import org.hawkular.agent.monitor.log.MsgLogger;
+import org.hawkular.dmrclient.Address;
+import org.jboss.as.controller.descriptions.ModelDescriptionConstants;
+import org.jboss.as.controller.notification.Notification;
+import org.jboss.as.controller.notification.NotificationFilter;
+import org.jboss.as.controller.notification.NotificationHandler;
+import org.jboss.as.controller.notification.NotificationHandlerRegistry;
+import org.jolokia.client.request.J4pSearchRequest;
+import org.jolokia.client.request.J4pSearchResponse;
+
+/**
+ * Keeps the inventory up to date as managed servers change rather than waiting for the next full discovery scan.
+ *
+ * The local DMR managed server tells us about every resource that is added or removed with its
+ * resource-added and resource-removed management notifications; only the parts of the server those
+ * notifications point to are rediscovered. Remote JMX managed servers are talked to over Jolokia, which gives
+ * us no way to receive the MBean server's registration notifications, so they are checked for registered or
+ * unregistered MBeans with one bulk search request every few minutes instead and rediscovered when their
+ * MBeans changed.
+ *
+ * Changes are not rediscovered right away; they are collected until no more changes have come in for the
+ * configured delay (or for at most six times that long) so, for example, a whole series of
+ * deployments is rediscovered at once. Changes of resources that a command has just asked to be rediscovered
+ * anyway (see {@link #discoveryRequested(ManagedServer, Address...)}) are not rediscovered a second time.
+ */
+public class NotificationDiscovery {
+    private static final MsgLogger log = AgentLoggers.getLogger(NotificationDiscovery.class);
+
+    /**
+     * Changes that keep coming in postpone their rediscovery for at most this many delays.
+     */
+    private static final int MAX_DELAYS = 6;
+
+    private static final NotificationFilter RESOURCE_ADDED_OR_REMOVED = new NotificationFilter() {
+        @Override
+        public boolean isNotificationEnabled(Notification notification) {
+            return ModelDescriptionConstants.RESOURCE_ADDED_NOTIFICATION.equals(notification.getType())
+                    || ModelDescriptionConstants.RESOURCE_REMOVED_NOTIFICATION.equals(notification.getType());
+        }
+    };
+
+    private final DiscoveryService discoveryService;
+    private final long delayMillis;
+    private final long pollIntervalMillis;
+    private final ScheduledExecutorService executor;
+
+    // the changes that are waiting to be rediscovered
+    private final Map<ManagedServer, Set<Address>> changedAddresses = new LinkedHashMap<>();
+    private final Set<ManagedServer> changedManagedServers = new LinkedHashSet<>();
+    private ScheduledFuture<?> pendingRediscovery;
+    private long firstChangeMillis;
+
+    // when commands last asked for addresses to be rediscovered; changes of them within the delay are ignored
+    private final Map<ManagedServer, Map<Address, Long>> requestedAddresses = new HashMap<>();
+
+    // the MBeans each JMX managed server had the last time it was checked - only used by our executor thread
+    private final Map<ManagedServer, Set<String>> lastObjectNames = new HashMap<>();
+
+    private NotificationHandlerRegistry notificationRegistry;
+    private NotificationHandler notificationHandler;
+
+    private final Runnable rediscoverChanges = new Runnable() {
+        @Override
+        public void run() {
+            rediscoverChanges();
+        }
+    };
+
+    /**
+     * @param discoveryService rediscovers what changed
+     * @param delaySecs how long to wait for more changes before rediscovering
+     * @param jmxPollMins how often remote JMX managed servers are checked for changed MBeans
+     */
+    public NotificationDiscovery(DiscoveryService discoveryService, int delaySecs, int jmxPollMins) {
+        this.discoveryService = discoveryService;
+        this.delayMillis = TimeUnit.SECONDS.toMillis(Math.max(1, delaySecs));
+        this.pollIntervalMillis = TimeUnit.MINUTES.toMillis(Math.max(1, jmxPollMins));
+
+        ThreadFactory threadFactory = ThreadFactoryGenerator.generateFactory(true,
+                "Hawkular-Monitor-Notification-Discovery");
+        this.executor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+    }
+
+    /**
+     * Starts listening for changes.
+     *
+     * @param registry where the local DMR managed server registers the handlers of its management notifications
+     * @param localManagedServer the local DMR managed server; null if it is not monitored
+     */
+    public synchronized void start(NotificationHandlerRegistry registry, final ManagedServer localManagedServer) {
+        if (localManagedServer != null) {
+            this.notificationHandler = new NotificationHandler() {
+                @Override
+                public void handleNotification(Notification notification) {
+                    Address address = Address.fromModelNode(notification.getSource().toModelNode());
+                    log.debugf("Received [%s] notification for [%s]", notification.getType(), address);
+                    resourceChanged(localManagedServer, address);
+                }
+            };
+            this.notificationRegistry = registry;
+            registry.registerNotificationHandler(NotificationHandlerRegistry.ANY_ADDRESS, this.notificationHandler,
+                    RESOURCE_ADDED_OR_REMOVED);
+        }
+
+        this.executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                checkJMXManagedServers();
+            }
+        }, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops listening for changes. Changes that have not been rediscovered yet are forgotten.
+     */
+    public synchronized void stop() {
+        if (this.notificationHandler != null) {
+            this.notificationRegistry.unregisterNotificationHandler(NotificationHandlerRegistry.ANY_ADDRESS,
+                    this.notificationHandler, RESOURCE_ADDED_OR_REMOVED);
+            this.notificationHandler = null;
+            this.notificationRegistry = null;
+        }
+
+        this.executor.shutdownNow();
+        this.changedAddresses.clear();
+        this.changedManagedServers.clear();
+        this.requestedAddresses.clear();
+        this.pendingRediscovery = null;
+    }
+
+    /**
+     * Tells us that the resource at the given address of a DMR managed server was added or removed.
+     *
+     * @param managedServer the managed server that changed
+     * @param address the address of the resource that was added or removed
+     */
+    public synchronized void resourceChanged(ManagedServer managedServer, Address address) {
+        if (isRecentlyRequested(managedServer, address)) {
+            log.debugf("[%s] in managed server [%s] is being rediscovered on request - ignoring its change", address,
+                    managedServer.getName());
+            return;
+        }
+
+        Set<Address> addresses = this.changedAddresses.get(managedServer);
+        if (addresses == null) {
+            addresses = new LinkedHashSet<>();
+            this.changedAddresses.put(managedServer, addresses);
+        }
+        addresses.add(address);
+        scheduleRediscovery();
+    }
+
+    /**
+     * Tells us that something changed in the given managed server but not where, so all of it will be rediscovered.
+     *
+     * @param managedServer the managed server that changed
+     */
+    public synchronized void managedServerChanged(ManagedServer managedServer) {
+        this.changedManagedServers.add(managedServer);
+        scheduleRediscovery();
+    }
+
+    /**
+     * Tells us that a command has asked for the given addresses of a managed server to be rediscovered, so
+     * changes we have been or will be told about for them within the delay need not be rediscovered again.
+     *
+     * @param managedServer the managed server that changed
+     * @param addresses the addresses that are being rediscovered
+     */
+    public synchronized void discoveryRequested(ManagedServer managedServer, Address... addresses) {
+        long now = System.currentTimeMillis();
+        Map<Address, Long> requested = this.requestedAddresses.get(managedServer);
+        if (requested == null) {
+            requested = new HashMap<>();
+            this.requestedAddresses.put(managedServer, requested);
+        }
+        forgetOldRequests(requested, now);
+        for (Address address : addresses) {
+            requested.put(address, now);
+        }
+
+        Set<Address> changed = this.changedAddresses.get(managedServer);
+        if (changed != null) {
+            changed.removeAll(Arrays.asList(addresses));
+            if (changed.isEmpty()) {
+                this.changedAddresses.remove(managedServer);
+            }
+        }
+    }
+
+    private boolean isRecentlyRequested(ManagedServer managedServer, Address address) {
+        Map<Address, Long> requested = this.requestedAddresses.get(managedServer);
+        if (requested == null) {
+            return false;
+        }
+        forgetOldRequests(requested, System.currentTimeMillis());
+        if (requested.isEmpty()) {
+            this.requestedAddresses.remove(managedServer);
+        }
+        return requested.containsKey(address);
+    }
+
+    private void forgetOldRequests(Map<Address, Long> requested, long now) {
+        for (Iterator<Long> it = requested.values().iterator(); it.hasNext();) {
+            if (now - it.next() >= delayMillis) {
+                it.remove();
+            }
+        }
+    }
+
+    private void scheduleRediscovery() {
+        if (this.executor.isShutdown()) {
+            return; // we have been stopped
+        }
+
+        long now = System.currentTimeMillis();
+        long maxDelayMillis = MAX_DELAYS * delayMillis;
+        if (this.pendingRediscovery == null) {
+            this.firstChangeMillis = now;
+        } else if (now - this.firstChangeMillis >= maxDelayMillis) {
+            return; // changes have been coming in for too long - do not postpone the rediscovery any more
+        } else {
+            this.pendingRediscovery.cancel(false);
+        }
+
+        long delay = Math.min(delayMillis, this.firstChangeMillis + maxDelayMillis - now);
+        this.pendingRediscovery = this.executor.schedule(rediscoverChanges, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void rediscoverChanges() {
+        Map<ManagedServer, Set<Address>> addresses;
+        Set<ManagedServer> managedServers;
+        synchronized (this) {
+            addresses = new LinkedHashMap<>(this.changedAddresses);
+            managedServers = new LinkedHashSet<>(this.changedManagedServers);
+            this.changedAddresses.clear();
+            this.changedManagedServers.clear();
+            this.pendingRediscovery = null;
+        }
+
+        for (ManagedServer managedServer : managedServers) {
+            try {
+                this.discoveryService.discoverResourcesForManagedServer(managedServer);
+            } catch (Exception e) {
+                log.errorf(e, "Failed to rediscover managed server [%s]", managedServer.getName());
+            }
+        }
+
+        for (Map.Entry<ManagedServer, Set<Address>> entry : addresses.entrySet()) {
+            if (managedServers.contains(entry.getKey())) {
+                continue; // all of it has just been rediscovered
+            }
+            try {
+                Set<Address> changed = entry.getValue();
+                this.discoveryService.discoverResourcesForManagedServer(entry.getKey(),
+                        changed.toArray(new Address[changed.size()]));
+            } catch (Exception e) {
+                log.errorf(e, "Failed to rediscover %s in managed server [%s]", entry.getValue(),
+                        entry.getKey().getName());
+            }
+        }
+    }
+
+    private void checkJMXManagedServers() {
+        Map<ManagedServer, JMXInventoryManager> inventories = this.discoveryService.getJmxServerInventories();
+        for (Map.Entry<ManagedServer, JMXInventoryManager> entry : inventories.entrySet()) {
+            try {
+                Set<String> objectNames = searchObjectNames(entry.getValue());
+                Set<String> previousObjectNames = this.lastObjectNames.put(entry.getKey(), objectNames);
+                if (previousObjectNames != null && !previousObjectNames.equals(objectNames)) {
+                    log.debugf("MBeans of JMX managed server [%s] changed", entry.getKey().getName());
+                    managedServerChanged(entry.getKey());
+                }
+            } catch (Exception e) {
+                log.debugf("Cannot check MBeans of JMX managed server [%s]: %s", entry.getKey().getName(), e);
+            }
+        }
+        this.lastObjectNames.keySet().retainAll(inventories.keySet());
+    }
+
+    /**
+     * @return the names of all MBeans the resource types of the given JMX managed server can be found in
+     */
+    private Set<String> searchObjectNames(JMXInventoryManager im) throws Exception {
+        List<J4pSearchRequest> requests = new ArrayList<>();
+        for (JMXResourceType type : im.getMetadataManager().getResourceTypeManager().getAllResourceTypes()) {
+            requests.add(new J4pSearchRequest(type.getObjectName()));
+        }
+
+        Set<String> objectNames = new HashSet<>();
+        if (!requests.isEmpty()) {
+            List<J4pSearchResponse> responses = im.getJmxClientFactory().createClient().execute(requests);
+            for (J4pSearchResponse response : responses) {
+                for (ObjectName objectName : response.getObjectNames()) {
+                    objectNames.add(objectName.getCanonicalName());
+                }
+            }
+        }
+        return objectNames;
+    }
+}
@@ -21,15 +21,26 @@ import static org.hawkular.inventory.api.Relationships.WellKnown.incorporates;
 import java.io.Reader;
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 import org.hawkular.agent.monitor.api.InventoryStorage;
@@ -52,6 +63,7 @@ import org.hawkular.agent.monitor.inventory.ResourceType;
 import org.hawkular.agent.monitor.log.AgentLoggers;
 import org.hawkular.agent.monitor.log.MsgLogger;
 import org.hawkular.agent.monitor.service.ServerIdentifiers;
+import org.hawkular.agent.monitor.service.ThreadFactoryGenerator;
 import org.hawkular.agent.monitor.service.Util;
 import org.hawkular.inventory.api.Relationships.Direction;
 import org.hawkular.inventory.api.ResourceTypes;
@@ -93,6 +105,9 @@ public class AsyncInventoryStorage implements InventoryStorage {
         /** A set of entity IDs already added to the currently built request */
         private Set<String> addedIds = new HashSet<>();
 
+        /** The number of entities and relationships added to the currently built request */
+        private int entityCount = 0;
+
         private final String environmentId;
         private final String feedId;
         private final String tenantId;
@@ -114,9 +129,17 @@ public class AsyncInventoryStorage implements InventoryStorage {
             Map<String, Map<String, List<Blueprint>>> result = this.result;
             this.result = new LinkedHashMap<>();
             this.addedIds = new HashSet<>();
+            this.entityCount = 0;
             return result;
         }
 
+        /**
+         * @return the number of entities and relationships added since the last {@link #build()}
+         */
+        public int getEntityCount() {
+            return entityCount;
+        }
+
         /**
          * Adds an {@link Entity.Blueprint} unless its ID is available in {@link #addedIds}.
          *
@@ -251,6 +274,7 @@ public class AsyncInventoryStorage implements InventoryStorage {
                 pathEntities.put(key, list);
             }
             list.add(blueprint);
+            entityCount++;
 
         }
 
@@ -274,24 +298,16 @@ public class AsyncInventoryStorage implements InventoryStorage {
                     null,
                     null);
 
-            StringBuilder parentPath = new StringBuilder();
-            Resource<?, ?, ?, ?, ?> parent = resource.getParent();
-            while (parent != null) {
-                String resourceIdPath = "/" + Util.urlEncode(parent.getID().getIDString());
-                parentPath.insert(0, resourceIdPath);
-                parent = parent.getParent();
-            }
+            String parentPath = getParentPath(resource);
 
             CanonicalPath parentCanonicalPath = parentPath.length() == 0 ? newPathPrefix().get()
-                    : CanonicalPath.fromPartiallyUntypedString(parentPath.toString(), newPathPrefix().get(),
+                    : CanonicalPath.fromPartiallyUntypedString(parentPath, newPathPrefix().get(),
                             org.hawkular.inventory.api.model.Resource.class);
 
             relationshipOrEntity(parentCanonicalPath.toString(), org.hawkular.inventory.api.model.Resource.class,
                     rPojo);
 
-            String resourcePath = parentPath.toString() + "/" + Util.urlEncode(resource.getID().getIDString());
-            CanonicalPath resourceCanonicalPath = CanonicalPath.fromPartiallyUntypedString(resourcePath,
-                    newPathPrefix().get(), org.hawkular.inventory.api.model.Resource.class);
+            CanonicalPath resourceCanonicalPath = getResourceCanonicalPath(resource);
 
             // resource configuration
             Collection<? extends ResourceConfigurationPropertyInstance<?>> resConfigInstances = resource
@@ -340,6 +356,9 @@ public class AsyncInventoryStorage implements InventoryStorage {
 
             // resource type
             String resourceTypeId = getInventoryId(resourceType);
+            if (addedIds.contains(resourceTypeId)) {
+                return this; // its metric types, operations etc. were already added along with it
+            }
             org.hawkular.inventory.api.model.ResourceType.Blueprint blueprint = //
             new org.hawkular.inventory.api.model.ResourceType.Blueprint(resourceTypeId,
                     resourceType.getName().getNameString(), resourceType.getProperties(), null, null);
@@ -398,6 +417,42 @@ public class AsyncInventoryStorage implements InventoryStorage {
             return this;
         }
 
+        /**
+         * @return the IDs of all ancestors of the given resource, each prefixed with a slash
+         */
+        private String getParentPath(Resource<?, ?, ?, ?, ?> resource) {
+            StringBuilder parentPath = new StringBuilder();
+            Resource<?, ?, ?, ?, ?> parent = resource.getParent();
+            while (parent != null) {
+                String resourceIdPath = "/" + Util.urlEncode(parent.getID().getIDString());
+                parentPath.insert(0, resourceIdPath);
+                parent = parent.getParent();
+            }
+            return parentPath.toString();
+        }
+
+        private CanonicalPath getResourceCanonicalPath(Resource<?, ?, ?, ?, ?> resource) {
+            String resourcePath = getParentPath(resource) + "/" + Util.urlEncode(resource.getID().getIDString());
+            return CanonicalPath.fromPartiallyUntypedString(resourcePath, newPathPrefix().get(),
+                    org.hawkular.inventory.api.model.Resource.class);
+        }
+
+        /**
+         * @param resource a resource that was added to this builder
+         * @return the inventory path of the given resource as used in the {@code /bulk} request and response
+         */
+        public String getPath(Resource<?, ?, ?, ?, ?> resource) {
+            return getResourceCanonicalPath(resource).toString();
+        }
+
+        /**
+         * @param resourceType a resource type that was added to this builder
+         * @return the inventory path of the given resource type as used in the {@code /bulk} request and response
+         */
+        public String getPath(ResourceType<?, ?, ?, ?> resourceType) {
+            return newPathPrefix().resourceType(getInventoryId(resourceType)).get().toString();
+        }
+
         /**
          * Returns the simple class name of {@code cl} with first character made lower case.
          *
@@ -414,9 +469,27 @@ public class AsyncInventoryStorage implements InventoryStorage {
     }
 
     private class Worker extends Thread {
+        private static final long MIN_RETRY_DELAY_MILLIS = 5000L;
+        private static final long MAX_RETRY_DELAY_MILLIS = 300000L;
+
         private final ArrayBlockingQueue<Resource<?, ?, ?, ?, ?>> queue;
         private boolean keepRunning = true;
 
+        // resources that cannot be stored yet, keyed by the ID of the parent that has to be stored first
+        private final Map<ID, List<Resource<?, ?, ?, ?, ?>>> waitingForParent = new HashMap<>();
+
+        // resources that could not be stored; children of these that show up later are not stored either
+        private final Set<ID> failedParentIds = new HashSet<>();
+
+        // resources that were removed from inventory; nothing waits for these anymore
+        private final ConcurrentLinkedQueue<ID> removedIds = new ConcurrentLinkedQueue<>();
+
+        // resources whose requests did not make it to inventory at all; they are sent again after a delay that
+        // doubles each time inventory cannot be reached in a row
+        private final List<Resource<?, ?, ?, ?, ?>> retrying = new ArrayList<>();
+        private long retryDelayMillis = 0L;
+        private long retryAtMillis = 0L;
+
         public Worker(ArrayBlockingQueue<Resource<?, ?, ?, ?, ?>> queue) {
             super("Hawkular-Monitor-Inventory-Storage");
             this.queue = queue;
@@ -425,11 +498,19 @@ public class AsyncInventoryStorage implements InventoryStorage {
         public void run() {
             try {
                 while (keepRunning) {
-                    // batch processing
-                    Resource<?, ?, ?, ?, ?> sample = queue.take();
+                    // batch processing; if resources are to be sent again, wait no longer than until then
+                    Resource<?, ?, ?, ?, ?> sample;
+                    if (retrying.isEmpty()) {
+                        sample = queue.take();
+                    } else {
+                        long waitMillis = retryAtMillis - System.currentTimeMillis();
+                        sample = (waitMillis > 0L) ? queue.poll(waitMillis, TimeUnit.MILLISECONDS) : queue.poll();
+                    }
                     List<Resource<?, ?, ?, ?, ?>> resources = new ArrayList<>();
-                    resources.add(sample);
-                    queue.drainTo(resources);
+                    if (sample != null) {
+                        resources.add(sample);
+                        queue.drainTo(resources);
+                    }
 
                     AsyncInventoryStorage.this.diagnostics.getInventoryStorageBufferSize().dec(resources.size());
 
@@ -450,104 +531,329 @@ public class AsyncInventoryStorage implements InventoryStorage {
             this.keepRunning = false;
         }
 
+        /**
+         * Tells the worker the resource with the given ID is no longer part of any inventory, so its children
+         * that are still waiting for it can be forgotten.
+         */
+        public void resourceRemoved(ID id) {
+            removedIds.add(id);
+        }
+
+        /**
+         * Stores the given resources level by level: first all resources whose parents are already persisted,
+         * then the children of those that were stored successfully, and so on. Each level goes out in as few
+         * {@code /bulk} requests as possible (see {@link #storeLevel(List)}) which are sent in parallel.
+         * Resources whose parents are not yet persisted wait until their parents are stored, even if the
+         * parents are only submitted later. Resources whose requests did not reach inventory at all (for example
+         * because inventory is down) are sent again later, along with the resources that are waiting for them.
+         */
         private void storeAllResources(List<Resource<?, ?, ?, ?, ?>> resources) throws Exception {
-            if (resources != null && !resources.isEmpty()) {
-                for (Resource<?, ?, ?, ?, ?> resource : resources) {
-                    // FIXME environmentId should be configurable
-                    BulkPayloadBuilder builder = new BulkPayloadBuilder(config.tenantId, "test",
-                            AsyncInventoryStorage.this.selfId.getFullIdentifier());
+            // forget about whatever was waiting for resources that are gone by now
+            ID removedId;
+            while ((removedId = removedIds.poll()) != null) {
+                failedParentIds.remove(removedId);
+                forgetWaitingDescendants(removedId);
+                for (Iterator<Resource<?, ?, ?, ?, ?>> it = retrying.iterator(); it.hasNext();) {
+                    if (it.next().getID().equals(removedId)) {
+                        it.remove();
+                    }
+                }
+            }
 
-                    ResourceType<?, ?, ?, ?> resourceType = resource.getResourceType();
+            List<Resource<?, ?, ?, ?, ?>> level = new ArrayList<>();
+            if (!retrying.isEmpty() && System.currentTimeMillis() >= retryAtMillis) {
+                log.debugf("Sending [%d] resources to inventory again", retrying.size());
+                level.addAll(retrying);
+                retrying.clear();
+            }
+            for (Resource<?, ?, ?, ?, ?> resource : resources) {
+                Resource<?, ?, ?, ?, ?> parent = resource.getParent();
+                if (parent == null || parent.isPersisted()) {
+                    level.add(resource);
+                } else if (failedParentIds.contains(parent.getID())) {
+                    log.errorf("Cannot persist a resource until its parent is persisted: [%s]", resource);
+                    failedParentIds.add(resource.getID());
+                } else {
+                    waitForParent(resource, parent);
+                }
+            }
 
-                    builder.resourceType(resourceType);
+            // parents that were persisted some other way (e.g. found again in a rediscovery) release their children
+            for (ID parentId : new ArrayList<>(waitingForParent.keySet())) {
+                for (Resource<?, ?, ?, ?, ?> child : waitingForParent.get(parentId)) {
+                    if (child.getParent().isPersisted()) {
+                        level.addAll(waitingForParent.remove(parentId));
+                        break;
+                    }
+                }
+            }
 
-                    if (resource.getParent() != null && !resource.getParent().isPersisted()) {
-                        log.errorf("Cannot persist a resource until its parent is persisted: [%s]", resource);
-                        continue;
+            while (!level.isEmpty()) {
+                Set<Resource<?, ?, ?, ?, ?>> unsent = Collections.newSetFromMap(
+                        new IdentityHashMap<Resource<?, ?, ?, ?, ?>, Boolean>());
+                unsent.addAll(storeLevel(level));
+
+                List<Resource<?, ?, ?, ?, ?>> nextLevel = new ArrayList<>();
+                for (Resource<?, ?, ?, ?, ?> resource : level) {
+                    if (resource.isPersisted()) {
+                        failedParentIds.remove(resource.getID());
+                        List<Resource<?, ?, ?, ?, ?>> children = waitingForParent.remove(resource.getID());
+                        if (children != null) {
+                            nextLevel.addAll(children);
+                        }
+                    } else if (unsent.contains(resource)) {
+                        // its children keep waiting for it
+                        retrying.add(resource);
+                    } else {
+                        // inventory refused it - sending it again won't help
+                        failedParentIds.add(resource.getID());
+                        dropWaitingDescendants(resource.getID());
                     }
+                }
+                level = nextLevel;
+
+                if (unsent.isEmpty()) {
+                    retryDelayMillis = 0L;
+                } else {
+                    retryDelayMillis = (retryDelayMillis == 0L) ? MIN_RETRY_DELAY_MILLIS
+                            : Math.min(retryDelayMillis * 2, MAX_RETRY_DELAY_MILLIS);
+                    retryAtMillis = System.currentTimeMillis() + retryDelayMillis;
+                    log.debugf("[%d] resources could not be sent to inventory, trying again in [%d] ms",
+                            unsent.size(), retryDelayMillis);
+                }
+            }
+
+            if (!waitingForParent.isEmpty()) {
+                log.debugf("[%d] resources are waiting for their parents to be stored in inventory",
+                        waitingForParent.size());
+            }
+        }
+
+        private void waitForParent(Resource<?, ?, ?, ?, ?> resource, Resource<?, ?, ?, ?, ?> parent) {
+            List<Resource<?, ?, ?, ?, ?>> children = waitingForParent.get(parent.getID());
+            if (children == null) {
+                children = new ArrayList<>();
+                waitingForParent.put(parent.getID(), children);
+            }
+            children.add(resource);
+        }
+
+        /**
+         * The resource with the given ID could not be stored, so neither can any of its descendants that are
+         * waiting for it. Those are remembered as failed too, so their own children are not kept waiting either.
+         */
+        private void dropWaitingDescendants(ID id) {
+            List<Resource<?, ?, ?, ?, ?>> children = waitingForParent.remove(id);
+            if (children != null) {
+                for (Resource<?, ?, ?, ?, ?> child : children) {
+                    log.errorf("Cannot persist a resource until its parent is persisted: [%s]", child);
+                    failedParentIds.add(child.getID());
+                    dropWaitingDescendants(child.getID());
+                }
+            }
+        }
+
+        /**
+         * The resource with the given ID was removed from inventory, so its descendants that are waiting for it
+         * will never be stored.
+         */
+        private void forgetWaitingDescendants(ID id) {
+            List<Resource<?, ?, ?, ?, ?>> children = waitingForParent.remove(id);
+            if (children != null) {
+                for (Resource<?, ?, ?, ?, ?> child : children) {
+                    log.debugf("Parent of resource [%s] was removed, it will not be stored", child);
+                    forgetWaitingDescendants(child.getID());
+                }
+            }
+        }
 
-                    builder.resource(resource);
+        /**
+         * Stores resources whose parents are all persisted. The resources are split into requests that hold as
+         * many resources (along with those of their types that are not yet persisted) as fit within the configured
+         * maximum number of entities; the requests are sent in parallel and this method waits for all of them.
+         *
+         * @return the resources whose requests did not reach inventory at all
+         */
+        private List<Resource<?, ?, ?, ?, ?>> storeLevel(List<Resource<?, ?, ?, ?, ?>> level)
+                throws InterruptedException {
+            List<Callable<List<Resource<?, ?, ?, ?, ?>>>> requests = new ArrayList<>();
+            BulkPayloadBuilder builder = newBulkPayloadBuilder();
+            List<Resource<?, ?, ?, ?, ?>> batch = new ArrayList<>();
+
+            for (Resource<?, ?, ?, ?, ?> resource : level) {
+                addToBuilder(builder, resource);
+                batch.add(resource);
+                if (builder.getEntityCount() >= maxBulkEntities) {
+                    requests.add(newStoreBatchRequest(batch, builder));
+                    builder = newBulkPayloadBuilder();
+                    batch = new ArrayList<>();
+                }
+            }
+            if (!batch.isEmpty()) {
+                requests.add(newStoreBatchRequest(batch, builder));
+            }
 
-                    log.debugf("Storing resource and eventually its type in inventory: [%s]", resource);
+            List<Resource<?, ?, ?, ?, ?>> unsent = new ArrayList<>();
+            for (Future<List<Resource<?, ?, ?, ?, ?>>> result : requestExecutor.invokeAll(requests)) {
+                try {
+                    unsent.addAll(result.get());
+                } catch (ExecutionException e) {
+                    // storeBatch already logged it; the resources are simply not marked as persisted
+                }
+            }
+            return unsent;
+        }
 
-                    Map<String, Map<String, List<AbstractElement.Blueprint>>> payload = builder.build();
-                    if (!payload.isEmpty()) {
-                        try {
-                            StringBuilder url = Util.getContextUrlString(AsyncInventoryStorage.this.config.url,
-                                    AsyncInventoryStorage.this.config.inventoryContext);
-                            url.append("bulk");
-                            String jsonPayload = Util.toJson(payload);
+        private Callable<List<Resource<?, ?, ?, ?, ?>>> newStoreBatchRequest(
+                final List<Resource<?, ?, ?, ?, ?>> batch, final BulkPayloadBuilder builder) {
+            return new Callable<List<Resource<?, ?, ?, ?, ?>>>() {
+                @Override
+                public List<Resource<?, ?, ?, ?, ?>> call() throws Exception {
+                    return storeBatch(batch, builder);
+                }
+            };
+        }
+
+        private BulkPayloadBuilder newBulkPayloadBuilder() {
+            // FIXME environmentId should be configurable
+            return new BulkPayloadBuilder(config.tenantId, "test",
+                    AsyncInventoryStorage.this.selfId.getFullIdentifier());
+        }
+
+        private void addToBuilder(BulkPayloadBuilder builder, Resource<?, ?, ?, ?, ?> resource) {
+            ResourceType<?, ?, ?, ?> resourceType = resource.getResourceType();
+            if (!resourceType.isPersisted()) {
+                builder.resourceType(resourceType);
+            }
+            builder.resource(resource);
+        }
 
-                            log.tracef("About to send a bulk insert request to inventory: [%s]", jsonPayload);
+        /**
+         * Sends one {@code /bulk} request with the given resources. If the request turns out to be larger
+         * than the configured maximum number of bytes, the resources are split up into two requests.
+         *
+         * @return the resources of the requests that failed as a whole, so inventory did not get to say
+         *         whether it accepted them
+         */
+        private List<Resource<?, ?, ?, ?, ?>> storeBatch(List<Resource<?, ?, ?, ?, ?>> batch,
+                BulkPayloadBuilder builder) throws InterruptedException {
 
-                            // now send the REST request
-                            Request request = AsyncInventoryStorage.this.httpClientBuilder
-                                    .buildJsonPostRequest(url.toString(), null, jsonPayload);
+            Map<String, Map<String, List<AbstractElement.Blueprint>>> payload = builder.build();
+            if (payload.isEmpty()) {
+                return Collections.emptyList();
+            }
 
-                            final Timer.Context timer = diagnostics.getInventoryStorageRequestTimer().time();
-                            Response response = AsyncInventoryStorage.this.httpClientBuilder.getHttpClient()
-                                    .newCall(request).execute();
-                            final long durationNanos = timer.stop();
+            String jsonPayload = Util.toJson(payload);
 
-                            final Reader responseBodyReader;
+            if (jsonPayload.length() > maxBulkBytes && batch.size() > 1) {
+                List<Resource<?, ?, ?, ?, ?>> unsent = new ArrayList<>();
+                int half = batch.size() / 2;
+                for (List<Resource<?, ?, ?, ?, ?>> part : Arrays.asList(batch.subList(0, half),
+                        batch.subList(half, batch.size()))) {
+                    BulkPayloadBuilder partBuilder = newBulkPayloadBuilder();
+                    for (Resource<?, ?, ?, ?, ?> resource : part) {
+                        addToBuilder(partBuilder, resource);
+                    }
+                    unsent.addAll(storeBatch(part, partBuilder));
+                }
+                return unsent;
+            }
 
-                            if (log.isDebugEnabled()) {
-                                final long durationMs = TimeUnit.MILLISECONDS.convert(durationNanos,
-                                        TimeUnit.NANOSECONDS);
-                                log.debugf("Took [%d]ms to store resource [%s]", durationMs, resource.getName());
+            log.debugf("Storing [%d] resources and eventually their types in inventory", batch.size());
 
-                                String body = response.body().string();
-                                responseBodyReader = new StringReader(body);
-                                log.tracef("Body of bulk insert request response: %s", body);
-                            } else {
-                                responseBodyReader = response.body().charStream();
-                            }
+            boolean sendAgain = true; // until inventory tells us what it made of the request
+            try {
+                StringBuilder url = Util.getContextUrlString(AsyncInventoryStorage.this.config.url,
+                        AsyncInventoryStorage.this.config.inventoryContext);
+                url.append("bulk");
+
+                log.tracef("About to send a bulk insert request to inventory: [%s]", jsonPayload);
+
+                // now send the REST request
+                Request request = AsyncInventoryStorage.this.httpClientBuilder
+                        .buildJsonPostRequest(url.toString(), null, jsonPayload);
+
+                final Timer.Context timer = diagnostics.getInventoryStorageRequestTimer().time();
+                Response response = AsyncInventoryStorage.this.httpClientBuilder.getHttpClient()
+                        .newCall(request).execute();
+                final long durationNanos = timer.stop();
+                try {
+                    // inventory did get the request; unless it was too busy to look at it, it will decide the same
+                    // way if the request is sent again
+                    sendAgain = response.code() >= 500 || response.code() == 408 || response.code() == 429;
+
+                    final Reader responseBodyReader;
+
+                    if (log.isDebugEnabled()) {
+                        final long durationMs = TimeUnit.MILLISECONDS.convert(durationNanos, TimeUnit.NANOSECONDS);
+                        log.debugf("Took [%d]ms to store [%d] resources", durationMs, batch.size());
+
+                        String body = response.body().string();
+                        responseBodyReader = new StringReader(body);
+                        log.tracef("Body of bulk insert request response: %s", body);
+                    } else {
+                        responseBodyReader = response.body().charStream();
+                    }
 
-                            // HTTP status of 201 means success, 409 means it already exists; anything else is an error
-                            if (response.code() != 201 && response.code() != 409) {
-                                throw new Exception("status-code=[" + response.code() + "], reason=["
-                                        + response.message() + "], url=[" + request.urlString() + "]");
-                            }
+                    // HTTP status of 201 means success, 409 means it already exists; anything else is an error
+                    if (response.code() != 201 && response.code() != 409) {
+                        throw new Exception("status-code=[" + response.code() + "], reason=["
+                                + response.message() + "], url=[" + request.urlString() + "]");
+                    }
 
-                            TypeReference<LinkedHashMap<String, LinkedHashMap<String, Object>>> typeRef = //
-                            new TypeReference<LinkedHashMap<String, LinkedHashMap<String, Object>>>() {
-                            };
-                            LinkedHashMap<String, LinkedHashMap<String, Object>> responses = Util
-                                    .fromJson(responseBodyReader, typeRef);
-                            for (Entry<String, LinkedHashMap<String, Object>> typeEntry : responses.entrySet()) {
-                                for (Entry<String, Object> entityEntry : typeEntry.getValue().entrySet()) {
-                                    Object rawCode = entityEntry.getValue();
-                                    if (rawCode instanceof Integer) {
-                                        int code = ((Integer) rawCode).intValue();
-                                        switch (code) {
-                                            case 201: // success
-                                            case 409: // already existed
-                                                resource.getResourceType().setPersisted(true);
-                                                resource.setPersisted(true);
-                                                break;
-                                            default:
-                                                log.errorFailedToStorePathToInventory(code, typeEntry.getKey(),
-                                                        entityEntry.getKey());
-                                                break;
-                                        }
-                                    }
+                    // the response tells us for each path whether the entity there was created (or already existed)
+                    TypeReference<LinkedHashMap<String, LinkedHashMap<String, Object>>> typeRef = //
+                    new TypeReference<LinkedHashMap<String, LinkedHashMap<String, Object>>>() {
+                    };
+                    LinkedHashMap<String, LinkedHashMap<String, Object>> responses = Util
+                            .fromJson(responseBodyReader, typeRef);
+                    Set<String> failedPaths = new HashSet<>();
+                    for (Entry<String, LinkedHashMap<String, Object>> typeEntry : responses.entrySet()) {
+                        for (Entry<String, Object> entityEntry : typeEntry.getValue().entrySet()) {
+                            Object rawCode = entityEntry.getValue();
+                            if (rawCode instanceof Integer) {
+                                int code = ((Integer) rawCode).intValue();
+                                switch (code) {
+                                    case 201: // success
+                                    case 409: // already existed
+                                        break;
+                                    default:
+                                        failedPaths.add(entityEntry.getKey());
+                                        log.errorFailedToStorePathToInventory(code, typeEntry.getKey(),
+                                                entityEntry.getKey());
+                                        break;
                                 }
                             }
+                        }
+                    }
 
-                            diagnostics.getInventoryRate().mark(1); // we processed 1 resource and its type
-
-                        } catch (InterruptedException ie) {
-                            throw ie;
-                        } catch (Exception e) {
-                            diagnostics.getStorageErrorRate().mark(1);
-                            log.errorFailedToStoreInventoryData(e);
-                            throw new Exception("Cannot create resource or its resourceType: " + resource, e);
+                    int stored = 0;
+                    for (Resource<?, ?, ?, ?, ?> resource : batch) {
+                        ResourceType<?, ?, ?, ?> resourceType = resource.getResourceType();
+                        if (!resourceType.isPersisted() && !failedPaths.contains(builder.getPath(resourceType))) {
+                            resourceType.setPersisted(true);
+                        }
+                        if (resourceType.isPersisted() && !failedPaths.contains(builder.getPath(resource))) {
+                            resource.setPersisted(true);
+                            stored++;
                         }
                     }
+
+                    diagnostics.getInventoryRate().mark(stored); // we processed these resources and their types
+                } finally {
+                    response.body().close();
                 }
-            }
 
-            return; // end of method
+            } catch (InterruptedException ie) {
+                throw ie;
+            } catch (Exception e) {
+                diagnostics.getStorageErrorRate().mark(1);
+                log.errorFailedToStoreInventoryData(e);
+                if (sendAgain) {
+                    return batch;
+                }
+            }
+            return Collections.emptyList();
         }
     }
 
@@ -563,12 +869,86 @@ public class AsyncInventoryStorage implements InventoryStorage {
         return id;
     }
 
+    /**
+     * @return the REST URL of the given resource, i.e. the path made up of the IDs of the resource and its ancestors
+     */
+    private String getResourceUrl(Resource<?, ?, ?, ?, ?> resource) {
+        StringBuilder resourcePath = new StringBuilder(Util.urlEncode(resource.getID().getIDString()));
+        Resource<?, ?, ?, ?, ?> parent = resource.getParent();
+        while (parent != null) {
+            resourcePath.insert(0, Util.urlEncode(parent.getID().getIDString()) + "/");
+            parent = parent.getParent();
+        }
+
+        // FIXME environmentId should be configurable
+        StringBuilder url = Util.getContextUrlString(config.url, config.inventoryContext);
+        url.append("test/").append(Util.urlEncode(selfId.getFullIdentifier())).append("/resources/")
+                .append(resourcePath);
+        return url.toString();
+    }
+
+    private void sendResourceUpdate(Resource<?, ?, ?, ?, ?> resource) throws Exception {
+        String resourceUrl = getResourceUrl(resource);
+
+        Map<String, Object> update = new LinkedHashMap<>();
+        update.put("name", resource.getName().getNameString());
+        update.put("properties", resource.getProperties());
+        execute(httpClientBuilder.buildJsonPutRequest(resourceUrl, null, Util.toJson(update)));
+
+        Collection<? extends ResourceConfigurationPropertyInstance<?>> resConfigInstances = resource
+                .getResourceConfigurationProperties();
+        if (resConfigInstances != null && !resConfigInstances.isEmpty()) {
+            Map<String, String> configuration = new LinkedHashMap<>();
+            for (ResourceConfigurationPropertyInstance<?> resConfigInstance : resConfigInstances) {
+                configuration.put(resConfigInstance.getID().getIDString(), resConfigInstance.getValue());
+            }
+            Map<String, Object> dataUpdate = Collections.<String, Object> singletonMap("value", configuration);
+            execute(httpClientBuilder.buildJsonPutRequest(resourceUrl + "/data?dataType=configuration", null,
+                    Util.toJson(dataUpdate)));
+        }
+
+        log.debugf("Updated resource in inventory: [%s]", resource);
+    }
+
+    private void sendResourceRemoval(Resource<?, ?, ?, ?, ?> resource) throws Exception {
+        // HTTP status of 404 means someone else already removed it
+        execute(httpClientBuilder.buildDeleteRequest(getResourceUrl(resource), null), 404);
+
+        log.debugf("Removed resource from inventory: [%s]", resource);
+    }
+
+    /**
+     * Sends the given request and makes sure it succeeded.
+     *
+     * @param request the request to send
+     * @param otherOkCodes HTTP status codes other than 2xx that are not considered to be an error
+     * @throws Exception if the request failed
+     */
+    private void execute(Request request, int... otherOkCodes) throws Exception {
+        final Timer.Context timer = diagnostics.getInventoryStorageRequestTimer().time();
+        Response response = httpClientBuilder.getHttpClient().newCall(request).execute();
+        timer.stop();
+        response.body().close();
+
+        boolean ok = response.isSuccessful();
+        for (int otherOkCode : otherOkCodes) {
+            ok |= (response.code() == otherOkCode);
+        }
+        if (!ok) {
+            throw new Exception("status-code=[" + response.code() + "], reason=["
+                    + response.message() + "], url=[" + request.urlString() + "]");
+        }
+    }
+
     private final MonitorServiceConfiguration.StorageAdapter config;
     private final HttpClientBuilder httpClientBuilder;
     private final ServerIdentifiers selfId;
     private final Diagnostics diagnostics;
     private final ArrayBlockingQueue<Resource<?, ?, ?, ?, ?>> queue;
     private final Worker worker;
+    private final int maxBulkEntities;
+    private final int maxBulkBytes;
+    private final ExecutorService requestExecutor;
 
     public AsyncInventoryStorage(ServerIdentifiers selfId, StorageAdapter config, HttpClientBuilder httpClientBuilder,
             Diagnostics diagnostics) {
@@ -577,6 +957,12 @@ public class AsyncInventoryStorage implements InventoryStorage {
         this.config = config;
         this.httpClientBuilder = httpClientBuilder;
         this.diagnostics = diagnostics;
+        this.maxBulkEntities = Math.max(1, config.inventoryBulkMaxEntities);
+        this.maxBulkBytes = Math.max(1, config.inventoryBulkMaxBytes);
+        ThreadFactory threadFactory = ThreadFactoryGenerator.generateFactory(true,
+                "Hawkular-Monitor-Inventory-Storage-Request");
+        this.requestExecutor = Executors.newFixedThreadPool(Math.max(1, config.inventoryBulkParallelRequests),
+                threadFactory);
         this.queue = new ArrayBlockingQueue<>(1000); // TODO make bufferSize configurable (it is 1000 right now)
         this.worker = new Worker(queue);
         this.worker.start();
@@ -588,9 +974,47 @@ public class AsyncInventoryStorage implements InventoryStorage {
         queue.add(resource);
     }
 
+    /**
+     * Updates the name, properties and resource configuration of a resource that was stored before.
+     * @param resource the new version of the resource
+     */
+    public void updateResource(final Resource<?, ?, ?, ?, ?> resource) {
+        requestExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sendResourceUpdate(resource);
+                } catch (Exception e) {
+                    diagnostics.getStorageErrorRate().mark(1);
+                    log.errorFailedToStoreInventoryData(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Removes a resource that was stored before, along with all of its descendants.
+     * @param resource the resource to be removed
+     */
+    public void removeResource(final Resource<?, ?, ?, ?, ?> resource) {
+        worker.resourceRemoved(resource.getID());
+        requestExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sendResourceRemoval(resource);
+                } catch (Exception e) {
+                    diagnostics.getStorageErrorRate().mark(1);
+                    log.errorFailedToStoreInventoryData(e);
+                }
+            }
+        });
+    }
+
     public void shutdown() {
         log.debugf("Shutting down async inventory storage");
         worker.stopRunning();
+        requestExecutor.shutdownNow();
     }
 
 }
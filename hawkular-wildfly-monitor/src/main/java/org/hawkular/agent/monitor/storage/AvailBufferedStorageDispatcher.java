@@ -16,29 +16,57 @@
  */
 package org.hawkular.agent.monitor.storage;
 
-import java.util.HashSet;
-import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.hawkular.agent.monitor.api.Avail;
+import org.hawkular.agent.monitor.api.AvailDataPayloadBuilder;
 import org.hawkular.agent.monitor.diagnostics.Diagnostics;
 import org.hawkular.agent.monitor.log.AgentLoggers;
 import org.hawkular.agent.monitor.log.MsgLogger;
 import org.hawkular.agent.monitor.scheduler.config.SchedulerConfiguration;
 import org.hawkular.agent.monitor.scheduler.polling.AvailCompletionHandler;
+import org.hawkular.agent.monitor.scheduler.polling.Task;
 
 /**
  * Buffers availability check data and eventually stores them in a storage adapter.
+ *
+ * Collection threads never block on (or fail because of) a slow storage backend - when the buffer is full,
+ * the configured {@link OverflowPolicy} decides what happens to the new data point.
  */
 public class AvailBufferedStorageDispatcher implements AvailCompletionHandler {
     private static final MsgLogger log = AgentLoggers.getLogger(AvailBufferedStorageDispatcher.class);
+    private static final String SPILL_FILE_NAME = "avails-overflow.dat";
+
+    private static final DataPointSpillFile.RecordWriter<AvailDataPoint> SPILL_WRITER =
+            new DataPointSpillFile.RecordWriter<AvailDataPoint>() {
+                @Override
+                public void write(DataOutputStream out, AvailDataPoint dataPoint) throws IOException {
+                    Task task = dataPoint.getTask();
+                    out.writeUTF(task.getKeyGenerator().generateKey(task));
+                    out.writeLong(dataPoint.getTimestamp());
+                    out.writeUTF(dataPoint.getValue().name());
+                }
+            };
+
     private final int maxBatchSize;
     private final int bufferSize;
     private final SchedulerConfiguration config;
     private final StorageAdapter storageAdapter;
     private final Diagnostics diagnostics;
-    private final BlockingQueue<AvailDataPoint> queue;
-    private final Worker worker;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutMillis;
+    private final DataPointRingBuffer<AvailDataPoint> buffer;
+    private final DataPointSpillFile spillFile;
+    private final AtomicBoolean replayingSpillFile = new AtomicBoolean(false);
+    private final List<Worker> workers;
+    private volatile boolean overflowing = false;
 
     public AvailBufferedStorageDispatcher(SchedulerConfiguration config, StorageAdapter storageAdapter,
             Diagnostics diagnostics) {
@@ -47,27 +75,108 @@ public class AvailBufferedStorageDispatcher implements AvailCompletionHandler {
         this.bufferSize = config.getAvailDispatcherBufferSize();
         this.storageAdapter = storageAdapter;
         this.diagnostics = diagnostics;
-        this.queue = new ArrayBlockingQueue<AvailDataPoint>(bufferSize);
-        this.worker = new Worker(queue);
+        this.blockTimeoutMillis = config.getDispatcherBlockTimeoutMillis();
+        this.buffer = new DataPointRingBuffer<AvailDataPoint>(bufferSize);
+
+        OverflowPolicy policy = config.getDispatcherOverflowPolicy();
+        File dataDir = config.getDataDirectory();
+        if (policy == OverflowPolicy.SPILL_TO_DISK && dataDir == null) {
+            log.debugf("No data directory to spill availabilities to, will drop the newest ones instead");
+            policy = OverflowPolicy.DROP_NEWEST;
+        }
+        this.overflowPolicy = policy;
+
+        // availabilities spilled during a previous run are stored even if we no longer spill
+        File spill = (dataDir != null) ? new File(dataDir, SPILL_FILE_NAME) : null;
+        if (spill != null && (policy == OverflowPolicy.SPILL_TO_DISK || spill.exists())) {
+            this.spillFile = new DataPointSpillFile(spill, DataPointSpillFile.DEFAULT_MAX_BYTES);
+        } else {
+            this.spillFile = null;
+        }
+
+        int numWorkers = Math.max(1, config.getAvailDispatcherThreads());
+        this.workers = new ArrayList<>(numWorkers);
+        for (int i = 1; i <= numWorkers; i++) {
+            this.workers.add(new Worker(buffer, i));
+        }
     }
 
     public void start() {
-        worker.start();
+        for (Worker worker : workers) {
+            worker.start();
+        }
     }
 
     public void shutdown() {
-        worker.setKeepRunning(false);
+        for (Worker worker : workers) {
+            worker.setKeepRunning(false);
+        }
+
+        // the workers share the spill file, so it can only be closed once none of them uses it anymore
+        try {
+            for (Worker worker : workers) {
+                worker.join(TimeUnit.SECONDS.toMillis(5));
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt(); // Preserve interrupt status
+        } finally {
+            if (spillFile != null) {
+                spillFile.close();
+            }
+        }
     }
 
     @Override
     public void onCompleted(AvailDataPoint sample) {
-        if (queue.remainingCapacity() > 0) {
-            log.debugf("Availability checked: [%s]->[%s]", sample.getTask(), sample.getValue());
+        log.debugf("Availability checked: [%s]->[%s]", sample.getTask(), sample.getValue());
+
+        if (buffer.offer(sample)) {
             diagnostics.getAvailStorageBufferSize().inc();
-            queue.add(sample);
+            return;
         }
-        else {
-            throw new RuntimeException("Avail dispatcher buffer capacity has been exceeded [" + bufferSize + "]");
+
+        if (!overflowing) {
+            overflowing = true;
+            log.warnDispatcherBufferFull("availabilities", overflowPolicy.name());
+        }
+
+        switch (overflowPolicy) {
+            case DROP_OLDEST: {
+                // another collection thread may fill the freed slot first, so keep trying
+                while (!buffer.offer(sample)) {
+                    if (buffer.poll() != null) {
+                        diagnostics.getAvailStorageBufferSize().dec();
+                        diagnostics.getStorageDroppedOldestCount().inc();
+                    }
+                }
+                diagnostics.getAvailStorageBufferSize().inc();
+                break;
+            }
+            case BLOCK: {
+                try {
+                    if (buffer.offer(sample, blockTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                        diagnostics.getAvailStorageBufferSize().inc();
+                    } else {
+                        diagnostics.getStorageDroppedAfterBlockingCount().inc();
+                    }
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    diagnostics.getStorageDroppedAfterBlockingCount().inc();
+                }
+                break;
+            }
+            case SPILL_TO_DISK: {
+                if (spillFile.append(sample, SPILL_WRITER)) {
+                    diagnostics.getStorageSpilledCount().inc();
+                } else {
+                    diagnostics.getStorageDroppedNewestCount().inc();
+                }
+                break;
+            }
+            default: {
+                diagnostics.getStorageDroppedNewestCount().inc();
+                break;
+            }
         }
     }
 
@@ -77,27 +186,44 @@ public class AvailBufferedStorageDispatcher implements AvailCompletionHandler {
     }
 
     public class Worker extends Thread {
-        private final BlockingQueue<AvailDataPoint> queue;
-        private boolean keepRunning = true;
+        private final DataPointRingBuffer<AvailDataPoint> buffer;
+        private volatile boolean keepRunning = true;
 
-        public Worker(BlockingQueue<AvailDataPoint> queue) {
-            super("Hawkular-Monitor-Storage-Dispatcher-Avail");
-            this.queue = queue;
+        public Worker(DataPointRingBuffer<AvailDataPoint> buffer, int number) {
+            super("Hawkular-Monitor-Storage-Dispatcher-Avail-" + number);
+            this.buffer = buffer;
         }
 
         public void run() {
             try {
                 while (keepRunning) {
                     // batch processing
-                    AvailDataPoint sample = queue.take();
-                    Set<AvailDataPoint> samples = new HashSet<>();
-                    queue.drainTo(samples, maxBatchSize);
-                    samples.add(sample);
+                    AvailDataPoint sample = buffer.poll(1, TimeUnit.SECONDS);
+                    if (sample != null) {
+                        List<AvailDataPoint> samples = new ArrayList<>(maxBatchSize);
+                        samples.add(sample);
+                        buffer.drainTo(samples, maxBatchSize - 1);
 
-                    diagnostics.getAvailStorageBufferSize().dec(samples.size());
+                        diagnostics.getAvailStorageBufferSize().dec(samples.size());
 
-                    // dispatch
-                    storageAdapter.storeAvails(samples);
+                        // dispatch
+                        storageAdapter.storeAvails(samples);
+                    }
+
+                    if (buffer.isEmpty()) {
+                        overflowing = false;
+                    }
+
+                    // only go back to what we spilled once we caught up with what is being collected now
+                    // and only one worker at a time, so the data points are read back in the order they were spilled
+                    if (spillFile != null && buffer.isEmpty() && !spillFile.isEmpty()
+                            && replayingSpillFile.compareAndSet(false, true)) {
+                        try {
+                            storeSpilled();
+                        } finally {
+                            replayingSpillFile.set(false);
+                        }
+                    }
                 }
             } catch (InterruptedException ie) {
             }
@@ -106,6 +232,19 @@ public class AvailBufferedStorageDispatcher implements AvailCompletionHandler {
         public void setKeepRunning(boolean keepRunning) {
             this.keepRunning = keepRunning;
         }
+
+        private void storeSpilled() {
+            final AvailDataPayloadBuilder payloadBuilder = storageAdapter.createAvailDataPayloadBuilder();
+            int count = spillFile.replay(new DataPointSpillFile.RecordReader() {
+                @Override
+                public void read(DataInputStream in) throws IOException {
+                    payloadBuilder.addDataPoint(in.readUTF(), in.readLong(), Avail.valueOf(in.readUTF()));
+                }
+            }, maxBatchSize);
+
+            if (count > 0) {
+                storageAdapter.store(payloadBuilder);
+            }
+        }
     }
 }
-
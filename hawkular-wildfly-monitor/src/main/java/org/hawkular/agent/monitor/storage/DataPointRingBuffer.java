@@ -0,0 +1,229 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.agent.monitor.storage;
+
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free buffer that many collection threads put data points into and one or more dispatcher
+ * threads take them out of. Putting data into the buffer never blocks and never takes a lock, so a slow
+ * storage backend can never stall the threads that collect the data.
+ *
+ * Each slot carries a sequence number that tells whether the slot is ready to be written or read for the
+ * current lap around the ring, so producers and consumers only need a compare-and-set on the tail or head
+ * counter to claim a slot. Reading also uses a compare-and-set (not just a plain write) so that producers
+ * may evict the oldest entry when the buffer is full.
+ *
+ * @param <T> the type of data points in the buffer
+ */
+public class DataPointRingBuffer<T> {
+    private static final long PRODUCER_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(100L);
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<T> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong(0L); // next position to read
+    private final AtomicLong tail = new AtomicLong(0L); // next position to write
+    private final Queue<Thread> waitingConsumers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param minimumCapacity the buffer holds at least this many elements; the actual capacity is the next
+     *                        power of two
+     */
+    public DataPointRingBuffer(int minimumCapacity) {
+        if (minimumCapacity < 1) {
+            throw new IllegalArgumentException("Buffer capacity must be at least 1: " + minimumCapacity);
+        }
+        int cap = Integer.highestOneBit(minimumCapacity);
+        if (cap < minimumCapacity) {
+            cap <<= 1;
+        }
+        this.capacity = cap;
+        this.mask = cap - 1;
+        this.elements = new AtomicReferenceArray<>(cap);
+        this.sequences = new AtomicLongArray(cap);
+        for (int i = 0; i < cap; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the approximate number of elements in the buffer
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0L, Math.min(size, capacity));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Puts the element in the buffer if there is room for it.
+     *
+     * @param element the element to add
+     * @return true if the element was added, false if the buffer is full
+     */
+    public boolean offer(T element) {
+        if (element == null) {
+            throw new NullPointerException("Cannot put null in the buffer");
+        }
+
+        while (true) {
+            long pos = tail.get();
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0L) {
+                if (tail.compareAndSet(pos, pos + 1L)) {
+                    elements.set(index, element);
+                    sequences.set(index, pos + 1L);
+                    signalConsumer();
+                    return true;
+                }
+            } else if (diff < 0L) {
+                return false; // the slot still holds an element from the previous lap - we are full
+            }
+            // otherwise another producer claimed this slot first; try again
+        }
+    }
+
+    /**
+     * Puts the element in the buffer, waiting up to the given time for room to become available.
+     *
+     * @param element the element to add
+     * @param timeout how long to wait
+     * @param unit the unit of the timeout
+     * @return true if the element was added, false if the buffer stayed full for the entire timeout
+     * @throws InterruptedException if the calling thread was interrupted while waiting
+     */
+    public boolean offer(T element, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!offer(element)) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0L) {
+                return false;
+            }
+            LockSupport.parkNanos(this, Math.min(remaining, PRODUCER_BACKOFF_NANOS));
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the oldest element from the buffer.
+     *
+     * @return the oldest element, or null if the buffer is empty
+     */
+    public T poll() {
+        while (true) {
+            long pos = head.get();
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - (pos + 1L);
+            if (diff == 0L) {
+                if (head.compareAndSet(pos, pos + 1L)) {
+                    T element = elements.get(index);
+                    elements.set(index, null);
+                    sequences.set(index, pos + capacity);
+                    return element;
+                }
+            } else if (diff < 0L) {
+                return null; // nothing has been written to this slot yet - we are empty
+            }
+            // otherwise someone else took this element first; try again
+        }
+    }
+
+    /**
+     * Removes the oldest element from the buffer, waiting up to the given time for one to arrive.
+     *
+     * @param timeout how long to wait
+     * @param unit the unit of the timeout
+     * @return the oldest element, or null if the buffer stayed empty for the entire timeout
+     * @throws InterruptedException if the calling thread was interrupted while waiting
+     */
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            T element = poll();
+            if (element != null) {
+                return element;
+            }
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0L) {
+                return null;
+            }
+
+            Thread current = Thread.currentThread();
+            waitingConsumers.add(current);
+            try {
+                // check again so we don't miss a signal sent before we started waiting
+                if (isEmpty()) {
+                    LockSupport.parkNanos(this, remaining);
+                }
+            } finally {
+                waitingConsumers.remove(current);
+            }
+
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    /**
+     * Removes up to the given number of elements from the buffer and puts them in the given collection.
+     *
+     * @param collection where the elements are put
+     * @param maxElements the maximum number of elements to remove
+     * @return the number of elements that were removed
+     */
+    public int drainTo(Collection<? super T> collection, int maxElements) {
+        int count = 0;
+        while (count < maxElements) {
+            T element = poll();
+            if (element == null) {
+                break;
+            }
+            collection.add(element);
+            count++;
+        }
+        return count;
+    }
+
+    private void signalConsumer() {
+        Thread consumer = waitingConsumers.poll();
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.agent.monitor.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.hawkular.agent.monitor.log.AgentLoggers;
+import org.hawkular.agent.monitor.log.MsgLogger;
+
+/**
+ * A file that data points are appended to when a dispatcher's buffer is full, and read back from once
+ * the buffer has room again. Data points are written in their storage form (key, timestamp, value) since
+ * the tasks that collected them cannot be written out. Once every record in the file has been read back,
+ * the file is deleted.
+ *
+ * How far the file has been read back is kept in a small side file next to it, so data points that were
+ * already read back are not read again after the file is closed and reopened (e.g. after a restart).
+ */
+public class DataPointSpillFile implements Closeable {
+    private static final MsgLogger log = AgentLoggers.getLogger(DataPointSpillFile.class);
+
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024L * 1024L;
+
+    /**
+     * Writes the storage form of one data point.
+     */
+    public interface RecordWriter<T> {
+        void write(DataOutputStream out, T dataPoint) throws IOException;
+    }
+
+    /**
+     * Reads the storage form of one data point and does something with it.
+     * Must throw {@link EOFException} if the end of the file is reached before the whole record is read.
+     */
+    public interface RecordReader {
+        void read(DataInputStream in) throws IOException;
+    }
+
+    /**
+     * Counts the bytes that were read through it.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    private final File file;
+    private final File offsetFile;
+    private final long maxBytes;
+
+    // all of these are guarded by "this"
+    private DataOutputStream out;
+    private DataInputStream in;
+    private CountingInputStream counter;
+    private long fileBytes;
+    private long readOffset;
+
+    /**
+     * @param file the file to write spilled data points to; if it already exists (e.g. left over from
+     *             a previous run) the data points in it that were not read back yet are read back as well
+     * @param maxBytes once the file is this large, no more data points are written to it
+     */
+    public DataPointSpillFile(File file, long maxBytes) {
+        this.file = file;
+        this.offsetFile = new File(file.getPath() + ".offset");
+        this.maxBytes = maxBytes;
+        this.fileBytes = file.length();
+        this.readOffset = loadReadOffset();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return true if there are no data points waiting in the file
+     */
+    public synchronized boolean isEmpty() {
+        return readOffset >= fileBytes;
+    }
+
+    /**
+     * Appends the data point to the end of the file.
+     *
+     * @param dataPoint the data point to write
+     * @param writer knows how to write the data point
+     * @return true if the data point was written, false if the file is full or could not be written
+     */
+    public synchronized <T> boolean append(T dataPoint, RecordWriter<T> writer) {
+        if (fileBytes >= maxBytes) {
+            return false;
+        }
+
+        try {
+            if (out == null) {
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+            }
+            int before = out.size();
+            writer.write(out, dataPoint);
+            fileBytes += out.size() - before;
+            return true;
+        } catch (IOException e) {
+            log.errorDataPointSpillFileFailed(file.getAbsolutePath(), e);
+            discard();
+            return false;
+        }
+    }
+
+    /**
+     * Reads back the oldest data points in the file.
+     *
+     * @param reader called once for each data point that is read
+     * @param maxRecords the maximum number of data points to read
+     * @return the number of data points that were read
+     */
+    public synchronized int replay(RecordReader reader, int maxRecords) {
+        if (readOffset >= fileBytes) {
+            return 0;
+        }
+
+        int count = 0;
+        try {
+            if (out != null) {
+                out.flush();
+            }
+            if (in == null) {
+                FileInputStream fileIn = new FileInputStream(file);
+                if (readOffset > 0L && fileIn.skip(readOffset) < readOffset) {
+                    fileIn.close();
+                    throw new EOFException();
+                }
+                counter = new CountingInputStream(new BufferedInputStream(fileIn));
+                in = new DataInputStream(counter);
+            }
+            long startOffset = readOffset - counter.count;
+            while (count < maxRecords) {
+                reader.read(in);
+                count++;
+                readOffset = startOffset + counter.count;
+            }
+            saveReadOffset();
+        } catch (EOFException eof) {
+            // everything has been read back (a partial record can only be left over from a crash)
+            discard();
+        } catch (IOException e) {
+            log.errorDataPointSpillFileFailed(file.getAbsolutePath(), e);
+            discard();
+        }
+        return count;
+    }
+
+    /**
+     * Closes the file but leaves it on disk so the data points still in it can be read back the next time.
+     * Reading back will continue after the last data point that was already read back.
+     */
+    @Override
+    public synchronized void close() {
+        if (in != null) {
+            saveReadOffset();
+        }
+        closeStreams();
+    }
+
+    private void discard() {
+        closeStreams();
+        if (file.exists() && !file.delete()) {
+            log.debugf("Could not delete overflow file [%s]", file);
+        }
+        if (offsetFile.exists() && !offsetFile.delete()) {
+            log.debugf("Could not delete overflow offset file [%s]", offsetFile);
+        }
+        fileBytes = 0L;
+        readOffset = 0L;
+    }
+
+    private long loadReadOffset() {
+        if (fileBytes == 0L || !offsetFile.exists()) {
+            return 0L;
+        }
+        try (DataInputStream offsetIn = new DataInputStream(new FileInputStream(offsetFile))) {
+            long offset = offsetIn.readLong();
+            return (offset >= 0L && offset <= fileBytes) ? offset : 0L;
+        } catch (IOException e) {
+            log.debugf("Could not read overflow offset file [%s]; reading back the whole file: %s", offsetFile, e);
+            return 0L;
+        }
+    }
+
+    private void saveReadOffset() {
+        try (DataOutputStream offsetOut = new DataOutputStream(new FileOutputStream(offsetFile, false))) {
+            offsetOut.writeLong(readOffset);
+        } catch (IOException e) {
+            log.debugf("Could not write overflow offset file [%s]: %s", offsetFile, e);
+        }
+    }
+
+    private void closeStreams() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.tracef("Failed to close overflow file [%s]: %s", file, e);
+            }
+            out = null;
+        }
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                log.tracef("Failed to close overflow file [%s]: %s", file, e);
+            }
+            in = null;
+            counter = null;
+        }
+    }
+}
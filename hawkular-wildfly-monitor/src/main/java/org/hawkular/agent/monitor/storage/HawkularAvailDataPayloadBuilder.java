@@ -16,14 +16,18 @@
  */
 package org.hawkular.agent.monitor.storage;
 
+import java.io.IOException;
+
 import org.hawkular.agent.monitor.api.Avail;
 import org.hawkular.agent.monitor.api.AvailDataPayloadBuilder;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
 /**
  * Allows one to build up a payload request to send to Hawkular by adding
  * data points one by one.
  */
-public class HawkularAvailDataPayloadBuilder implements AvailDataPayloadBuilder {
+public class HawkularAvailDataPayloadBuilder implements AvailDataPayloadBuilder, StreamingJsonPayload {
 
     private MetricsOnlyAvailDataPayloadBuilder metricsOnlyPayloadBuilder =
             new MetricsOnlyAvailDataPayloadBuilder();
@@ -38,6 +42,11 @@ public class HawkularAvailDataPayloadBuilder implements AvailDataPayloadBuilder
         return metricsOnlyPayloadBuilder.getNumberDataPoints();
     }
 
+    @Override
+    public void writeJson(JsonGenerator generator) throws IOException {
+        metricsOnlyPayloadBuilder.writeJson(generator);
+    }
+
     @Override
     public String toPayload() {
         return metricsOnlyPayloadBuilder.toPayload();
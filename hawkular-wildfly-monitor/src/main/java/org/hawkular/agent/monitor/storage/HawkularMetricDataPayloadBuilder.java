@@ -16,14 +16,18 @@
  */
 package org.hawkular.agent.monitor.storage;
 
+import java.io.IOException;
+
 import org.hawkular.agent.monitor.api.MetricDataPayloadBuilder;
 import org.hawkular.metrics.client.common.MetricType;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
 /**
  * Allows one to build up a payload request to send to Hawkular by adding
  * data points one by one.
  */
-public class HawkularMetricDataPayloadBuilder implements MetricDataPayloadBuilder {
+public class HawkularMetricDataPayloadBuilder implements MetricDataPayloadBuilder, StreamingJsonPayload {
 
     private MetricsOnlyMetricDataPayloadBuilder metricsOnlyMetricPayloadBuilder =
             new MetricsOnlyMetricDataPayloadBuilder();
@@ -38,6 +42,11 @@ public class HawkularMetricDataPayloadBuilder implements MetricDataPayloadBuilde
         return metricsOnlyMetricPayloadBuilder.getNumberDataPoints();
     }
 
+    @Override
+    public void writeJson(JsonGenerator generator) throws IOException {
+        metricsOnlyMetricPayloadBuilder.writeJson(generator);
+    }
+
     @Override
     public String toPayload() {
         return metricsOnlyMetricPayloadBuilder.toPayload();
@@ -16,7 +16,7 @@
  */
 package org.hawkular.agent.monitor.storage;
 
-import java.util.Set;
+import java.util.Collection;
 
 import org.hawkular.agent.monitor.api.Avail;
 import org.hawkular.agent.monitor.api.AvailDataPayloadBuilder;
@@ -36,6 +36,7 @@ public class HawkularStorageAdapter implements StorageAdapter {
     private ServerIdentifiers selfId;
     private HttpClientBuilder httpClientBuilder;
     private AsyncInventoryStorage inventoryStorage;
+    private MetricsOnlyStorageAdapter metricsStorage;
 
     public HawkularStorageAdapter() {
     }
@@ -48,6 +49,10 @@ public class HawkularStorageAdapter implements StorageAdapter {
         this.selfId = selfId;
         this.httpClientBuilder = httpClientBuilder;
         this.inventoryStorage = new AsyncInventoryStorage(selfId, config, httpClientBuilder, diagnostics);
+
+        // all metric and avail data goes through this one adapter so it can limit the requests in flight
+        this.metricsStorage = new MetricsOnlyStorageAdapter();
+        this.metricsStorage.initialize(config, diag, selfId, httpClientBuilder);
     }
 
     @Override
@@ -66,7 +71,7 @@ public class HawkularStorageAdapter implements StorageAdapter {
     }
 
     @Override
-    public void storeMetrics(Set<MetricDataPoint> datapoints) {
+    public void storeMetrics(Collection<MetricDataPoint> datapoints) {
         if (datapoints == null || datapoints.isEmpty()) {
             return; // nothing to do
         }
@@ -89,9 +94,7 @@ public class HawkularStorageAdapter implements StorageAdapter {
     public void store(MetricDataPayloadBuilder payloadBuilder) {
 
         // send to metrics
-        MetricsOnlyStorageAdapter metricsAdapter = new MetricsOnlyStorageAdapter();
-        metricsAdapter.initialize(getStorageAdapterConfiguration(), diagnostics, selfId, httpClientBuilder);
-        metricsAdapter.store(payloadBuilder);
+        metricsStorage.store(payloadBuilder);
 
         // looks like everything stored successfully
         // the metrics storage adapter already did this, so don't duplicate the stats here
@@ -99,7 +102,7 @@ public class HawkularStorageAdapter implements StorageAdapter {
     }
 
     @Override
-    public void storeAvails(Set<AvailDataPoint> datapoints) {
+    public void storeAvails(Collection<AvailDataPoint> datapoints) {
         if (datapoints == null || datapoints.isEmpty()) {
             return; // nothing to do
         }
@@ -122,9 +125,7 @@ public class HawkularStorageAdapter implements StorageAdapter {
     public void store(AvailDataPayloadBuilder payloadBuilder) {
 
         // send to metrics
-        MetricsOnlyStorageAdapter metricsAdapter = new MetricsOnlyStorageAdapter();
-        metricsAdapter.initialize(getStorageAdapterConfiguration(), diagnostics, selfId, httpClientBuilder);
-        metricsAdapter.store(payloadBuilder);
+        metricsStorage.store(payloadBuilder);
 
         // looks like everything stored successfully
         // the metrics storage adapter already did this, so don't duplicate the stats here
@@ -136,8 +137,24 @@ public class HawkularStorageAdapter implements StorageAdapter {
         inventoryStorage.storeResource(resource);
     }
 
+    @Override
+    public void updateResource(Resource<?, ?, ?, ?, ?> resource) {
+        inventoryStorage.updateResource(resource);
+    }
+
+    @Override
+    public void removeResource(Resource<?, ?, ?, ?, ?> resource) {
+        inventoryStorage.removeResource(resource);
+    }
+
     @Override
     public void shutdown() {
         inventoryStorage.shutdown();
+        metricsStorage.shutdown();
+    }
+
+    @Override
+    public void setWriteAheadLog(StorageWriteAheadLog writeAheadLog) {
+        metricsStorage.setWriteAheadLog(writeAheadLog);
     }
 }
@@ -18,9 +18,13 @@ package org.hawkular.agent.monitor.storage;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.security.KeyStore;
 import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.KeyManagerFactory;
@@ -28,13 +32,16 @@ import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSession;
 import javax.net.ssl.TrustManagerFactory;
 
+import org.hawkular.agent.monitor.diagnostics.Diagnostics;
 import org.hawkular.agent.monitor.extension.MonitorServiceConfiguration;
 import org.hawkular.agent.monitor.log.AgentLoggers;
 import org.hawkular.agent.monitor.log.MsgLogger;
 import org.hawkular.agent.monitor.service.Util;
 
+import com.squareup.okhttp.ConnectionPool;
 import com.squareup.okhttp.MediaType;
 import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
 import com.squareup.okhttp.Request;
 import com.squareup.okhttp.Request.Builder;
 import com.squareup.okhttp.RequestBody;
@@ -47,12 +54,23 @@ import com.squareup.okhttp.ws.WebSocketCall;
  */
 public class HttpClientBuilder {
     private static final MsgLogger log = AgentLoggers.getLogger(HttpClientBuilder.class);
+
     private final String password;
     private final String username;
     private final boolean useSSL;
     private final String keystorePath;
     private final String keystorePassword;
     private final SSLContext sslContext;
+    private final boolean requestCompressionEnabled;
+    private final int requestCompressionThresholdBytes;
+    private final int maxRequestsPerHost;
+    private final int connectionPoolMaxIdleConnections;
+    private final int connectionPoolKeepAliveSecs;
+    private final int connectTimeoutSecs;
+    private final int readTimeoutSecs;
+    private final int writeTimeoutSecs;
+    private final boolean http2Enabled;
+    private volatile Diagnostics diagnostics;
 
     // holds the last built client
     private OkHttpClient httpClient;
@@ -78,6 +96,15 @@ public class HttpClientBuilder {
         this.useSSL = configuration.storageAdapter.useSSL;
         this.keystorePath = configuration.storageAdapter.keystorePath;
         this.keystorePassword = configuration.storageAdapter.keystorePassword;
+        this.requestCompressionEnabled = configuration.storageAdapter.requestCompressionEnabled;
+        this.requestCompressionThresholdBytes = configuration.storageAdapter.requestCompressionThresholdBytes;
+        this.maxRequestsPerHost = configuration.storageAdapter.maxRequestsPerHost;
+        this.connectionPoolMaxIdleConnections = configuration.storageAdapter.connectionPoolMaxIdleConnections;
+        this.connectionPoolKeepAliveSecs = configuration.storageAdapter.connectionPoolKeepAliveSecs;
+        this.connectTimeoutSecs = configuration.storageAdapter.connectTimeoutSecs;
+        this.readTimeoutSecs = configuration.storageAdapter.readTimeoutSecs;
+        this.writeTimeoutSecs = configuration.storageAdapter.writeTimeoutSecs;
+        this.http2Enabled = configuration.storageAdapter.http2Enabled;
         if (this.useSSL) {
             this.sslContext = (sslContext == null) ? buildSSLContext() : sslContext;
         } else {
@@ -85,6 +112,15 @@ public class HttpClientBuilder {
         }
     }
 
+    /**
+     * Tells this builder where to record how much request compression saves.
+     *
+     * @param diagnostics tracks our internal metrics
+     */
+    public void setDiagnostics(Diagnostics diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+
     /**
      * Returns the last built HTTP client. This will build one if one has yet to be built.
      *
@@ -130,11 +166,75 @@ public class HttpClientBuilder {
             }
         }
 
-        RequestBody body = RequestBody.create(MediaType.parse("application/json"), jsonPayload);
+        RequestBody body;
+        if (requestCompressionEnabled) {
+            body = buildCompressedJsonBody(requestBuilder, JsonPayloads.fromString(jsonPayload));
+        } else {
+            body = RequestBody.create(MediaType.parse("application/json"), jsonPayload);
+        }
+
+        return requestBuilder.post(body).build();
+    }
+
+    /**
+     * Like {@link #buildJsonPostRequest(String, Map, String)} except the JSON is written directly to the
+     * connection while the request is being sent rather than being built up front as a String.
+     */
+    public Request buildJsonPostRequest(String url, Map<String, String> headers, StreamingJsonPayload payload) {
+        // make sure we are authenticated. see http://en.wikipedia.org/wiki/Basic_access_authentication#Client_side
+        String base64Credentials = Util.base64Encode(username + ":" + password);
+
+        Builder requestBuilder = new Request.Builder()
+                .url(url)
+                .addHeader("Authorization", "Basic " + base64Credentials)
+                .addHeader("Accept", "application/json");
+
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                requestBuilder.addHeader(header.getKey(), header.getValue());
+            }
+        }
+
+        RequestBody body;
+        if (requestCompressionEnabled) {
+            body = buildCompressedJsonBody(requestBuilder, payload);
+        } else {
+            body = JsonPayloads.toRequestBody(payload);
+        }
 
         return requestBuilder.post(body).build();
     }
 
+    /**
+     * Builds a request body that is gzip compressed if the JSON is at least as large as the configured
+     * threshold, in which case the request also gets a "Content-Encoding: gzip" header.
+     * Note that the body is built in memory (albeit already compressed), so it can no longer be written
+     * directly to the connection.
+     */
+    private RequestBody buildCompressedJsonBody(Builder requestBuilder, StreamingJsonPayload payload) {
+        ThresholdGzipOutputStream out = new ThresholdGzipOutputStream(requestCompressionThresholdBytes);
+        try {
+            JsonPayloads.writeJson(payload, out);
+            out.close();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Payload cannot be written as JSON", e);
+        }
+
+        byte[] bytes = out.toByteArray();
+
+        Diagnostics diag = diagnostics;
+        if (diag != null) {
+            diag.getStorageRequestUncompressedBytes().mark(out.getUncompressedSize());
+            diag.getStorageRequestCompressedBytes().mark(bytes.length);
+        }
+
+        if (out.isCompressed()) {
+            requestBuilder.addHeader("Content-Encoding", "gzip");
+        }
+
+        return RequestBody.create(JsonPayloads.JSON_MEDIA_TYPE, bytes);
+    }
+
     public Request buildJsonPutRequest(String url, Map<String, String> headers, String jsonPayload) {
         // make sure we are authenticated. see http://en.wikipedia.org/wiki/Basic_access_authentication#Client_side
         String base64Credentials = Util.base64Encode(username + ":" + password);
@@ -155,6 +255,23 @@ public class HttpClientBuilder {
         return requestBuilder.put(body).build();
     }
 
+    public Request buildDeleteRequest(String url, Map<String, String> headers) {
+        String base64Credentials = Util.base64Encode(username + ":" + password);
+
+        Builder requestBuilder = new Request.Builder()
+                .url(url)
+                .addHeader("Authorization", "Basic " + base64Credentials)
+                .addHeader("Accept", "application/json");
+
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                requestBuilder.addHeader(header.getKey(), header.getValue());
+            }
+        }
+
+        return requestBuilder.delete().build();
+    }
+
     public WebSocketCall createWebSocketCall(String url, Map<String, String> headers) {
         String base64Credentials = Util.base64Encode(username + ":" + password);
 
@@ -169,8 +286,12 @@ public class HttpClientBuilder {
             }
         }
 
+        // the web socket is idle most of the time - don't let the read timeout close it
+        OkHttpClient webSocketClient = httpClient.clone();
+        webSocketClient.setReadTimeout(0, TimeUnit.SECONDS);
+
         Request request = requestBuilder.build();
-        WebSocketCall wsc = WebSocketCall.create(httpClient, request);
+        WebSocketCall wsc = WebSocketCall.create(webSocketClient, request);
         return wsc;
     }
 
@@ -185,6 +306,23 @@ public class HttpClientBuilder {
 
         OkHttpClient httpClient = new OkHttpClient();
 
+        // all our requests go to the one Hawkular server, so the default of 5 requests per host is too low
+        httpClient.getDispatcher().setMaxRequestsPerHost(this.maxRequestsPerHost);
+        httpClient.getDispatcher().setMaxRequests(Math.max(httpClient.getDispatcher().getMaxRequests(),
+                this.maxRequestsPerHost));
+        httpClient.setConnectionPool(new ConnectionPool(this.connectionPoolMaxIdleConnections,
+                TimeUnit.MILLISECONDS.convert(this.connectionPoolKeepAliveSecs, TimeUnit.SECONDS)));
+        httpClient.setConnectTimeout(this.connectTimeoutSecs, TimeUnit.SECONDS);
+        httpClient.setReadTimeout(this.readTimeoutSecs, TimeUnit.SECONDS);
+        httpClient.setWriteTimeout(this.writeTimeoutSecs, TimeUnit.SECONDS);
+
+        if (this.http2Enabled) {
+            // HTTP/2 is negotiated via ALPN during the TLS handshake; plain HTTP connections stay on HTTP/1.1
+            httpClient.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        } else {
+            httpClient.setProtocols(Collections.singletonList(Protocol.HTTP_1_1));
+        }
+
         if (this.useSSL) {
             httpClient.setSslSocketFactory(this.sslContext.getSocketFactory());
 
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.agent.monitor.storage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.RequestBody;
+
+import okio.BufferedSink;
+
+/**
+ * Utilities that deal with {@link StreamingJsonPayload streaming JSON payloads}.
+ */
+public final class JsonPayloads {
+    static final MediaType JSON_MEDIA_TYPE = MediaType.parse("application/json");
+
+    // thread-safe and expensive to create, so share it
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private JsonPayloads() {
+    }
+
+    /**
+     * Wraps a JSON document that is already available as a String.
+     *
+     * @param json the JSON document
+     * @return the payload that writes the given JSON document as is
+     */
+    public static StreamingJsonPayload fromString(final String json) {
+        return new StreamingJsonPayload() {
+            @Override
+            public void writeJson(JsonGenerator generator) throws IOException {
+                generator.writeRaw(json);
+            }
+
+            @Override
+            public String toString() {
+                return json;
+            }
+        };
+    }
+
+    /**
+     * Builds the full JSON document in memory. Only use this when a String is really needed,
+     * e.g. to log a payload that could not be stored.
+     *
+     * @param payload the payload
+     * @return the JSON document
+     */
+    public static String toJson(StreamingJsonPayload payload) {
+        StringWriter json = new StringWriter();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(json)) {
+            payload.writeJson(generator);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Payload cannot be written as JSON", e);
+        }
+        return json.toString();
+    }
+
+    /**
+     * Creates a request body that writes the payload directly to the HTTP connection when the request is sent.
+     *
+     * @param payload the payload
+     * @return the request body
+     */
+    public static RequestBody toRequestBody(final StreamingJsonPayload payload) {
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return JSON_MEDIA_TYPE;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                writeJson(payload, sink.outputStream());
+            }
+        };
+    }
+
+    /**
+     * Writes the payload as UTF-8 encoded JSON to the given stream. The stream is flushed but not closed.
+     *
+     * @param payload the payload
+     * @param out where the JSON is written to
+     * @throws IOException if the JSON could not be written
+     */
+    public static void writeJson(StreamingJsonPayload payload, OutputStream out) throws IOException {
+        JsonGenerator generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        try {
+            payload.writeJson(generator);
+        } finally {
+            generator.close();
+        }
+    }
+}
@@ -16,58 +16,175 @@
  */
 package org.hawkular.agent.monitor.storage;
 
-import java.util.HashSet;
-import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.hawkular.agent.monitor.api.MetricDataPayloadBuilder;
 import org.hawkular.agent.monitor.diagnostics.Diagnostics;
 import org.hawkular.agent.monitor.log.AgentLoggers;
 import org.hawkular.agent.monitor.log.MsgLogger;
 import org.hawkular.agent.monitor.scheduler.config.SchedulerConfiguration;
 import org.hawkular.agent.monitor.scheduler.polling.MetricCompletionHandler;
+import org.hawkular.agent.monitor.scheduler.polling.Task;
+import org.hawkular.metrics.client.common.MetricType;
 
 /**
  * Buffers collected metric data and eventually stores them in a storage adapter.
+ *
+ * Collection threads never block on (or fail because of) a slow storage backend - when the buffer is full,
+ * the configured {@link OverflowPolicy} decides what happens to the new data point.
+ *
+ * Like a Kafka producer, the dispatcher can linger a little after the first data point of a batch arrives
+ * so that more data points can join it; a batch is sent once it is full or the linger time is up,
+ * whichever comes first. That way a light load results in a few larger requests rather than many requests
+ * that each carry a single data point.
  */
 public class MetricBufferedStorageDispatcher implements MetricCompletionHandler {
     private static final MsgLogger log = AgentLoggers.getLogger(MetricBufferedStorageDispatcher.class);
+    private static final String SPILL_FILE_NAME = "metrics-overflow.dat";
+
+    private static final DataPointSpillFile.RecordWriter<MetricDataPoint> SPILL_WRITER =
+            new DataPointSpillFile.RecordWriter<MetricDataPoint>() {
+                @Override
+                public void write(DataOutputStream out, MetricDataPoint dataPoint) throws IOException {
+                    Task task = dataPoint.getTask();
+                    out.writeUTF(task.getKeyGenerator().generateKey(task));
+                    out.writeLong(dataPoint.getTimestamp());
+                    out.writeDouble(dataPoint.getValue());
+                    out.writeUTF(dataPoint.getMetricType().name());
+                }
+            };
+
     private final int maxBatchSize;
+    private final long lingerNanos;
     private final int bufferSize;
     private final SchedulerConfiguration config;
     private final StorageAdapter storageAdapter;
     private final Diagnostics diagnostics;
-    private final BlockingQueue<MetricDataPoint> queue;
-    private final Worker worker;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutMillis;
+    private final DataPointRingBuffer<MetricDataPoint> buffer;
+    private final DataPointSpillFile spillFile;
+    private final AtomicBoolean replayingSpillFile = new AtomicBoolean(false);
+    private final List<Worker> workers;
+    private volatile boolean overflowing = false;
 
     public MetricBufferedStorageDispatcher(SchedulerConfiguration config, StorageAdapter storageAdapter,
             Diagnostics diagnostics) {
         this.config = config;
-        this.maxBatchSize = config.getMetricDispatcherMaxBatchSize();
+        this.maxBatchSize = Math.max(1, config.getMetricDispatcherMaxBatchSize());
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(config.getMetricDispatcherLingerMillis());
         this.bufferSize = config.getMetricDispatcherBufferSize();
         this.storageAdapter = storageAdapter;
         this.diagnostics = diagnostics;
-        this.queue = new ArrayBlockingQueue<MetricDataPoint>(bufferSize);
-        this.worker = new Worker(queue);
+        this.blockTimeoutMillis = config.getDispatcherBlockTimeoutMillis();
+        this.buffer = new DataPointRingBuffer<MetricDataPoint>(bufferSize);
+
+        OverflowPolicy policy = config.getDispatcherOverflowPolicy();
+        File dataDir = config.getDataDirectory();
+        if (policy == OverflowPolicy.SPILL_TO_DISK && dataDir == null) {
+            log.debugf("No data directory to spill metrics to, will drop the newest metrics instead");
+            policy = OverflowPolicy.DROP_NEWEST;
+        }
+        this.overflowPolicy = policy;
+
+        // metrics spilled during a previous run are stored even if we no longer spill
+        File spill = (dataDir != null) ? new File(dataDir, SPILL_FILE_NAME) : null;
+        if (spill != null && (policy == OverflowPolicy.SPILL_TO_DISK || spill.exists())) {
+            this.spillFile = new DataPointSpillFile(spill, DataPointSpillFile.DEFAULT_MAX_BYTES);
+        } else {
+            this.spillFile = null;
+        }
+
+        int numWorkers = Math.max(1, config.getMetricDispatcherThreads());
+        this.workers = new ArrayList<>(numWorkers);
+        for (int i = 1; i <= numWorkers; i++) {
+            this.workers.add(new Worker(buffer, i));
+        }
     }
 
     public void start() {
-        worker.start();
+        for (Worker worker : workers) {
+            worker.start();
+        }
     }
 
     public void shutdown() {
-        worker.setKeepRunning(false);
+        for (Worker worker : workers) {
+            worker.setKeepRunning(false);
+        }
+
+        // the workers share the spill file, so it can only be closed once none of them uses it anymore
+        try {
+            for (Worker worker : workers) {
+                worker.join(TimeUnit.SECONDS.toMillis(5));
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt(); // Preserve interrupt status
+        } finally {
+            if (spillFile != null) {
+                spillFile.close();
+            }
+        }
     }
 
     @Override
     public void onCompleted(MetricDataPoint sample) {
-        if (queue.remainingCapacity() > 0) {
-            log.debugf("Metric collected: [%s]->[%f]", sample.getTask(), sample.getValue());
+        log.debugf("Metric collected: [%s]->[%f]", sample.getTask(), sample.getValue());
+
+        if (buffer.offer(sample)) {
             diagnostics.getMetricsStorageBufferSize().inc();
-            queue.add(sample);
+            return;
         }
-        else {
-            throw new RuntimeException("Metric dispatcher buffer capacity has been exceeded [" + bufferSize + "]");
+
+        if (!overflowing) {
+            overflowing = true;
+            log.warnDispatcherBufferFull("metrics", overflowPolicy.name());
+        }
+
+        switch (overflowPolicy) {
+            case DROP_OLDEST: {
+                // another collection thread may fill the freed slot first, so keep trying
+                while (!buffer.offer(sample)) {
+                    if (buffer.poll() != null) {
+                        diagnostics.getMetricsStorageBufferSize().dec();
+                        diagnostics.getStorageDroppedOldestCount().inc();
+                    }
+                }
+                diagnostics.getMetricsStorageBufferSize().inc();
+                break;
+            }
+            case BLOCK: {
+                try {
+                    if (buffer.offer(sample, blockTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                        diagnostics.getMetricsStorageBufferSize().inc();
+                    } else {
+                        diagnostics.getStorageDroppedAfterBlockingCount().inc();
+                    }
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    diagnostics.getStorageDroppedAfterBlockingCount().inc();
+                }
+                break;
+            }
+            case SPILL_TO_DISK: {
+                if (spillFile.append(sample, SPILL_WRITER)) {
+                    diagnostics.getStorageSpilledCount().inc();
+                } else {
+                    diagnostics.getStorageDroppedNewestCount().inc();
+                }
+                break;
+            }
+            default: {
+                diagnostics.getStorageDroppedNewestCount().inc();
+                break;
+            }
         }
     }
 
@@ -77,27 +194,45 @@ public class MetricBufferedStorageDispatcher implements MetricCompletionHandler
     }
 
     public class Worker extends Thread {
-        private final BlockingQueue<MetricDataPoint> queue;
-        private boolean keepRunning = true;
+        private final DataPointRingBuffer<MetricDataPoint> buffer;
+        private final List<MetricDataPoint> batch; // reused for every batch
+        private volatile boolean keepRunning = true;
 
-        public Worker(BlockingQueue<MetricDataPoint> queue) {
-            super("Hawkular-Monitor-Storage-Dispatcher-Metric");
-            this.queue = queue;
+        public Worker(DataPointRingBuffer<MetricDataPoint> buffer, int number) {
+            super("Hawkular-Monitor-Storage-Dispatcher-Metric-" + number);
+            this.buffer = buffer;
+            this.batch = new ArrayList<>(maxBatchSize);
         }
 
         public void run() {
             try {
                 while (keepRunning) {
                     // batch processing
-                    MetricDataPoint sample = queue.take();
-                    Set<MetricDataPoint> samples = new HashSet<>();
-                    queue.drainTo(samples, maxBatchSize);
-                    samples.add(sample);
+                    if (fillBatch()) {
+                        diagnostics.getMetricsStorageBufferSize().dec(batch.size());
 
-                    diagnostics.getMetricsStorageBufferSize().dec(samples.size());
+                        // dispatch - the adapter builds its payload before returning so the batch can be reused
+                        try {
+                            storageAdapter.storeMetrics(batch);
+                        } finally {
+                            batch.clear();
+                        }
+                    }
 
-                    // dispatch
-                    storageAdapter.storeMetrics(samples);
+                    if (buffer.isEmpty()) {
+                        overflowing = false;
+                    }
+
+                    // only go back to what we spilled once we caught up with what is being collected now
+                    // and only one worker at a time, so the data points are read back in the order they were spilled
+                    if (spillFile != null && buffer.isEmpty() && !spillFile.isEmpty()
+                            && replayingSpillFile.compareAndSet(false, true)) {
+                        try {
+                            storeSpilled();
+                        } finally {
+                            replayingSpillFile.set(false);
+                        }
+                    }
                 }
             } catch (InterruptedException ie) {
             }
@@ -106,6 +241,51 @@ public class MetricBufferedStorageDispatcher implements MetricCompletionHandler
         public void setKeepRunning(boolean keepRunning) {
             this.keepRunning = keepRunning;
         }
+
+        /**
+         * Waits for the first data point of a batch, then keeps adding data points until either the batch
+         * is full or the linger time since that first data point has passed.
+         *
+         * @return true if the batch has data points to be stored
+         */
+        private boolean fillBatch() throws InterruptedException {
+            MetricDataPoint first = buffer.poll(1, TimeUnit.SECONDS);
+            if (first == null) {
+                return false;
+            }
+            batch.add(first);
+
+            long deadline = System.nanoTime() + lingerNanos;
+            while (batch.size() < maxBatchSize) {
+                if (buffer.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                    continue;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0L) {
+                    break;
+                }
+                MetricDataPoint next = buffer.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    break;
+                }
+                batch.add(next);
+            }
+            return true;
+        }
+
+        private void storeSpilled() {
+            final MetricDataPayloadBuilder payloadBuilder = storageAdapter.createMetricDataPayloadBuilder();
+            int count = spillFile.replay(new DataPointSpillFile.RecordReader() {
+                @Override
+                public void read(DataInputStream in) throws IOException {
+                    payloadBuilder.addDataPoint(in.readUTF(), in.readLong(), in.readDouble(),
+                            MetricType.valueOf(in.readUTF()));
+                }
+            }, maxBatchSize);
+
+            if (count > 0) {
+                storageAdapter.store(payloadBuilder);
+            }
+        }
     }
 }
-
@@ -16,62 +16,111 @@
  */
 package org.hawkular.agent.monitor.storage;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.hawkular.agent.monitor.api.Avail;
 import org.hawkular.agent.monitor.api.AvailDataPayloadBuilder;
-import org.hawkular.agent.monitor.service.Util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
 
 /**
  * Allows one to build up a payload request to send to availability storage by adding
  * data points one by one. After all data points are added, you can get the payload in
- * either an {@link #toObjectPayload() object} format or a {@link #toPayload() JSON} format.
+ * either an {@link #toObjectPayload() object} format or a {@link #toPayload() JSON} format,
+ * or you can {@link #writeJson(JsonGenerator) stream} the JSON directly to where it needs to go.
  */
-public class MetricsOnlyAvailDataPayloadBuilder implements AvailDataPayloadBuilder {
+public class MetricsOnlyAvailDataPayloadBuilder implements AvailDataPayloadBuilder, StreamingJsonPayload {
+
+    /**
+     * The timestamps and values of all the data points of one availability.
+     */
+    private static class DataPoints {
+        private long[] timestamps = new long[4];
+        private Avail[] values = new Avail[4];
+        private int size = 0;
+
+        public void add(long timestamp, Avail value) {
+            if (size == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            timestamps[size] = timestamp;
+            values[size] = value;
+            size++;
+        }
+    }
 
-    // key is avail ID, value is list of data points where a data point is a map with timestamp and value
-    private Map<String, List<Map<String, Object>>> allAvail = new HashMap<>();
+    // key is avail ID, value is all data points of that avail
+    private final Map<String, DataPoints> allAvail = new LinkedHashMap<>();
 
     // a running count of the number of data points that have been added
     private int count = 0;
 
     @Override
     public void addDataPoint(String key, long timestamp, Avail value) {
-        List<Map<String, Object>> data = allAvail.get(key);
+        DataPoints data = allAvail.get(key);
         if (data == null) {
             // we haven't seen this avail ID before, create a new list of data points
-            data = new ArrayList<Map<String, Object>>();
+            data = new DataPoints();
             allAvail.put(key, data);
         }
-        Map<String, Object> timestampAndValue = new HashMap<>(2);
-        timestampAndValue.put("timestamp", new Long(timestamp));
-        timestampAndValue.put("value", value.name().toLowerCase());
-        data.add(timestampAndValue);
+        data.add(timestamp, value);
         count++;
     }
 
     public List<Map<String, Object>> toObjectPayload() {
-        List<Map<String, Object>> fullMessageObject = new ArrayList<>();
-        for (Map.Entry<String, List<Map<String, Object>>> availEntry : allAvail.entrySet()) {
+        List<Map<String, Object>> fullMessageObject = new ArrayList<>(allAvail.size());
+        for (Map.Entry<String, DataPoints> availEntry : allAvail.entrySet()) {
+            DataPoints data = availEntry.getValue();
+            List<Map<String, Object>> dataList = new ArrayList<>(data.size);
+            for (int i = 0; i < data.size; i++) {
+                Map<String, Object> timestampAndValue = new HashMap<>(2);
+                timestampAndValue.put("timestamp", Long.valueOf(data.timestamps[i]));
+                timestampAndValue.put("value", data.values[i].name().toLowerCase());
+                dataList.add(timestampAndValue);
+            }
+
             Map<String, Object> availKeyAndData = new HashMap<>(2);
             availKeyAndData.put("id", availEntry.getKey());
-            availKeyAndData.put("data", availEntry.getValue());
+            availKeyAndData.put("data", dataList);
             fullMessageObject.add(availKeyAndData);
         }
         return fullMessageObject;
     }
 
+    @Override
+    public void writeJson(JsonGenerator generator) throws IOException {
+        generator.writeStartArray();
+        for (Map.Entry<String, DataPoints> availEntry : allAvail.entrySet()) {
+            DataPoints data = availEntry.getValue();
+            generator.writeStartObject();
+            generator.writeStringField("id", availEntry.getKey());
+            generator.writeArrayFieldStart("data");
+            for (int i = 0; i < data.size; i++) {
+                generator.writeStartObject();
+                generator.writeNumberField("timestamp", data.timestamps[i]);
+                generator.writeStringField("value", data.values[i].name().toLowerCase());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+
     @Override
     public String toPayload() {
-        final String jsonPayload = Util.toJson(toObjectPayload());
-        return jsonPayload;
+        return JsonPayloads.toJson(this);
     }
 
     @Override
     public int getNumberDataPoints() {
         return count;
     }
-}
\ No newline at end of file
+}
@@ -16,43 +16,67 @@
  */
 package org.hawkular.agent.monitor.storage;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.hawkular.agent.monitor.api.MetricDataPayloadBuilder;
-import org.hawkular.agent.monitor.service.Util;
 import org.hawkular.metrics.client.common.MetricType;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
 /**
  * Allows one to build up a payload request to send to metric storage by adding
  * data points one by one. After all data points are added, you can get the payload in
- * either an {@link #toObjectPayload() object} format or a {@link #toPayload() JSON} format.
+ * either an {@link #toObjectPayload() object} format or a {@link #toPayload() JSON} format,
+ * or you can {@link #writeJson(JsonGenerator) stream} the JSON directly to where it needs to go.
+ *
+ * The data points of each metric are kept in primitive arrays, so adding a data point does not
+ * create any objects other than the occasional larger array.
  */
-public class MetricsOnlyMetricDataPayloadBuilder implements MetricDataPayloadBuilder {
+public class MetricsOnlyMetricDataPayloadBuilder implements MetricDataPayloadBuilder, StreamingJsonPayload {
 
-    // key is metric ID, value is list of data points where a data point is a map with timestamp and value
-    private Map<String, List<Map<String, Number>>> allGauges = new HashMap<>();
-    private Map<String, List<Map<String, Number>>> allCounters = new HashMap<>();
+    /**
+     * The timestamps and values of all the data points of one metric.
+     */
+    private static class DataPoints {
+        private long[] timestamps = new long[4];
+        private double[] values = new double[4];
+        private int size = 0;
+
+        public void add(long timestamp, double value) {
+            if (size == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            timestamps[size] = timestamp;
+            values[size] = value;
+            size++;
+        }
+    }
+
+    // key is metric ID, value is all data points of that metric
+    private final Map<String, DataPoints> allGauges = new LinkedHashMap<>();
+    private final Map<String, DataPoints> allCounters = new LinkedHashMap<>();
 
     // a running count of the number of data points that have been added
     private int count = 0;
 
     @Override
     public void addDataPoint(String key, long timestamp, double value, MetricType metricType) {
-        Map<String, List<Map<String, Number>>> map;
-        Number valueObject;
+        Map<String, DataPoints> map;
 
         switch (metricType) {
             case GAUGE: {
                 map = allGauges;
-                valueObject = Double.valueOf(value);
                 break;
             }
             case COUNTER: {
                 map = allCounters;
-                valueObject = Long.valueOf(Double.valueOf(value).longValue());
                 break;
             }
             default: {
@@ -60,54 +84,89 @@ public class MetricsOnlyMetricDataPayloadBuilder implements MetricDataPayloadBui
             }
         }
 
-        List<Map<String, Number>> data = map.get(key);
+        DataPoints data = map.get(key);
         if (data == null) {
             // we haven't seen this metric ID before, create a new list of data points
-            data = new ArrayList<Map<String, Number>>();
+            data = new DataPoints();
             map.put(key, data);
         }
-        Map<String, Number> timestampAndValue = new HashMap<>(2);
-        timestampAndValue.put("timestamp", timestamp);
-        timestampAndValue.put("value", valueObject);
-        data.add(timestampAndValue);
+        data.add(timestamp, value);
         count++;
     }
 
     public Map<String, List<Map<String, Object>>> toObjectPayload() {
         Map<String, List<Map<String, Object>>> fullMessageObject = new HashMap<>();
-
-        List<Map<String, Object>> allOfSpecificType = new ArrayList<>();
-        fullMessageObject.put("gauges", allOfSpecificType);
-        for (Map.Entry<String, List<Map<String, Number>>> metricEntry : allGauges.entrySet()) {
-            Map<String, Object> metricKeyAndData = new HashMap<>(2);
-            metricKeyAndData.put("id", metricEntry.getKey());
-            metricKeyAndData.put("data", metricEntry.getValue());
-            allOfSpecificType.add(metricKeyAndData);
-        }
-
-        allOfSpecificType = new ArrayList<>();
-        fullMessageObject.put("counters", allOfSpecificType);
-        for (Map.Entry<String, List<Map<String, Number>>> metricEntry : allCounters.entrySet()) {
-            Map<String, Object> metricKeyAndData = new HashMap<>(2);
-            metricKeyAndData.put("id", metricEntry.getKey());
-            metricKeyAndData.put("data", metricEntry.getValue());
-            allOfSpecificType.add(metricKeyAndData);
-        }
-
-        allOfSpecificType = new ArrayList<>();
-        fullMessageObject.put("availabilities", allOfSpecificType); // we never send avails
-
+        fullMessageObject.put("gauges", toObjectPayload(allGauges, false));
+        fullMessageObject.put("counters", toObjectPayload(allCounters, true));
+        fullMessageObject.put("availabilities", new ArrayList<Map<String, Object>>()); // we never send avails
         return fullMessageObject;
     }
 
+    @Override
+    public void writeJson(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        writeJson(generator, "counters", allCounters, true);
+        generator.writeArrayFieldStart("availabilities"); // we never send avails
+        generator.writeEndArray();
+        writeJson(generator, "gauges", allGauges, false);
+        generator.writeEndObject();
+    }
+
     @Override
     public String toPayload() {
-        final String jsonPayload = Util.toJson(toObjectPayload());
-        return jsonPayload;
+        return JsonPayloads.toJson(this);
     }
 
     @Override
     public int getNumberDataPoints() {
         return count;
     }
-}
\ No newline at end of file
+
+    private static List<Map<String, Object>> toObjectPayload(Map<String, DataPoints> metrics, boolean counters) {
+        List<Map<String, Object>> allOfSpecificType = new ArrayList<>(metrics.size());
+        for (Map.Entry<String, DataPoints> metricEntry : metrics.entrySet()) {
+            DataPoints data = metricEntry.getValue();
+            List<Map<String, Number>> dataList = new ArrayList<>(data.size);
+            for (int i = 0; i < data.size; i++) {
+                Map<String, Number> timestampAndValue = new HashMap<>(2);
+                timestampAndValue.put("timestamp", data.timestamps[i]);
+                if (counters) {
+                    timestampAndValue.put("value", (long) data.values[i]);
+                } else {
+                    timestampAndValue.put("value", data.values[i]);
+                }
+                dataList.add(timestampAndValue);
+            }
+
+            Map<String, Object> metricKeyAndData = new HashMap<>(2);
+            metricKeyAndData.put("id", metricEntry.getKey());
+            metricKeyAndData.put("data", dataList);
+            allOfSpecificType.add(metricKeyAndData);
+        }
+        return allOfSpecificType;
+    }
+
+    private static void writeJson(JsonGenerator generator, String fieldName, Map<String, DataPoints> metrics,
+            boolean counters) throws IOException {
+        generator.writeArrayFieldStart(fieldName);
+        for (Map.Entry<String, DataPoints> metricEntry : metrics.entrySet()) {
+            DataPoints data = metricEntry.getValue();
+            generator.writeStartObject();
+            generator.writeStringField("id", metricEntry.getKey());
+            generator.writeArrayFieldStart("data");
+            for (int i = 0; i < data.size; i++) {
+                generator.writeStartObject();
+                generator.writeNumberField("timestamp", data.timestamps[i]);
+                if (counters) {
+                    generator.writeNumberField("value", (long) data.values[i]);
+                } else {
+                    generator.writeNumberField("value", data.values[i]);
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+}
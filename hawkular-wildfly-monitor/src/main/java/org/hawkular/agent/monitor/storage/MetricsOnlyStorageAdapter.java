@@ -17,8 +17,13 @@
 package org.hawkular.agent.monitor.storage;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.hawkular.agent.monitor.api.Avail;
 import org.hawkular.agent.monitor.api.AvailDataPayloadBuilder;
@@ -30,18 +35,26 @@ import org.hawkular.agent.monitor.log.AgentLoggers;
 import org.hawkular.agent.monitor.log.MsgLogger;
 import org.hawkular.agent.monitor.scheduler.polling.Task;
 import org.hawkular.agent.monitor.service.ServerIdentifiers;
+import org.hawkular.agent.monitor.service.ThreadFactoryGenerator;
 import org.hawkular.agent.monitor.service.Util;
+import org.hawkular.agent.monitor.storage.StorageWriteAheadLog.RecordType;
 
+import com.codahale.metrics.Timer;
 import com.squareup.okhttp.Callback;
 import com.squareup.okhttp.Request;
 import com.squareup.okhttp.Response;
 
 public class MetricsOnlyStorageAdapter implements StorageAdapter {
     private static final MsgLogger log = AgentLoggers.getLogger(MetricsOnlyStorageAdapter.class);
+
     private MonitorServiceConfiguration.StorageAdapter config;
     private Diagnostics diagnostics;
     private ServerIdentifiers selfId;
     private HttpClientBuilder httpClientBuilder;
+    private Semaphore inFlightPermits; // null if the number of requests in flight is not limited
+    private volatile StorageWriteAheadLog writeAheadLog;
+    private volatile boolean storageReachable = true;
+    private ScheduledExecutorService replayExecutor;
 
     public MetricsOnlyStorageAdapter() {
     }
@@ -53,6 +66,7 @@ public class MetricsOnlyStorageAdapter implements StorageAdapter {
         this.diagnostics = diag;
         this.selfId = selfId;
         this.httpClientBuilder = httpClientBuilder;
+        this.inFlightPermits = (config.maxInFlightRequests > 0) ? new Semaphore(config.maxInFlightRequests) : null;
     }
 
     @Override
@@ -71,7 +85,7 @@ public class MetricsOnlyStorageAdapter implements StorageAdapter {
     }
 
     @Override
-    public void storeMetrics(Set<MetricDataPoint> datapoints) {
+    public void storeMetrics(Collection<MetricDataPoint> datapoints) {
         if (datapoints == null || datapoints.isEmpty()) {
             return; // nothing to do
         }
@@ -92,53 +106,23 @@ public class MetricsOnlyStorageAdapter implements StorageAdapter {
 
     @Override
     public void store(MetricDataPayloadBuilder payloadBuilder) {
-        String jsonPayload = "?";
+        StreamingJsonPayload jsonPayload;
 
         try {
-            // get the payload in JSON format
-            jsonPayload = payloadBuilder.toPayload().toString();
-
-            // build the REST URL...
-            StringBuilder url = Util.getContextUrlString(config.url, config.metricsContext);
-            url.append("metrics/data");
-
-            // now send the REST request
-            Request request = this.httpClientBuilder.buildJsonPostRequest(url.toString(),
-                    Collections.singletonMap("Hawkular-Tenant", config.tenantId), jsonPayload);
-
-            final String jsonPayloadFinal = jsonPayload;
-            this.httpClientBuilder.getHttpClient().newCall(request).enqueue(new Callback() {
-                @Override
-                public void onFailure(Request request, IOException e) {
-                    log.errorFailedToStoreMetricData(e, jsonPayloadFinal);
-                    diagnostics.getStorageErrorRate().mark(1);
-                }
-
-                @Override
-                public void onResponse(Response response) throws IOException {
-                    // HTTP status of 200 means success; anything else is an error
-                    if (response.code() != 200) {
-                        IOException e = new IOException("status-code=[" + response.code() + "], reason=["
-                                + response.message() + "], url=[" + request.urlString() + "]");
-                        log.errorFailedToStoreMetricData(e, jsonPayloadFinal);
-                        diagnostics.getStorageErrorRate().mark(1);
-                        throw e;
-                    }
-
-                    // looks like everything stored successfully
-                    diagnostics.getMetricRate().mark(payloadBuilder.getNumberDataPoints());
-
-                }
-            });
-
+            // our own builders write their JSON straight into the request; others have to give us a String
+            jsonPayload = (payloadBuilder instanceof StreamingJsonPayload) ? (StreamingJsonPayload) payloadBuilder
+                    : JsonPayloads.fromString(payloadBuilder.toPayload().toString());
         } catch (Throwable t) {
-            log.errorFailedToStoreMetricData(t, jsonPayload);
+            log.errorFailedToStoreMetricData(t, "?");
             diagnostics.getStorageErrorRate().mark(1);
+            return;
         }
+
+        send(RecordType.METRICS, jsonPayload, payloadBuilder.getNumberDataPoints(), null);
     }
 
     @Override
-    public void storeAvails(Set<AvailDataPoint> datapoints) {
+    public void storeAvails(Collection<AvailDataPoint> datapoints) {
         if (datapoints == null || datapoints.isEmpty()) {
             return; // nothing to do
         }
@@ -159,59 +143,201 @@ public class MetricsOnlyStorageAdapter implements StorageAdapter {
 
     @Override
     public void store(AvailDataPayloadBuilder payloadBuilder) {
-        String jsonPayload = "?";
+        StreamingJsonPayload jsonPayload;
 
         try {
-            // get the payload in JSON format
-            jsonPayload = payloadBuilder.toPayload().toString();
+            jsonPayload = (payloadBuilder instanceof StreamingJsonPayload) ? (StreamingJsonPayload) payloadBuilder
+                    : JsonPayloads.fromString(payloadBuilder.toPayload().toString());
+        } catch (Throwable t) {
+            log.errorFailedToStoreAvailData(t, "?");
+            diagnostics.getStorageErrorRate().mark(1);
+            return;
+        }
+
+        send(RecordType.AVAILS, jsonPayload, payloadBuilder.getNumberDataPoints(), null);
+    }
+
+    @Override
+    public void storeResource(Resource<?, ?, ?, ?, ?> resourceType) {
+        throw new UnsupportedOperationException("Standalone Hawkular Metrics does not support inventory");
+    }
 
+    @Override
+    public void updateResource(Resource<?, ?, ?, ?, ?> resource) {
+        throw new UnsupportedOperationException("Standalone Hawkular Metrics does not support inventory");
+    }
+
+    @Override
+    public void removeResource(Resource<?, ?, ?, ?, ?> resource) {
+        throw new UnsupportedOperationException("Standalone Hawkular Metrics does not support inventory");
+    }
+
+    @Override
+    public void shutdown() {
+        if (replayExecutor != null) {
+            replayExecutor.shutdownNow();
+            replayExecutor = null;
+        }
+    }
+
+    @Override
+    public void setWriteAheadLog(StorageWriteAheadLog writeAheadLog) {
+        this.writeAheadLog = writeAheadLog;
+
+        if (replayExecutor == null) {
+            long periodMillis = 1000L / Math.max(1, config.writeAheadLogReplayRequestsPerSecond);
+            ThreadFactory threadFactory = ThreadFactoryGenerator.generateFactory(true,
+                    "Hawkular-Monitor-Storage-WAL-Replay");
+            replayExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            replayExecutor.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    replayWriteAheadLog();
+                }
+            }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sends the payload to Hawkular Metrics. If that fails because the backend cannot be reached,
+     * the payload is kept in the write-ahead log (if there is one) so it can be sent again later.
+     *
+     * @param replayed the write-ahead log record the payload was read back from, or null if it is a new payload;
+     *                 the record is acknowledged once the payload was stored or kept for later again
+     */
+    private void send(final RecordType type, final StreamingJsonPayload jsonPayload, final int numberDataPoints,
+            final StorageWriteAheadLog.Record replayed) {
+        try {
             // build the REST URL...
             StringBuilder url = Util.getContextUrlString(config.url, config.metricsContext);
-            url.append("availability/data");
+            url.append((type == RecordType.METRICS) ? "metrics/data" : "availability/data");
 
             // now send the REST request
             Request request = this.httpClientBuilder.buildJsonPostRequest(url.toString(),
                     Collections.singletonMap("Hawkular-Tenant", config.tenantId), jsonPayload);
 
-            final String jsonPayloadFinal = jsonPayload;
-            this.httpClientBuilder.getHttpClient().newCall(request).enqueue(new Callback() {
-                @Override
-                public void onFailure(Request request, IOException e) {
-                    log.errorFailedToStoreAvailData(e, jsonPayloadFinal);
-                    diagnostics.getStorageErrorRate().mark(1);
-                }
+            // wait here if too many requests are still in flight - the dispatchers buffer data in the meantime
+            acquireInFlightPermit();
+            final Timer.Context requestTimer = diagnostics.getStorageRequestTimer().time();
+
+            try {
+                this.httpClientBuilder.getHttpClient().newCall(request).enqueue(new Callback() {
+                    @Override
+                    public void onFailure(Request request, IOException e) {
+                        releaseInFlightPermit(requestTimer);
+                        logStoreFailure(type, e, jsonPayload);
+                        keepForLater(type, jsonPayload, numberDataPoints);
+                        acknowledge(replayed);
+                    }
 
-                @Override
-                public void onResponse(Response response) throws IOException {
-                    // HTTP status of 200 means success; anything else is an error
-                    if (response.code() != 200) {
-                        IOException e = new IOException("status-code=[" + response.code() + "], reason=["
-                                + response.message() + "], url=[" + request.urlString() + "]");
-                        log.errorFailedToStoreAvailData(e, jsonPayloadFinal);
-                        diagnostics.getStorageErrorRate().mark(1);
-                        throw e;
+                    @Override
+                    public void onResponse(Response response) throws IOException {
+                        releaseInFlightPermit(requestTimer);
+                        try {
+                            handleResponse(response);
+                        } finally {
+                            acknowledge(replayed);
+                        }
                     }
 
-                    // looks like everything stored successfully
-                    diagnostics.getAvailRate().mark(payloadBuilder.getNumberDataPoints());
+                    private void handleResponse(Response response) throws IOException {
+                        // HTTP status of 200 means success; anything else is an error
+                        if (response.code() != 200) {
+                            IOException e = new IOException("status-code=[" + response.code() + "], reason=["
+                                    + response.message() + "], url=[" + request.urlString() + "]");
+                            logStoreFailure(type, e, jsonPayload);
+                            // a client error means the payload itself is bad - sending it again won't help
+                            if (response.code() >= 500 || response.code() == 408 || response.code() == 429) {
+                                keepForLater(type, jsonPayload, numberDataPoints);
+                            }
+                            throw e;
+                        }
+
+                        // looks like everything stored successfully
+                        storageReachable = true;
+                        if (type == RecordType.METRICS) {
+                            diagnostics.getMetricRate().mark(numberDataPoints);
+                        } else {
+                            diagnostics.getAvailRate().mark(numberDataPoints);
+                        }
+                    }
+                });
+            } catch (Throwable t) {
+                releaseInFlightPermit(requestTimer);
+                throw t;
+            }
+
+        } catch (InterruptedException ie) {
+            logStoreFailure(type, ie, jsonPayload);
+            if (replayed == null) {
+                // we are being shut down before the payload could be sent - don't lose it
+                keepForLater(type, jsonPayload, numberDataPoints);
+            }
+            Thread.currentThread().interrupt();
+        } catch (Throwable t) {
+            logStoreFailure(type, t, jsonPayload);
+            acknowledge(replayed); // the payload cannot be sent, sending it again won't help
+        }
+    }
 
-                }
-            });
+    private void logStoreFailure(RecordType type, Throwable t, StreamingJsonPayload jsonPayload) {
+        // only now that something went wrong do we need the JSON as a String
+        if (type == RecordType.METRICS) {
+            log.errorFailedToStoreMetricData(t, JsonPayloads.toJson(jsonPayload));
+        } else {
+            log.errorFailedToStoreAvailData(t, JsonPayloads.toJson(jsonPayload));
+        }
+        diagnostics.getStorageErrorRate().mark(1);
+    }
 
-        } catch (Throwable t) {
-            log.errorFailedToStoreAvailData(t, jsonPayload);
-            diagnostics.getStorageErrorRate().mark(1);
+    private void keepForLater(RecordType type, StreamingJsonPayload jsonPayload, int numberDataPoints) {
+        storageReachable = false;
+        StorageWriteAheadLog wal = writeAheadLog;
+        if (wal != null) {
+            wal.append(new StorageWriteAheadLog.Record(type, JsonPayloads.toJson(jsonPayload), numberDataPoints));
         }
     }
 
-    @Override
-    public void storeResource(Resource<?, ?, ?, ?, ?> resourceType) {
-        throw new UnsupportedOperationException("Standalone Hawkular Metrics does not support inventory");
+    private void acknowledge(StorageWriteAheadLog.Record replayed) {
+        StorageWriteAheadLog wal = writeAheadLog;
+        if (replayed != null && wal != null) {
+            wal.acknowledge(replayed);
+        }
     }
 
-    @Override
-    public void shutdown() {
-        throw new UnsupportedOperationException("Standalone Hawkular Metrics does not support inventory");
+    /**
+     * Sends the oldest payload in the write-ahead log again, but only if the last request we sent made it
+     * to the backend - while the backend is down, the log just keeps growing.
+     */
+    private void replayWriteAheadLog() {
+        try {
+            StorageWriteAheadLog wal = writeAheadLog;
+            if (wal == null || !storageReachable) {
+                return;
+            }
+            StorageWriteAheadLog.Record record = wal.next();
+            if (record != null) {
+                diagnostics.getStorageWriteAheadLogReplayRate().mark();
+                send(record.getType(), JsonPayloads.fromString(record.getPayload()), record.getNumberDataPoints(),
+                        record);
+            }
+        } catch (Throwable t) {
+            log.debugf("Failed to replay write-ahead log: %s", t);
+        }
     }
 
+    private void acquireInFlightPermit() throws InterruptedException {
+        if (inFlightPermits != null) {
+            inFlightPermits.acquire();
+        }
+        diagnostics.getStorageInFlightRequests().inc();
+    }
+
+    private void releaseInFlightPermit(Timer.Context requestTimer) {
+        requestTimer.stop();
+        diagnostics.getStorageInFlightRequests().dec();
+        if (inFlightPermits != null) {
+            inFlightPermits.release();
+        }
+    }
 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.agent.monitor.storage;
+
+/**
+ * Determines what a storage dispatcher does with a newly collected data point when its buffer is full
+ * because the storage backend cannot keep up.
+ */
+public enum OverflowPolicy {
+    /**
+     * Throws away the oldest buffered data point to make room for the new one.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Throws away the new data point.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Makes the collection thread wait a limited time for room in the buffer; if the buffer is still full
+     * after that, the new data point is thrown away.
+     */
+    BLOCK,
+
+    /**
+     * Writes the new data point to a file in the agent's data directory. The data points in that file
+     * are stored once the buffer has drained.
+     */
+    SPILL_TO_DISK
+}
@@ -16,13 +16,14 @@
  */
 package org.hawkular.agent.monitor.storage;
 
-import java.util.Set;
+import java.util.Collection;
 
 import org.hawkular.agent.monitor.api.AvailStorage;
 import org.hawkular.agent.monitor.api.InventoryStorage;
 import org.hawkular.agent.monitor.api.MetricStorage;
 import org.hawkular.agent.monitor.diagnostics.Diagnostics;
 import org.hawkular.agent.monitor.extension.MonitorServiceConfiguration;
+import org.hawkular.agent.monitor.inventory.Resource;
 import org.hawkular.agent.monitor.service.ServerIdentifiers;
 
 public interface StorageAdapter extends MetricStorage, AvailStorage, InventoryStorage {
@@ -52,11 +53,31 @@ public interface StorageAdapter extends MetricStorage, AvailStorage, InventorySt
      * Stores the given collected metric data points.
      * @param datapoints the data to be stored
      */
-    void storeMetrics(Set<MetricDataPoint> datapoints);
+    void storeMetrics(Collection<MetricDataPoint> datapoints);
 
     /**
      * Stores the given availability check data points.
      * @param datapoints the data to be stored
      */
-    void storeAvails(Set<AvailDataPoint> datapoints);
+    void storeAvails(Collection<AvailDataPoint> datapoints);
+
+    /**
+     * Updates the name, properties and resource configuration of a resource that was stored before.
+     * @param resource the new version of the resource
+     */
+    void updateResource(Resource<?, ?, ?, ?, ?> resource);
+
+    /**
+     * Removes a resource that was stored before, along with all of its descendants.
+     * @param resource the resource to be removed
+     */
+    void removeResource(Resource<?, ?, ?, ?, ?> resource);
+
+    /**
+     * Metric and availability data that cannot be stored because the storage backend is unreachable will be
+     * kept in the given log and stored later, once the backend can be reached again.
+     *
+     * @param writeAheadLog where to keep the data that could not be stored
+     */
+    void setWriteAheadLog(StorageWriteAheadLog writeAheadLog);
 }
@@ -0,0 +1,453 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.agent.monitor.storage;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.zip.CRC32;
+
+import org.hawkular.agent.monitor.diagnostics.Diagnostics;
+import org.hawkular.agent.monitor.log.AgentLoggers;
+import org.hawkular.agent.monitor.log.MsgLogger;
+
+/**
+ * An on-disk log of metric and availability payloads that could not be stored because the storage backend
+ * was unreachable. The payloads are read back in the order they were written so they can be sent again
+ * once the backend is back.
+ *
+ * The log is a directory of append-only segment files. Each record is written with its length and a CRC
+ * so a record that was only partially written (e.g. because the server was killed) is detected and
+ * ignored. Records are only ever read from segments that are no longer written to; once all the records of
+ * a segment have been read back, the segment file is deleted. To bound the disk usage, the oldest segments
+ * are deleted when the log grows larger than its maximum size or once they are older than the maximum age.
+ *
+ * A record that was read back has to be {@link #acknowledge(Record) acknowledged} before the next one is
+ * handed out. How far a segment has been acknowledged is kept in a small side file next to the segment, so
+ * after a restart reading continues after the last acknowledged record instead of at the start of the segment.
+ */
+public class StorageWriteAheadLog implements Closeable {
+    private static final MsgLogger log = AgentLoggers.getLogger(StorageWriteAheadLog.class);
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final String OFFSET_SUFFIX = ".offset";
+    private static final long MAX_SEGMENT_BYTES = 8L * 1024L * 1024L;
+    private static final int MAX_RECORD_BYTES = Integer.MAX_VALUE - 8;
+
+    public enum RecordType {
+        METRICS, AVAILS
+    }
+
+    /**
+     * A payload that is waiting to be stored.
+     */
+    public static class Record {
+        private final RecordType type;
+        private final String payload;
+        private final int numberDataPoints;
+
+        // where the record was read back from; only set on records handed out by next()
+        private File segment;
+        private int recordBytes;
+        private long endOffset;
+
+        /**
+         * @param type whether the payload holds metrics or availabilities
+         * @param payload the JSON payload
+         * @param numberDataPoints the number of data points in the payload
+         */
+        public Record(RecordType type, String payload, int numberDataPoints) {
+            this.type = type;
+            this.payload = payload;
+            this.numberDataPoints = numberDataPoints;
+        }
+
+        public RecordType getType() {
+            return type;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+
+        public int getNumberDataPoints() {
+            return numberDataPoints;
+        }
+    }
+
+    private final File directory;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    private final long segmentBytes;
+    private final Diagnostics diagnostics;
+
+    // all of these are guarded by "this"
+    private final Deque<File> segments = new ArrayDeque<>(); // oldest first; the last one is being written to
+    private long nextSegmentNumber;
+    private long totalBytes;
+    private FileChannel writer;
+    private long writerBytes;
+    private File readerSegment;
+    private DataInputStream reader;
+    private long readerOffset;
+    private Record unacknowledged;
+    private boolean closed = false;
+
+    /**
+     * Opens the log in the given directory. Segments left over from a previous run will be read back.
+     *
+     * @param directory where the segment files are kept
+     * @param maxBytes the maximum number of bytes the segments may take up together
+     * @param maxAgeMillis segments that were last written to longer ago than this are deleted
+     * @param diagnostics tracks our internal metrics
+     */
+    public StorageWriteAheadLog(File directory, long maxBytes, long maxAgeMillis, Diagnostics diagnostics) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        this.segmentBytes = Math.max(1L, Math.min(MAX_SEGMENT_BYTES, maxBytes / 4L));
+        this.diagnostics = diagnostics;
+
+        directory.mkdirs();
+        File[] existing = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (existing != null) {
+            Arrays.sort(existing); // the segment numbers are zero-padded so this sorts them oldest first
+            for (File segment : existing) {
+                segments.add(segment);
+                totalBytes += segment.length();
+                nextSegmentNumber = Math.max(nextSegmentNumber, getSegmentNumber(segment) + 1L);
+            }
+        }
+        if (!segments.isEmpty()) {
+            log.debugf("Found [%d] write-ahead log segments with [%d] bytes in [%s]", segments.size(), totalBytes,
+                    directory);
+        }
+    }
+
+    /**
+     * @return true if there are no records to be read back
+     */
+    public synchronized boolean isEmpty() {
+        return totalBytes == 0L;
+    }
+
+    /**
+     * Appends the record to the end of the log.
+     *
+     * @param record the payload to keep
+     * @return true if the record was written
+     */
+    public synchronized boolean append(Record record) {
+        if (closed) {
+            return false;
+        }
+
+        try {
+            byte[] body = encode(record);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+
+            ByteBuffer buffer = ByteBuffer.allocate(8 + body.length);
+            buffer.putInt(body.length);
+            buffer.putInt((int) crc.getValue());
+            buffer.put(body);
+            buffer.flip();
+
+            if (writer == null || writerBytes >= segmentBytes) {
+                rollSegment();
+            }
+            while (buffer.hasRemaining()) {
+                writer.write(buffer);
+            }
+            writerBytes += 8 + body.length;
+            totalBytes += 8 + body.length;
+            diagnostics.getStorageWriteAheadLogAppendRate().mark();
+
+            enforceLimits();
+            return true;
+        } catch (IOException e) {
+            log.errorWriteAheadLogFailed(directory.getAbsolutePath(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Reads back the oldest record in the log. Once the record has been dealt with, it has to be
+     * {@link #acknowledge(Record) acknowledged}; until then no other record is handed out.
+     *
+     * @return the oldest record, or null if there are no more records or the last record that was handed out
+     *         was not acknowledged yet
+     */
+    public synchronized Record next() {
+        if (closed || unacknowledged != null) {
+            return null;
+        }
+
+        enforceLimits();
+
+        while (!segments.isEmpty()) {
+            try {
+                if (reader == null) {
+                    if (segments.size() == 1 && writer != null) {
+                        // never read a segment that is still being written to
+                        if (writerBytes == 0L) {
+                            return null;
+                        }
+                        rollSegment();
+                    }
+                    openReader(segments.peekFirst());
+                }
+
+                Record record = readRecord(reader, readerSegment.length() - readerOffset);
+                if (record != null) {
+                    readerOffset += record.recordBytes;
+                    record.segment = readerSegment;
+                    record.endOffset = readerOffset;
+                    unacknowledged = record;
+                    return record;
+                }
+            } catch (IOException e) {
+                log.errorWriteAheadLogFailed(directory.getAbsolutePath(), e);
+            }
+
+            // we read all we could from the oldest segment, it is no longer needed
+            deleteOldestSegment();
+        }
+        return null;
+    }
+
+    /**
+     * Marks the record as dealt with - it was either stored or has been appended to the log again. The record
+     * will not be read back again, not even after a restart, and the next record can be handed out.
+     *
+     * @param record a record that was returned by {@link #next()}
+     */
+    public synchronized void acknowledge(Record record) {
+        if (record != unacknowledged) {
+            return; // its segment was discarded in the meantime
+        }
+        unacknowledged = null;
+        if (record.segment.equals(readerSegment)) {
+            saveOffset(record.segment, record.endOffset);
+        }
+    }
+
+    /**
+     * Stops writing to the log. The segments stay on disk so they can be read back the next time.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        closeWriter();
+        closeReader();
+    }
+
+    private void rollSegment() throws IOException {
+        closeWriter();
+        if (!segments.isEmpty() && segments.peekLast().length() == 0L) {
+            segments.peekLast().delete();
+            segments.pollLast();
+        }
+        File segment = new File(directory, String.format("%s%016d%s", SEGMENT_PREFIX, nextSegmentNumber++,
+                SEGMENT_SUFFIX));
+        writer = new FileOutputStream(segment, true).getChannel();
+        writerBytes = 0L;
+        segments.addLast(segment);
+    }
+
+    private void enforceLimits() {
+        long oldestAllowed = System.currentTimeMillis() - maxAgeMillis;
+        while (segments.size() > 1) {
+            File oldest = segments.peekFirst();
+            if (totalBytes > maxBytes || oldest.lastModified() < oldestAllowed) {
+                log.debugf("Discarding write-ahead log segment [%s] - the log is too large or the segment too old",
+                        oldest);
+                diagnostics.getStorageWriteAheadLogDiscardRate().mark();
+                deleteOldestSegment();
+            } else {
+                break;
+            }
+        }
+    }
+
+    private void deleteOldestSegment() {
+        File oldest = segments.pollFirst();
+        if (oldest == null) {
+            return;
+        }
+        if (oldest.equals(readerSegment)) {
+            closeReader();
+        }
+        if (unacknowledged != null && oldest.equals(unacknowledged.segment)) {
+            unacknowledged = null;
+        }
+        if (segments.isEmpty()) {
+            closeWriter(); // it was the segment being written to
+        }
+        totalBytes = Math.max(0L, totalBytes - oldest.length());
+        if (!oldest.delete() && oldest.exists()) {
+            log.debugf("Could not delete write-ahead log segment [%s]", oldest);
+        }
+        File offsetFile = getOffsetFile(oldest);
+        if (offsetFile.exists() && !offsetFile.delete()) {
+            log.debugf("Could not delete write-ahead log offset file [%s]", offsetFile);
+        }
+        if (segments.isEmpty()) {
+            totalBytes = 0L;
+        }
+    }
+
+    /**
+     * Opens the segment for reading, positioned after the last record of it that was acknowledged.
+     */
+    private void openReader(File segment) throws IOException {
+        long offset = loadOffset(segment);
+        FileInputStream in = new FileInputStream(segment);
+        long skipped = 0L;
+        while (skipped < offset) {
+            long n = in.skip(offset - skipped);
+            if (n <= 0L) {
+                break;
+            }
+            skipped += n;
+        }
+        readerSegment = segment;
+        reader = new DataInputStream(new BufferedInputStream(in));
+        readerOffset = skipped;
+    }
+
+    private long loadOffset(File segment) {
+        File offsetFile = getOffsetFile(segment);
+        if (!offsetFile.exists()) {
+            return 0L;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(offsetFile))) {
+            long offset = in.readLong();
+            return (offset >= 0L && offset <= segment.length()) ? offset : 0L;
+        } catch (IOException e) {
+            log.debugf("Could not read write-ahead log offset file [%s], reading the whole segment: %s",
+                    offsetFile, e);
+            return 0L;
+        }
+    }
+
+    private void saveOffset(File segment, long offset) {
+        File offsetFile = getOffsetFile(segment);
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(offsetFile, false))) {
+            out.writeLong(offset);
+        } catch (IOException e) {
+            log.debugf("Could not write write-ahead log offset file [%s]: %s", offsetFile, e);
+        }
+    }
+
+    private static File getOffsetFile(File segment) {
+        return new File(segment.getPath() + OFFSET_SUFFIX);
+    }
+
+    private void closeWriter() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                log.tracef("Failed to close write-ahead log segment: %s", e);
+            }
+            writer = null;
+        }
+    }
+
+    private void closeReader() {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                log.tracef("Failed to close write-ahead log segment [%s]: %s", readerSegment, e);
+            }
+            reader = null;
+            readerSegment = null;
+            readerOffset = 0L;
+        }
+    }
+
+    private static byte[] encode(Record record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(record.getPayload().length() + 5);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(record.getType().ordinal());
+        out.writeInt(record.getNumberDataPoints());
+        out.write(record.getPayload().getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param remainingBytes how many bytes of the segment are left to read; a record that claims to be longer
+     *                       was torn or is corrupt
+     * @return the next record, or null if the end of the segment (or a partially written record) was reached
+     */
+    private static Record readRecord(DataInputStream in, long remainingBytes) throws IOException {
+        try {
+            int length = in.readInt();
+            int expectedCrc = in.readInt();
+            if (length < 5 || length > MAX_RECORD_BYTES || length > remainingBytes - 8) {
+                return null;
+            }
+            byte[] body = new byte[length];
+            in.readFully(body);
+
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if ((int) crc.getValue() != expectedCrc || body[0] < 0 || body[0] >= RecordType.values().length) {
+                return null;
+            }
+            int numberDataPoints = ByteBuffer.wrap(body, 1, 4).getInt();
+            Record record = new Record(RecordType.values()[body[0]],
+                    new String(body, 5, length - 5, StandardCharsets.UTF_8), numberDataPoints);
+            record.recordBytes = 8 + length;
+            return record;
+        } catch (EOFException eof) {
+            return null;
+        }
+    }
+
+    private static long getSegmentNumber(File segment) {
+        String name = segment.getName();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.agent.monitor.storage;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * A JSON payload that writes itself directly to a stream (such as the body of an HTTP request) so
+ * the full JSON document never has to be built up in memory as a String.
+ *
+ * @see JsonPayloads
+ */
+public interface StreamingJsonPayload {
+    /**
+     * Writes the complete JSON document. This may be called more than once, e.g. when a request is retried,
+     * and must write the same document each time.
+     *
+     * @param generator where to write the JSON to
+     * @throws IOException if the JSON could not be written
+     */
+    void writeJson(JsonGenerator generator) throws IOException;
+}
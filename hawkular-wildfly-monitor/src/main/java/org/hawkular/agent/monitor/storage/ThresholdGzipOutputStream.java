@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.agent.monitor.storage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+/**
+ * Collects a request body in memory and gzips it, but only once the body has grown to the given
+ * threshold - small bodies are kept as they are since compressing them saves next to nothing.
+ * Because the body is compressed while it is being written, only the compressed bytes of a large body
+ * are ever held in memory.
+ */
+class ThresholdGzipOutputStream extends OutputStream {
+    private final long thresholdBytes;
+    private final Buffer plain = new Buffer();
+    private final Buffer compressed = new Buffer();
+    private BufferedSink gzip; // null until the threshold is reached
+    private long uncompressedSize = 0L;
+    private boolean closed = false;
+
+    /**
+     * @param thresholdBytes bodies with fewer bytes than this are not compressed
+     */
+    public ThresholdGzipOutputStream(long thresholdBytes) {
+        this.thresholdBytes = thresholdBytes;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+        uncompressedSize += len;
+        if (gzip != null) {
+            gzip.write(b, off, len);
+        } else {
+            plain.write(b, off, len);
+            if (plain.size() >= thresholdBytes) {
+                gzip = Okio.buffer(new GzipSink(compressed));
+                gzip.writeAll(plain);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            if (gzip != null) {
+                gzip.close(); // writes the gzip trailer
+            }
+        }
+    }
+
+    /**
+     * @return true if the body was large enough to be compressed
+     */
+    public boolean isCompressed() {
+        return gzip != null;
+    }
+
+    /**
+     * @return the number of bytes that were written to this stream
+     */
+    public long getUncompressedSize() {
+        return uncompressedSize;
+    }
+
+    /**
+     * Returns the body that is to be sent - compressed if {@link #isCompressed()} is true.
+     * Only call this after the stream has been closed.
+     *
+     * @return the body bytes
+     */
+    public byte[] toByteArray() {
+        if (!closed) {
+            throw new IllegalStateException("Stream must be closed first");
+        }
+        return isCompressed() ? compressed.readByteArray() : plain.readByteArray();
+    }
+}
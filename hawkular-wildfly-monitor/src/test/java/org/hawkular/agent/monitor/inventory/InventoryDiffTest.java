@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.agent.monitor.inventory;
+
+import org.hawkular.agent.monitor.inventory.dmr.DMRResource;
+import org.hawkular.agent.monitor.inventory.dmr.DMRResourceType;
+import org.hawkular.dmrclient.Address;
+import org.jboss.dmr.ModelNode;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class InventoryDiffTest {
+    private final DMRResourceType type = new DMRResourceType(new ID("resType"), new Name("resTypeName"));
+
+    @Test
+    public void testNoOldInventory() {
+        ResourceManager<DMRResource> rm = new ResourceManager<>();
+        DMRResource root = newResource("root", null);
+        rm.addResource(root);
+
+        InventoryDiff<DMRResource> diff = InventoryDiff.between(null, rm);
+        Assert.assertEquals(1, diff.getAdded().size());
+        Assert.assertTrue(diff.getAdded().contains(root));
+        Assert.assertTrue(diff.getChanged().isEmpty());
+        Assert.assertTrue(diff.getRemoved().isEmpty());
+    }
+
+    @Test
+    public void testDiff() {
+        ResourceManager<DMRResource> oldRm = new ResourceManager<>();
+        DMRResource oldRoot = newResource("root", null);
+        DMRResource oldSame = newResource("same", oldRoot);
+        DMRResource oldChanged = newResource("changed", oldRoot);
+        DMRResource oldGone = newResource("gone", oldRoot);
+        DMRResource oldGoneChild = newResource("goneChild", oldGone);
+        oldRm.addResource(oldRoot);
+        oldRm.addResource(oldSame);
+        oldRm.addResource(oldChanged);
+        oldRm.addResource(oldGone);
+        oldRm.addResource(oldGoneChild);
+
+        ResourceManager<DMRResource> newRm = new ResourceManager<>();
+        DMRResource newRoot = newResource("root", null);
+        DMRResource newSame = newResource("same", newRoot);
+        DMRResource newChanged = newResource("changed", newRoot);
+        newChanged.addProperty("foo", "bar");
+        DMRResource newAdded = newResource("added", newRoot);
+        newRm.addResource(newRoot);
+        newRm.addResource(newSame);
+        newRm.addResource(newChanged);
+        newRm.addResource(newAdded);
+
+        Assert.assertEquals(InventoryDiff.getContentHash(oldSame), InventoryDiff.getContentHash(newSame));
+        Assert.assertNotEquals(InventoryDiff.getContentHash(oldChanged), InventoryDiff.getContentHash(newChanged));
+
+        InventoryDiff<DMRResource> diff = InventoryDiff.between(oldRm, newRm);
+        Assert.assertEquals(1, diff.getAdded().size());
+        Assert.assertSame(newAdded, diff.getAdded().get(0));
+        Assert.assertEquals(1, diff.getChanged().size());
+        Assert.assertSame(newChanged, diff.getChanged().get(0));
+        // the child of the removed resource goes away along with its parent
+        Assert.assertEquals(1, diff.getRemoved().size());
+        Assert.assertSame(oldGone, diff.getRemoved().get(0));
+    }
+
+    private DMRResource newResource(String id, DMRResource parent) {
+        return new DMRResource(new ID(id), new Name(id + "Name"), null, type, parent, new Address(),
+                new ModelNode());
+    }
+}
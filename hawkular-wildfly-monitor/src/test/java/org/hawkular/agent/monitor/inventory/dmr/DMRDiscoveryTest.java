@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.agent.monitor.inventory.dmr;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.hawkular.dmrclient.Address;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DMRDiscoveryTest {
+
+    @Test
+    public void testFindWildcardsAtSeveralDepths() {
+        ModelNode model = createModel();
+
+        Map<Address, ModelNode> found = DMRDiscovery.findInModel(Address.root(), model, Address.parse("/subsystem=*"));
+        Assert.assertEquals(Arrays.asList(Address.parse("/subsystem=datasources"),
+                Address.parse("/subsystem=undertow")), Arrays.asList(found.keySet().toArray()));
+
+        found = DMRDiscovery.findInModel(Address.root(), model, Address.parse("/subsystem=*/data-source=*"));
+        Assert.assertEquals(Arrays.asList(Address.parse("/subsystem=datasources/data-source=ExampleDS"),
+                Address.parse("/subsystem=datasources/data-source=OtherDS")),
+                Arrays.asList(found.keySet().toArray()));
+        Assert.assertEquals("java:/ExampleDS",
+                found.get(Address.parse("/subsystem=datasources/data-source=ExampleDS")).get("jndi-name").asString());
+
+        found = DMRDiscovery.findInModel(Address.root(), model, Address.parse("/subsystem=*/server=*/host=*"));
+        Assert.assertEquals(Collections.singleton(Address.parse("/subsystem=undertow/server=default/host=main")),
+                found.keySet());
+    }
+
+    @Test
+    public void testFindLiteralUnderWildcard() {
+        ModelNode model = createModel();
+
+        Map<Address, ModelNode> found = DMRDiscovery.findInModel(Address.root(), model,
+                Address.parse("/subsystem=*/data-source=OtherDS"));
+        Assert.assertEquals(Collections.singleton(Address.parse("/subsystem=datasources/data-source=OtherDS")),
+                found.keySet());
+
+        // relative to a resource further down the tree
+        Address datasources = Address.parse("/subsystem=datasources");
+        found = DMRDiscovery.findInModel(datasources, model.get("subsystem", "datasources"),
+                Address.parse("/data-source=ExampleDS"));
+        Assert.assertEquals(Collections.singleton(Address.parse("/subsystem=datasources/data-source=ExampleDS")),
+                found.keySet());
+    }
+
+    @Test
+    public void testFindNoMatch() {
+        ModelNode model = createModel();
+        String before = model.toString();
+
+        Assert.assertTrue(DMRDiscovery.findInModel(Address.root(), model,
+                Address.parse("/subsystem=*/data-source=NoSuchDS")).isEmpty());
+        Assert.assertTrue(DMRDiscovery.findInModel(Address.root(), model,
+                Address.parse("/subsystem=messaging/server=*")).isEmpty());
+        Assert.assertTrue(DMRDiscovery.findInModel(Address.root(), model,
+                Address.parse("/subsystem=*/data-source=*/jndi-name=*")).isEmpty());
+
+        // looking for what is not there must not add it to the model
+        Assert.assertEquals(before, model.toString());
+    }
+
+    @Test
+    public void testIsAtOrUnder() {
+        Address datasources = Address.parse("/subsystem=datasources");
+        Assert.assertTrue(DMRDiscovery.isAtOrUnder(datasources, Collections.singleton(datasources)));
+        Assert.assertTrue(DMRDiscovery.isAtOrUnder(Address.parse("/subsystem=datasources/data-source=ExampleDS"),
+                Collections.singleton(datasources)));
+        Assert.assertTrue(DMRDiscovery.isAtOrUnder(datasources, Collections.singleton(Address.root())));
+        Assert.assertFalse(DMRDiscovery.isAtOrUnder(Address.parse("/subsystem=undertow"),
+                Collections.singleton(datasources)));
+        Assert.assertFalse(DMRDiscovery.isAtOrUnder(Address.root(), Collections.singleton(datasources)));
+        // addresses are not queries - a "*" in them is just a name
+        Assert.assertFalse(DMRDiscovery.isAtOrUnder(Address.parse("/subsystem=*"),
+                Collections.singleton(datasources)));
+    }
+
+    @Test
+    public void testMayMatchUnder() {
+        Address exampleDS = Address.parse("/subsystem=datasources/data-source=ExampleDS");
+        Assert.assertTrue(DMRDiscovery.mayMatchUnder(Address.parse("/subsystem=*/data-source=*"),
+                Collections.singleton(exampleDS)));
+        Assert.assertTrue(DMRDiscovery.mayMatchUnder(Address.parse("/subsystem=datasources/data-source=*"),
+                Collections.singleton(Address.parse("/subsystem=datasources"))));
+        Assert.assertTrue(DMRDiscovery.mayMatchUnder(Address.parse("/subsystem=*/data-source=*/statistics=pool"),
+                Collections.singleton(exampleDS)));
+        // a query for the parents of a scope cannot find anything in it
+        Assert.assertFalse(DMRDiscovery.mayMatchUnder(Address.parse("/subsystem=*"),
+                Collections.singleton(exampleDS)));
+        Assert.assertFalse(DMRDiscovery.mayMatchUnder(Address.parse("/subsystem=*/data-source=OtherDS"),
+                Collections.singleton(exampleDS)));
+        Assert.assertFalse(DMRDiscovery.mayMatchUnder(Address.parse("/deployment=*"),
+                Collections.singleton(exampleDS)));
+    }
+
+    @Test
+    public void testWithoutChildModels() {
+        ModelNode model = createModel().get("subsystem", "datasources");
+
+        ModelNode own = DMRDiscovery.withoutChildModels(model);
+        Assert.assertTrue(own.get("enabled").asBoolean());
+        Assert.assertEquals("bar", own.get("complex", "foo").asString());
+        Assert.assertEquals(ModelType.OBJECT, own.get("data-source").getType());
+        Assert.assertEquals(Arrays.asList("ExampleDS", "OtherDS"), Arrays.asList(own.get("data-source").keys()
+                .toArray()));
+        Assert.assertFalse(own.get("data-source", "ExampleDS").isDefined());
+
+        // the original model still has the children for them to be found
+        Assert.assertTrue(model.get("data-source", "ExampleDS").has("jndi-name"));
+    }
+
+    private ModelNode createModel() {
+        ModelNode model = new ModelNode();
+        model.get("name").set("server");
+
+        ModelNode datasources = model.get("subsystem", "datasources");
+        datasources.get("enabled").set(true);
+        datasources.get("complex", "foo").set("bar");
+        datasources.get("data-source", "ExampleDS", "jndi-name").set("java:/ExampleDS");
+        datasources.get("data-source", "OtherDS", "jndi-name").set("java:/OtherDS");
+
+        ModelNode undertow = model.get("subsystem", "undertow");
+        undertow.get("statistics-enabled").set(false);
+        undertow.get("server", "default", "host", "main", "alias").set("localhost");
+        return model;
+    }
+}
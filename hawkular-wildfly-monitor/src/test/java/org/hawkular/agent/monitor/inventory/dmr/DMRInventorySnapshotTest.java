@@ -0,0 +1,187 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.agent.monitor.inventory.dmr;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.agent.monitor.inventory.AvailTypeManager;
+import org.hawkular.agent.monitor.inventory.ID;
+import org.hawkular.agent.monitor.inventory.InventoryDiff;
+import org.hawkular.agent.monitor.inventory.MetricTypeManager;
+import org.hawkular.agent.monitor.inventory.Name;
+import org.hawkular.agent.monitor.inventory.ResourceManager;
+import org.hawkular.agent.monitor.inventory.ResourceTypeManager;
+import org.hawkular.agent.monitor.scheduler.config.DMRPropertyReference;
+import org.hawkular.agent.monitor.scheduler.config.Interval;
+import org.hawkular.dmrclient.Address;
+import org.jboss.dmr.ModelNode;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DMRInventorySnapshotTest {
+
+    @Test
+    public void testWriteAndRestore() throws Exception {
+        DMRInventoryManager im = createInventoryManager();
+        DMRResourceType serverType = getResourceType(im, "serverType");
+        DMRResourceType deploymentType = getResourceType(im, "deploymentType");
+        DMRMetricType metricType = serverType.getMetricTypes().iterator().next();
+
+        DMRResource server = new DMRResource(new ID("feed~server~/"), new Name("server"), null, serverType, null,
+                new Address(), new ModelNode());
+        DMRResourceConfigurationPropertyInstance config = new DMRResourceConfigurationPropertyInstance(ID.NULL_ID,
+                new Name("version"), serverType.getResourceConfigurationPropertyTypes().iterator().next());
+        config.setValue("1.0");
+        server.addResourceConfigurationProperty(config);
+        server.addProperty("foo", "bar");
+        DMRPropertyReference prop = new DMRPropertyReference(new Address("core-service", "platform-mbean"),
+                "heap", new Interval(30, TimeUnit.SECONDS));
+        server.getMetrics().add(new DMRMetricInstance(new ID("metric"), metricType.getName(), server, metricType,
+                prop));
+        server.setPersisted(true);
+
+        DMRResource persisted = new DMRResource(new ID("feed~server~/deployment=a.war"), new Name("a.war"), null,
+                deploymentType, server, new Address("deployment", "a.war"), new ModelNode());
+        persisted.setPersisted(true);
+        DMRResource notPersisted = new DMRResource(new ID("feed~server~/deployment=b.war"), new Name("b.war"), null,
+                deploymentType, server, new Address("deployment", "b.war"), new ModelNode());
+
+        im.getResourceManager().addResource(server);
+        im.getResourceManager().addResource(persisted);
+        im.getResourceManager().addResource(notPersisted);
+
+        File file = File.createTempFile("inventory-snapshot", ".bin");
+        try {
+            DMRInventorySnapshot.write(file, "feed", Arrays.asList(im));
+            DMRInventorySnapshot snapshot = DMRInventorySnapshot.read(file);
+            Assert.assertEquals("feed", snapshot.getFeedId());
+            Assert.assertTrue(snapshot.getManagedServerNames().contains("server"));
+
+            DMRInventoryManager allIm = createInventoryManager();
+            Assert.assertEquals(3, snapshot.restore(allIm, false));
+
+            DMRInventoryManager persistedIm = createInventoryManager();
+            Assert.assertEquals(2, snapshot.restore(persistedIm, true));
+            ResourceManager<DMRResource> rm = persistedIm.getResourceManager();
+            Assert.assertNull(rm.getResource(notPersisted.getID()));
+
+            DMRResource restoredServer = rm.getResource(server.getID());
+            Assert.assertTrue(restoredServer.isPersisted());
+            Assert.assertEquals(InventoryDiff.getContentHash(server), InventoryDiff.getContentHash(restoredServer));
+            Assert.assertEquals(1, restoredServer.getMetrics().size());
+            DMRMetricInstance restoredMetric = restoredServer.getMetrics().iterator().next();
+            Assert.assertEquals(prop.getAddress(), restoredMetric.getProperty().getAddress());
+
+            DMRResource restoredDeployment = rm.getResource(persisted.getID());
+            Assert.assertSame(restoredServer, restoredDeployment.getParent());
+            Assert.assertEquals(persisted.getAddress(), restoredDeployment.getAddress());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCorruptLengths() throws Exception {
+        File file = File.createTempFile("inventory-snapshot", ".bin");
+        try {
+            DMRInventorySnapshot.write(file, "feed", Arrays.asList(createInventoryManager()));
+            // the feed id length follows the magic number and the version
+            assertCorrupt(file, 8, Integer.MAX_VALUE);
+            assertCorrupt(file, 8, -2);
+            // the number of servers follows the four bytes of "feed"
+            assertCorrupt(file, 16, Integer.MAX_VALUE);
+            assertCorrupt(file, 16, -1);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private void assertCorrupt(File file, long offset, int value) throws Exception {
+        int original;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(offset);
+            original = raf.readInt();
+            raf.seek(offset);
+            raf.writeInt(value);
+        }
+        try {
+            DMRInventorySnapshot.read(file);
+            Assert.fail("Corrupt length [" + value + "] at [" + offset + "] should have been rejected");
+        } catch (IOException expected) {
+            // a corrupt snapshot makes the agent fall back to a full discovery
+        } finally {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.seek(offset);
+                raf.writeInt(original);
+            }
+        }
+    }
+
+    private DMRInventoryManager createInventoryManager() {
+        DMRResourceType serverType = createResourceType("serverType");
+        DMRMetricType metricType = new DMRMetricType(new ID("heapUsed"), new Name("heapUsed"));
+        metricType.setInterval(30);
+        metricType.setTimeUnits(TimeUnit.SECONDS);
+        metricType.setPath("/core-service=platform-mbean");
+        metricType.setAttribute("heap");
+        serverType.getMetricTypes().add(metricType);
+        serverType.addResourceConfigurationPropertyType(new DMRResourceConfigurationPropertyType(new ID("version"),
+                new Name("version"), serverType));
+
+        DMRResourceType deploymentType = createResourceType("deploymentType");
+        deploymentType.getParents().add(serverType.getName());
+
+        DMRResourceTypeSet set = new DMRResourceTypeSet(new ID("set"), new Name("set"));
+        set.setEnabled(true);
+        set.setResourceTypeMap(new HashMap<Name, DMRResourceType>());
+        set.getResourceTypeMap().put(serverType.getName(), serverType);
+        set.getResourceTypeMap().put(deploymentType.getName(), deploymentType);
+        Map<Name, DMRResourceTypeSet> setMap = new HashMap<>();
+        setMap.put(set.getName(), set);
+
+        DMRMetadataManager mm = new DMRMetadataManager(new ResourceTypeManager<>(setMap), new MetricTypeManager<>(),
+                new AvailTypeManager<>());
+        LocalDMRManagedServer managedServer = new LocalDMRManagedServer(new ID("server"), new Name("server"));
+        return new DMRInventoryManager("feed", mm, new ResourceManager<DMRResource>(), managedServer, null, null);
+    }
+
+    private DMRResourceType createResourceType(String name) {
+        DMRResourceType rt = new DMRResourceType(new ID(name), new Name(name));
+        rt.setResourceNameTemplate(name);
+        rt.setPath("/");
+        rt.setParents(new ArrayList<Name>());
+        rt.setMetricSets(new ArrayList<Name>());
+        rt.setAvailSets(new ArrayList<Name>());
+        return rt;
+    }
+
+    private DMRResourceType getResourceType(DMRInventoryManager im, String name) {
+        for (DMRResourceType type : im.getMetadataManager().getResourceTypeManager().getAllResourceTypes()) {
+            if (type.getName().getNameString().equals(name)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+}
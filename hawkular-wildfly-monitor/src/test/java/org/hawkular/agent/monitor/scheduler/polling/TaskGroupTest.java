@@ -23,6 +23,7 @@ import java.util.concurrent.TimeUnit;
 import org.hawkular.agent.monitor.scheduler.config.DMREndpoint;
 import org.hawkular.agent.monitor.scheduler.config.Interval;
 import org.hawkular.agent.monitor.scheduler.config.LocalDMREndpoint;
+import org.hawkular.agent.monitor.scheduler.config.MonitoredEndpoint;
 import org.hawkular.agent.monitor.scheduler.polling.Task.Type;
 import org.hawkular.agent.monitor.scheduler.polling.dmr.AvailDMRTask;
 import org.hawkular.agent.monitor.scheduler.polling.dmr.DMRTask;
@@ -202,6 +203,58 @@ public class TaskGroupTest {
 
     }
 
+    @Test
+    public void testMaxGroupSize() {
+        List<Task> allTasks = new ArrayList<Task>();
+        for (int i = 0; i < 5; i++) {
+            allTasks.add(new TestTask(Type.METRIC, 1));
+        }
+        allTasks.add(new TestTask(Type.METRIC, 2));
+
+        // no limit - one group per interval
+        List<TaskGroup> groups = new IntervalGrouping().separateIntoGroups(allTasks);
+        Assert.assertEquals(2, groups.size());
+
+        // the five tasks of the same interval are split into 2+2+1
+        groups = new IntervalGrouping(2).separateIntoGroups(allTasks);
+        Assert.assertEquals(4, groups.size());
+        Assert.assertEquals(2, groups.get(0).size());
+        Assert.assertEquals(0, groups.get(0).getPartition());
+        Assert.assertEquals(2, groups.get(1).size());
+        Assert.assertEquals(1, groups.get(1).getPartition());
+        Assert.assertEquals(1, groups.get(2).size());
+        Assert.assertEquals(2, groups.get(2).getPartition());
+        Assert.assertEquals(1, groups.get(3).size());
+        Assert.assertEquals(0, groups.get(3).getPartition());
+    }
+
+    @Test
+    public void testSpreadOffset() {
+        // empty groups have nothing to derive an offset from
+        Assert.assertEquals(0, new TaskGroup(interval(60)).getSpreadOffsetMillis());
+
+        // offsets are always within the interval and always the same for the same kind of group
+        long[] offsets = new long[4];
+        for (int i = 0; i < offsets.length; i++) {
+            DMREndpoint endpoint = new DMREndpoint("n", "h" + i, 1, "u", "p", false, null);
+            TaskGroup group = new TaskGroup(interval(60));
+            group.addTask(createDMRTask(Type.METRIC, 60, endpoint));
+            offsets[i] = group.getSpreadOffsetMillis();
+            Assert.assertTrue(offsets[i] >= 0 && offsets[i] < 60000);
+
+            TaskGroup sameGroup = new TaskGroup(interval(60));
+            sameGroup.addTask(createDMRTask(Type.METRIC, 60, endpoint));
+            Assert.assertEquals(offsets[i], sameGroup.getSpreadOffsetMillis());
+        }
+
+        // different endpoints should not all start at the same time
+        boolean allSame = true;
+        for (int i = 1; i < offsets.length; i++) {
+            allSame = allSame && (offsets[i] == offsets[0]);
+        }
+        Assert.assertFalse(allSame);
+    }
+
     private static Interval interval(int duration) {
         return new Interval(duration, TimeUnit.SECONDS);
     }
@@ -243,6 +296,11 @@ public class TaskGroupTest {
             return null;
         }
 
+        @Override
+        public MonitoredEndpoint getEndpoint() {
+            return new MonitoredEndpoint(TestTask.class.getName());
+        }
+
         @Override
         public Kind getKind() {
             return new Kind() {
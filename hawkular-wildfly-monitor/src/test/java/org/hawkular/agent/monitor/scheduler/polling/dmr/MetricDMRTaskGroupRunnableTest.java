@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.agent.monitor.scheduler.polling.dmr;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.agent.monitor.diagnostics.DiagnosticsImpl;
+import org.hawkular.agent.monitor.extension.MonitorServiceConfiguration;
+import org.hawkular.agent.monitor.inventory.ID;
+import org.hawkular.agent.monitor.inventory.Name;
+import org.hawkular.agent.monitor.inventory.dmr.DMRMetricInstance;
+import org.hawkular.agent.monitor.inventory.dmr.DMRMetricType;
+import org.hawkular.agent.monitor.scheduler.config.DMREndpoint;
+import org.hawkular.agent.monitor.scheduler.config.DMRPropertyReference;
+import org.hawkular.agent.monitor.scheduler.config.Interval;
+import org.hawkular.agent.monitor.scheduler.polling.MetricCompletionHandler;
+import org.hawkular.agent.monitor.scheduler.polling.TaskGroup;
+import org.hawkular.agent.monitor.service.ServerIdentifiers;
+import org.hawkular.agent.monitor.storage.MetricDataPoint;
+import org.hawkular.dmrclient.Address;
+import org.hawkular.dmrclient.JBossASClient;
+import org.hawkular.metrics.client.common.MetricType;
+import org.jboss.dmr.ModelNode;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class MetricDMRTaskGroupRunnableTest {
+
+    private static final Interval INTERVAL = new Interval(30, TimeUnit.SECONDS);
+    private static final DMREndpoint ENDPOINT = new DMREndpoint("n", "h", 1, "u", "p", false, null);
+
+    @Test
+    public void testCoalescedResponseWithMissingAttributes() {
+        Address pool = new Address("subsystem", "datasources", "data-source", "ExampleDS", "statistics", "pool");
+        Address sessions = new Address("deployment", "*", "subsystem", "undertow");
+
+        TaskGroup group = new TaskGroup(INTERVAL);
+        group.addTask(createTask(pool, "ActiveCount"));
+        group.addTask(createTask(pool, "AvailableCount"));
+        group.addTask(createTask(sessions, "activeSessions"));
+        group.addTask(createTask(sessions, "sessionsCreated"));
+
+        RecordingHandler handler = new RecordingHandler();
+        DiagnosticsImpl diagnostics = new DiagnosticsImpl(new MonitorServiceConfiguration.Diagnostics(),
+                new MetricRegistry(), new ServerIdentifiers("h", "s", "n", "u"));
+        MetricDMRTaskGroupRunnable runnable = new MetricDMRTaskGroupRunnable(group, handler, diagnostics, null, 10);
+
+        // the pool has no AvailableCount
+        ModelNode poolAttributes = new ModelNode();
+        poolAttributes.get("ActiveCount").set(3);
+        runnable.processOperationResponse(0, success(poolAttributes));
+
+        // the second deployment has no sessionsCreated
+        ModelNode firstDeployment = new ModelNode();
+        firstDeployment.get("activeSessions").set(2);
+        firstDeployment.get("sessionsCreated").set(5);
+        ModelNode secondDeployment = new ModelNode();
+        secondDeployment.get("activeSessions").set(4);
+        ModelNode deployments = new ModelNode().setEmptyList();
+        deployments.add(success(firstDeployment));
+        deployments.add(success(secondDeployment));
+        runnable.processOperationResponse(1, success(deployments));
+
+        Assert.assertEquals(3, handler.values.size());
+        Assert.assertEquals(3.0, handler.values.get("ActiveCount"), 0.0);
+        Assert.assertEquals(6.0, handler.values.get("activeSessions"), 0.0);
+        Assert.assertEquals(5.0, handler.values.get("sessionsCreated"), 0.0);
+
+        Assert.assertEquals(1, handler.failures.size());
+        Assert.assertTrue(handler.failures.get(0).getMessage(),
+                handler.failures.get(0).getMessage().contains("AvailableCount"));
+        Assert.assertEquals(2, diagnostics.getDMRErrorRate().getCount());
+    }
+
+    private MetricDMRTask createTask(Address address, String attribute) {
+        DMRMetricType metricType = new DMRMetricType(new ID(attribute), new Name(attribute));
+        metricType.setMetricType(MetricType.GAUGE);
+        DMRPropertyReference prop = new DMRPropertyReference(address, attribute, INTERVAL);
+        DMRMetricInstance metricInstance = new DMRMetricInstance(new ID(attribute), new Name(attribute), null,
+                metricType, prop);
+        return new MetricDMRTask(INTERVAL, ENDPOINT, address, attribute, null, metricInstance);
+    }
+
+    private ModelNode success(ModelNode result) {
+        ModelNode response = new ModelNode();
+        response.get(JBossASClient.OUTCOME).set(JBossASClient.OUTCOME_SUCCESS);
+        response.get(JBossASClient.RESULT).set(result);
+        return response;
+    }
+
+    private static class RecordingHandler implements MetricCompletionHandler {
+        private final Map<String, Double> values = new HashMap<>();
+        private final List<Throwable> failures = new ArrayList<>();
+
+        @Override
+        public void onCompleted(MetricDataPoint dataPoint) {
+            values.put(((MetricDMRTask) dataPoint.getTask()).getAttribute(), dataPoint.getValue());
+        }
+
+        @Override
+        public void onFailed(Throwable e) {
+            failures.add(e);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.agent.monitor.storage;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hawkular.agent.monitor.extension.MonitorServiceConfiguration;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.squareup.okhttp.Callback;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+public class HttpClientBuilderTest {
+
+    @Test
+    public void testBuildAppliesConfiguration() throws Exception {
+        OkHttpClient client = new HttpClientBuilder(createConfiguration(32, false), null).build();
+
+        Assert.assertEquals(32, client.getDispatcher().getMaxRequestsPerHost());
+        Assert.assertTrue(client.getDispatcher().getMaxRequests() >= 32);
+        Assert.assertEquals(3000, client.getConnectTimeout());
+        Assert.assertEquals(4000, client.getReadTimeout());
+        Assert.assertEquals(5000, client.getWriteTimeout());
+        Assert.assertEquals(Collections.singletonList(Protocol.HTTP_1_1), client.getProtocols());
+        Assert.assertNotNull(client.getConnectionPool());
+        Assert.assertNotSame(ConnectionPool.getDefault(), client.getConnectionPool());
+    }
+
+    @Test
+    public void testBuildWithHttp2() throws Exception {
+        OkHttpClient client = new HttpClientBuilder(createConfiguration(16, true), null).build();
+
+        Assert.assertTrue(client.getProtocols().contains(Protocol.HTTP_2));
+        Assert.assertTrue(client.getProtocols().contains(Protocol.HTTP_1_1));
+    }
+
+    /**
+     * Sends many requests to one stub server that takes a while to answer each of them and reports the
+     * throughput. With the default dispatcher no more than 5 of them would be in flight at the same time.
+     */
+    @Test
+    public void testThroughputToOneHost() throws Exception {
+        final int maxRequestsPerHost = 16;
+        final int numberOfRequests = 160;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                int current = inFlight.incrementAndGet();
+                int max = maxInFlight.get();
+                while (current > max && !maxInFlight.compareAndSet(max, current)) {
+                    max = maxInFlight.get();
+                }
+                Thread.sleep(20);
+                inFlight.decrementAndGet();
+                return new MockResponse().setResponseCode(200);
+            }
+        });
+        server.start();
+
+        try {
+            HttpClientBuilder builder = new HttpClientBuilder(createConfiguration(maxRequestsPerHost, false), null);
+            OkHttpClient client = builder.build();
+            String url = server.getUrl("/hawkular/metrics/gauges/data").toString();
+
+            final CountDownLatch done = new CountDownLatch(numberOfRequests);
+            final AtomicInteger failures = new AtomicInteger();
+            long start = System.nanoTime();
+            for (int i = 0; i < numberOfRequests; i++) {
+                Request request = builder.buildJsonPostRequest(url, null, "[]");
+                client.newCall(request).enqueue(new Callback() {
+                    @Override
+                    public void onFailure(Request request, IOException e) {
+                        failures.incrementAndGet();
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onResponse(Response response) throws IOException {
+                        if (response.code() != 200) {
+                            failures.incrementAndGet();
+                        }
+                        response.body().close();
+                        done.countDown();
+                    }
+                });
+            }
+
+            Assert.assertTrue("Requests did not finish in time", done.await(60, TimeUnit.SECONDS));
+            long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            System.out.printf("Sent %d requests to one host in %d ms (%.1f requests/s), at most %d at a time%n",
+                    numberOfRequests, durationMillis, numberOfRequests * 1000.0 / Math.max(1L, durationMillis),
+                    maxInFlight.get());
+
+            Assert.assertEquals(0, failures.get());
+            Assert.assertTrue("Only " + maxInFlight.get() + " requests were in flight", maxInFlight.get() > 5);
+            Assert.assertTrue(maxInFlight.get() <= maxRequestsPerHost);
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    private MonitorServiceConfiguration createConfiguration(int maxRequestsPerHost, boolean http2Enabled) {
+        MonitorServiceConfiguration config = new MonitorServiceConfiguration();
+        config.storageAdapter.username = "user";
+        config.storageAdapter.password = "password";
+        config.storageAdapter.useSSL = false;
+        config.storageAdapter.maxRequestsPerHost = maxRequestsPerHost;
+        config.storageAdapter.connectionPoolMaxIdleConnections = 8;
+        config.storageAdapter.connectionPoolKeepAliveSecs = 60;
+        config.storageAdapter.connectTimeoutSecs = 3;
+        config.storageAdapter.readTimeoutSecs = 4;
+        config.storageAdapter.writeTimeoutSecs = 5;
+        config.storageAdapter.http2Enabled = http2Enabled;
+        return config;
+    }
+}
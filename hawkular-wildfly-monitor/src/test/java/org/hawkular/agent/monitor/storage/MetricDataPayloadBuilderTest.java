@@ -104,4 +104,17 @@ public class MetricDataPayloadBuilderTest {
 
         Assert.assertNotNull(builder.toPayload());
     }
+
+    @Test
+    public void testJson() {
+        MetricsOnlyMetricDataPayloadBuilder builder = new MetricsOnlyMetricDataPayloadBuilder();
+        builder.addDataPoint("one", 12345, 1.5, MetricType.GAUGE);
+        builder.addDataPoint("two", 12345, 7.0, MetricType.COUNTER);
+        builder.addDataPoint("one", 54321, 2.5, MetricType.GAUGE);
+        Assert.assertEquals(3, builder.getNumberDataPoints());
+        Assert.assertEquals("{\"counters\":[{\"id\":\"two\",\"data\":[{\"timestamp\":12345,\"value\":7}]}],"
+                + "\"availabilities\":[],"
+                + "\"gauges\":[{\"id\":\"one\",\"data\":[{\"timestamp\":12345,\"value\":1.5},"
+                + "{\"timestamp\":54321,\"value\":2.5}]}]}", builder.toPayload());
+    }
 }